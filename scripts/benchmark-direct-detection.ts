@@ -0,0 +1,223 @@
+/**
+ * Benchmark de la detección directa para Java.
+ *
+ * Compara el detector anterior (heurísticas línea a línea, replicado aquí tal
+ * cual) con el escáner basado en tokens sobre los proyectos de uploads/.
+ * Informa del tiempo, del número de hallazgos por tipo y de cuántos hallazgos
+ * del detector anterior caían dentro de comentarios o literales. El escáner se
+ * mide sin caché y con la caché por contenido vaciada al inicio de cada pasada,
+ * que es lo que ve un análisis nuevo cuando las entregas repiten archivos.
+ *
+ * Uso: npx ts-node scripts/benchmark-direct-detection.ts [directorio]
+ */
+
+import * as fs from 'fs';
+import * as path from 'path';
+import { clearJavaScanCache, scanJavaSource, tokenizeJava } from '../src/analysis/scanners';
+
+interface LegacyFinding {
+  type: string;
+  line: number;
+}
+
+const CONCAT = (line: string) => line.includes('" + ') || line.includes('+ "');
+
+function legacyScanJava(content: string): LegacyFinding[] {
+  const findings: LegacyFinding[] = [];
+  const lines = content.split('\n');
+  const push = (type: string, line: number) => findings.push({ type, line });
+
+  lines.forEach((line, index) => {
+    const lineNum = index + 1;
+    const next = (from: number, count: number) => lines.slice(index + from, Math.min(index + count, lines.length));
+
+    if ((line.includes('executeQuery') || line.includes('executeUpdate') || line.includes('execute(')) &&
+        (CONCAT(line) || line.includes('String.format'))) push('SQL Injection', lineNum);
+    if ((line.includes('"SELECT') || line.includes("'SELECT")) &&
+        (line.includes('" + ') || line.includes("' + ") || line.includes('String.format'))) push('SQL Injection', lineNum);
+
+    if ((line.includes('Runtime.getRuntime().exec') || line.includes('new ProcessBuilder')) &&
+        (CONCAT(line) || line.includes('String.format') || line.includes('concatenat'))) push('Command Injection', lineNum);
+    if (line.includes('Runtime.getRuntime().exec')) {
+      const prevLines = lines.slice(Math.max(0, index - 5), index).join(' ');
+      if (!prevLines.includes('whitelist') && !prevLines.includes('sanitize') && !prevLines.includes('validate')) {
+        push('Command Injection', lineNum);
+      }
+    }
+    if (line.includes('cmd.exe /c') && CONCAT(line)) push('Command Injection', lineNum);
+    if (line.includes('new ProcessBuilder') && CONCAT(line)) push('Command Injection', lineNum);
+
+    const fileCtor = line.includes('new File(') || line.includes('new FileInputStream') || line.includes('new FileOutputStream');
+    if ((fileCtor || line.includes('Paths.get(')) && (CONCAT(line) || line.includes('String.format'))) push('Path Traversal', lineNum);
+    if (fileCtor && (line.includes('" + ') || line.includes('filename') || line.includes('filepath'))) push('Path Traversal', lineNum);
+    if (line.includes('new File(') && (line.includes('parameter') || line.includes('request.') || line.includes('input') ||
+        line.includes('userPath') || line.includes('filename') || line.match(/new File\([a-zA-Z]/))) {
+      const nextLines = next(1, 8).join(' ');
+      if (!nextLines.includes('.startsWith(') && !nextLines.includes('.contains("..") == false') && !nextLines.includes('getCanonicalPath')) {
+        push('Path Traversal', lineNum);
+      }
+    }
+    if (line.includes('new FileOutputStream(') && (line.includes('" + ') || line.includes('parameter') || line.includes('request.'))) {
+      push('Path Traversal', lineNum);
+    }
+
+    if (line.match(/\b(DB_USER|DB_PASSWORD|PASSWORD|password|apiKey|api_key|API_KEY|SECRET|secret|TOKEN|token|CREDENTIAL)\s*[=:]\s*["']/i) ||
+        (line.includes('=') && line.includes('"') && line.match(/(password|secret|token|api_key|db_password|user|credential)/i) &&
+         !line.includes('null') && !line.includes('getPassword') && !line.includes('final String'))) push('Hardcoded Credential', lineNum);
+
+    if (line.includes('new Random()')) push('Insecure Randomness', lineNum);
+    if ((line.includes('random.nextLong()') || line.includes('random.nextInt()')) &&
+        (line.includes('token') || line.includes('Token') || line.includes('seed') || line.includes('Seed'))) push('Insecure Randomness', lineNum);
+
+    if (line.includes('= null')) {
+      const varMatch = line.match(/(\w+)\s*=\s*null/);
+      if (varMatch) {
+        const varName = varMatch[1];
+        for (let i = 1; i < 5 && index + i < lines.length; i++) {
+          const candidate = lines[index + i];
+          if (candidate.includes(varName + '.') || candidate.includes(varName + '(') || candidate.includes(varName + '[')) {
+            push('Null Pointer Dereference', lineNum + i);
+            break;
+          }
+        }
+      }
+    }
+
+    if ((line.includes('new FileInputStream') || line.includes('new FileOutputStream') || line.includes('new BufferedReader') ||
+         line.includes('new PrintWriter') || line.includes('getConnection()') || line.includes('new Scanner(') ||
+         line.includes('new Connection') || line.includes('new Statement') || line.includes('new ResultSet')) &&
+        !line.trim().startsWith('//')) {
+      const prevLines = lines.slice(Math.max(0, index - 3), index).join(' ');
+      if (!prevLines.includes('try') && !line.includes(';') && !next(1, 15).some(l => l.includes('.close()'))) {
+        push('Resource Leak', lineNum);
+      }
+    }
+    if ((line.includes('DriverManager.getConnection') || line.includes('DataSource.getConnection')) &&
+        !lines.slice(Math.max(0, index - 2), index).join(' ').includes('try')) {
+      if (!next(0, 15).some(l => l.includes('.close()') || l.includes('finally')) && !line.includes('try')) push('Resource Leak', lineNum);
+    }
+    if ((line.includes('.createStatement()') || line.includes('.prepareStatement(')) && !line.includes('try')) {
+      if (!next(1, 20).some(l => l.includes('.close()') || l.includes('finally'))) push('Resource Leak', lineNum);
+    }
+    if ((line.includes('.executeQuery()') || line.includes('ResultSet')) && !line.includes('try')) {
+      if (!next(1, 20).some(l => l.includes('.close()') || l.includes('finally')) && !line.includes('new ResultSet')) push('Resource Leak', lineNum);
+    }
+    if (line.includes('new BufferedReader') && !line.includes('try')) {
+      if (!next(1, 20).some(l => l.includes('.close()'))) push('Resource Leak', lineNum);
+    }
+
+    if ((line.includes('System.out.println') || line.includes('response.write') || line.includes('.append(') ||
+         line.includes('getWriter().print')) && CONCAT(line)) push('Cross-Site Scripting (XSS)', lineNum);
+
+    if (line.includes('==') && (line.includes('"') || line.includes("'")) &&
+        line.match(/(password|token|secret|credential|key)\s*==|==\s*(password|token|secret|credential|key)/i)) {
+      push('Insecure String Comparison', lineNum);
+    }
+
+    if (line.includes('== null') && lines[index + 1]?.includes('.')) push('Null Pointer Dereference', lineNum + 1);
+  });
+
+  return findings;
+}
+
+/** Líneas que contienen al menos un token de código (ni comentario ni solo literal) */
+function codeLines(content: string): Set<number> {
+  const lines = new Set<number>();
+  for (const token of tokenizeJava(content)) {
+    if (token.kind !== 'string' && token.kind !== 'char') lines.add(token.line);
+  }
+  return lines;
+}
+
+function collectJavaFiles(dir: string, result: string[] = []): string[] {
+  for (const entry of fs.readdirSync(dir, { withFileTypes: true })) {
+    const fullPath = path.join(dir, entry.name);
+    if (entry.isDirectory()) {
+      if (entry.name.startsWith('.') || entry.name === 'node_modules' || entry.name === 'target') continue;
+      collectJavaFiles(fullPath, result);
+    } else if (entry.name.endsWith('.java')) {
+      result.push(fullPath);
+    }
+  }
+  return result;
+}
+
+function countByType(findings: { type: string }[]): Map<string, number> {
+  const counts = new Map<string, number>();
+  for (const finding of findings) counts.set(finding.type, (counts.get(finding.type) || 0) + 1);
+  return counts;
+}
+
+interface Timing {
+  /** Primera pasada en frío (intérprete, antes de que el JIT optimice) */
+  firstMs: number;
+  medianMs: number;
+}
+
+/**
+ * Primera pasada y mediana de cada variante. Todas se calientan igual y las
+ * pasadas medidas se intercalan, para que ni el JIT ni el estado del GC
+ * favorezcan a la que se mide primero o a la que ya venía caliente.
+ */
+function measure(runs: (() => void)[], warmup = 30, rounds = 41): Timing[] {
+  const elapsed = (run: () => void) => {
+    const started = process.hrtime.bigint();
+    run();
+    return Number(process.hrtime.bigint() - started) / 1e6;
+  };
+  const firsts = runs.map(elapsed);
+  for (let i = 0; i < warmup; i++) runs.forEach(run => run());
+  const times = runs.map(() => [] as number[]);
+  for (let i = 0; i < rounds; i++) runs.forEach((run, index) => times[index].push(elapsed(run)));
+  return times.map((samples, index) => ({
+    firstMs: firsts[index],
+    medianMs: samples.sort((x, y) => x - y)[Math.floor(rounds / 2)],
+  }));
+}
+
+function main() {
+  const root = path.resolve(process.argv[2] || path.join(process.cwd(), 'uploads'));
+  const files = collectJavaFiles(root);
+  const sources = files.map(file => ({ file, content: fs.readFileSync(file, 'utf-8') }));
+  const bytes = sources.reduce((sum, source) => sum + source.content.length, 0);
+
+  console.log(`📂 ${root}`);
+  console.log(`📄 ${files.length} archivos Java (${(bytes / 1024).toFixed(1)} KB)\n`);
+
+  // Se mide antes de contar hallazgos para que la primera pasada sea realmente en frío
+  const [legacyTime, scannerTime, incrementalTime] = measure([
+    () => sources.forEach(({ content }) => legacyScanJava(content)),
+    () => sources.forEach(({ file, content }) => scanJavaSource(content, file, { cache: false })),
+    () => {
+      clearJavaScanCache();
+      sources.forEach(({ file, content }) => scanJavaSource(content, file));
+    },
+  ]);
+
+  const legacy = sources.flatMap(({ content }) => legacyScanJava(content));
+  const scanned = sources.flatMap(({ file, content }) => scanJavaSource(content, file, { cache: false }));
+  const legacyNonCode = sources.reduce((sum, { content }) => {
+    const code = codeLines(content);
+    return sum + legacyScanJava(content).filter(finding => !code.has(finding.line)).length;
+  }, 0);
+
+  const uniqueContents = new Set(sources.map(({ content }) => content)).size;
+
+  const legacyCounts = countByType(legacy);
+  const scannerCounts = countByType(scanned);
+  const types = [...new Set([...legacyCounts.keys(), ...scannerCounts.keys()])].sort();
+
+  console.log('Tipo'.padEnd(32) + 'Líneas'.padStart(10) + 'Tokens'.padStart(10));
+  for (const type of types) {
+    console.log(type.padEnd(32) + String(legacyCounts.get(type) || 0).padStart(10) + String(scannerCounts.get(type) || 0).padStart(10));
+  }
+  console.log('-'.repeat(52));
+  console.log('Total'.padEnd(32) + String(legacy.length).padStart(10) + String(scanned.length).padStart(10));
+  const format = (timing: Timing) => `${timing.medianMs.toFixed(1)} ms (primera pasada en frío: ${timing.firstMs.toFixed(1)} ms)`;
+  console.log(`\n⏱️  Detector por líneas: ${format(legacyTime)}`);
+  console.log(`⏱️  Escáner por tokens:  ${format(scannerTime)}, sin caché`);
+  console.log(`⏱️  Escáner por tokens:  ${format(incrementalTime)}, incremental con ${uniqueContents} contenidos distintos`);
+  console.log(`🗒️  Hallazgos del detector anterior en comentarios/literales: ${legacyNonCode}`);
+}
+
+main();
@@ -0,0 +1,117 @@
+/**
+ * Benchmark de la creación de misiones.
+ *
+ * Compara el guardado anterior (un `save` por misión, cada uno en su propia
+ * transacción) con MissionsService.createForAnalysis (INSERT multi-fila con
+ * RETURNING, por lotes) para varios tamaños.
+ *
+ * Todo ocurre dentro de una transacción que se deshace al terminar, también si
+ * algo falla: el análisis temporal y las misiones nunca se confirman en la base
+ * de datos configurada. La transacción propia de cada `save` se reproduce con
+ * un SAVEPOINT (mismos round trips: SAVEPOINT, INSERT, RELEASE), pero sin el
+ * COMMIT real; el coste del guardado por fila es, por tanto, una cota inferior.
+ *
+ * Uso: npx ts-node scripts/benchmark-mission-insert.ts [tamaños separados por comas]
+ */
+
+import { NestFactory } from '@nestjs/core';
+import { DataSource, QueryRunner } from 'typeorm';
+import { AppModule } from '../src/app.module';
+import { AnalysisRun } from '../src/analysis/entities/analysis-run.entity';
+import { Mission } from '../src/analysis/entities/mission.entity';
+import { MissionsService } from '../src/analysis/missions.service';
+
+const DEFAULT_SIZES = [10, 50, 100, 1000];
+const ROUNDS = 3;
+const SEVERITIES = ['high', 'medium', 'low'];
+
+function missionDrafts(count: number): Partial<Mission>[] {
+  return Array.from({ length: count }, (_, i) => ({
+    title: `Benchmark ${i}: posible SQL Injection`,
+    description: 'Consulta construida concatenando parámetros del usuario',
+    filePath: `src/main/java/com/example/Service${i % 40}.java`,
+    lineStart: 10 + i,
+    lineEnd: 12 + i,
+    severity: SEVERITIES[i % SEVERITIES.length],
+    metadata: { tool: 'semgrep', raw: { rule: 'java.sql-injection', line: 10 + i } },
+  }));
+}
+
+/**
+ * Mide la tarea dentro de un SAVEPOINT que después se deshace, para que cada
+ * pasada empiece con la tabla igual
+ */
+async function timedAndRolledBack(queryRunner: QueryRunner, task: () => Promise<unknown>): Promise<number> {
+  await queryRunner.startTransaction();
+  try {
+    const start = process.hrtime.bigint();
+    await task();
+    return Number(process.hrtime.bigint() - start) / 1e6;
+  } finally {
+    await queryRunner.rollbackTransaction();
+  }
+}
+
+async function main(): Promise<void> {
+  const sizes = process.argv[2]
+    ? process.argv[2].split(',').map(Number).filter(size => size > 0)
+    : DEFAULT_SIZES;
+
+  const app = await NestFactory.createApplicationContext(AppModule, { logger: ['error', 'warn'] });
+  const queryRunner = app.get(DataSource).createQueryRunner();
+  await queryRunner.connect();
+  await queryRunner.startTransaction();
+
+  try {
+    const manager = queryRunner.manager;
+    const missionsService = app.get(MissionsService);
+    const missionRepository = manager.getRepository(Mission);
+    const analysisRepository = manager.getRepository(AnalysisRun);
+    const analysis = await analysisRepository.save(
+      analysisRepository.create({ student: 'benchmark', originalFileName: 'benchmark.zip', status: 'completed' }),
+    );
+
+    console.log(`Media de ${ROUNDS} pasadas por tamaño (todo se deshace al terminar)\n`);
+    console.log('misiones | save por fila (ms) | INSERT por lotes (ms) | mejora');
+    for (const size of sizes) {
+      const drafts = missionDrafts(size);
+      let perRow = 0;
+      let batched = 0;
+
+      for (let round = 0; round < ROUNDS; round++) {
+        perRow += await timedAndRolledBack(queryRunner, async () => {
+          for (const draft of drafts) {
+            // Transacción propia por fila, como el save sin manager de antes
+            await queryRunner.startTransaction();
+            await missionRepository.save(
+              missionRepository.create({ ...draft, analysisRunId: analysis.id, status: 'pending' }),
+            );
+            await queryRunner.commitTransaction();
+          }
+        });
+
+        batched += await timedAndRolledBack(queryRunner, () =>
+          missionsService.createForAnalysis(analysis, drafts, manager),
+        );
+      }
+
+      perRow /= ROUNDS;
+      batched /= ROUNDS;
+      console.log(
+        `${String(size).padStart(8)} | ${perRow.toFixed(1).padStart(18)} | ` +
+        `${batched.toFixed(1).padStart(21)} | ${(perRow / Math.max(batched, 0.001)).toFixed(1)}x`,
+      );
+    }
+  } finally {
+    // Nada de lo creado se confirma: se deshacen los SAVEPOINT que un error
+    // haya dejado abiertos y después la transacción exterior
+    while (queryRunner.isTransactionActive) await queryRunner.rollbackTransaction();
+    await queryRunner.release();
+    await app.close();
+  }
+}
+
+main().catch(error => {
+  console.error('Error en el benchmark:', error);
+  process.exit(1);
+});
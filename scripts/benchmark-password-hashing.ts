@@ -0,0 +1,91 @@
+/**
+ * Benchmark del login: comparación de contraseñas con bcryptjs en el hilo
+ * principal (como hacía AuthService) frente a PasswordHasherService (pool de
+ * worker_threads). Simula una ráfaga de logins concurrentes y mide el
+ * rendimiento y el retraso del event loop, que es lo que notan el resto de
+ * peticiones mientras dura la ráfaga. No necesita base de datos.
+ *
+ * Uso: npx ts-node scripts/benchmark-password-hashing.ts [logins concurrentes separados por comas]
+ */
+
+import * as bcrypt from 'bcryptjs';
+import { performance } from 'perf_hooks';
+import { PasswordHasherService } from '../src/auth/services/password-hasher.service';
+
+const DEFAULT_BURSTS = [10, 50, 100];
+const PASSWORD = 'benchmark-password';
+
+// Cada PROBE_INTERVAL_MS un temporizador anota cuánto tarde se ejecuta: es la
+// espera que sufriría cualquier otra petición durante la ráfaga
+const PROBE_INTERVAL_MS = 5;
+
+interface BurstResult {
+  ms: number;
+  loginsPerSecond: number;
+  loopP99Ms: number;
+  loopMaxMs: number;
+}
+
+function startLoopProbe(): () => Promise<number[]> {
+  const delays: number[] = [];
+  let last = performance.now();
+  const timer = setInterval(() => {
+    const now = performance.now();
+    delays.push(Math.max(0, now - last - PROBE_INTERVAL_MS));
+    last = now;
+  }, PROBE_INTERVAL_MS);
+  return async () => {
+    // Una vuelta más para registrar el último bloqueo
+    await new Promise(resolve => setTimeout(resolve, PROBE_INTERVAL_MS * 2));
+    clearInterval(timer);
+    return delays.sort((a, b) => a - b);
+  };
+}
+
+async function burst(size: number, compare: () => Promise<boolean>): Promise<BurstResult> {
+  const stopProbe = startLoopProbe();
+  const start = performance.now();
+  await Promise.all(Array.from({ length: size }, () => compare()));
+  const ms = performance.now() - start;
+  const delays = await stopProbe();
+  return {
+    ms,
+    loginsPerSecond: (size * 1000) / ms,
+    loopP99Ms: delays.length > 0 ? delays[Math.min(delays.length - 1, Math.floor(delays.length * 0.99))] : 0,
+    loopMaxMs: delays.length > 0 ? delays[delays.length - 1] : 0,
+  };
+}
+
+function row(label: string, size: number, result: BurstResult): string {
+  return (
+    `${label.padEnd(14)} | ${String(size).padStart(6)} | ${result.ms.toFixed(0).padStart(10)} | ` +
+    `${result.loginsPerSecond.toFixed(1).padStart(9)} | ${result.loopP99Ms.toFixed(1).padStart(13)} | ` +
+    `${result.loopMaxMs.toFixed(1).padStart(13)}`
+  );
+}
+
+async function main(): Promise<void> {
+  const bursts = process.argv[2]
+    ? process.argv[2].split(',').map(Number).filter(size => size > 0)
+    : DEFAULT_BURSTS;
+
+  const hasher = new PasswordHasherService();
+  const hash = await hasher.hash(PASSWORD);
+  // Arranca todos los workers antes de medir
+  await Promise.all(Array.from({ length: 8 }, () => hasher.compare(PASSWORD, hash)));
+
+  try {
+    console.log('modo           | logins | total (ms) | logins/s  | loop p99 (ms) | loop máx (ms)');
+    for (const size of bursts) {
+      console.log(row('hilo principal', size, await burst(size, () => bcrypt.compare(PASSWORD, hash))));
+      console.log(row('pool workers', size, await burst(size, () => hasher.compare(PASSWORD, hash))));
+    }
+  } finally {
+    await hasher.onModuleDestroy();
+  }
+}
+
+main().catch(error => {
+  console.error('Error en el benchmark:', error);
+  process.exit(1);
+});
@@ -15,15 +15,16 @@ import {
 } from '@nestjs/common';
 import { FileInterceptor } from '@nestjs/platform-express';
 import { AnalysisService } from './analysis.service';
+import { HashedMulterFile, discardUpload, projectUploadOptions, toUploadedArchive } from './services/upload-storage';
 
 @Controller('analysis')
 export class AnalysisController {
   constructor(private readonly analysisService: AnalysisService) {}
 
   @Post('upload')
-  @UseInterceptors(FileInterceptor('file'))
+  @UseInterceptors(FileInterceptor('file', projectUploadOptions()))
   async uploadProject(
-    @UploadedFile() file: Express.Multer.File, 
+    @UploadedFile() file: HashedMulterFile, 
     @Body('student') student: string
   ) {
     if (!file) {
@@ -31,13 +32,13 @@ export class AnalysisController {
     }
 
     if (!student) {
+      await discardUpload(file);
       throw new BadRequestException('El nombre del estudiante es requerido');
     }
 
     try {
       const result = await this.analysisService.runPipeline(
-        file.buffer, 
-        file.originalname, 
+        toUploadedArchive(file),
         student
       );
 
@@ -18,6 +18,7 @@ import { FileInterceptor } from '@nestjs/platform-express';
 import { AuthGuard } from '@nestjs/passport';
 import { AnalysisService } from './analysis.service';
 import { MissionsService } from './missions.service';
+import { HashedMulterFile, discardUpload, projectUploadOptions, toUploadedArchive } from './services/upload-storage';
 
 @Controller('analysis')
 export class AnalysisController {
@@ -47,9 +48,9 @@ export class AnalysisController {
   }
 
   @Post('upload')
-  @UseInterceptors(FileInterceptor('file'))
+  @UseInterceptors(FileInterceptor('file', projectUploadOptions()))
   async uploadProject(
-    @UploadedFile() file: Express.Multer.File, 
+    @UploadedFile() file: HashedMulterFile, 
     @Body('student') student: string
   ) {
     console.log('=== DEBUG UPLOAD ===');
@@ -67,6 +68,7 @@ export class AnalysisController {
 
     if (!student) {
       console.error('ERROR: No student provided');
+      await discardUpload(file);
       throw new BadRequestException('El nombre del estudiante es requerido');
     }
 
@@ -74,8 +76,7 @@ export class AnalysisController {
       console.log('Starting analysis pipeline...');
       // Ejecutar el pipeline real de análisis
       const result = await this.analysisService.runPipeline(
-        file.buffer,
-        file.originalname,
+        toUploadedArchive(file),
         student
       );
 
@@ -93,9 +94,9 @@ export class AnalysisController {
 
   @Post('upload-auth')
   @UseGuards(AuthGuard('jwt'))
-  @UseInterceptors(FileInterceptor('file'))
+  @UseInterceptors(FileInterceptor('file', projectUploadOptions()))
   async uploadProjectAuth(
-    @UploadedFile() file: Express.Multer.File, 
+    @UploadedFile() file: HashedMulterFile, 
     @Request() req,
     @Body('student') student?: string
   ) {
@@ -122,8 +123,7 @@ export class AnalysisController {
       console.log('Student Name:', studentName);
       
       const result = await this.analysisService.runPipeline(
-        file.buffer,
-        file.originalname,
+        toUploadedArchive(file),
         studentName,
         req.user.id // userId del usuario autenticado
       );
@@ -434,15 +434,16 @@ export class AnalysisController {
 
   @Post(':id/reanalyze')
   @UseGuards(AuthGuard('jwt'))
-  @UseInterceptors(FileInterceptor('file'))
+  @UseInterceptors(FileInterceptor('file', projectUploadOptions()))
   async reanalyzeAnalysis(
     @Param('id', ParseIntPipe) id: number,
-    @UploadedFile() file: Express.Multer.File,
+    @UploadedFile() file: HashedMulterFile,
     @Body() body: { repositoryUrl?: string },
     @Request() req,
   ) {
     try {
-      const analysis = await this.analysisService.findById(id);
+      // Solo hacen falta los datos de resumen (propietario y estudiante)
+      const analysis = await this.analysisService.getAnalysisById(id);
 
       // Validar que el usuario autenticado sea el propietario
       const userId = req.user?.id;
@@ -455,6 +456,8 @@ export class AnalysisController {
 
       // Si el análisis original fue por repositorio y se proporciona URL, usar re-análisis por repo
       if (body.repositoryUrl) {
+        // El archivo (si se envió) no se usa en el re-análisis por repositorio
+        await discardUpload(file);
         result = await this.analysisService.reanalyzeFromRepository(
           id,
           body.repositoryUrl,
@@ -464,8 +467,7 @@ export class AnalysisController {
       } else if (file) {
         // Re-análisis por archivo ZIP
         result = await this.analysisService.runPipeline(
-          file.buffer, 
-          file.originalname, 
+          toUploadedArchive(file),
           studentName, 
           userId,
           id // ID del análisis anterior para re-análisis
@@ -485,6 +487,8 @@ export class AnalysisController {
         isNewProject: !isSameProject,
       };
     } catch (error) {
+      // Si falló antes de llegar al pipeline, la subida temporal sigue en disco
+      await discardUpload(file);
       throw new BadRequestException(error.message);
     }
   }
@@ -5,15 +5,22 @@ import { AnalysisService } from './analysis.service';
 import { AnalysisRun } from './entities/analysis-run.entity';
 import { FileService } from './services/file.service';
 import { ToolService } from './services/tool.service';
+import { SourceScanService } from './services/source-scan.service';
+import { BlobStoreService } from './services/blob-store.service';
+import { WorkspaceAllocatorService } from './services/workspace-allocator.service';
+import { WorkspaceRetentionService } from './services/workspace-retention.service';
+import { RepositoryMirrorService } from './services/repository-mirror.service';
 import { Mission } from './entities/mission.entity';
 import { MissionsController } from './missions.controller';
 import { MissionsService } from './missions.service';
 import { AuthModule } from '../auth/auth.module';
+import { RankingModule } from '../ranking/ranking.module';
+import { OutboxModule } from '../outbox/outbox.module';
 
 @Module({
-  imports: [DatabaseModule, AuthModule],
+  imports: [DatabaseModule, AuthModule, RankingModule, OutboxModule],
   controllers: [AnalysisController, MissionsController],
-  providers: [AnalysisService, FileService, ToolService, MissionsService],
-  exports: [AnalysisService, MissionsService],
+  providers: [AnalysisService, FileService, ToolService, SourceScanService, BlobStoreService, RepositoryMirrorService, WorkspaceAllocatorService, WorkspaceRetentionService, MissionsService],
+  exports: [AnalysisService, MissionsService, WorkspaceRetentionService],
 })
 export class AnalysisModule {}
\ No newline at end of file
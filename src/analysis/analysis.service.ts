@@ -1,11 +1,29 @@
 import { Injectable, Logger, NotFoundException } from '@nestjs/common';
 import { InjectRepository } from '@nestjs/typeorm';
-import { Repository } from 'typeorm';
-import { AnalysisRun, AnalysisStatus } from './entities/analysis-run.entity';
-import { FileService, ToolService } from './services';
+import { EntityManager, Repository } from 'typeorm';
+import * as path from 'path';
+import { ANALYSIS_SUMMARY_SELECT, AnalysisRun, AnalysisStatus } from './entities/analysis-run.entity';
+import { AnalysisArtifact } from './entities/analysis-artifact.entity';
+import {
+  AnalysisScope,
+  FileService,
+  FindingFingerprinter,
+  FindingIndex,
+  IncrementalBaseline,
+  RepositoryCheckout,
+  SourceScanResult,
+  SourceScanService,
+  ToolService,
+  UploadedArchive,
+  WorkspaceRetentionService,
+  carryForwardFindings,
+  discardUpload,
+  normalizeRepositoryUrl,
+} from './services';
 import { ToolResult } from './services/tool.service';
 import { MissionsService } from './missions.service';
-import { AchievementsService } from '../auth/services/achievements.service';
+import { OutboxService } from '../outbox/outbox.service';
+import { UserScoreService } from '../ranking/user-score.service';
 import { 
   findMatchingCuratedRule, 
   getEducationalMessage, 
@@ -193,15 +211,22 @@ export class AnalysisService {
   constructor(
     @InjectRepository(AnalysisRun)
     private readonly analysisRunRepository: Repository<AnalysisRun>,
+    @InjectRepository(AnalysisArtifact)
+    private readonly artifactRepository: Repository<AnalysisArtifact>,
     private readonly fileService: FileService,
     private readonly toolService: ToolService,
+    private readonly sourceScanService: SourceScanService,
+    private readonly workspaceRetention: WorkspaceRetentionService,
     private readonly missionsService: MissionsService,
-    private readonly achievementsService: AchievementsService,
+    private readonly outbox: OutboxService,
+    private readonly userScores: UserScoreService,
   ) {}
 
-  async runPipeline(fileBuffer: Buffer, originalFileName: string, student: string, userId?: number, reanalysisOfId?: number): Promise<AnalysisResult> {
+  async runPipeline(upload: UploadedArchive, student: string, userId?: number, reanalysisOfId?: number): Promise<AnalysisResult> {
+    const originalFileName = upload.originalName;
     let analysisRun: AnalysisRun;
     let projectPath: string;
+    let releaseWorkspace = () => undefined;
     let isReanalysis = !!reanalysisOfId;
     let previousAnalysis: AnalysisRun | null = null;
 
@@ -228,6 +253,7 @@ export class AnalysisService {
       analysisRun = this.analysisRunRepository.create({
         student,
         originalFileName,
+        fileSize: upload.size,
         status: 'pending',
         projectPath: '',
         userId: userId || null,
@@ -243,18 +269,20 @@ export class AnalysisService {
       analysisRun.status = 'processing';
       await this.analysisRunRepository.save(analysisRun);
 
-      projectPath = await this.fileService.saveAndExtractFile(fileBuffer, originalFileName);
+      projectPath = await this.fileService.saveAndExtractFile(upload);
+      releaseWorkspace = this.workspaceRetention.lease(projectPath);
       analysisRun.projectPath = projectPath;
       await this.analysisRunRepository.save(analysisRun);
 
       // 3. Analizar archivos del proyecto
       const fileInfo = await this.fileService.findProjectFiles(projectPath);
+      const sources = await this.sourceScanService.scan(fileInfo);
       analysisRun.fileStats = {
         totalFiles: fileInfo.allFiles.length,
         javaFiles: fileInfo.javaFiles.length,
         pythonFiles: fileInfo.pythonFiles.length,
         jsFiles: fileInfo.jsFiles.length,
-        linesOfCode: await this.countLinesOfCode(fileInfo.allFiles),
+        linesOfCode: sources.linesOfCode,
       };
 
       // 3.1 Si es re-análisis, verificar si es el mismo proyecto
@@ -272,6 +300,11 @@ export class AnalysisService {
           // Es el mismo proyecto: actualizar el análisis existente en lugar de crear uno nuevo
           console.log('Detected same project - updating existing analysis');
           
+          // El directorio del análisis anterior queda reemplazado por el nuevo
+          if (previousAnalysis.projectPath && previousAnalysis.projectPath !== analysisRun.projectPath) {
+            await this.workspaceRetention.discard(previousAnalysis.projectPath);
+          }
+
           // Copiar datos importantes del análisis temporal al anterior
           previousAnalysis.originalFileName = analysisRun.originalFileName;
           previousAnalysis.projectPath = analysisRun.projectPath;
@@ -297,7 +330,7 @@ export class AnalysisService {
       await this.analysisRunRepository.save(analysisRun);
 
       // 4. Ejecutar herramientas de análisis
-      const toolResults = await this.toolService.runAllTools(projectPath, fileInfo);
+      const toolResults = await this.toolService.runAllTools(projectPath, fileInfo, sources);
       analysisRun.toolResults = toolResults;
 
       // 5. Procesar resultados
@@ -306,61 +339,63 @@ export class AnalysisService {
 
       // 5.1 Generar misiones
       let missions: any[] = [];
-      if (isReanalysis && previousAnalysis && analysisRun.id === previousAnalysis.id) {
+      const isSameProject = isReanalysis && previousAnalysis && analysisRun.id === previousAnalysis.id;
+      if (isSameProject) {
         try {
-          await this.updateMissionsStatus(analysisRun, toolResults);
+          await this.updateMissionsStatus(analysisRun, toolResults, undefined, undefined, sources);
           // Obtener misiones existentes para contar
           missions = await this.missionsService.findByAnalysisId(analysisRun.id);
         } catch (e) {
           this.logger.warn('No se pudo actualizar estado de misiones: ' + e.message);
         }
-      } else {
-        // 5.2 Generar misiones automáticas para análisis nuevo
-        try {
-          if (this.missionsService && typeof this.missionsService.createForAnalysis === 'function') {
-            missions = await this.generateMissionsFromFindings(analysisRun, toolResults, this.missionsService);
-          }
-        } catch (e) {
-          this.logger.warn('No se pudo generar misiones automáticamente: ' + e.message);
-        }
       }
 
-      // 6. Calcular métricas basadas en MISIONES (no en todos los findings)
-      // Esto asegura que Problemas = Misiones
-      const missionsByPriority = {
-        high: missions.filter((m: any) => m.severity === 'high').length,
-        medium: missions.filter((m: any) => m.severity === 'medium').length,
-        low: missions.filter((m: any) => m.severity === 'low').length
-      };
-      
-      analysisRun.totalIssues = missions.length;
-      analysisRun.highSeverityIssues = missionsByPriority.high;
-      analysisRun.mediumSeverityIssues = missionsByPriority.medium;
-      analysisRun.lowSeverityIssues = missionsByPriority.low;
-      analysisRun.qualityScore = this.calculateQualityScoreFromMissions(
-        missionsByPriority.high, 
-        missionsByPriority.medium, 
-        missionsByPriority.low
-      );
+      // Misiones nuevas y finalización del análisis en una sola transacción
+      await this.analysisRunRepository.manager.transaction(async manager => {
+        if (!isSameProject) {
+          // 5.2 Generar misiones automáticas para análisis nuevo. En un savepoint: si fallan,
+          // el análisis se completa sin misiones
+          try {
+            if (this.missionsService && typeof this.missionsService.createForAnalysis === 'function') {
+              missions = await manager.transaction(savepoint =>
+                this.generateMissionsFromFindings(analysisRun, toolResults, this.missionsService, sources, savepoint),
+              );
+            }
+          } catch (e) {
+            this.logger.warn('No se pudo generar misiones automáticamente: ' + e.message);
+          }
+        }
 
-      this.logger.log(`📊 Métricas basadas en misiones: H=${missionsByPriority.high}, M=${missionsByPriority.medium}, L=${missionsByPriority.low}, Total=${missions.length}`);
+        // 6. Calcular métricas basadas en MISIONES (no en todos los findings)
+        // Esto asegura que Problemas = Misiones
+        const missionsByPriority = {
+          high: missions.filter((m: any) => m.severity === 'high').length,
+          medium: missions.filter((m: any) => m.severity === 'medium').length,
+          low: missions.filter((m: any) => m.severity === 'low').length
+        };
+        
+        analysisRun.totalIssues = missions.length;
+        analysisRun.highSeverityIssues = missionsByPriority.high;
+        analysisRun.mediumSeverityIssues = missionsByPriority.medium;
+        analysisRun.lowSeverityIssues = missionsByPriority.low;
+        analysisRun.qualityScore = this.calculateQualityScoreFromMissions(
+          missionsByPriority.high, 
+          missionsByPriority.medium, 
+          missionsByPriority.low
+        );
 
-      // 7. Finalizar análisis
-      analysisRun.status = 'completed';
-      analysisRun.completedAt = new Date();
-      await this.analysisRunRepository.save(analysisRun);
+        this.logger.log(`📊 Métricas basadas en misiones: H=${missionsByPriority.high}, M=${missionsByPriority.medium}, L=${missionsByPriority.low}, Total=${missions.length}`);
 
-      // 7.1 Verificar y desbloquear logros si el usuario está autenticado
-      if (analysisRun.userId) {
-        try {
-          await this.achievementsService.checkAndUnlockAchievements(analysisRun.userId);
-        } catch (e) {
-          this.logger.warn('No se pudo verificar logros al completar análisis: ' + e.message);
-        }
-      }
+        // 7. Finalizar análisis
+        analysisRun.status = 'completed';
+        analysisRun.completedAt = new Date();
+        await manager.save(analysisRun);
+        await this.saveArtifacts(analysisRun, manager);
+        await this.enqueueAnalysisCompleted(analysisRun, manager);
+      });
 
-      // 8. Limpiar archivos temporales (opcional)
-      // await this.fileService.cleanupProject(projectPath);
+      // 8. Registrar el directorio: la retención (TTL/LRU/disco) decide cuándo se elimina
+      await this.workspaceRetention.register(projectPath, 'upload', { analysisRunId: analysisRun.id });
 
       this.logger.log(`Análisis completado con ID: ${analysisRun.id}`);
 
@@ -389,15 +424,22 @@ export class AnalysisService {
       if (analysisRun) {
         analysisRun.status = 'failed';
         analysisRun.errorMessage = error.message;
-        await this.analysisRunRepository.save(analysisRun);
+        await this.analysisRunRepository.manager.transaction(async manager => {
+          await manager.save(analysisRun);
+          // Un re-análisis fallido deja de contar la nota del análisis que reemplazaba
+          await this.userScores.refreshForAnalysis(analysisRun, manager);
+        });
       }
 
       // Limpiar en caso de error
       if (projectPath) {
-        await this.fileService.cleanupProject(projectPath);
+        await this.workspaceRetention.discard(projectPath);
       }
+      await discardUpload(upload);
 
       throw new Error(`Error en el análisis: ${error.message}`);
+    } finally {
+      releaseWorkspace();
     }
   }
 
@@ -405,6 +447,7 @@ export class AnalysisService {
     let analysisRun: AnalysisRun;
     let projectPath: string;
     let clonedRepoPath: string;
+    let releaseWorkspace = () => undefined;
 
     try {
       // 1. Validar que la URL sea válida
@@ -441,8 +484,10 @@ export class AnalysisService {
       // 3. Clonar el repositorio
       this.logger.log(`⬇️  Clonando repositorio desde: ${repositoryUrl}`);
       
+      let checkout: RepositoryCheckout;
       try {
-        clonedRepoPath = await this.fileService.cloneRepository(repositoryUrl, analysisRun.id.toString());
+        checkout = await this.fileService.cloneRepository(repositoryUrl, analysisRun.id.toString());
+        clonedRepoPath = checkout.path;
         this.logger.log(`✅ Repositorio clonado en: ${clonedRepoPath}`);
       } catch (cloneError) {
         throw new Error(`Error al clonar el repositorio: ${cloneError.message}. Verifica que sea un repositorio público.`);
@@ -450,69 +495,74 @@ export class AnalysisService {
 
       // 4. Actualizar el path del proyecto
       projectPath = clonedRepoPath;
+      releaseWorkspace = this.workspaceRetention.lease(projectPath);
       analysisRun.projectPath = projectPath;
+      analysisRun.commitSha = checkout.commitSha;
       analysisRun.status = 'processing';
       analysisRun.fileSize = 0; // No aplica para repositorios
       await this.analysisRunRepository.save(analysisRun);
 
       // 5. Analizar archivos del repositorio
       const fileInfo = await this.fileService.findProjectFiles(projectPath);
+      const sources = await this.sourceScanService.scan(fileInfo);
       analysisRun.fileStats = {
         totalFiles: fileInfo.allFiles.length,
         javaFiles: fileInfo.javaFiles.length,
         pythonFiles: fileInfo.pythonFiles.length,
         jsFiles: fileInfo.jsFiles.length,
-        linesOfCode: await this.countLinesOfCode(fileInfo.allFiles),
+        linesOfCode: sources.linesOfCode,
       };
 
       // 6. Ejecutar herramientas de análisis
       this.logger.log(`🔧 Ejecutando herramientas de análisis...`);
       
-      const toolResults = await this.toolService.runAllTools(projectPath, fileInfo);
+      const toolResults = await this.toolService.runAllTools(projectPath, fileInfo, sources);
       
       this.logger.log(`📊 Herramientas completadas. Procesando resultados...`);
 
-      // 6. Procesar resultados y crear missions
-      const missions = await this.generateMissionsFromFindings(analysisRun, toolResults, this.missionsService);
+      // 6. Procesar resultados y crear missions; se insertan en la misma transacción que completa el análisis
+      const missions = await this.analysisRunRepository.manager.transaction(async manager => {
+        const created = await this.generateMissionsFromFindings(analysisRun, toolResults, this.missionsService, sources, manager);
 
-      // 7. IMPORTANTE: Los contadores de problemas = cantidad de misiones creadas
-      // Esto asegura coherencia entre lo que se muestra y las misiones disponibles
-      const missionsByPriority = {
-        high: missions.filter((m: any) => m.severity === 'high').length,
-        medium: missions.filter((m: any) => m.severity === 'medium').length,
-        low: missions.filter((m: any) => m.severity === 'low').length
-      };
+        // 7. IMPORTANTE: Los contadores de problemas = cantidad de misiones creadas
+        // Esto asegura coherencia entre lo que se muestra y las misiones disponibles
+        const missionsByPriority = {
+          high: created.filter((m: any) => m.severity === 'high').length,
+          medium: created.filter((m: any) => m.severity === 'medium').length,
+          low: created.filter((m: any) => m.severity === 'low').length
+        };
 
-      this.logger.log(`📊 Misiones creadas: HIGH=${missionsByPriority.high}, MEDIUM=${missionsByPriority.medium}, LOW=${missionsByPriority.low}, TOTAL=${missions.length}`);
+        this.logger.log(`📊 Misiones creadas: HIGH=${missionsByPriority.high}, MEDIUM=${missionsByPriority.medium}, LOW=${missionsByPriority.low}, TOTAL=${created.length}`);
 
-      // Calcular quality score basado en misiones (problemas reales)
-      const qualityScore = this.calculateQualityScoreFromMissions(missionsByPriority.high, missionsByPriority.medium, missionsByPriority.low);
+        // Calcular quality score basado en misiones (problemas reales)
+        const qualityScore = this.calculateQualityScoreFromMissions(missionsByPriority.high, missionsByPriority.medium, missionsByPriority.low);
 
-      // 8. Actualizar análisis con resultados
-      const processedFindings = this.processToolResults(toolResults);
+        // 8. Actualizar análisis con resultados
+        const processedFindings = this.processToolResults(toolResults);
       
-      // Contar findings por herramienta para referencia
-      const toolFindings: { [key: string]: number } = {};
-      for (const result of toolResults) {
-        toolFindings[result.tool] = result.findings?.length || 0;
-      }
+        // Contar findings por herramienta para referencia
+        const toolFindings: { [key: string]: number } = {};
+        for (const result of toolResults) {
+          toolFindings[result.tool] = result.findings?.length || 0;
+        }
       
-      analysisRun.status = 'completed';
-      analysisRun.totalIssues = missions.length; // Total = misiones
-      analysisRun.highSeverityIssues = missionsByPriority.high;
-      analysisRun.mediumSeverityIssues = missionsByPriority.medium;
-      analysisRun.lowSeverityIssues = missionsByPriority.low;
-      analysisRun.qualityScore = qualityScore;
-      analysisRun.toolResults = toolFindings;
-      analysisRun.findings = processedFindings;
-      analysisRun.completedAt = new Date();
+        analysisRun.status = 'completed';
+        analysisRun.totalIssues = created.length; // Total = misiones
+        analysisRun.highSeverityIssues = missionsByPriority.high;
+        analysisRun.mediumSeverityIssues = missionsByPriority.medium;
+        analysisRun.lowSeverityIssues = missionsByPriority.low;
+        analysisRun.qualityScore = qualityScore;
+        analysisRun.toolResults = toolFindings;
+        analysisRun.findings = processedFindings;
+        analysisRun.completedAt = new Date();
       
-      await this.analysisRunRepository.save(analysisRun);
+        await manager.save(analysisRun);
+        await this.saveArtifacts(analysisRun, manager);
+        await this.enqueueAnalysisCompleted(analysisRun, manager);
+        return created;
+      });
 
-      // 9. Procesar achievements
-      if (analysisRun.userId) {
-        await this.achievementsService.checkAndUnlockAchievements(analysisRun.userId);
-      }
+      await this.workspaceRetention.register(projectPath, 'repository', { analysisRunId: analysisRun.id });
 
       this.logger.log(`✅ Análisis completado exitosamente. ID: ${analysisRun.id}, Misiones: ${missions.length}`);
 
@@ -521,7 +571,7 @@ export class AnalysisService {
         student: analysisRun.student,
         originalFileName: analysisRun.originalFileName,
         status: analysisRun.status,
-        findings: processedFindings,
+        findings: analysisRun.findings,
         totalIssues: analysisRun.totalIssues,
         highSeverityIssues: analysisRun.highSeverityIssues,
         mediumSeverityIssues: analysisRun.mediumSeverityIssues,
@@ -538,15 +588,21 @@ export class AnalysisService {
       if (analysisRun) {
         analysisRun.status = 'failed';
         analysisRun.errorMessage = error.message;
-        await this.analysisRunRepository.save(analysisRun);
+        await this.analysisRunRepository.manager.transaction(async manager => {
+          await manager.save(analysisRun);
+          // Un re-análisis fallido deja de contar la nota del análisis que reemplazaba
+          await this.userScores.refreshForAnalysis(analysisRun, manager);
+        });
       }
 
       // Limpiar en caso de error
       if (projectPath) {
-        await this.fileService.cleanupProject(projectPath);
+        await this.workspaceRetention.discard(projectPath);
       }
 
       throw new Error(`Error al analizar el repositorio: ${error.message}`);
+    } finally {
+      releaseWorkspace();
     }
   }
 
@@ -573,6 +629,7 @@ export class AnalysisService {
     let analysisRun: AnalysisRun;
     let projectPath: string;
     let clonedRepoPath: string;
+    let releaseWorkspace = () => undefined;
 
     try {
       // Validar URL
@@ -596,18 +653,26 @@ export class AnalysisService {
       analysisRun = await this.analysisRunRepository.save(analysisRun);
 
       // Clonar repositorio
-      clonedRepoPath = await this.fileService.cloneRepository(repositoryUrl, analysisRun.id.toString());
+      const checkout = await this.fileService.cloneRepository(repositoryUrl, analysisRun.id.toString());
+      clonedRepoPath = checkout.path;
       projectPath = clonedRepoPath;
+      releaseWorkspace = this.workspaceRetention.lease(projectPath);
       analysisRun.projectPath = projectPath;
+      analysisRun.commitSha = checkout.commitSha;
+
+      // Solo se analiza lo que cambió desde el commit del análisis anterior (si se conoce)
+      const previousRoot = previousAnalysis.projectPath ? path.resolve(previousAnalysis.projectPath) : null;
+      const baseline = await this.planIncrementalReanalysis(previousAnalysis, repositoryUrl, checkout);
 
       // Analizar estructura
       const fileInfo = await this.fileService.findProjectFiles(projectPath);
+      const sources = await this.sourceScanService.scan(fileInfo, baseline?.scope);
       analysisRun.fileStats = {
         totalFiles: fileInfo.allFiles.length,
         javaFiles: fileInfo.javaFiles.length,
         pythonFiles: fileInfo.pythonFiles.length,
         jsFiles: fileInfo.jsFiles.length,
-        linesOfCode: await this.countLinesOfCode(fileInfo.allFiles),
+        linesOfCode: sources.linesOfCode,
       };
 
       // Comparar si es el mismo proyecto
@@ -620,8 +685,12 @@ export class AnalysisService {
       this.logger.log(`Re-análisis de repo: isSameProject=${isSameProject}`);
 
       if (isSameProject) {
-        // Es el mismo proyecto: actualizar el anterior
+        // Es el mismo proyecto: actualizar el anterior (su clon queda reemplazado)
+        if (previousAnalysis.projectPath && previousAnalysis.projectPath !== analysisRun.projectPath) {
+          await this.workspaceRetention.discard(previousAnalysis.projectPath);
+        }
         previousAnalysis.projectPath = analysisRun.projectPath;
+        previousAnalysis.commitSha = analysisRun.commitSha;
         previousAnalysis.fileStats = analysisRun.fileStats;
         previousAnalysis.status = 'processing';
         previousAnalysis.repositoryUrl = repositoryUrl;
@@ -633,41 +702,50 @@ export class AnalysisService {
       }
 
       // Ejecutar análisis
-      const toolResults = await this.toolService.runAllTools(projectPath, fileInfo);
+      const toolResults = await this.toolService.runAllTools(projectPath, fileInfo, sources, baseline?.scope);
+      if (baseline) {
+        const carried = carryForwardFindings(toolResults, baseline, fileInfo);
+        this.logger.log(`♻️ Hallazgos conservados de archivos sin cambios: ${carried}`);
+      }
 
       // Procesar misiones
       let missions: any[] = [];
       if (isSameProject) {
-        await this.updateMissionsStatus(analysisRun, toolResults);
+        await this.updateMissionsStatus(analysisRun, toolResults, previousRoot, baseline?.scope, sources);
         missions = await this.missionsService.findByAnalysisId(analysisRun.id);
-      } else {
-        missions = await this.generateMissionsFromFindings(analysisRun, toolResults, this.missionsService);
       }
 
-      // Calcular métricas
-      const missionsByPriority = {
-        high: missions.filter((m: any) => m.severity === 'high').length,
-        medium: missions.filter((m: any) => m.severity === 'medium').length,
-        low: missions.filter((m: any) => m.severity === 'low').length
-      };
-
-      analysisRun.totalIssues = missions.length;
-      analysisRun.highSeverityIssues = missionsByPriority.high;
-      analysisRun.mediumSeverityIssues = missionsByPriority.medium;
-      analysisRun.lowSeverityIssues = missionsByPriority.low;
-      analysisRun.qualityScore = this.calculateQualityScoreFromMissions(
-        missionsByPriority.high, missionsByPriority.medium, missionsByPriority.low
-      );
-      analysisRun.toolResults = this.processToolResults(toolResults);
-      analysisRun.findings = this.processToolResults(toolResults);
-      analysisRun.status = 'completed';
-      analysisRun.completedAt = new Date();
+      // Misiones nuevas y finalización del análisis en una sola transacción
+      await this.analysisRunRepository.manager.transaction(async manager => {
+        if (!isSameProject) {
+          missions = await this.generateMissionsFromFindings(analysisRun, toolResults, this.missionsService, sources, manager);
+        }
 
-      await this.analysisRunRepository.save(analysisRun);
+        // Calcular métricas
+        const missionsByPriority = {
+          high: missions.filter((m: any) => m.severity === 'high').length,
+          medium: missions.filter((m: any) => m.severity === 'medium').length,
+          low: missions.filter((m: any) => m.severity === 'low').length
+        };
+
+        analysisRun.totalIssues = missions.length;
+        analysisRun.highSeverityIssues = missionsByPriority.high;
+        analysisRun.mediumSeverityIssues = missionsByPriority.medium;
+        analysisRun.lowSeverityIssues = missionsByPriority.low;
+        analysisRun.qualityScore = this.calculateQualityScoreFromMissions(
+          missionsByPriority.high, missionsByPriority.medium, missionsByPriority.low
+        );
+        analysisRun.toolResults = this.processToolResults(toolResults);
+        analysisRun.findings = this.processToolResults(toolResults);
+        analysisRun.status = 'completed';
+        analysisRun.completedAt = new Date();
+
+        await manager.save(analysisRun);
+        await this.saveArtifacts(analysisRun, manager);
+        await this.enqueueAnalysisCompleted(analysisRun, manager);
+      });
 
-      if (analysisRun.userId) {
-        await this.achievementsService.checkAndUnlockAchievements(analysisRun.userId);
-      }
+      await this.workspaceRetention.register(projectPath, 'repository', { analysisRunId: analysisRun.id });
 
       return {
         id: analysisRun.id,
@@ -690,13 +768,54 @@ export class AnalysisService {
       if (analysisRun) {
         analysisRun.status = 'failed';
         analysisRun.errorMessage = error.message;
-        await this.analysisRunRepository.save(analysisRun);
+        await this.analysisRunRepository.manager.transaction(async manager => {
+          await manager.save(analysisRun);
+          // Un re-análisis fallido deja de contar la nota del análisis que reemplazaba
+          await this.userScores.refreshForAnalysis(analysisRun, manager);
+        });
       }
       if (projectPath) {
-        await this.fileService.cleanupProject(projectPath);
+        await this.workspaceRetention.discard(projectPath);
       }
       throw error;
+    } finally {
+      releaseWorkspace();
+    }
+  }
+
+  /**
+   * Base para el re-análisis incremental de un repositorio: exige que el
+   * análisis anterior sea del mismo repositorio, esté completado y tenga el
+   * commit y los hallazgos por herramienta. Si algo falta, null (análisis completo).
+   */
+  private async planIncrementalReanalysis(
+    previous: AnalysisRun,
+    repositoryUrl: string,
+    checkout: RepositoryCheckout,
+  ): Promise<IncrementalBaseline | null> {
+    if (!previous.commitSha || !previous.projectPath || previous.status !== 'completed') return null;
+    if (normalizeRepositoryUrl(previous.repositoryUrl || '') !== normalizeRepositoryUrl(repositoryUrl)) return null;
+
+    await this.loadArtifacts(previous);
+    let findings = previous.findings;
+    if (typeof findings === 'string') {
+      try {
+        findings = JSON.parse(findings);
+      } catch {
+        return null;
+      }
     }
+    if (!findings?.results) return null;
+
+    const changedFiles = await this.fileService.changedFilesBetween(checkout.path, previous.commitSha, checkout.commitSha);
+    if (!changedFiles) return null;
+
+    this.logger.log(`♻️ Re-análisis incremental desde ${previous.commitSha.slice(0, 12)}: ${changedFiles.length} archivos cambiados`);
+    return {
+      scope: new AnalysisScope(checkout.path, changedFiles),
+      previousRoot: path.resolve(previous.projectPath),
+      previousResults: findings.results,
+    };
   }
 
   private calculateQualityScore(issueCount: number): number {
@@ -737,12 +856,14 @@ export class AnalysisService {
 
   async getAllAnalyses(): Promise<AnalysisRun[]> {
     return this.analysisRunRepository.find({
+      select: ANALYSIS_SUMMARY_SELECT,
       order: { createdAt: 'DESC' },
     });
   }
 
   async getAnalysesByStudent(student: string): Promise<AnalysisRun[]> {
     return this.analysisRunRepository.find({
+      select: ANALYSIS_SUMMARY_SELECT,
       where: { student },
       order: { createdAt: 'DESC' },
     });
@@ -753,10 +874,10 @@ export class AnalysisService {
     
     // Limpiar archivos si existen
     if (analysis.projectPath) {
-      await this.fileService.cleanupProject(analysis.projectPath);
+      await this.workspaceRetention.discard(analysis.projectPath);
     }
 
-    await this.analysisRunRepository.remove(analysis);
+    await this.removeWithScores(analysis);
     this.logger.log(`Análisis eliminado: ${id}`);
   }
 
@@ -957,7 +1078,7 @@ export class AnalysisService {
     };
   }
 
-  async generateMissionsFromFindings(analysis: AnalysisRun, toolResults: ToolResult[], missionsService: any): Promise<any[]> {
+  async generateMissionsFromFindings(analysis: AnalysisRun, toolResults: ToolResult[], missionsService: any, sources?: SourceScanResult, manager?: EntityManager): Promise<any[]> {
     // ========== PASO 1: Aplicar deduplicación inteligente entre herramientas ==========
     const { deduplicatedFindings, stats } = deduplicateFindings(toolResults);
     this.logger.log(`📊 [DEDUPLICACIÓN] ${stats.totalOriginal} → ${stats.afterDeduplication} findings (${stats.duplicatesRemoved} duplicados eliminados)`);
@@ -1002,6 +1123,9 @@ export class AnalysisService {
     this.logger.log(`✅ Total findings después de filtrar: ${allFindings.length} (curadas: ${curatedMatchCount}, ignoradas: ${filteredOutCount})`);
 
     const missionsToCreate: Partial<any>[] = [];
+    const fingerprinter = new FindingFingerprinter(analysis.projectPath, sources);
+    // Archivos fuera de la etapa de lectura (no son código): se leen una sola vez
+    const extraLines = new Map<string, string[] | null>();
 
     for (const f of allFindings) {
       // ✅ USAR REGLAS CURADAS: Obtener mensaje educativo y severidad de las reglas curadas
@@ -1016,21 +1140,26 @@ export class AnalysisService {
       const startLine = f.raw.start?.line || f.raw.sourceLine?.beginline || f.raw.sourceLine?.start || f.raw.line || null;
       const endLine = f.raw.end?.line || f.raw.sourceLine?.endline || f.raw.sourceLine?.end || null;
 
-      // Intentar leer la línea de código del archivo
+      // Obtener la línea de código desde las fuentes ya leídas
       let codeSnippet = null;
       if (filePath && startLine) {
-        try {
-          const fs = require('fs');
-          if (fs.existsSync(filePath)) {
-            const content = fs.readFileSync(filePath, 'utf-8');
-            const lines = content.split('\n');
-            const lineIndex = Number(startLine) - 1;
-            if (lineIndex >= 0 && lineIndex < lines.length) {
-              codeSnippet = lines[lineIndex].trim();
+        if (sources?.has(filePath)) {
+          codeSnippet = sources.getLine(filePath, Number(startLine));
+        } else {
+          if (!extraLines.has(filePath)) {
+            try {
+              const fs = require('fs');
+              extraLines.set(filePath, fs.existsSync(filePath) ? fs.readFileSync(filePath, 'utf-8').split('\n') : null);
+            } catch (err) {
+              // Silenciosamente ignorar si no se puede leer el archivo
+              extraLines.set(filePath, null);
             }
           }
-        } catch (err) {
-          // Silenciosamente ignorar si no se puede leer el archivo
+          const lines = extraLines.get(filePath);
+          const lineIndex = Number(startLine) - 1;
+          if (lines && lineIndex >= 0 && lineIndex < lines.length) {
+            codeSnippet = lines[lineIndex].trim();
+          }
         }
       }
 
@@ -1044,7 +1173,8 @@ export class AnalysisService {
         lineEnd: endLine ? Number(endLine) : null,
         severity,
         codeSnippet,
-        metadata: { tool: f.tool, raw: f.raw }
+        metadata: { tool: f.tool, raw: f.raw },
+        fingerprint: fingerprinter.fingerprint(f.tool, f.raw),
       });
     }
 
@@ -1139,8 +1269,8 @@ export class AnalysisService {
 
     this.logger.log(`🎯 Misiones seleccionadas: ${selected.length} (H:${highMissions.length}, M:${Math.min(mediumMissions.length, maxMedium)}, L:${Math.min(lowMissions.length, maxLow)})`);
 
-    // Crear misiones usando el servicio pasado
-    const created = await missionsService.createForAnalysis(analysis, selected);
+    // Crear misiones usando el servicio pasado (en la transacción del llamador, si la hay)
+    const created = await missionsService.createForAnalysis(analysis, selected, manager);
 
     this.logger.log(`✅ Misiones creadas: ${created.length}`);
 
@@ -1202,11 +1332,14 @@ export class AnalysisService {
           }
         }
 
-        // Guardar cambios en el registro de análisis para que el frontend pueda ver la relación
-        try {
-          await this.analysisRunRepository.save(analysis);
-        } catch (err) {
-          this.logger.warn('No se pudo persistir mapping misiones-findings: ' + err.message);
+        // Guardar cambios en el registro de análisis para que el frontend pueda ver la relación.
+        // Dentro de una transacción el llamador guarda el análisis al completarlo
+        if (!manager) {
+          try {
+            await this.saveArtifacts(analysis);
+          } catch (err) {
+            this.logger.warn('No se pudo persistir mapping misiones-findings: ' + err.message);
+          }
         }
       }
     } catch (err) {
@@ -1295,7 +1428,10 @@ export class AnalysisService {
    */
   private async updateMissionsStatus(
     analysis: AnalysisRun,
-    newToolResults: ToolResult[]
+    newToolResults: ToolResult[],
+    previousRoot?: string,
+    scope?: AnalysisScope,
+    sources?: SourceScanResult,
   ): Promise<void> {
     if (!this.missionsService) {
       this.logger.warn('MissionsService no disponible para actualizar estado de misiones');
@@ -1312,10 +1448,18 @@ export class AnalysisService {
 
     this.logger.log(`Actualizando estado de ${missions.length} misiones existentes`);
 
-    // Extraer todos los findings del nuevo análisis
+    // Huellas de los findings del nuevo análisis: una misión con huella sigue abierta si la suya está
     const newFindings = this.extractAllFindings(newToolResults);
+    const fingerprinter = new FindingFingerprinter(analysis.projectPath, sources);
+    const fingerprints = new Set<string>();
+    for (const { tool, finding } of newFindings) {
+      const fingerprint = fingerprinter.fingerprint(tool, finding);
+      if (fingerprint) fingerprints.add(fingerprint);
+    }
+    // Misiones anteriores a las huellas: índice por archivo y línea, solo si hace falta
+    let index: FindingIndex = null;
 
-    let fixedCount = 0;
+    const fixedIds: number[] = [];
     let stillPendingCount = 0;
 
     for (const mission of missions) {
@@ -1324,20 +1468,32 @@ export class AnalysisService {
         continue;
       }
 
-      // Verificar si el problema de esta misión aún existe en los nuevos findings
-      const stillExists = this.findingStillExists(mission, newFindings);
+      // Re-análisis incremental: un archivo sin cambios conserva sus problemas
+      if (scope && previousRoot && this.isInUnchangedFile(mission, previousRoot, scope)) {
+        stillPendingCount++;
+        continue;
+      }
 
-      if (!stillExists) {
-        // El problema fue corregido
-        await this.missionsService.markFixed(mission.id);
-        fixedCount++;
-        this.logger.log(`Misión ${mission.id} marcada como corregida (problema no encontrado en re-análisis)`);
+      let stillExists: boolean;
+      if (mission.fingerprint) {
+        stillExists = fingerprints.has(mission.fingerprint);
       } else {
+        index = index || new FindingIndex(newFindings);
+        stillExists = index.stillExists(mission, previousRoot);
+      }
+
+      if (stillExists) {
         stillPendingCount++;
+      } else {
+        // El problema fue corregido
+        fixedIds.push(mission.id);
       }
     }
 
-    this.logger.log(`Misiones actualizadas: ${fixedCount} corregidas, ${stillPendingCount} aún pendientes`);
+    // Todas las corregidas en un único UPDATE
+    await this.missionsService.markFixedMany(fixedIds);
+
+    this.logger.log(`Misiones actualizadas: ${fixedIds.length} corregidas, ${stillPendingCount} aún pendientes`);
   }
 
   /**
@@ -1373,51 +1529,14 @@ export class AnalysisService {
   }
 
   /**
-   * Verifica si un finding similar a una misión aún existe
+   * true si la misión apunta a un archivo que no cambió desde el análisis
+   * anterior. SpotBugs no cuenta: analiza siempre el proyecto completo.
    */
-  private findingStillExists(mission: any, newFindings: any[]): boolean {
-    const missionMeta = mission.metadata?.raw || {};
-    const missionTool = mission.metadata?.tool;
-
-    for (const { tool, finding } of newFindings) {
-      // Debe ser de la misma herramienta
-      if (tool !== missionTool) {
-        continue;
-      }
-
-      // Comparar ubicación (archivo y línea)
-      const findingPath = finding.path || finding.file || finding.sourcefile || finding.fileName || 
-                         finding.sourceLine?.sourcefile || '';
-      const missionPath = mission.filePath || missionMeta.path || missionMeta.file || '';
-
-      if (missionPath && findingPath) {
-        const pathsMatch = findingPath.includes(missionPath) || missionPath.includes(findingPath);
-        
-        if (pathsMatch) {
-          // Comparar línea
-          const findingLine = finding.line || finding.start?.line || finding.sourceLine?.beginline || 
-                             finding.startLine || null;
-          const missionLine = mission.lineStart || missionMeta.line || missionMeta.startLine || null;
-
-          if (findingLine && missionLine && Math.abs(Number(findingLine) - Number(missionLine)) <= 2) {
-            // Mismo archivo y línea similar (±2 líneas de tolerancia)
-            // Comparar mensaje/regla
-            const findingMsg = (finding.message || finding.rule || finding.type || finding.check_id || '').toString();
-            const missionMsg = (missionMeta.message || missionMeta.rule || missionMeta.type || '').toString();
-
-            if (findingMsg && missionMsg && (
-              findingMsg.includes(missionMsg) || 
-              missionMsg.includes(findingMsg) ||
-              findingMsg === missionMsg
-            )) {
-              return true; // El finding aún existe
-            }
-          }
-        }
-      }
-    }
-
-    return false; // No se encontró un finding similar
+  private isInUnchangedFile(mission: any, previousRoot: string, scope: AnalysisScope): boolean {
+    const tool = mission.metadata?.tool;
+    const missionPath = mission.filePath || '';
+    if (tool === 'spotbugs' || !missionPath.startsWith(previousRoot + path.sep)) return false;
+    return !scope.includes(missionPath.slice(previousRoot.length + 1));
   }
 
   private calculateMetrics(toolResults: ToolResult[]): {
@@ -1536,27 +1655,6 @@ export class AnalysisService {
     }
   }
 
-  private async countLinesOfCode(filePaths: string[]): Promise<number> {
-    let totalLines = 0;
-    
-    const codeExtensions = ['.java', '.py', '.js', '.ts', '.jsx', '.tsx', '.cpp', '.c', '.h'];
-    
-    for (const filePath of filePaths) {
-      const isCodeFile = codeExtensions.some(ext => filePath.toLowerCase().endsWith(ext));
-      if (isCodeFile) {
-        try {
-          const content = await this.fileService.readFileContent(filePath);
-          const lines = content.split('\n').filter(line => line.trim() !== '').length;
-          totalLines += lines;
-        } catch (error) {
-          // Ignorar archivos que no se pueden leer
-        }
-      }
-    }
-    
-    return totalLines;
-  }
-
   /**
    * Encontrar análisis por ID
    */
@@ -1565,6 +1663,7 @@ export class AnalysisService {
     if (!analysis) {
       throw new NotFoundException(`Análisis con ID ${id} no encontrado`);
     }
+    await this.loadArtifacts(analysis);
 
     // DEBUG: Log findings structure
     this.logger.log(`[findById] ID: ${id}`);
@@ -1584,63 +1683,92 @@ export class AnalysisService {
     return analysis;
   }
 
+  /**
+   * Carga en el análisis sus hallazgos y resultados de herramientas desde
+   * analysis_artifacts. Si aún no se movieron (migración pendiente), se leen
+   * de las columnas antiguas de analysis_runs.
+   */
+  private async loadArtifacts(analysis: AnalysisRun): Promise<AnalysisRun> {
+    const artifact = await this.artifactRepository.findOne({ where: { analysisRunId: analysis.id } });
+    if (artifact) {
+      analysis.findings = artifact.findings;
+      analysis.toolResults = artifact.toolResults;
+      return analysis;
+    }
+
+    const legacy = await this.analysisRunRepository.findOne({
+      where: { id: analysis.id },
+      select: { id: true, legacyFindings: true, legacyToolResults: true },
+    });
+    analysis.findings = legacy?.legacyFindings ?? null;
+    analysis.toolResults = legacy?.legacyToolResults ?? null;
+    return analysis;
+  }
+
+  /** Guarda (insert o update) los hallazgos y resultados de herramientas del análisis */
+  private async saveArtifacts(analysis: AnalysisRun, manager?: EntityManager): Promise<void> {
+    await (manager || this.artifactRepository.manager).upsert(
+      AnalysisArtifact,
+      { analysisRunId: analysis.id, findings: analysis.findings ?? null, toolResults: analysis.toolResults ?? null },
+      ['analysisRunId'],
+    );
+  }
+
   /**
    * Encontrar todos los análisis
    */
   async findAll(): Promise<AnalysisRun[]> {
-    const analyses = await this.analysisRunRepository.find({
+    return this.analysisRunRepository.find({
+      select: ANALYSIS_SUMMARY_SELECT,
       order: { createdAt: 'DESC' }
     });
-    
-    // Parse findings if needed
-    return analyses.map(a => {
-      if (typeof a.findings === 'string') {
-        try {
-          a.findings = JSON.parse(a.findings);
-        } catch (e) {
-          this.logger.warn(`Failed to parse findings for analysis ${a.id}`);
-        }
-      }
-      return a;
-    });
   }
 
   /**
    * Encontrar análisis por estudiante
    */
   async findByStudent(student: string): Promise<AnalysisRun[]> {
-    const analyses = await this.analysisRunRepository.find({
+    return this.analysisRunRepository.find({
+      select: ANALYSIS_SUMMARY_SELECT,
       where: { student },
       order: { createdAt: 'DESC' }
     });
-    
-    // Parse findings if needed
-    return analyses.map(a => {
-      if (typeof a.findings === 'string') {
-        try {
-          a.findings = JSON.parse(a.findings);
-        } catch (e) {
-          this.logger.warn(`Failed to parse findings for analysis ${a.id}`);
-        }
-      }
-      return a;
-    });
   }
 
   /**
-   * Eliminar análisis
+   * Eliminar análisis (sus artefactos se borran en cascada)
    */
   async delete(id: number): Promise<void> {
-    const analysis = await this.findById(id);
+    const analysis = await this.getAnalysisById(id);
     
     // Limpiar archivos del proyecto
     try {
-      await this.fileService.cleanupProject(analysis.projectPath);
+      await this.workspaceRetention.discard(analysis.projectPath);
     } catch (error) {
       this.logger.warn(`No se pudieron limpiar los archivos del proyecto: ${error.message}`);
     }
 
-    await this.analysisRunRepository.remove(analysis);
+    await this.removeWithScores(analysis);
+  }
+
+  /**
+   * Evento de análisis completado, en la transacción que lo completa: el
+   * outbox actualiza en segundo plano los totales de ranking y los logros.
+   */
+  private async enqueueAnalysisCompleted(analysisRun: AnalysisRun, manager: EntityManager): Promise<void> {
+    await this.outbox.enqueue(manager, 'analysis.completed', {
+      analysisRunId: analysisRun.id,
+      userId: analysisRun.userId ?? null,
+      student: analysisRun.student ?? null,
+    });
+  }
+
+  /** Elimina el análisis y, en la misma transacción, recalcula los totales de ranking de su usuario */
+  private async removeWithScores(analysis: AnalysisRun): Promise<void> {
+    await this.analysisRunRepository.manager.transaction(async manager => {
+      await manager.remove(analysis);
+      await this.userScores.refreshForAnalysis(analysis, manager);
+    });
   }
 
   /**
@@ -1699,6 +1827,7 @@ export class AnalysisService {
     });
 
     const completedAnalyses = await this.analysisRunRepository.find({
+      select: { id: true, student: true, qualityScore: true },
       where: { status: 'completed' }
     });
 
@@ -1877,6 +2006,7 @@ export class AnalysisService {
     }
     
     const analyses = await this.analysisRunRepository.find({
+      select: ANALYSIS_SUMMARY_SELECT,
       where: orConditions.length > 1 ? orConditions : { userId },
       order: { createdAt: 'DESC' },
       take: limit,
@@ -1911,6 +2041,7 @@ export class AnalysisService {
     }
     
     const analyses = await this.analysisRunRepository.find({
+      select: ANALYSIS_SUMMARY_SELECT,
       where: orConditions.length > 1 ? orConditions : { userId },
       order: { createdAt: 'DESC' },
     });
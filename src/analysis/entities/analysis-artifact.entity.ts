@@ -0,0 +1,30 @@
+import { Entity, PrimaryColumn, Column, CreateDateColumn, UpdateDateColumn, OneToOne, JoinColumn } from 'typeorm';
+import { AnalysisRun } from './analysis-run.entity';
+
+/**
+ * Resultados completos de un análisis (hallazgos procesados y resultados por
+ * herramienta). Son jsonb de varios MB: viven fuera de analysis_runs para que
+ * los listados, rankings y logros lean solo las columnas de resumen, y solo
+ * los endpoints de detalle los cargan.
+ */
+@Entity('analysis_artifacts')
+export class AnalysisArtifact {
+  @PrimaryColumn({ name: 'analysis_run_id', type: 'integer' })
+  analysisRunId: number;
+
+  @OneToOne(() => AnalysisRun, { onDelete: 'CASCADE' })
+  @JoinColumn({ name: 'analysis_run_id' })
+  analysisRun: AnalysisRun;
+
+  @Column({ type: 'jsonb', nullable: true })
+  findings: any;
+
+  @Column({ type: 'jsonb', nullable: true, name: 'tool_results' })
+  toolResults: any;
+
+  @CreateDateColumn({ name: 'created_at' })
+  createdAt: Date;
+
+  @UpdateDateColumn({ name: 'updated_at' })
+  updatedAt: Date;
+}
@@ -1,4 +1,4 @@
-import { Entity, PrimaryGeneratedColumn, Column, CreateDateColumn, UpdateDateColumn, Index, ManyToOne, JoinColumn } from 'typeorm';
+import { Entity, PrimaryGeneratedColumn, Column, CreateDateColumn, UpdateDateColumn, Index, ManyToOne, JoinColumn, FindOptionsSelect } from 'typeorm';
 import { User } from '../../auth/entities/user.entity';
 
 export type AnalysisStatus = 'pending' | 'processing' | 'completed' | 'failed';
@@ -29,6 +29,10 @@ export class AnalysisRun {
   @Column({ type: 'varchar', length: 500, nullable: true, name: 'repository_url' })
   repositoryUrl: string;
 
+  // Commit analizado (solo análisis de repositorio): base del re-análisis incremental
+  @Column({ type: 'varchar', length: 64, nullable: true, name: 'commit_sha' })
+  commitSha: string;
+
   @Column({ type: 'bigint', nullable: true, name: 'file_size' })
   fileSize: number;
 
@@ -36,11 +40,19 @@ export class AnalysisRun {
   @Index()
   status: AnalysisStatus;
 
-  @Column({ type: 'jsonb', nullable: true })
-  findings: any;
+  // Hallazgos y resultados por herramienta: se guardan en analysis_artifacts y
+  // solo los rellena la carga de detalle (AnalysisService.findById)
+  findings?: any;
+  toolResults?: any;
+
+  // Columnas anteriores a analysis_artifacts. La migración copia su contenido y
+  // las vacía; siguen mapeadas (sin seleccionarse nunca) para que synchronize no
+  // las elimine antes de que la migración se ejecute
+  @Column({ type: 'jsonb', nullable: true, name: 'findings', select: false })
+  legacyFindings: any;
 
-  @Column({ type: 'jsonb', nullable: true, name: 'tool_results' })
-  toolResults: any;
+  @Column({ type: 'jsonb', nullable: true, name: 'tool_results', select: false })
+  legacyToolResults: any;
 
   @Column({ type: 'text', nullable: true, name: 'error_message' })
   errorMessage: string;
@@ -88,3 +100,28 @@ export class AnalysisRun {
   @Column({ type: 'timestamp', nullable: true, name: 'completed_at' })
   completedAt: Date;
 }
+
+/** Proyección de los listados: columnas de resumen, sin el log del análisis */
+export const ANALYSIS_SUMMARY_SELECT: FindOptionsSelect<AnalysisRun> = {
+  id: true,
+  projectPath: true,
+  student: true,
+  userId: true,
+  originalFileName: true,
+  repositoryUrl: true,
+  commitSha: true,
+  fileSize: true,
+  status: true,
+  errorMessage: true,
+  totalIssues: true,
+  highSeverityIssues: true,
+  mediumSeverityIssues: true,
+  lowSeverityIssues: true,
+  qualityScore: true,
+  fileStats: true,
+  processingTimeSeconds: true,
+  version: true,
+  createdAt: true,
+  updatedAt: true,
+  completedAt: true,
+};
@@ -7,6 +7,7 @@ export type MissionStatus = 'pending' | 'fixed' | 'skipped';
 @Entity('missions')
 @Index(['status'])
 @Index(['severity'])
+@Index(['analysisRunId', 'fingerprint'])
 export class Mission {
   @PrimaryGeneratedColumn()
   id: number;
@@ -42,6 +43,10 @@ export class Mission {
   @Column({ type: 'jsonb', nullable: true })
   metadata: any;
 
+  // Huella estable del hallazgo (regla, ruta, método y código), ver FindingFingerprinter
+  @Column({ type: 'varchar', length: 64, nullable: true })
+  fingerprint: string;
+
   @CreateDateColumn({ name: 'created_at' })
   createdAt: Date;
 
@@ -0,0 +1,47 @@
+import { Entity, PrimaryGeneratedColumn, Column, CreateDateColumn, UpdateDateColumn, Index } from 'typeorm';
+
+export type WorkspaceKind = 'upload' | 'repository' | 'submission';
+export type WorkspaceStatus = 'active' | 'evicted';
+
+/**
+ * Directorio de trabajo en disco (proyecto extraído, repositorio clonado o
+ * entrega de misión). Lo usa la retención para decidir qué se elimina y el
+ * re-análisis para saber si el directorio sigue disponible ("caliente").
+ */
+@Entity('workspaces')
+@Index(['status', 'lastAccessedAt'])
+export class Workspace {
+  @PrimaryGeneratedColumn()
+  id: number;
+
+  @Column({ type: 'varchar', length: 500, unique: true })
+  path: string;
+
+  @Column({ type: 'varchar', length: 30 })
+  kind: WorkspaceKind;
+
+  @Column({ name: 'analysis_run_id', type: 'integer', nullable: true })
+  @Index()
+  analysisRunId: number;
+
+  @Column({ name: 'submission_id', type: 'integer', nullable: true })
+  submissionId: number;
+
+  @Column({ type: 'varchar', length: 20, default: 'active' })
+  status: WorkspaceStatus;
+
+  @Column({ type: 'bigint', default: 0, name: 'size_bytes' })
+  sizeBytes: number;
+
+  @Column({ type: 'timestamp', name: 'last_accessed_at' })
+  lastAccessedAt: Date;
+
+  @Column({ type: 'timestamp', nullable: true, name: 'evicted_at' })
+  evictedAt: Date;
+
+  @CreateDateColumn({ name: 'created_at' })
+  createdAt: Date;
+
+  @UpdateDateColumn({ name: 'updated_at' })
+  updatedAt: Date;
+}
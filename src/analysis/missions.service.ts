@@ -1,8 +1,12 @@
 import { Injectable, Logger, NotFoundException } from '@nestjs/common';
 import { InjectRepository } from '@nestjs/typeorm';
-import { Repository } from 'typeorm';
+import { EntityManager, Repository } from 'typeorm';
 import { Mission } from './entities/mission.entity';
 import { AnalysisRun } from './entities/analysis-run.entity';
+import { OutboxService } from '../outbox/outbox.service';
+
+// Filas por INSERT: 10 parámetros por misión, muy por debajo del límite de 65535 de PostgreSQL
+const INSERT_CHUNK_SIZE = 500;
 
 @Injectable()
 export class MissionsService {
@@ -13,15 +17,28 @@ export class MissionsService {
     private readonly missionRepository: Repository<Mission>,
     @InjectRepository(AnalysisRun)
     private readonly analysisRepository: Repository<AnalysisRun>,
+    private readonly outbox: OutboxService,
   ) {}
 
-  async createForAnalysis(analysis: AnalysisRun, missions: Partial<Mission>[]): Promise<Mission[]> {
-    const created: Mission[] = [];
+  /**
+   * Inserta las misiones con INSERT multi-fila (id y fechas vía RETURNING) en
+   * lotes de INSERT_CHUNK_SIZE. Con `manager` se usa su transacción (p. ej.
+   * la que también completa el análisis); sin él, todos los lotes van en una propia.
+   */
+  async createForAnalysis(analysis: AnalysisRun, missions: Partial<Mission>[], manager?: EntityManager): Promise<Mission[]> {
+    if (missions.length === 0) return [];
+    if (!manager) {
+      return this.missionRepository.manager.transaction(transactional =>
+        this.createForAnalysis(analysis, missions, transactional),
+      );
+    }
 
     this.logger.log(`📝 Creando ${missions.length} misiones para analysis ${analysis.id}`);
+    const repository = manager.getRepository(Mission);
+    const startedAt = Date.now();
 
-    for (const m of missions) {
-      const mission = this.missionRepository.create({
+    const created = missions.map(m =>
+      repository.create({
         analysisRunId: analysis.id,
         title: m.title || 'Mejorar seguridad',
         description: m.description || null,
@@ -31,14 +48,18 @@ export class MissionsService {
         severity: m.severity || 'medium',
         status: 'pending',
         metadata: m.metadata || null,
-      });
+        fingerprint: m.fingerprint || null,
+      }),
+    );
 
-      const saved = await this.missionRepository.save(mission);
-      this.logger.debug(`   ✅ Misión ${saved.id}: ${saved.title?.substring(0, 50)}... (${saved.severity})`);
-      created.push(saved);
+    for (let i = 0; i < created.length; i += INSERT_CHUNK_SIZE) {
+      const chunk = created.slice(i, i + INSERT_CHUNK_SIZE);
+      const result = await repository.insert(chunk);
+      // Columnas generadas (id, created_at, updated_at) devueltas por RETURNING
+      result.generatedMaps.forEach((generated, index) => Object.assign(chunk[index], generated));
     }
 
-    this.logger.log(`✅ Se crearon ${created.length} misiones para analysis ${analysis.id}`);
+    this.logger.log(`✅ Se crearon ${created.length} misiones para analysis ${analysis.id} en ${Date.now() - startedAt} ms`);
     return created;
   }
 
@@ -46,16 +67,16 @@ export class MissionsService {
     const { In } = require('typeorm');
     
     // Buscar análisis por userId (análisis nuevos)
-    let analyses = await this.analysisRepository.find({ where: { userId } });
+    let analyses = await this.analysisRepository.find({ select: { id: true }, where: { userId } });
     
     // Si no hay análisis con userId, buscar por email en el campo student (análisis antiguos)
     if (analyses.length === 0 && userEmail) {
-      analyses = await this.analysisRepository.find({ where: { student: userEmail } });
+      analyses = await this.analysisRepository.find({ select: { id: true }, where: { student: userEmail } });
     }
     
     // Si aún no hay análisis, intentar por nombre del usuario (análisis muy antiguos)
     if (analyses.length === 0 && userName) {
-      analyses = await this.analysisRepository.find({ where: { student: userName } });
+      analyses = await this.analysisRepository.find({ select: { id: true }, where: { student: userName } });
     }
     
     const ids = analyses.map(a => a.id);
@@ -92,12 +113,45 @@ export class MissionsService {
     const mission = await this.findById(id);
     mission.status = 'fixed';
     mission.fixedAt = new Date();
-    return this.missionRepository.save(mission);
+    return this.saveWithEvent(mission);
+  }
+
+  /**
+   * Marca como corregidas todas las misiones indicadas con un único
+   * UPDATE … WHERE id = ANY($1). Las ya corregidas u omitidas no se tocan.
+   */
+  async markFixedMany(ids: number[], manager?: EntityManager): Promise<number> {
+    if (ids.length === 0) return 0;
+    const result = await (manager || this.missionRepository.manager)
+      .createQueryBuilder()
+      .update(Mission)
+      .set({ status: 'fixed', fixedAt: () => 'CURRENT_TIMESTAMP' })
+      .where('id = ANY(:ids)', { ids })
+      .andWhere('status NOT IN (:...closed)', { closed: ['fixed', 'skipped'] })
+      .execute();
+    const affected = result.affected ?? 0;
+    this.logger.log(`✅ ${affected} misiones marcadas como corregidas`);
+    return affected;
   }
 
   async markSkipped(id: number): Promise<Mission> {
     const mission = await this.findById(id);
     mission.status = 'skipped';
-    return this.missionRepository.save(mission);
+    return this.saveWithEvent(mission);
+  }
+
+  /** Guarda la misión y, en la misma transacción, el evento para los logros del dueño del análisis */
+  private async saveWithEvent(mission: Mission): Promise<Mission> {
+    return this.missionRepository.manager.transaction(async manager => {
+      const saved = await manager.save(mission);
+      const analysis = await manager.findOne(AnalysisRun, {
+        select: { id: true, userId: true },
+        where: { id: mission.analysisRunId },
+      });
+      if (analysis?.userId) {
+        await this.outbox.enqueue(manager, 'mission.changed', { missionId: saved.id, userId: analysis.userId });
+      }
+      return saved;
+    });
   }
 }
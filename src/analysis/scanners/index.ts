@@ -0,0 +1,5 @@
+export * from './java-tokenizer';
+export * from './java-parser';
+export * from './java-rules';
+export * from './java-scanner';
+export * from './js-scanner';
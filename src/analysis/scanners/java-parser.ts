@@ -0,0 +1,296 @@
+/**
+ * Parser estructural ligero para Java.
+ *
+ * No construye un AST completo: agrupa los tokens en sentencias (aunque ocupen
+ * varias líneas) y las organiza en bloques tipo → método → bloque anidado.
+ * Es suficiente para que las reglas razonen sobre sentencias completas, sepan
+ * en qué clase/método están y puedan mirar hacia delante dentro del método.
+ */
+
+import { JavaToken } from './java-tokenizer';
+
+export type JavaBlockKind =
+  | 'unit'
+  | 'type'
+  | 'method'
+  | 'try'
+  | 'catch'
+  | 'finally'
+  | 'control'
+  | 'lambda'
+  | 'initializer';
+
+export type JavaStatementKind = 'statement' | 'header' | 'resource';
+
+export interface JavaBlock {
+  kind: JavaBlockKind;
+  name: string | null;
+  parent: JavaBlock | null;
+  /** Sentencia de cabecera que abrió el bloque (if, for, try, catch...) */
+  header: JavaStatement | null;
+  /** Sentencias directas del bloque, en orden */
+  statements: JavaStatement[];
+  /** Solo en métodos: todas las sentencias del método (a cualquier profundidad), en orden */
+  body: JavaStatement[];
+  /** Bloques en línea (lambdas, clases anónimas) que interrumpen una sentencia */
+  inline: boolean;
+}
+
+export interface JavaStatement {
+  kind: JavaStatementKind;
+  tokens: JavaToken[];
+  startLine: number;
+  endLine: number;
+  block: JavaBlock;
+  /** Método que contiene la sentencia (null en campos y cabeceras de tipo) */
+  method: JavaBlock | null;
+  /** Posición dentro de method.body */
+  index: number;
+  /** Bloque abierto por esta sentencia (solo cabeceras) */
+  opens: JavaBlock | null;
+}
+
+export interface JavaCompilationUnit {
+  root: JavaBlock;
+  /** Todas las sentencias en orden de aparición */
+  statements: JavaStatement[];
+}
+
+const TYPE_KEYWORDS = new Set(['class', 'interface', 'enum', 'record']);
+const CONTROL_KEYWORDS = new Set(['if', 'else', 'for', 'while', 'do', 'switch', 'synchronized', 'static']);
+
+function newBlock(kind: JavaBlockKind, name: string | null, parent: JavaBlock | null, inline = false): JavaBlock {
+  return { kind, name, parent, header: null, statements: [], body: [], inline };
+}
+
+/**
+ * Encuentra el método que contiene un bloque. Una clase anónima corta la
+ * búsqueda: sus métodos son métodos propios, no parte del método exterior.
+ */
+function findEnclosingMethod(block: JavaBlock): JavaBlock | null {
+  let current: JavaBlock | null = block;
+  while (current) {
+    if (current.kind === 'method') return current;
+    if (current.kind === 'type' || current.kind === 'unit') return null;
+    current = current.parent;
+  }
+  return null;
+}
+
+/** Devuelve el índice del paréntesis que cierra al que está en openIndex */
+export function findClosingParen(tokens: JavaToken[], openIndex: number): number {
+  let depth = 0;
+  for (let i = openIndex; i < tokens.length; i++) {
+    const value = tokens[i].value;
+    if (value === '(') depth++;
+    else if (value === ')') {
+      depth--;
+      if (depth === 0) return i;
+    }
+  }
+  return tokens.length - 1;
+}
+
+function isArrayInitializer(pending: JavaToken[]): boolean {
+  if (pending.length === 0) return false;
+  const last = pending[pending.length - 1].value;
+  return last === '=' || last === ']' || last === '(' || last === ',' || last === '{';
+}
+
+function isAnonymousClass(pending: JavaToken[]): boolean {
+  if (pending.length === 0 || pending[pending.length - 1].value !== ')') return false;
+  const first = pending[0].value;
+  if (CONTROL_KEYWORDS.has(first) || first === 'catch' || first === 'try') return false;
+  return pending.some(token => token.value === 'new');
+}
+
+function findTypeName(pending: JavaToken[]): string | null {
+  for (let i = 0; i < pending.length - 1; i++) {
+    const token = pending[i];
+    const previous = pending[i - 1];
+    if (!TYPE_KEYWORDS.has(token.value) || (previous && (previous.value === '.' || previous.value === '@'))) continue;
+    // 'record' es palabra contextual: solo cuenta si va seguido de un nombre
+    if (pending[i + 1].kind === 'identifier') return pending[i + 1].value;
+  }
+  return null;
+}
+
+function findMethodName(pending: JavaToken[]): string | null {
+  for (let i = 1; i < pending.length; i++) {
+    if (pending[i].value !== '(') continue;
+    const name = pending[i - 1];
+    const beforeName = pending[i - 2];
+    if (name.kind !== 'identifier') continue;
+    // Los paréntesis de anotaciones (@GetMapping("/x")) no son la firma
+    if (beforeName && beforeName.value === '@') continue;
+    return name.value;
+  }
+  return null;
+}
+
+/**
+ * Agrupa los tokens en sentencias y bloques.
+ */
+export function parseJava(tokens: JavaToken[]): JavaCompilationUnit {
+  const root = newBlock('unit', null, null);
+  const statements: JavaStatement[] = [];
+  const suspended: { pending: JavaToken[]; parenDepth: number }[] = [];
+
+  let block = root;
+  let pending: JavaToken[] = [];
+  let parenDepth = 0;
+
+  const emit = (kind: JavaStatementKind, statementTokens: JavaToken[], target: JavaBlock): JavaStatement | null => {
+    if (statementTokens.length === 0) return null;
+    const method = findEnclosingMethod(target);
+    const statement: JavaStatement = {
+      kind,
+      tokens: statementTokens,
+      startLine: statementTokens[0].line,
+      endLine: statementTokens[statementTokens.length - 1].line,
+      block: target,
+      method,
+      index: method ? method.body.length : -1,
+      opens: null,
+    };
+    target.statements.push(statement);
+    if (method) method.body.push(statement);
+    statements.push(statement);
+    return statement;
+  };
+
+  const openBlock = (kind: JavaBlockKind, name: string | null, header: JavaStatement | null, inline = false) => {
+    const child = newBlock(kind, name, block, inline);
+    child.header = header;
+    if (header) header.opens = child;
+    block = child;
+  };
+
+  for (let i = 0; i < tokens.length; i++) {
+    const token = tokens[i];
+    const value = token.kind === 'operator' ? token.value : null;
+
+    if (value === '(') {
+      parenDepth++;
+      pending.push(token);
+      continue;
+    }
+    if (value === ')') {
+      parenDepth = Math.max(0, parenDepth - 1);
+      pending.push(token);
+      continue;
+    }
+
+    if (value === ';' && parenDepth === 0) {
+      emit('statement', pending, block);
+      pending = [];
+      continue;
+    }
+
+    if (value === '{') {
+      const last = pending.length > 0 ? pending[pending.length - 1].value : null;
+
+      // Lambdas con cuerpo y clases anónimas: la sentencia exterior queda en pausa
+      if (last === '->' || isAnonymousClass(pending)) {
+        suspended.push({ pending, parenDepth });
+        const anonymous = last !== '->';
+        pending = [];
+        parenDepth = 0;
+        openBlock(anonymous ? 'type' : 'lambda', anonymous ? `${block.name || 'anonymous'}$` : null, null, true);
+        continue;
+      }
+
+      // Inicializadores de arrays y de anotaciones: se consumen como parte de la sentencia
+      if (isArrayInitializer(pending) || (parenDepth > 0 && last !== ')')) {
+        let depth = 0;
+        for (; i < tokens.length; i++) {
+          pending.push(tokens[i]);
+          if (tokens[i].value === '{') depth++;
+          else if (tokens[i].value === '}' && --depth === 0) break;
+        }
+        continue;
+      }
+
+      const first = pending.length > 0 ? pending[0].value : null;
+      const typeName = findTypeName(pending);
+
+      if (typeName) {
+        openBlock('type', typeName, null);
+      } else if (first === 'try') {
+        const header = emit('header', pending, block);
+        openBlock('try', null, header);
+        // try-with-resources: cada recurso se emite como sentencia propia dentro del try
+        if (pending[1] && pending[1].value === '(') {
+          const close = findClosingParen(pending, 1);
+          let resource: JavaToken[] = [];
+          for (let r = 2; r < close; r++) {
+            if (pending[r].value === ';' && resource.length > 0) {
+              emit('resource', resource, block);
+              resource = [];
+            } else if (pending[r].value !== ';') {
+              resource.push(pending[r]);
+            }
+          }
+          emit('resource', resource, block);
+        }
+      } else if (first === 'catch') {
+        openBlock('catch', null, emit('header', pending, block));
+      } else if (first === 'finally') {
+        openBlock('finally', null, emit('header', pending, block));
+      } else if (first === null) {
+        openBlock(block.kind === 'type' ? 'initializer' : 'control', null, null);
+      } else if (first === 'static' && pending.length === 1) {
+        openBlock('initializer', null, null);
+      } else if (CONTROL_KEYWORDS.has(first) || block.kind !== 'type') {
+        openBlock('control', null, emit('header', pending, block));
+      } else {
+        // Dentro de un tipo, cualquier otra cabecera con paréntesis es un método o constructor
+        const methodName = findMethodName(pending);
+        openBlock(methodName ? 'method' : 'control', methodName, null);
+      }
+
+      pending = [];
+      parenDepth = 0;
+      continue;
+    }
+
+    if (value === '}') {
+      // Última expresión sin ';' (constantes de enum, cuerpo de switch con flechas...)
+      emit('statement', pending, block);
+      pending = [];
+      parenDepth = 0;
+
+      const closing = block;
+      if (closing.parent) block = closing.parent;
+      if (closing.inline && suspended.length > 0) {
+        const resumed = suspended.pop();
+        pending = resumed.pending;
+        parenDepth = resumed.parenDepth;
+        // Marcador para que la sentencia exterior sepa que había un cuerpo en línea
+        pending.push({ kind: 'operator', value: '{}', line: token.line });
+      }
+      continue;
+    }
+
+    pending.push(token);
+  }
+
+  emit('statement', pending, block);
+  return { root, statements };
+}
+
+/**
+ * Devuelve el bloque 'type' o 'method' más cercano para describir la ubicación.
+ */
+export function describeEnclosing(statement: JavaStatement): { className: string | null; methodName: string | null } {
+  let className: string | null = null;
+  let current: JavaBlock | null = statement.block;
+  while (current) {
+    if (current.kind === 'type' && current.name) {
+      className = current.name;
+      break;
+    }
+    current = current.parent;
+  }
+  return { className, methodName: statement.method ? statement.method.name : null };
+}
@@ -0,0 +1,334 @@
+import { DirectFinding, scanJavaSource } from './java-scanner';
+
+/** Escanea el código (sin caché) y devuelve los hallazgos */
+function scan(source: string): DirectFinding[] {
+  return scanJavaSource(source, 'Demo.java', { cache: false });
+}
+
+function ofType(findings: DirectFinding[], type: string): DirectFinding[] {
+  return findings.filter(finding => finding.type === type);
+}
+
+/** Envuelve sentencias en una clase y un método, con la primera sentencia en la línea 3 */
+function inMethod(body: string): string {
+  return `class Demo {\n  void run(HttpServletRequest request, HttpServletResponse response, String dir) throws Exception {\n${body}\n  }\n}\n`;
+}
+
+describe('Java rules', () => {
+  describe('SQL Injection', () => {
+    it('detects a concatenation split across several lines at the SQL literal', () => {
+      const findings = scan(inMethod([
+        '    String sql = "SELECT * FROM users " +',
+        '        "WHERE name = \'" +',
+        '        request.getParameter("name") + "\'";',
+        '    statement.executeQuery(sql);',
+      ].join('\n')));
+
+      const sql = ofType(findings, 'SQL Injection');
+      expect(sql).toHaveLength(1);
+      expect(sql[0].start.line).toBe(3);
+      expect(sql[0].code).toBe('String sql = "SELECT * FROM users " +');
+      expect(sql[0].enclosing).toEqual({ className: 'Demo', methodName: 'run' });
+    });
+
+    it('detects a dynamic argument to execute when the call spans several lines', () => {
+      const findings = scan(inMethod([
+        '    statement.executeUpdate(',
+        '        "DELETE FROM logs WHERE id = " + id',
+        '    );',
+      ].join('\n')));
+
+      expect(ofType(findings, 'SQL Injection').map(finding => finding.start.line)).toEqual([4]);
+    });
+
+    it('ignores SQL inside comments and parameterized queries', () => {
+      const findings = scan(inMethod([
+        '    // statement.executeQuery("SELECT * FROM users WHERE id = " + id);',
+        '    /* String q = "SELECT * FROM t WHERE a = " + a; */',
+        '    PreparedStatement ps = connection.prepareStatement("SELECT * FROM users WHERE id = ?");',
+        '    ps.setInt(1, id);',
+        '    ps.close();',
+      ].join('\n')));
+
+      expect(ofType(findings, 'SQL Injection')).toHaveLength(0);
+    });
+  });
+
+  describe('Command Injection', () => {
+    it('detects Runtime.exec with concatenation through a remembered variable', () => {
+      const findings = scan(inMethod([
+        '    Runtime runtime = Runtime.getRuntime();',
+        '    runtime.exec("ls " +',
+        '        dir);',
+      ].join('\n')));
+
+      const commands = ofType(findings, 'Command Injection');
+      expect(commands).toHaveLength(1);
+      expect(commands[0].start.line).toBe(4);
+    });
+
+    it('detects ProcessBuilder built from a concatenated string', () => {
+      const findings = scan(inMethod('    new ProcessBuilder("sh", "-c", "rm -rf " + dir).start();'));
+
+      expect(ofType(findings, 'Command Injection')).toHaveLength(1);
+    });
+
+    it('ignores exec on objects that are not a Runtime', () => {
+      const findings = scan(inMethod('    executor.exec("ls " + dir);'));
+
+      expect(ofType(findings, 'Command Injection')).toHaveLength(0);
+    });
+  });
+
+  describe('Resource Leak', () => {
+    it('detects a stream that is never closed', () => {
+      const findings = scan(inMethod([
+        '    BufferedReader reader = new BufferedReader(new FileReader(dir));',
+        '    String line = reader.readLine();',
+      ].join('\n')));
+
+      const leaks = ofType(findings, 'Resource Leak');
+      expect(leaks).toHaveLength(1);
+      expect(leaks[0].message).toContain('BufferedReader');
+    });
+
+    it('accepts resources declared in a multi-line try-with-resources', () => {
+      const findings = scan(inMethod([
+        '    try (Connection connection = DriverManager.getConnection(url);',
+        '         PreparedStatement statement = connection.prepareStatement(',
+        '             "SELECT name FROM users WHERE id = ?");',
+        '         ResultSet rows = statement.executeQuery()) {',
+        '      while (rows.next()) {',
+        '        names.add(rows.getString(1));',
+        '      }',
+        '    }',
+      ].join('\n')));
+
+      expect(ofType(findings, 'Resource Leak')).toHaveLength(0);
+    });
+
+    it('accepts a resource closed in a finally block', () => {
+      const findings = scan(inMethod([
+        '    FileInputStream input = null;',
+        '    try {',
+        '      input = new FileInputStream("data.bin");',
+        '      input.read();',
+        '    } finally {',
+        '      if (input != null) {',
+        '        input.close();',
+        '      }',
+        '    }',
+      ].join('\n')));
+
+      expect(ofType(findings, 'Resource Leak')).toHaveLength(0);
+    });
+
+    it('does not report Scanner(System.in)', () => {
+      const findings = scan(inMethod('    Scanner input = new Scanner(System.in);'));
+
+      expect(ofType(findings, 'Resource Leak')).toHaveLength(0);
+    });
+  });
+
+  describe('anonymous classes', () => {
+    const source = [
+      'class Server {',
+      '  void start(final String dir) {',
+      '    Runnable task = new Runnable() {',
+      '      @Override',
+      '      public void run() {',
+      '        try {',
+      '          Runtime.getRuntime().exec("tar czf backup.tgz " + dir);',
+      '        } catch (IOException e) {',
+      '          throw new RuntimeException(e);',
+      '        }',
+      '      }',
+      '    };',
+      '    String password = "hunter2";',
+      '    new Thread(task).start();',
+      '  }',
+      '}',
+    ].join('\n');
+
+    it('attributes findings inside the anonymous class to its own method', () => {
+      const commands = ofType(scan(source), 'Command Injection');
+
+      expect(commands).toHaveLength(1);
+      expect(commands[0].start.line).toBe(7);
+      // La clase anónima se nombra por el método que la contiene, distinto de un Server#run propio
+      expect(commands[0].enclosing).toEqual({ className: 'start$', methodName: 'run' });
+    });
+
+    it('keeps parsing the enclosing method after the anonymous class body', () => {
+      const credentials = ofType(scan(source), 'Hardcoded Credential');
+
+      expect(credentials).toHaveLength(1);
+      expect(credentials[0].start.line).toBe(13);
+      expect(credentials[0].enclosing).toEqual({ className: 'Server', methodName: 'start' });
+    });
+
+    it('does not share method state between the anonymous class and the outer method', () => {
+      const findings = scan([
+        'class Tokens {',
+        '  String next() {',
+        '    SecureRandom random = new SecureRandom();',
+        '    Supplier<String> supplier = new Supplier<String>() {',
+        '      public String get() {',
+        '        int token = random.nextInt();',
+        '        return String.valueOf(token);',
+        '      }',
+        '    };',
+        '    int token = random.nextInt();',
+        '    return supplier.get() + token;',
+        '  }',
+        '}',
+      ].join('\n'));
+
+      // Dentro de get() no se sabe que `random` es un SecureRandom
+      const randomness = ofType(findings, 'Insecure Randomness');
+      expect(randomness.map(finding => finding.start.line)).toEqual([6]);
+    });
+  });
+
+  describe('Hardcoded Credential', () => {
+    it('detects literal passwords in fields, variables and connection calls', () => {
+      const findings = scan([
+        'class Config {',
+        '  private static final String API_KEY = "sk_live_123";',
+        '  Connection open() throws SQLException {',
+        '    return DriverManager.getConnection(',
+        '        "jdbc:mysql://localhost/app",',
+        '        "root",',
+        '        "toor");',
+        '  }',
+        '}',
+      ].join('\n'));
+
+      expect(ofType(findings, 'Hardcoded Credential').map(finding => finding.start.line)).toEqual([2, 4]);
+    });
+
+    it('ignores placeholders, labels and empty values', () => {
+      const findings = scan([
+        'class Form {',
+        '  String password = "${DB_PASSWORD}";',
+        '  String passwordLabel = "Contraseña";',
+        '  String token = "";',
+        '  String secret = "secret";',
+        '}',
+      ].join('\n'));
+
+      expect(ofType(findings, 'Hardcoded Credential')).toHaveLength(0);
+    });
+  });
+
+  describe('Null Pointer Dereference', () => {
+    it('detects a local set to null and dereferenced on a later line', () => {
+      const findings = scan(inMethod([
+        '    String name = null;',
+        '    int length = name.length();',
+      ].join('\n')));
+
+      const nulls = ofType(findings, 'Null Pointer Dereference');
+      expect(nulls).toHaveLength(1);
+      expect(nulls[0].start.line).toBe(4);
+    });
+
+    it('detects a dereference inside an if that checked for null', () => {
+      const findings = scan(inMethod([
+        '    if (user == null) {',
+        '      log(user.getName());',
+        '    }',
+      ].join('\n')));
+
+      expect(ofType(findings, 'Null Pointer Dereference').map(finding => finding.start.line)).toEqual([4]);
+    });
+
+    it('accepts a reassignment or a null check before the dereference', () => {
+      const findings = scan(inMethod([
+        '    String name = null;',
+        '    name = request.getParameter("name");',
+        '    name.trim();',
+        '    String other = null;',
+        '    if (other != null) {',
+        '      other.trim();',
+        '    }',
+      ].join('\n')));
+
+      expect(ofType(findings, 'Null Pointer Dereference')).toHaveLength(0);
+    });
+  });
+
+  describe('Path Traversal', () => {
+    it('detects request data flowing into a file path', () => {
+      const findings = scan(inMethod('    File file = new File("/var/data/" + request.getParameter("file"));'));
+
+      expect(ofType(findings, 'Path Traversal')).toHaveLength(1);
+    });
+
+    it('accepts a path validated with getCanonicalPath in the same method', () => {
+      const findings = scan(inMethod([
+        '    File file = new File(dir);',
+        '    if (!file.getCanonicalPath().startsWith(BASE)) {',
+        '      throw new SecurityException();',
+        '    }',
+      ].join('\n')));
+
+      expect(ofType(findings, 'Path Traversal')).toHaveLength(0);
+    });
+  });
+
+  describe('Cross-Site Scripting (XSS)', () => {
+    it('detects concatenated output through a response writer variable', () => {
+      const findings = scan(inMethod([
+        '    PrintWriter out = response.getWriter();',
+        '    out.println("<p>Hola " +',
+        '        request.getParameter("name") + "</p>");',
+        '    out.close();',
+      ].join('\n')));
+
+      expect(ofType(findings, 'Cross-Site Scripting (XSS)').map(finding => finding.start.line)).toEqual([4]);
+    });
+
+    it('ignores concatenation printed to System.out', () => {
+      const findings = scan(inMethod('    System.out.println("Hola " + dir);'));
+
+      expect(ofType(findings, 'Cross-Site Scripting (XSS)')).toHaveLength(0);
+    });
+  });
+
+  describe('Insecure String Comparison', () => {
+    it('detects == against a literal or a sensitive identifier', () => {
+      const findings = scan(inMethod([
+        '    if (dir == "admin") return;',
+        '    if (password != storedPassword) return;',
+      ].join('\n')));
+
+      expect(ofType(findings, 'Insecure String Comparison').map(finding => finding.start.line)).toEqual([3, 4]);
+    });
+
+    it('ignores comparisons with null, numbers and chars', () => {
+      const findings = scan(inMethod([
+        '    if (dir == null || dir.length() == 0) return;',
+        "    if (dir.charAt(0) == '/') return;",
+      ].join('\n')));
+
+      expect(ofType(findings, 'Insecure String Comparison')).toHaveLength(0);
+    });
+  });
+
+  it('never reports text inside string literals or comments', () => {
+    const findings = scan([
+      'class Docs {',
+      '  /**',
+      '   * Ejemplo: Runtime.getRuntime().exec("rm " + file); new Random();',
+      '   */',
+      '  String help = "Runtime.getRuntime().exec(\\"rm \\" + file) o new Random()";',
+      '  String block = """',
+      '      SELECT * FROM users WHERE id = " + id',
+      '      """;',
+      '}',
+    ].join('\n'));
+
+    expect(findings).toHaveLength(0);
+  });
+});
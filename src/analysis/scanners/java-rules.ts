@@ -0,0 +1,776 @@
+/**
+ * Reglas de la detección directa para Java.
+ *
+ * Cada regla es un visitante que recibe sentencias completas ya tokenizadas,
+ * de modo que razona sobre llamadas, argumentos y asignaciones en lugar de
+ * buscar subcadenas en una línea. Los tipos y mensajes se mantienen iguales a
+ * los del detector anterior para que curated-rules siga encontrando las reglas.
+ */
+
+import { JavaToken } from './java-tokenizer';
+import { JavaBlock, JavaStatement, findClosingParen } from './java-parser';
+
+export type DirectFindingSeverity = 'CRITICAL' | 'HIGH' | 'MEDIUM' | 'LOW';
+
+export interface JavaRuleReport {
+  type: string;
+  severity: DirectFindingSeverity;
+  message: string;
+  line: number;
+}
+
+export interface JavaRuleContext {
+  report(finding: JavaRuleReport): void;
+  /** Estado compartido entre sentencias del mismo método (variables vistas, etc.) */
+  methodState(statement: JavaStatement): Map<string, Set<string>>;
+}
+
+/** Disparador especial: la sentencia contiene algún literal de texto */
+export const STRING_LITERAL_TRIGGER = '"';
+
+export interface JavaRule {
+  id: string;
+  /**
+   * Valores de token (identificadores, palabras clave u operadores) sin los que la
+   * regla no puede producir hallazgos. El escáner solo visita las sentencias que
+   * contienen alguno, así la mayoría de sentencias no pasa por ninguna regla.
+   */
+  triggers: string[];
+  visit(statement: JavaStatement, context: JavaRuleContext): void;
+}
+
+// ============================================================
+// Utilidades sobre tokens
+// ============================================================
+
+function isIdentifier(token: JavaToken | undefined, value?: string): boolean {
+  return !!token && token.kind === 'identifier' && (value === undefined || token.value === value);
+}
+
+function isOperator(token: JavaToken | undefined, value: string): boolean {
+  return !!token && token.kind === 'operator' && token.value === value;
+}
+
+/** Índices de las llamadas `name(` dentro de la sentencia */
+function findCalls(tokens: JavaToken[], names: Set<string>): number[] {
+  const result: number[] = [];
+  for (let i = 0; i < tokens.length - 1; i++) {
+    if (tokens[i].kind === 'identifier' && names.has(tokens[i].value) && isOperator(tokens[i + 1], '(')) {
+      result.push(i);
+    }
+  }
+  return result;
+}
+
+/** Índices de las construcciones `new Name(` */
+function findConstructions(tokens: JavaToken[], names: Set<string>): number[] {
+  const result: number[] = [];
+  for (let i = 0; i < tokens.length - 2; i++) {
+    if (tokens[i].value !== 'new' || tokens[i].kind !== 'keyword') continue;
+    // Admite nombres calificados: new java.io.File(...)
+    let j = i + 1;
+    while (isIdentifier(tokens[j]) && isOperator(tokens[j + 1], '.')) j += 2;
+    if (isIdentifier(tokens[j]) && names.has(tokens[j].value) && isOperator(tokens[j + 1], '(')) {
+      result.push(j);
+    }
+  }
+  return result;
+}
+
+/** Tokens de los argumentos de la llamada cuyo nombre está en callIndex */
+function callArguments(tokens: JavaToken[], callIndex: number): JavaToken[] {
+  const open = callIndex + 1;
+  const close = findClosingParen(tokens, open);
+  return tokens.slice(open + 1, close);
+}
+
+/** Divide una lista de argumentos por comas de primer nivel */
+function splitArguments(args: JavaToken[]): JavaToken[][] {
+  const parts: JavaToken[][] = [];
+  let current: JavaToken[] = [];
+  let depth = 0;
+  for (const token of args) {
+    if (token.value === '(' || token.value === '[' || token.value === '{') depth++;
+    else if (token.value === ')' || token.value === ']' || token.value === '}') depth--;
+    if (token.value === ',' && depth === 0) {
+      parts.push(current);
+      current = [];
+    } else {
+      current.push(token);
+    }
+  }
+  if (current.length > 0) parts.push(current);
+  return parts;
+}
+
+function isLiteral(token: JavaToken | undefined): boolean {
+  return !!token && (token.kind === 'string' || token.kind === 'char' || token.kind === 'number');
+}
+
+/**
+ * Hay concatenación dinámica cuando un '+' une un literal de texto con algo que
+ * no es literal (variable, llamada, acceso a array).
+ */
+function hasDynamicConcat(tokens: JavaToken[]): boolean {
+  let touchesString = false;
+  let touchesDynamic = false;
+  for (let i = 0; i < tokens.length; i++) {
+    if (!isOperator(tokens[i], '+') && !isOperator(tokens[i], '+=')) continue;
+    for (const neighbour of [tokens[i - 1], tokens[i + 1]]) {
+      if (!neighbour) continue;
+      if (neighbour.kind === 'string') touchesString = true;
+      else if (!isLiteral(neighbour)) touchesDynamic = true;
+    }
+  }
+  return touchesString && touchesDynamic;
+}
+
+function isStringFormat(tokens: JavaToken[]): boolean {
+  for (let i = 0; i < tokens.length - 2; i++) {
+    if (isIdentifier(tokens[i], 'String') && isOperator(tokens[i + 1], '.') && isIdentifier(tokens[i + 2], 'format')) {
+      return true;
+    }
+    if (isOperator(tokens[i], '.') && isIdentifier(tokens[i + 1], 'formatted') && isOperator(tokens[i + 2], '(')) {
+      return true;
+    }
+  }
+  return false;
+}
+
+function hasNonLiteralOperand(tokens: JavaToken[]): boolean {
+  return tokens.some(token => token.kind === 'identifier' && !/^[A-Z][A-Z0-9_]*$/.test(token.value));
+}
+
+interface Assignment {
+  name: string;
+  nameIndex: number;
+  value: JavaToken[];
+}
+
+const assignmentCache = new WeakMap<JavaToken[], Assignment[]>();
+
+/**
+ * Extrae las asignaciones de primer nivel (`Tipo x = valor`, `x = valor`, `this.x = valor`).
+ * Una declaración múltiple (`int a = 1, b = 2`) devuelve una asignación por variable.
+ * Varias reglas lo piden para la misma sentencia, así que se memoriza por lista de tokens.
+ */
+function findAssignments(tokens: JavaToken[]): Assignment[] {
+  const cached = assignmentCache.get(tokens);
+  if (cached) return cached;
+  const result: Assignment[] = [];
+  let depth = 0;
+  for (let i = 0; i < tokens.length; i++) {
+    const token = tokens[i];
+    if (token.value === '(' || token.value === '[' || token.value === '{') depth++;
+    else if (token.value === ')' || token.value === ']' || token.value === '}') depth--;
+    if (depth !== 0 || !isOperator(token, '=')) continue;
+
+    let nameIndex = i - 1;
+    // Arrays declarados al estilo C: String claves[] = ...
+    if (isOperator(tokens[nameIndex], ']') && isOperator(tokens[nameIndex - 1], '[')) nameIndex -= 2;
+    if (!isIdentifier(tokens[nameIndex])) continue;
+
+    let end = i + 1;
+    let valueDepth = 0;
+    for (; end < tokens.length; end++) {
+      const value = tokens[end].value;
+      if (value === '(' || value === '[' || value === '{') valueDepth++;
+      else if (value === ')' || value === ']' || value === '}') valueDepth--;
+      else if (value === ',' && valueDepth === 0) break;
+    }
+    result.push({ name: tokens[nameIndex].value, nameIndex, value: tokens.slice(i + 1, end) });
+  }
+  assignmentCache.set(tokens, result);
+  return result;
+}
+
+/** ¿Se usa la variable como receptor (`x.`) o se indexa (`x[`)? Devuelve el token o null */
+function findDereference(tokens: JavaToken[], name: string): JavaToken | null {
+  for (let i = 0; i < tokens.length - 1; i++) {
+    if (!isIdentifier(tokens[i], name)) continue;
+    const previous = tokens[i - 1];
+    if (previous && (isOperator(previous, '.') || isOperator(previous, '::'))) continue;
+    if (isOperator(tokens[i + 1], '.') || isOperator(tokens[i + 1], '[')) return tokens[i];
+  }
+  return null;
+}
+
+function mentionsIdentifier(tokens: JavaToken[], name: string): boolean {
+  return tokens.some(token => isIdentifier(token, name));
+}
+
+function assignsTo(tokens: JavaToken[], name: string): boolean {
+  return findAssignments(tokens).some(assignment => assignment.name === name);
+}
+
+/** ¿Compara la sentencia la variable con null (en cualquier sentido)? */
+function comparesWithNull(tokens: JavaToken[], name: string, operator?: string): boolean {
+  for (let i = 1; i < tokens.length - 1; i++) {
+    const token = tokens[i];
+    if (token.kind !== 'operator' || (token.value !== '==' && token.value !== '!=')) continue;
+    if (operator && token.value !== operator) continue;
+    const left = tokens[i - 1];
+    const right = tokens[i + 1];
+    if ((isIdentifier(left, name) && right.value === 'null') || (left.value === 'null' && isIdentifier(right, name))) {
+      return true;
+    }
+  }
+  return false;
+}
+
+/** Sentencias posteriores del mismo método, limitadas a `limit` */
+function followingStatements(statement: JavaStatement, limit = Infinity): JavaStatement[] {
+  if (!statement.method) return [];
+  return statement.method.body.slice(statement.index + 1, statement.index + 1 + limit);
+}
+
+const methodIdentifiers = new WeakMap<JavaBlock, Set<string>>();
+
+/** ¿Aparece en el método algún identificador que cumpla el patrón? (identificadores calculados una vez por método) */
+function methodMentions(statement: JavaStatement, pattern: RegExp): boolean {
+  if (!statement.method) return false;
+  let identifiers = methodIdentifiers.get(statement.method);
+  if (!identifiers) {
+    identifiers = new Set();
+    for (const other of statement.method.body) {
+      for (const token of other.tokens) {
+        if (token.kind === 'identifier') identifiers.add(token.value);
+      }
+    }
+    methodIdentifiers.set(statement.method, identifiers);
+  }
+  for (const identifier of identifiers) {
+    if (pattern.test(identifier)) return true;
+  }
+  return false;
+}
+
+function rememberVariable(context: JavaRuleContext, statement: JavaStatement, bucket: string, name: string) {
+  const state = context.methodState(statement);
+  if (!state.has(bucket)) state.set(bucket, new Set());
+  state.get(bucket).add(name);
+}
+
+function isRememberedVariable(context: JavaRuleContext, statement: JavaStatement, bucket: string, name: string): boolean {
+  const values = context.methodState(statement).get(bucket);
+  return !!values && values.has(name);
+}
+
+/** Receptor inmediato de una llamada: `receptor.metodo(` → 'receptor' */
+function receiverOf(tokens: JavaToken[], callIndex: number): JavaToken | null {
+  if (!isOperator(tokens[callIndex - 1], '.')) return null;
+  return tokens[callIndex - 2] || null;
+}
+
+// ============================================================
+// Reglas
+// ============================================================
+
+const SQL_KEYWORDS_RE = /^\s*(SELECT|INSERT|UPDATE|DELETE|MERGE|DROP|CREATE|ALTER)\b|\b(FROM|WHERE|VALUES|SET)\b/i;
+const SQL_EXECUTE_METHODS = new Set([
+  'executeQuery', 'executeUpdate', 'execute', 'executeLargeUpdate', 'addBatch',
+  'prepareStatement', 'prepareCall', 'createQuery', 'createNativeQuery',
+]);
+
+const sqlInjectionRule: JavaRule = {
+  id: 'sql-injection',
+  triggers: [STRING_LITERAL_TRIGGER, ...SQL_EXECUTE_METHODS],
+  visit(statement, context) {
+    const tokens = statement.tokens;
+
+    // 1. Literal SQL concatenado con valores dinámicos (aunque la sentencia ocupe varias líneas)
+    const sqlLiteral = tokens.find(token => token.kind === 'string' && SQL_KEYWORDS_RE.test(token.value));
+    if (sqlLiteral && hasDynamicConcat(tokens)) {
+      context.report({
+        type: 'SQL Injection',
+        severity: 'CRITICAL',
+        message: 'SQL Injection vulnerability - Use parameterized queries',
+        line: sqlLiteral.line,
+      });
+      return;
+    }
+
+    // 2. Ejecución de consultas con argumentos construidos dinámicamente
+    for (const callIndex of findCalls(tokens, SQL_EXECUTE_METHODS)) {
+      const args = callArguments(tokens, callIndex);
+      if (hasDynamicConcat(args) || isStringFormat(args)) {
+        context.report({
+          type: 'SQL Injection',
+          severity: 'CRITICAL',
+          message: 'SQL Injection vulnerability - Use PreparedStatement instead of string concatenation',
+          line: tokens[callIndex].line,
+        });
+        return;
+      }
+    }
+  },
+};
+
+const EXEC_METHODS = new Set(['exec']);
+const PROCESS_BUILDER = new Set(['ProcessBuilder']);
+
+const commandInjectionRule: JavaRule = {
+  id: 'command-injection',
+  triggers: ['getRuntime', ...EXEC_METHODS, ...PROCESS_BUILDER],
+  visit(statement, context) {
+    const tokens = statement.tokens;
+
+    // Recordar variables que guardan el Runtime (Runtime rt = Runtime.getRuntime())
+    for (const assignment of findAssignments(tokens)) {
+      if (mentionsIdentifier(assignment.value, 'getRuntime')) {
+        rememberVariable(context, statement, 'runtime', assignment.name);
+      }
+    }
+
+    for (const callIndex of findCalls(tokens, EXEC_METHODS)) {
+      const receiver = receiverOf(tokens, callIndex);
+      const viaRuntime =
+        (receiver && isOperator(receiver, ')') && mentionsIdentifier(tokens.slice(0, callIndex), 'getRuntime')) ||
+        (receiver && isIdentifier(receiver) && isRememberedVariable(context, statement, 'runtime', receiver.value));
+      if (!viaRuntime) continue;
+
+      const args = callArguments(tokens, callIndex);
+      if (hasDynamicConcat(args) || isStringFormat(args)) {
+        context.report({
+          type: 'Command Injection',
+          severity: 'CRITICAL',
+          message: 'Command Injection vulnerability - Use Runtime.exec(String[]) with array instead of concatenation',
+          line: tokens[callIndex].line,
+        });
+      } else if (hasNonLiteralOperand(args) && !methodMentions(statement, /whitelist|allowlist|sanitize|validate/i)) {
+        context.report({
+          type: 'Command Injection',
+          severity: 'CRITICAL',
+          message: 'Command execution detected (Runtime.getRuntime().exec) - Ensure input is from trusted sources only',
+          line: tokens[callIndex].line,
+        });
+      }
+      return;
+    }
+
+    for (const constructorIndex of findConstructions(tokens, PROCESS_BUILDER)) {
+      const args = callArguments(tokens, constructorIndex);
+      if (hasDynamicConcat(args) || isStringFormat(args)) {
+        context.report({
+          type: 'Command Injection',
+          severity: 'CRITICAL',
+          message: 'Command Injection - ProcessBuilder with concatenated strings is dangerous',
+          line: tokens[constructorIndex].line,
+        });
+        return;
+      }
+    }
+  },
+};
+
+const FILE_CONSTRUCTORS = new Set(['File', 'FileInputStream', 'FileOutputStream', 'FileReader', 'FileWriter', 'RandomAccessFile']);
+const FILE_OBJECT = new Set(['File']);
+const PATH_VALIDATION_RE = /^(getCanonicalPath|getCanonicalFile|normalize|toRealPath|startsWith)$/;
+
+const pathTraversalRule: JavaRule = {
+  id: 'path-traversal',
+  triggers: [...FILE_CONSTRUCTORS, 'Paths', 'Path'],
+  visit(statement, context) {
+    const tokens = statement.tokens;
+    const sinks = findConstructions(tokens, FILE_CONSTRUCTORS);
+
+    // Paths.get(...) / Path.of(...)
+    for (let i = 0; i < tokens.length - 3; i++) {
+      if (
+        (isIdentifier(tokens[i], 'Paths') && isIdentifier(tokens[i + 2], 'get')) ||
+        (isIdentifier(tokens[i], 'Path') && isIdentifier(tokens[i + 2], 'of'))
+      ) {
+        if (isOperator(tokens[i + 1], '.') && isOperator(tokens[i + 3], '(')) sinks.push(i + 2);
+      }
+    }
+
+    // Los File creados en el método ya se evaluaron donde se construyeron
+    for (const assignment of findAssignments(tokens)) {
+      if (findConstructions(assignment.value, FILE_OBJECT).length > 0) {
+        rememberVariable(context, statement, 'file-object', assignment.name);
+      }
+    }
+
+    for (const sinkIndex of sinks) {
+      const args = callArguments(tokens, sinkIndex);
+      if (args.length === 1 && isIdentifier(args[0]) && isRememberedVariable(context, statement, 'file-object', args[0].value)) continue;
+      const userControlled = mentionsIdentifier(args, 'getParameter') || mentionsIdentifier(args, 'request');
+
+      if (userControlled && (tokens[sinkIndex].value === 'FileOutputStream' || tokens[sinkIndex].value === 'FileWriter')) {
+        context.report({
+          type: 'Path Traversal',
+          severity: 'CRITICAL',
+          message: 'Path Traversal in file output - Validate file paths before creating/writing files',
+          line: tokens[sinkIndex].line,
+        });
+        return;
+      }
+
+      if (hasDynamicConcat(args) || isStringFormat(args) || userControlled) {
+        context.report({
+          type: 'Path Traversal',
+          severity: 'CRITICAL',
+          message: 'Path Traversal vulnerability - Validate file paths, prevent ".." sequences',
+          line: tokens[sinkIndex].line,
+        });
+        return;
+      }
+
+      // Ruta recibida en una variable sin ninguna validación en el método
+      if (hasNonLiteralOperand(args) && statement.method && !methodMentions(statement, PATH_VALIDATION_RE)) {
+        context.report({
+          type: 'Path Traversal',
+          severity: 'CRITICAL',
+          message: 'Path Traversal risk - Ensure file paths are validated and do not contain ".." sequences',
+          line: tokens[sinkIndex].line,
+        });
+        return;
+      }
+    }
+  },
+};
+
+const CREDENTIAL_NAME_RE = /(passw(or)?d|passwd|pwd|secret|token|api_?key|apikey|credential|private_?key|access_?key)/i;
+const CREDENTIAL_NOT_A_VALUE_RE = /(label|message|msg|prompt|hint|field|param|header|column|pattern|regex|url|endpoint|path|name|type|length|policy|error)$/i;
+const CREDENTIAL_WORDS_RE = /^(password|passwd|pwd|secret|token|api_?key|apikey|credential|changeme)?$/i;
+
+function isHardcodedSecretValue(value: JavaToken[]): boolean {
+  if (value.length !== 1 || value[0].kind !== 'string') return false;
+  const text = value[0].value;
+  // Placeholders de configuración (${DB_PASSWORD}) y el propio nombre del campo no son secretos
+  if (text.trim().length === 0 || text.includes('${') || CREDENTIAL_WORDS_RE.test(text)) return false;
+  return true;
+}
+
+const CONNECTION_FACTORIES = new Set(['getConnection']);
+const CREDENTIAL_SETTERS = new Set(['put', 'setProperty', 'setPassword', 'setSecret', 'setApiKey']);
+
+const hardcodedCredentialRule: JavaRule = {
+  id: 'hardcoded-credential',
+  triggers: [STRING_LITERAL_TRIGGER],
+  visit(statement, context) {
+    const tokens = statement.tokens;
+    const report = (line: number) =>
+      context.report({
+        type: 'Hardcoded Credential',
+        severity: 'CRITICAL',
+        message: 'Hardcoded credential detected - Store in environment variables or secure vault',
+        line,
+      });
+
+    // Se parte de los literales: la regla visita casi todas las sentencias con texto,
+    // así que evita construir asignaciones o argumentos salvo que haya un candidato.
+    for (let i = 2; i < tokens.length; i++) {
+      if (tokens[i].kind !== 'string' || !isOperator(tokens[i - 1], '=')) continue;
+      const next = tokens[i + 1];
+      if (next && !isOperator(next, ',')) continue;
+      let nameIndex = i - 2;
+      if (isOperator(tokens[nameIndex], ']') && isOperator(tokens[nameIndex - 1], '[')) nameIndex -= 2;
+      const name = tokens[nameIndex];
+      if (!isIdentifier(name) || !CREDENTIAL_NAME_RE.test(name.value) || CREDENTIAL_NOT_A_VALUE_RE.test(name.value)) continue;
+      if (isHardcodedSecretValue([tokens[i]])) {
+        report(name.line);
+        return;
+      }
+    }
+
+    for (let callIndex = 0; callIndex < tokens.length - 1; callIndex++) {
+      const callee = tokens[callIndex];
+      if (callee.kind !== 'identifier' || !isOperator(tokens[callIndex + 1], '(')) continue;
+
+      // DriverManager.getConnection(url, "usuario", "clave")
+      if (CONNECTION_FACTORIES.has(callee.value)) {
+        const args = splitArguments(callArguments(tokens, callIndex));
+        if (args.length >= 3 && isHardcodedSecretValue(args[2])) {
+          report(callee.line);
+          return;
+        }
+      }
+
+      // props.setProperty("db.password", "valor") / setPassword("valor")
+      if (CREDENTIAL_SETTERS.has(callee.value)) {
+        const args = splitArguments(callArguments(tokens, callIndex));
+        const keyed = args.length === 2 && args[0].length === 1 && args[0][0].kind === 'string' && CREDENTIAL_NAME_RE.test(args[0][0].value);
+        const direct = args.length === 1 && callee.value !== 'put' && callee.value !== 'setProperty';
+        const secret = keyed ? args[1] : direct ? args[0] : null;
+        if (secret && isHardcodedSecretValue(secret)) {
+          report(callee.line);
+          return;
+        }
+      }
+    }
+  },
+};
+
+const SENSITIVE_RANDOM_RE = /token|seed|otp|nonce|salt|password|session|secret|key/i;
+
+const RANDOM_CLASSES = new Set(['Random']);
+const RANDOM_METHODS = new Set(['nextInt', 'nextLong', 'nextBytes']);
+
+const insecureRandomnessRule: JavaRule = {
+  id: 'insecure-randomness',
+  triggers: ['SecureRandom', ...RANDOM_CLASSES, ...RANDOM_METHODS],
+  visit(statement, context) {
+    const tokens = statement.tokens;
+
+    for (const assignment of findAssignments(tokens)) {
+      if (mentionsIdentifier(assignment.value, 'SecureRandom')) {
+        rememberVariable(context, statement, 'secure-random', assignment.name);
+      }
+    }
+
+    const constructions = findConstructions(tokens, RANDOM_CLASSES);
+    if (constructions.length > 0) {
+      context.report({
+        type: 'Insecure Randomness',
+        severity: 'CRITICAL',
+        message: 'Insecure Randomness - Use SecureRandom for cryptographic operations like tokens',
+        line: tokens[constructions[0]].line,
+      });
+      return;
+    }
+
+    for (const callIndex of findCalls(tokens, RANDOM_METHODS)) {
+      const receiver = receiverOf(tokens, callIndex);
+      if (receiver && isIdentifier(receiver) && isRememberedVariable(context, statement, 'secure-random', receiver.value)) continue;
+      if (receiver && isIdentifier(receiver, 'SecureRandom')) continue;
+      const assigned = findAssignments(tokens).map(assignment => assignment.name);
+      if (assigned.some(name => SENSITIVE_RANDOM_RE.test(name))) {
+        context.report({
+          type: 'Insecure Randomness',
+          severity: 'CRITICAL',
+          message: 'Insecure Randomness - Use SecureRandom for security tokens and cryptographic operations',
+          line: tokens[callIndex].line,
+        });
+        return;
+      }
+    }
+  },
+};
+
+const nullPointerRule: JavaRule = {
+  id: 'null-pointer',
+  triggers: ['null', 'if'],
+  visit(statement, context) {
+    const tokens = statement.tokens;
+
+    // 1. Variable inicializada a null y desreferenciada antes de reasignarla o comprobarla
+    for (const assignment of findAssignments(tokens)) {
+      if (assignment.value.length !== 1 || assignment.value[0].value !== 'null') continue;
+      // Solo variables locales: `this.x = null` o campos no se siguen
+      if (!statement.method || isOperator(tokens[assignment.nameIndex - 1], '.')) continue;
+
+      for (const next of followingStatements(statement, 4)) {
+        if (assignsTo(next.tokens, assignment.name)) break;
+        if (comparesWithNull(next.tokens, assignment.name)) break;
+        const dereference = findDereference(next.tokens, assignment.name);
+        if (dereference) {
+          context.report({
+            type: 'Null Pointer Dereference',
+            severity: 'HIGH',
+            message: `Variable '${assignment.name}' set to null and dereferenced without null check`,
+            line: dereference.line,
+          });
+          return;
+        }
+      }
+    }
+
+    // 2. `if (x == null) { x.metodo(); }` (con o sin llaves)
+    if (tokens[0].value !== 'if' || !isOperator(tokens[1], '(')) return;
+    const conditionEnd = findClosingParen(tokens, 1);
+    const condition = tokens.slice(2, conditionEnd);
+    for (let i = 1; i < condition.length - 1; i++) {
+      if (!isOperator(condition[i], '==') || condition[i + 1].value !== 'null' || !isIdentifier(condition[i - 1])) continue;
+      // Una condición compuesta con || o ! puede invertir el significado: no se evalúa
+      if (condition.some(token => isOperator(token, '||') || isOperator(token, '!'))) return;
+      const name = condition[i - 1].value;
+
+      const body = statement.opens ? statement.opens.statements.slice(0, 3) : [];
+      const inlineBody = statement.opens ? [] : tokens.slice(conditionEnd + 1);
+      const candidates = inlineBody.length > 0 ? [inlineBody] : body.map(inner => inner.tokens);
+
+      for (const candidate of candidates) {
+        if (assignsTo(candidate, name)) break;
+        const dereference = findDereference(candidate, name);
+        if (dereference) {
+          context.report({
+            type: 'Null Pointer Dereference',
+            severity: 'HIGH',
+            message: 'Potential null pointer dereference',
+            line: dereference.line,
+          });
+          return;
+        }
+      }
+    }
+  },
+};
+
+const RESOURCE_CONSTRUCTORS = new Set([
+  'FileInputStream', 'FileOutputStream', 'FileReader', 'FileWriter', 'BufferedReader', 'BufferedWriter',
+  'PrintWriter', 'Scanner', 'ObjectInputStream', 'ObjectOutputStream', 'RandomAccessFile', 'Socket', 'ServerSocket',
+]);
+const RESOURCE_FACTORIES = new Set(['getConnection', 'createStatement', 'prepareStatement', 'prepareCall', 'executeQuery']);
+
+function resourceMessage(name: string): string {
+  if (name === 'getConnection') {
+    return 'Database Connection resource leak - Use try-with-resources or ensure connection.close() is called in finally block';
+  }
+  if (name === 'executeQuery') return 'ResultSet resource leak - Ensure resultSet.close() is called in finally block';
+  if (RESOURCE_FACTORIES.has(name)) return 'SQL Statement resource leak - Ensure statement.close() is called in finally block';
+  if (name === 'BufferedReader') return 'BufferedReader resource leak - Use try-with-resources or call .close() in finally block';
+  return 'Resource may not be properly closed - Use try-with-resources or ensure close() is called';
+}
+
+/** ¿Se cierra, devuelve o entrega la variable a otro objeto más adelante en el método? */
+function isResourceReleased(statement: JavaStatement, name: string): boolean {
+  for (const next of followingStatements(statement)) {
+    const tokens = next.tokens;
+    // try (recurso) al estilo Java 9
+    if (next.kind === 'resource' && mentionsIdentifier(tokens, name)) return true;
+    for (let i = 0; i < tokens.length; i++) {
+      if (!isIdentifier(tokens[i], name)) continue;
+      const after = tokens[i + 1];
+      const before = tokens[i - 1];
+      // x.close()
+      if (isOperator(after, '.') && isIdentifier(tokens[i + 2], 'close')) return true;
+      // return x;
+      if (before && before.value === 'return') return true;
+      // Pasada como argumento completo: closeQuietly(x), new BufferedReader(x), lista.add(x)...
+      const isWholeArgument = isOperator(after, ')') || isOperator(after, ',');
+      if (isWholeArgument && before && (isOperator(before, '(') || isOperator(before, ','))) return true;
+      // Asignada tal cual a un campo u otra variable: this.reader = x (no `line = x.readLine()`)
+      if (isOperator(before, '=') && (!after || isOperator(after, ',') || isOperator(after, ';'))) return true;
+    }
+  }
+  return false;
+}
+
+const resourceLeakRule: JavaRule = {
+  id: 'resource-leak',
+  triggers: [...RESOURCE_CONSTRUCTORS, ...RESOURCE_FACTORIES],
+  visit(statement, context) {
+    if (statement.kind !== 'statement' || !statement.method) return;
+    const tokens = statement.tokens;
+
+    for (const assignment of findAssignments(tokens)) {
+      // Los campos (this.x = ...) tienen un ciclo de vida propio
+      if (isOperator(tokens[assignment.nameIndex - 1], '.')) continue;
+
+      const value = assignment.value;
+      let creatorIndex = -1;
+      for (let i = 0; i < value.length - 1 && creatorIndex < 0; i++) {
+        if (!isOperator(value[i + 1], '(')) continue;
+        const isConstructor = value[i - 1] && value[i - 1].value === 'new' && RESOURCE_CONSTRUCTORS.has(value[i].value);
+        const isFactory = isIdentifier(value[i]) && RESOURCE_FACTORIES.has(value[i].value) && isOperator(value[i - 1], '.');
+        if (isConstructor || isFactory) creatorIndex = i;
+      }
+      if (creatorIndex < 0) continue;
+
+      // Scanner(System.in) no debe cerrarse: cerraría la entrada estándar
+      const args = callArguments(value, creatorIndex);
+      if (value[creatorIndex].value === 'Scanner' && mentionsIdentifier(args, 'System')) continue;
+
+      if (!isResourceReleased(statement, assignment.name)) {
+        context.report({
+          type: 'Resource Leak',
+          severity: 'MEDIUM',
+          message: resourceMessage(value[creatorIndex].value),
+          line: value[creatorIndex].line,
+        });
+        return;
+      }
+    }
+
+    // Recurso creado y usado en la misma expresión sin guardarlo: new BufferedReader(...).readLine()
+    for (const constructorIndex of findConstructions(tokens, RESOURCE_CONSTRUCTORS)) {
+      const close = findClosingParen(tokens, constructorIndex + 1);
+      if (!isOperator(tokens[close + 1], '.')) continue;
+      if (tokens[constructorIndex].value === 'Scanner' && mentionsIdentifier(tokens.slice(constructorIndex, close), 'System')) continue;
+      context.report({
+        type: 'Resource Leak',
+        severity: 'MEDIUM',
+        message: resourceMessage(tokens[constructorIndex].value),
+        line: tokens[constructorIndex].line,
+      });
+      return;
+    }
+  },
+};
+
+const WRITER_METHODS = new Set(['print', 'println', 'write', 'append', 'printf', 'format']);
+
+const xssRule: JavaRule = {
+  id: 'xss',
+  triggers: ['getWriter', ...WRITER_METHODS],
+  visit(statement, context) {
+    const tokens = statement.tokens;
+
+    for (const assignment of findAssignments(tokens)) {
+      if (mentionsIdentifier(assignment.value, 'getWriter')) {
+        rememberVariable(context, statement, 'response-writer', assignment.name);
+      }
+    }
+
+    for (const callIndex of findCalls(tokens, WRITER_METHODS)) {
+      const receiver = receiverOf(tokens, callIndex);
+      if (!receiver) continue;
+      const viaGetWriter = isOperator(receiver, ')') && isIdentifier(tokens[callIndex - 4], 'getWriter');
+      const viaVariable = isIdentifier(receiver) && isRememberedVariable(context, statement, 'response-writer', receiver.value);
+      if (!viaGetWriter && !viaVariable) continue;
+
+      const args = callArguments(tokens, callIndex);
+      if (hasDynamicConcat(args) || mentionsIdentifier(args, 'getParameter')) {
+        context.report({
+          type: 'Cross-Site Scripting (XSS)',
+          severity: 'HIGH',
+          message: 'Potential XSS vulnerability - User input may not be properly escaped',
+          line: tokens[callIndex].line,
+        });
+        return;
+      }
+    }
+  },
+};
+
+const SENSITIVE_COMPARISON_RE = /password|passwd|pwd|token|secret|credential/i;
+
+const stringComparisonRule: JavaRule = {
+  id: 'string-comparison',
+  triggers: ['==', '!='],
+  visit(statement, context) {
+    const tokens = statement.tokens;
+    for (let i = 1; i < tokens.length - 1; i++) {
+      if (!isOperator(tokens[i], '==') && !isOperator(tokens[i], '!=')) continue;
+      const left = tokens[i - 1];
+      const right = tokens[i + 1];
+      if (left.value === 'null' || right.value === 'null' || left.kind === 'number' || right.kind === 'number') continue;
+      if (left.kind === 'char' || right.kind === 'char') continue;
+
+      const comparesLiteral = left.kind === 'string' || right.kind === 'string';
+      const sensitive = [left, right].some(token => isIdentifier(token) && SENSITIVE_COMPARISON_RE.test(token.value));
+      if (comparesLiteral || sensitive) {
+        context.report({
+          type: 'Insecure String Comparison',
+          severity: 'MEDIUM',
+          message: 'Use .equals() instead of == for string comparison',
+          line: tokens[i].line,
+        });
+        return;
+      }
+    }
+  },
+};
+
+export const JAVA_RULES: JavaRule[] = [
+  sqlInjectionRule,
+  commandInjectionRule,
+  pathTraversalRule,
+  hardcodedCredentialRule,
+  insecureRandomnessRule,
+  nullPointerRule,
+  resourceLeakRule,
+  xssRule,
+  stringComparisonRule,
+];
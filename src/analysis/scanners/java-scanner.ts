@@ -0,0 +1,130 @@
+/**
+ * Punto de entrada del escáner Java: tokeniza, agrupa en sentencias y aplica
+ * las reglas. Devuelve hallazgos con la misma forma que producía la detección
+ * directa por líneas ({ type, path, start, severity, message, code }), más la
+ * ubicación estructural (clase y método) del hallazgo.
+ *
+ * El escaneo es incremental: los resultados se guardan por hash de contenido,
+ * así que un archivo que no cambió entre análisis (o que aparece repetido en
+ * varias entregas) no se vuelve a tokenizar.
+ */
+
+import { createHash } from 'crypto';
+
+import { tokenizeJava } from './java-tokenizer';
+import { JavaStatement, describeEnclosing, parseJava } from './java-parser';
+import { DirectFindingSeverity, JAVA_RULES, JavaRule, JavaRuleContext, STRING_LITERAL_TRIGGER } from './java-rules';
+
+export interface DirectFinding {
+  type: string;
+  path: string;
+  start: { line: number };
+  severity: DirectFindingSeverity;
+  message: string;
+  code: string;
+  enclosing?: { className: string | null; methodName: string | null };
+}
+
+export interface JavaScanOptions {
+  rules?: JavaRule[];
+  /** Reutilizar resultados de contenidos ya escaneados (solo con las reglas por defecto) */
+  cache?: boolean;
+}
+
+type CachedFinding = Omit<DirectFinding, 'path'>;
+
+const SCAN_CACHE_MAX_ENTRIES = 5000;
+const scanCache = new Map<string, CachedFinding[]>();
+
+export function clearJavaScanCache() {
+  scanCache.clear();
+}
+
+/** Índice valor de token → máscara de reglas que dispara (una entrada por conjunto de reglas) */
+const triggerIndexes = new WeakMap<JavaRule[], Map<string, number>>();
+
+function getTriggerIndex(rules: JavaRule[]): Map<string, number> {
+  let index = triggerIndexes.get(rules);
+  if (!index) {
+    index = new Map();
+    rules.forEach((rule, position) => {
+      for (const trigger of rule.triggers) {
+        index.set(trigger, (index.get(trigger) || 0) | (1 << position));
+      }
+    });
+    triggerIndexes.set(rules, index);
+  }
+  return index;
+}
+
+export function scanJavaSource(source: string, filePath: string, options: JavaScanOptions = {}): DirectFinding[] {
+  const rules = options.rules || JAVA_RULES;
+  const useCache = options.cache !== false && rules === JAVA_RULES;
+  if (!useCache) return runRules(source, filePath, rules);
+
+  const hash = createHash('sha1').update(source).digest('hex');
+  let cached = scanCache.get(hash);
+  if (cached) {
+    // LRU: reinsertar para marcarlo como usado recientemente
+    scanCache.delete(hash);
+  } else {
+    cached = runRules(source, filePath, rules).map(({ path: _path, ...finding }) => finding);
+    if (scanCache.size >= SCAN_CACHE_MAX_ENTRIES) {
+      scanCache.delete(scanCache.keys().next().value);
+    }
+  }
+  scanCache.set(hash, cached);
+  return cached.map(finding => ({ ...finding, path: filePath, start: { ...finding.start } }));
+}
+
+function runRules(source: string, filePath: string, rules: JavaRule[]): DirectFinding[] {
+  const unit = parseJava(tokenizeJava(source));
+  const triggerIndex = getTriggerIndex(rules);
+  const stringMask = triggerIndex.get(STRING_LITERAL_TRIGGER) || 0;
+  const findings: DirectFinding[] = [];
+  const reported = new Set<string>();
+  const methodStates = new Map<object, Map<string, Set<string>>>();
+  let lines: string[] = null;
+
+  let current: JavaStatement = null;
+  const context: JavaRuleContext = {
+    report: finding => {
+      // Una misma regla no repite hallazgo en la misma línea
+      const key = `${finding.type}:${finding.line}`;
+      if (reported.has(key)) return;
+      reported.add(key);
+      // Las líneas solo hacen falta para el fragmento de código de los hallazgos
+      if (!lines) lines = source.split('\n');
+      findings.push({
+        type: finding.type,
+        path: filePath,
+        start: { line: finding.line },
+        severity: finding.severity,
+        message: finding.message,
+        code: (lines[finding.line - 1] || '').trim(),
+        enclosing: describeEnclosing(current),
+      });
+    },
+    methodState: statement => {
+      // Las sentencias fuera de métodos (campos) comparten el estado de la unidad
+      const owner = statement.method || unit.root;
+      if (!methodStates.has(owner)) methodStates.set(owner, new Map());
+      return methodStates.get(owner);
+    },
+  };
+
+  for (const statement of unit.statements) {
+    let mask = 0;
+    for (const token of statement.tokens) {
+      mask |= token.kind === 'string' ? stringMask : triggerIndex.get(token.value) || 0;
+    }
+    if (mask === 0) continue;
+
+    current = statement;
+    for (let position = 0; position < rules.length; position++) {
+      if (mask & (1 << position)) rules[position].visit(statement, context);
+    }
+  }
+
+  return findings;
+}
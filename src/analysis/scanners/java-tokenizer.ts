@@ -0,0 +1,187 @@
+/**
+ * Tokenizador de Java para la detección directa.
+ *
+ * Recorre el código fuente una sola vez y produce tokens con su línea de origen.
+ * Los comentarios se descartan y los literales se conservan como un único token,
+ * de modo que el texto dentro de strings o comentarios nunca dispara reglas.
+ */
+
+export type JavaTokenKind = 'identifier' | 'keyword' | 'string' | 'char' | 'number' | 'operator';
+
+export interface JavaToken {
+  kind: JavaTokenKind;
+  value: string;
+  line: number;
+}
+
+const JAVA_KEYWORDS = new Set([
+  'abstract', 'assert', 'boolean', 'break', 'byte', 'case', 'catch', 'char', 'class', 'const',
+  'continue', 'default', 'do', 'double', 'else', 'enum', 'extends', 'final', 'finally', 'float',
+  'for', 'goto', 'if', 'implements', 'import', 'instanceof', 'int', 'interface', 'long', 'native',
+  'new', 'package', 'private', 'protected', 'public', 'return', 'short', 'static', 'strictfp',
+  'super', 'switch', 'synchronized', 'this', 'throw', 'throws', 'transient', 'try', 'void',
+  'volatile', 'while', 'true', 'false', 'null',
+]);
+
+// '>>' y '>>>' no se agrupan para que los genéricos anidados (List<List<T>>) cierren limpiamente.
+// Ordenados de mayor a menor longitud; solo se consultan si el primer carácter puede iniciarlos.
+const MULTI_CHAR_OPERATORS = [
+  '>>>=', '<<=', '>>=', '...', '->', '::', '++', '--', '&&', '||', '==', '!=', '<=', '>=',
+  '+=', '-=', '*=', '/=', '&=', '|=', '^=', '%=',
+];
+const OPERATOR_STARTS = new Set(MULTI_CHAR_OPERATORS.map(operator => operator.charCodeAt(0)));
+
+const IDENTIFIER_RE = /[\p{L}_$][\p{L}\p{N}_$]*/uy;
+const NUMBER_RE = /0[xX][\da-fA-F_]*[lL]?|0[bB][01_]*[lL]?|(?:\d[\d_]*\.?[\d_]*|\.\d[\d_]*)(?:[eE][+-]?\d+)?[fFdDlL]?/y;
+
+const CH_NEWLINE = 10;
+const CH_QUOTE = 34;
+const CH_APOSTROPHE = 39;
+const CH_STAR = 42;
+const CH_DOT = 46;
+const CH_SLASH = 47;
+const CH_BACKSLASH = 92;
+
+function isDigit(code: number): boolean {
+  return code >= 48 && code <= 57;
+}
+
+function isAsciiIdentifierStart(code: number): boolean {
+  return (code >= 97 && code <= 122) || (code >= 65 && code <= 90) || code === 95 || code === 36;
+}
+
+function isAsciiIdentifierPart(code: number): boolean {
+  return isAsciiIdentifierStart(code) || isDigit(code);
+}
+
+/**
+ * Es la parte más caliente del escáner, así que trabaja con charCodeAt y
+ * comparaciones numéricas; las expresiones regulares solo se usan para números
+ * y para identificadores con caracteres no ASCII.
+ */
+export function tokenizeJava(source: string): JavaToken[] {
+  const tokens: JavaToken[] = [];
+  const length = source.length;
+  let i = 0;
+  let line = 1;
+
+  while (i < length) {
+    const code = source.charCodeAt(i);
+
+    if (code === CH_NEWLINE) {
+      line++;
+      i++;
+      continue;
+    }
+    // Espacios, tabuladores, \r y \f
+    if (code === 32 || code === 9 || code === 13 || code === 12) {
+      i++;
+      continue;
+    }
+
+    if (isAsciiIdentifierStart(code)) {
+      let j = i + 1;
+      while (j < length && isAsciiIdentifierPart(source.charCodeAt(j))) j++;
+      // Un carácter no ASCII pegado al identificador obliga a usar la expresión regular
+      if (j >= length || source.charCodeAt(j) < 128) {
+        const value = source.slice(i, j);
+        tokens.push({ kind: JAVA_KEYWORDS.has(value) ? 'keyword' : 'identifier', value, line });
+        i = j;
+        continue;
+      }
+    }
+
+    // Comentarios de línea y de bloque (incluye Javadoc)
+    if (code === CH_SLASH) {
+      const next = source.charCodeAt(i + 1);
+      if (next === CH_SLASH) {
+        const end = source.indexOf('\n', i);
+        i = end < 0 ? length : end;
+        continue;
+      }
+      if (next === CH_STAR) {
+        const end = source.indexOf('*/', i + 2);
+        const stop = end < 0 ? length : end;
+        for (let j = i + 2; j < stop; j++) {
+          if (source.charCodeAt(j) === CH_NEWLINE) line++;
+        }
+        i = stop + 2;
+        continue;
+      }
+    }
+
+    // Text blocks ("""...""") y strings normales
+    if (code === CH_QUOTE) {
+      const startLine = line;
+      if (source.charCodeAt(i + 1) === CH_QUOTE && source.charCodeAt(i + 2) === CH_QUOTE) {
+        let j = i + 3;
+        while (j < length && !source.startsWith('"""', j)) {
+          if (source.charCodeAt(j) === CH_BACKSLASH) j++;
+          if (source.charCodeAt(j) === CH_NEWLINE) line++;
+          j++;
+        }
+        tokens.push({ kind: 'string', value: source.slice(i + 3, Math.min(j, length)), line: startLine });
+        i = j + 3;
+        continue;
+      }
+      let j = i + 1;
+      let current = source.charCodeAt(j);
+      while (j < length && current !== CH_QUOTE && current !== CH_NEWLINE) {
+        j += current === CH_BACKSLASH ? 2 : 1;
+        current = source.charCodeAt(j);
+      }
+      tokens.push({ kind: 'string', value: source.slice(i + 1, j), line: startLine });
+      // Un string sin cerrar termina en el salto de línea, que se procesa en la siguiente vuelta
+      i = current === CH_QUOTE ? j + 1 : j;
+      continue;
+    }
+
+    if (code === CH_APOSTROPHE) {
+      let j = i + 1;
+      let current = source.charCodeAt(j);
+      while (j < length && current !== CH_APOSTROPHE && current !== CH_NEWLINE) {
+        j += current === CH_BACKSLASH ? 2 : 1;
+        current = source.charCodeAt(j);
+      }
+      tokens.push({ kind: 'char', value: source.slice(i + 1, j), line });
+      i = current === CH_APOSTROPHE ? j + 1 : j;
+      continue;
+    }
+
+    if (isDigit(code) || (code === CH_DOT && isDigit(source.charCodeAt(i + 1)))) {
+      NUMBER_RE.lastIndex = i;
+      const match = NUMBER_RE.exec(source);
+      if (match && match[0].length > 0) {
+        tokens.push({ kind: 'number', value: match[0], line });
+        i += match[0].length;
+        continue;
+      }
+    }
+
+    if (code >= 128 || isAsciiIdentifierStart(code)) {
+      IDENTIFIER_RE.lastIndex = i;
+      const ident = IDENTIFIER_RE.exec(source);
+      if (ident) {
+        const value = ident[0];
+        tokens.push({ kind: JAVA_KEYWORDS.has(value) ? 'keyword' : 'identifier', value, line });
+        i += value.length;
+        continue;
+      }
+    }
+
+    let operator: string = null;
+    if (OPERATOR_STARTS.has(code)) {
+      for (const candidate of MULTI_CHAR_OPERATORS) {
+        if (source.startsWith(candidate, i)) {
+          operator = candidate;
+          break;
+        }
+      }
+    }
+    if (!operator) operator = source[i];
+    tokens.push({ kind: 'operator', value: operator, line });
+    i += operator.length;
+  }
+
+  return tokens;
+}
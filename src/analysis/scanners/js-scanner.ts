@@ -0,0 +1,69 @@
+/**
+ * Detección directa para JavaScript: heurísticas por línea (eval, innerHTML,
+ * secretos y SQL concatenado). Devuelve hallazgos con la misma forma que el
+ * escáner Java.
+ */
+
+import { DirectFinding } from './java-scanner';
+
+const HARDCODED_SECRET_RE = /\b(API_KEY|SECRET|PASSWORD|TOKEN|apiKey|secretKey|apiSecret)\s*[=:]\s*["']/i;
+
+export function scanJavaScriptSource(source: string, filePath: string): DirectFinding[] {
+  const findings: DirectFinding[] = [];
+  const lines = source.split('\n');
+
+  lines.forEach((line, index) => {
+    const lineNum = index + 1;
+
+    // 1. CODE INJECTION - eval()
+    if (line.includes('eval(')) {
+      findings.push({
+        type: 'Code Injection',
+        path: filePath,
+        start: { line: lineNum },
+        severity: 'CRITICAL',
+        message: 'eval() executes arbitrary code - Use Function() or avoid dynamic code execution',
+        code: line.trim(),
+      });
+    }
+
+    // 2. XSS - innerHTML assignment
+    if (line.includes('.innerHTML')) {
+      findings.push({
+        type: 'Cross-Site Scripting (XSS)',
+        path: filePath,
+        start: { line: lineNum },
+        severity: 'HIGH',
+        message: 'Direct innerHTML assignment can lead to XSS - Use textContent or DOM methods',
+        code: line.trim(),
+      });
+    }
+
+    // 3. HARDCODED SECRETS
+    if (HARDCODED_SECRET_RE.test(line)) {
+      findings.push({
+        type: 'Hardcoded Secret',
+        path: filePath,
+        start: { line: lineNum },
+        severity: 'HIGH',
+        message: 'Hardcoded secret detected - Use environment variables',
+        code: line.trim(),
+      });
+    }
+
+    // 4. SQL INJECTION
+    if ((line.includes('SELECT') || line.includes('INSERT') || line.includes('UPDATE') || line.includes('DELETE')) &&
+        (line.includes('" + ') || line.includes('+ "') || line.includes('${') || line.includes('`'))) {
+      findings.push({
+        type: 'SQL Injection',
+        path: filePath,
+        start: { line: lineNum },
+        severity: 'CRITICAL',
+        message: 'SQL Injection - Use parameterized queries instead of concatenation',
+        code: line.trim(),
+      });
+    }
+  });
+
+  return findings;
+}
@@ -0,0 +1,161 @@
+import { promises as fs } from 'fs';
+import * as os from 'os';
+import * as path from 'path';
+import { gzipSync } from 'zlib';
+import {
+  ArchiveLimitError,
+  DEFAULT_EXTRACTION_LIMITS,
+  ExtractionLimits,
+  extractArchive,
+  isAnalyzablePath,
+} from './archive-extractor';
+
+const LIMITS: ExtractionLimits = {
+  ...DEFAULT_EXTRACTION_LIMITS,
+  maxEntryBytes: 20 * 1024 * 1024,
+  maxTotalBytes: 50 * 1024 * 1024,
+  maxCompressionRatio: 200,
+};
+
+/** Cabecera ustar de 512 bytes con checksum válido */
+function tarHeader(name: string, size: number, type = '0'): Buffer {
+  const header = Buffer.alloc(512);
+  header.write(name, 0, 100, 'utf-8');
+  header.write('0000644\0', 100, 'latin1');
+  header.write(`${size.toString(8).padStart(11, '0')}\0`, 124, 'latin1');
+  header.write('00000000000\0', 136, 'latin1');
+  header.write(type, 156, 'latin1');
+  header.write('ustar\0' + '00', 257, 'latin1');
+  header.fill(0x20, 148, 156);
+  let sum = 0;
+  for (const byte of header) sum += byte;
+  header.write(`${sum.toString(8).padStart(6, '0')}\0 `, 148, 'latin1');
+  return header;
+}
+
+/** Cabecera, contenido y relleno hasta el siguiente bloque */
+function tarEntry(name: string, content: Buffer | string, type = '0'): Buffer {
+  const data = Buffer.isBuffer(content) ? content : Buffer.from(content, 'utf-8');
+  const padding = Buffer.alloc((512 - (data.length % 512)) % 512);
+  return Buffer.concat([tarHeader(name, data.length, type), data, padding]);
+}
+
+/** Registro pax "<longitud> <clave>=<valor>\n", donde la longitud se incluye a sí misma */
+function paxRecord(key: string, value: string): string {
+  const body = ` ${key}=${value}\n`;
+  let length = body.length + 1;
+  while (String(length).length + body.length !== length) length++;
+  return `${length}${body}`;
+}
+
+const END_OF_ARCHIVE = Buffer.alloc(1024);
+
+describe('isAnalyzablePath', () => {
+  it('keeps source code, build files and configuration', () => {
+    expect(isAnalyzablePath('demo/src/main/java/com/acme/App.java')).toBe(true);
+    expect(isAnalyzablePath('demo/pom.xml')).toBe(true);
+    expect(isAnalyzablePath('demo/build.gradle.kts')).toBe(true);
+    expect(isAnalyzablePath('demo/config/application.properties')).toBe(true);
+    expect(isAnalyzablePath('demo/.env')).toBe(true);
+  });
+
+  it('keeps resources with extensions outside the source and configuration lists', () => {
+    expect(isAnalyzablePath('demo/src/main/resources/templates/index.ftl')).toBe(true);
+    expect(isAnalyzablePath('demo/src/main/resources/schema/orders.xsd')).toBe(true);
+    expect(isAnalyzablePath('demo/src/main/webapp/WEB-INF/web.xml')).toBe(true);
+    expect(isAnalyzablePath('demo/src/main/webapp/views/login.jsp')).toBe(true);
+  });
+
+  it('skips binaries even inside resource directories', () => {
+    expect(isAnalyzablePath('demo/src/main/webapp/WEB-INF/lib/x.jar')).toBe(false);
+    expect(isAnalyzablePath('demo/src/main/webapp/WEB-INF/classes/com/acme/App.class')).toBe(false);
+    expect(isAnalyzablePath('demo/src/main/webapp/img/logo.PNG')).toBe(false);
+    expect(isAnalyzablePath('demo/src/main/resources/fonts/icons.woff2')).toBe(false);
+    expect(isAnalyzablePath('demo/src/main/resources/bundle.zip')).toBe(false);
+  });
+
+  it('skips binaries and unknown files outside resource directories', () => {
+    expect(isAnalyzablePath('demo/lib/x.jar')).toBe(false);
+    expect(isAnalyzablePath('demo/docs/manual.pdf')).toBe(false);
+    expect(isAnalyzablePath('demo/tools/mvnw')).toBe(false);
+  });
+
+  it('skips everything under ignored directories', () => {
+    expect(isAnalyzablePath('demo/node_modules/left-pad/index.js')).toBe(false);
+    expect(isAnalyzablePath('demo/target/classes/application.properties')).toBe(false);
+    expect(isAnalyzablePath('demo/.git/config')).toBe(false);
+    expect(isAnalyzablePath('__MACOSX/demo/src/App.java')).toBe(false);
+  });
+});
+
+describe('extractArchive (tar)', () => {
+  let workdir: string;
+
+  beforeEach(async () => {
+    workdir = await fs.mkdtemp(path.join(os.tmpdir(), 'archive-extractor-'));
+  });
+
+  afterEach(async () => {
+    await fs.rm(workdir, { recursive: true, force: true });
+  });
+
+  async function extract(archive: Buffer, format: 'tar' | 'tar.gz' = 'tar') {
+    const archivePath = path.join(workdir, `upload.${format}`);
+    await fs.writeFile(archivePath, archive);
+    return extractArchive(archivePath, format, path.join(workdir, 'out'), { limits: LIMITS });
+  }
+
+  it('extracts source files, follows GNU long names and skips binaries', async () => {
+    const longName = `demo/src/main/java/${'nested/'.repeat(20)}Deep.java`;
+    const result = await extract(Buffer.concat([
+      tarEntry('demo/src/App.java', 'class App {}'),
+      tarEntry('././@LongLink', `${longName}\0`, 'L'),
+      tarEntry('demo/src/main/java/nested/Deep.java', 'class Deep {}'),
+      tarEntry('demo/src/main/webapp/WEB-INF/lib/x.jar', Buffer.alloc(2048, 1)),
+      END_OF_ARCHIVE,
+    ]));
+
+    expect(result.extracted).toBe(2);
+    expect(result.skipped).toBe(1);
+    expect(await fs.readFile(path.join(workdir, 'out', 'demo/src/App.java'), 'utf-8')).toBe('class App {}');
+    expect(await fs.readFile(path.join(workdir, 'out', longName), 'utf-8')).toBe('class Deep {}');
+  });
+
+  it('rejects an archive cut in the middle of an entry', async () => {
+    const entry = tarEntry('demo/src/App.java', 'x'.repeat(2000));
+    await expect(extract(entry.subarray(0, 1024))).rejects.toBeInstanceOf(ArchiveLimitError);
+  });
+
+  it('rejects an archive cut in the middle of a header', async () => {
+    const archive = Buffer.concat([tarEntry('demo/src/App.java', 'class App {}'), tarHeader('demo/src/B.java', 10)]);
+    await expect(extract(archive.subarray(0, archive.length - 100))).rejects.toBeInstanceOf(ArchiveLimitError);
+  });
+
+  it('rejects a header with a bad checksum', async () => {
+    const entry = tarEntry('demo/src/App.java', 'class App {}');
+    entry[0] = 'X'.charCodeAt(0);
+    await expect(extract(Buffer.concat([entry, END_OF_ARCHIVE]))).rejects.toBeInstanceOf(ArchiveLimitError);
+  });
+
+  it('rejects a pax path that escapes the destination', async () => {
+    const archive = Buffer.concat([
+      tarEntry('PaxHeaders/App.java', paxRecord('path', '../../evil.java'), 'x'),
+      tarEntry('demo/src/App.java', 'class App {}'),
+      END_OF_ARCHIVE,
+    ]);
+
+    await expect(extract(archive)).rejects.toBeInstanceOf(ArchiveLimitError);
+    expect(await fs.readdir(workdir)).toEqual(['upload.tar']);
+  });
+
+  it('rejects an oversized pax header without reading it', async () => {
+    const archive = Buffer.concat([tarHeader('PaxHeaders/App.java', 2 * 1024 * 1024, 'x'), END_OF_ARCHIVE]);
+    await expect(extract(archive)).rejects.toBeInstanceOf(ArchiveLimitError);
+  });
+
+  it('rejects a tar.gz whose content expands beyond the compression ratio', async () => {
+    // 8 MiB de ceros en una entrada omitida: se descomprime igualmente para avanzar
+    const bomb = gzipSync(Buffer.concat([tarEntry('demo/data.bin', Buffer.alloc(8 * 1024 * 1024)), END_OF_ARCHIVE]));
+    await expect(extract(bomb, 'tar.gz')).rejects.toBeInstanceOf(ArchiveLimitError);
+  });
+});
@@ -0,0 +1,612 @@
+import * as fsSync from 'fs';
+import { promises as fs } from 'fs';
+import * as Seven from 'node-7z';
+import * as path from 'path';
+import { Readable, Transform } from 'stream';
+import { pipeline } from 'stream/promises';
+import * as unzipper from 'unzipper';
+import { v4 as uuidv4 } from 'uuid';
+import { createGunzip } from 'zlib';
+import { BlobStoreService } from './blob-store.service';
+import { DEFAULT_IGNORED_DIRECTORIES } from './project-index';
+
+/**
+ * Extracción selectiva y segura de archivos comprimidos (.zip, .tar, .tar.gz y .7z).
+ *
+ * Solo se materializan en disco los archivos que el análisis usa (código
+ * fuente, archivos de build, configuración y recursos del proyecto); jars,
+ * binarios, node_modules, .git o target se omiten sin escribirse. Antes de
+ * extraer se valida lo que el formato declara (número de entradas, tamaño
+ * total, ratio de compresión, profundidad y rutas) y durante la extracción se
+ * cuentan los bytes reales, porque los tamaños declarados pueden ser falsos.
+ * Todos los formatos se leen por streaming: el archivo nunca se carga entero
+ * en memoria.
+ */
+
+// Extensiones de código que consumen las herramientas, la detección directa y el conteo de LOC
+const SOURCE_EXTENSIONS = [
+  '.java', '.js', '.jsx', '.ts', '.tsx', '.mjs', '.cjs', '.py',
+  '.go', '.c', '.cpp', '.h', '.php', '.rb',
+];
+
+// Archivos de build y de configuración del proyecto
+const BUILD_FILES = [
+  'pom.xml', 'build.gradle', 'build.gradle.kts', 'settings.gradle', 'settings.gradle.kts',
+  'gradle.properties', 'build.xml', 'package.json', 'tsconfig.json', 'requirements.txt',
+  'setup.py', 'pyproject.toml',
+];
+
+// Configuración y recursos: Semgrep y PMD también revisan estos (credenciales en
+// .properties, XML de Spring...) y los validadores de misiones pueden leerlos
+const CONFIG_EXTENSIONS = [
+  '.properties', '.yml', '.yaml', '.xml', '.json', '.toml', '.ini', '.conf', '.cfg',
+  '.txt', '.csv', '.sql', '.env', '.gradle', '.kts', '.html', '.htm', '.jsp', '.css',
+];
+
+// Dentro de estos directorios se conservan también las extensiones no listadas
+// (plantillas, esquemas...): son datos que el programa lee
+const RESOURCE_DIRECTORIES = ['resources', 'webapp'];
+
+// Binarios que nunca se extraen, aunque estén en un directorio de recursos
+const BINARY_EXTENSIONS = [
+  '.jar', '.war', '.ear', '.class', '.zip', '.tar', '.gz', '.tgz', '.7z', '.rar',
+  '.so', '.dll', '.dylib', '.exe', '.bin', '.png', '.jpg', '.jpeg', '.gif', '.bmp',
+  '.ico', '.webp', '.pdf', '.woff', '.woff2', '.ttf', '.otf', '.eot', '.mp3', '.mp4',
+];
+
+const SKIPPED_DIRECTORIES = [...DEFAULT_IGNORED_DIRECTORIES, '__MACOSX'];
+
+export interface ExtractionLimits {
+  /** Entradas máximas en el directorio central */
+  maxEntries: number;
+  /** Bytes descomprimidos máximos entre todos los archivos extraídos */
+  maxTotalBytes: number;
+  /** Bytes descomprimidos máximos por archivo */
+  maxEntryBytes: number;
+  /** Ratio máximo descomprimido/comprimido por archivo */
+  maxCompressionRatio: number;
+  /** Niveles de directorio máximos dentro del archivo */
+  maxDepth: number;
+}
+
+export interface ExtractionOptions {
+  limits?: ExtractionLimits;
+  /** Si se indica, los archivos se guardan en el almacén y se enlazan en el destino */
+  store?: BlobStoreService;
+}
+
+export interface ExtractionResult {
+  extracted: number;
+  skipped: number;
+  bytes: number;
+  /** Archivos cuyo contenido ya estaba en el almacén */
+  deduplicated: number;
+}
+
+export const DEFAULT_EXTRACTION_LIMITS: ExtractionLimits = {
+  maxEntries: Number(process.env.EXTRACT_MAX_ENTRIES) || 20000,
+  maxTotalBytes: Number(process.env.EXTRACT_MAX_TOTAL_BYTES) || 500 * 1024 * 1024,
+  maxEntryBytes: Number(process.env.EXTRACT_MAX_ENTRY_BYTES) || 20 * 1024 * 1024,
+  maxCompressionRatio: Number(process.env.EXTRACT_MAX_COMPRESSION_RATIO) || 200,
+  maxDepth: Number(process.env.EXTRACT_MAX_DEPTH) || 32,
+};
+
+// Por debajo de este tamaño el ratio no se comprueba: los archivos pequeños de texto comprimen mucho
+const RATIO_CHECK_MIN_BYTES = 1024 * 1024;
+const TAR_BLOCK = 512;
+// Cabeceras pax y nombres largos de GNU: metadatos, nunca deberían ser grandes
+const TAR_METADATA_MAX_BYTES = 1024 * 1024;
+const SEVEN_ZIP_BIN = process.env.SEVEN_ZIP_BIN || '7z';
+const S_IFMT = 0o170000;
+const S_IFLNK = 0o120000;
+
+export class ArchiveLimitError extends Error {}
+
+export type ArchiveFormat = 'zip' | 'tar' | 'tar.gz' | '7z';
+
+/** Formato según el nombre del archivo, o null si no es un formato soportado */
+export function archiveFormat(fileName: string): ArchiveFormat | null {
+  const name = fileName.toLowerCase();
+  if (name.endsWith('.tar.gz') || name.endsWith('.tgz')) return 'tar.gz';
+  if (name.endsWith('.tar')) return 'tar';
+  if (name.endsWith('.zip')) return 'zip';
+  if (name.endsWith('.7z')) return '7z';
+  return null;
+}
+
+/** true si la ruta (relativa, con '/') corresponde a un archivo que el análisis necesita */
+export function isAnalyzablePath(entryPath: string): boolean {
+  const segments = entryPath.split('/');
+  const name = segments[segments.length - 1];
+  const directories = segments.slice(0, -1);
+  if (directories.some(segment => SKIPPED_DIRECTORIES.includes(segment))) return false;
+  if (BUILD_FILES.includes(name)) return true;
+  const extension = path.extname(name).toLowerCase();
+  if (directories.some(segment => RESOURCE_DIRECTORIES.includes(segment))) {
+    return !BINARY_EXTENSIONS.includes(extension);
+  }
+  return SOURCE_EXTENSIONS.includes(extension) || CONFIG_EXTENSIONS.includes(extension) || name === '.env';
+}
+
+/**
+ * Bytes descomprimidos aproximados de los archivos que se extraerían, sin
+ * extraer nada; sirve para decidir dónde ubicar el proyecto.
+ */
+export async function estimateExtractedBytes(archivePath: string, format: ArchiveFormat): Promise<number> {
+  switch (format) {
+    case 'zip': {
+      const directory = await unzipper.Open.file(archivePath);
+      let total = 0;
+      for (const entry of directory.files) {
+        if (entry.type === 'File' && isAnalyzablePath(entry.path.replace(/\\/g, '/'))) {
+          total += entry.uncompressedSize;
+        }
+      }
+      return total;
+    }
+    case '7z': {
+      let total = 0;
+      for (const entry of await list7z(archivePath, DEFAULT_EXTRACTION_LIMITS.maxEntries)) {
+        if (!is7zDirectory(entry) && isAnalyzablePath(String(entry.file || '').replace(/\\/g, '/'))) {
+          total += Number(entry.size) || 0;
+        }
+      }
+      return total;
+    }
+    case 'tar':
+      return (await fs.stat(archivePath)).size;
+    case 'tar.gz':
+      return gzipUncompressedSize(archivePath);
+  }
+}
+
+/** Extrae el archivo según su formato, con las mismas reglas y límites para todos */
+export async function extractArchive(
+  archivePath: string,
+  format: ArchiveFormat,
+  destination: string,
+  options: ExtractionOptions = {},
+): Promise<ExtractionResult> {
+  switch (format) {
+    case 'zip':
+      return extractZipSelectively(archivePath, destination, options);
+    case 'tar':
+      return extractTarSelectively(archivePath, destination, false, options);
+    case 'tar.gz':
+      return extractTarSelectively(archivePath, destination, true, options);
+    case '7z':
+      return extract7zSelectively(archivePath, destination, options);
+  }
+}
+
+/**
+ * Selección, validación y escritura de entradas, común a todos los formatos.
+ */
+class SelectiveWriter {
+  readonly result: ExtractionResult = { extracted: 0, skipped: 0, bytes: 0, deduplicated: 0 };
+  private readonly root: string;
+  private entries = 0;
+  private declaredBytes = 0;
+
+  constructor(
+    destination: string,
+    private readonly limits: ExtractionLimits,
+    private readonly store?: BlobStoreService,
+  ) {
+    this.root = path.resolve(destination);
+  }
+
+  /** Cuenta una entrada del archivo (se extraiga o no) contra el máximo */
+  countEntry(total = this.entries + 1): void {
+    this.entries = total;
+    if (this.entries > this.limits.maxEntries) {
+      throw new ArchiveLimitError(`El archivo tiene demasiadas entradas (${this.entries}, máximo ${this.limits.maxEntries})`);
+    }
+  }
+
+  skip(): null {
+    this.result.skipped++;
+    return null;
+  }
+
+  /**
+   * Ruta de destino si la entrada se extrae, o null si se omite. Lanza si la
+   * ruta escapa del destino, anida demasiado o el tamaño declarado excede los límites.
+   */
+  select(rawPath: string, declaredSize: number, compressedSize?: number): string | null {
+    const entryPath = rawPath.replace(/\\/g, '/');
+    if (!isAnalyzablePath(entryPath)) return this.skip();
+
+    const target = path.resolve(this.root, entryPath);
+    if (path.isAbsolute(entryPath) || !target.startsWith(this.root + path.sep)) {
+      throw new ArchiveLimitError(`Ruta no permitida en el archivo: ${rawPath}`);
+    }
+    if (entryPath.split('/').length - 1 > this.limits.maxDepth) {
+      throw new ArchiveLimitError(`Anidamiento de directorios excesivo: ${rawPath}`);
+    }
+    if (declaredSize > this.limits.maxEntryBytes) {
+      throw new ArchiveLimitError(`Archivo demasiado grande dentro del archivo comprimido: ${rawPath}`);
+    }
+    if (compressedSize !== undefined && declaredSize > RATIO_CHECK_MIN_BYTES &&
+        declaredSize / Math.max(compressedSize, 1) > this.limits.maxCompressionRatio) {
+      throw new ArchiveLimitError(`Ratio de compresión sospechoso: ${rawPath}`);
+    }
+    this.declaredBytes += declaredSize;
+    if (this.declaredBytes > this.limits.maxTotalBytes) {
+      throw new ArchiveLimitError(`El contenido descomprimido supera el máximo de ${this.limits.maxTotalBytes} bytes`);
+    }
+    return target;
+  }
+
+  /** Escribe el contenido en target contando los bytes reales contra los límites */
+  async write(source: Readable, target: string, declaredSize: number, label: string): Promise<void> {
+    await fs.mkdir(path.dirname(target), { recursive: true });
+    let entryBytes = 0;
+    const result = this.result;
+    const limits = this.limits;
+    const counter = new Transform({
+      transform(chunk: Buffer, _encoding, callback) {
+        entryBytes += chunk.length;
+        result.bytes += chunk.length;
+        if (entryBytes > Math.max(declaredSize, 0) || entryBytes > limits.maxEntryBytes) {
+          return callback(new ArchiveLimitError(`El tamaño real de ${label} no coincide con el declarado`));
+        }
+        if (result.bytes > limits.maxTotalBytes) {
+          return callback(new ArchiveLimitError(`El contenido descomprimido supera el máximo de ${limits.maxTotalBytes} bytes`));
+        }
+        callback(null, chunk);
+      },
+    });
+    if (this.store) {
+      const blob = await this.store.ingest(source, counter);
+      await this.store.linkInto(blob.sha256, target);
+      if (blob.reused) result.deduplicated++;
+    } else {
+      await pipeline(source, counter, fsSync.createWriteStream(target));
+    }
+    result.extracted++;
+  }
+}
+
+export async function extractZipSelectively(
+  zipPath: string,
+  destination: string,
+  options: ExtractionOptions = {},
+): Promise<ExtractionResult> {
+  const limits = options.limits || DEFAULT_EXTRACTION_LIMITS;
+  const writer = new SelectiveWriter(destination, limits, options.store);
+  const directory = await unzipper.Open.file(zipPath);
+  writer.countEntry(directory.files.length);
+
+  // Validación previa con los tamaños declarados: se rechaza antes de escribir nada
+  const selected: { entry: unzipper.File; target: string }[] = [];
+  for (const entry of directory.files) {
+    const isSymlink = ((entry.externalFileAttributes >>> 16) & S_IFMT) === S_IFLNK;
+    if (entry.type !== 'File' || isSymlink) {
+      writer.skip();
+      continue;
+    }
+    const target = writer.select(entry.path, entry.uncompressedSize, entry.compressedSize);
+    if (target) selected.push({ entry, target });
+  }
+
+  // Extracción contando los bytes reales de cada entrada
+  for (const { entry, target } of selected) {
+    await writer.write(entry.stream(), target, entry.uncompressedSize, entry.path);
+  }
+  return writer.result;
+}
+
+/**
+ * tar y tar.gz: el archivo se lee una sola vez como stream (fs → gunzip → tar)
+ * y cada entrada se escribe o se descarta a medida que llega. En tar los
+ * tamaños de la cabecera son los reales; en tar.gz además se vigila el ratio
+ * entre lo descomprimido y el tamaño del archivo, porque las entradas
+ * omitidas también hay que descomprimirlas.
+ */
+async function extractTarSelectively(
+  archivePath: string,
+  destination: string,
+  gzip: boolean,
+  options: ExtractionOptions,
+): Promise<ExtractionResult> {
+  const limits = options.limits || DEFAULT_EXTRACTION_LIMITS;
+  const writer = new SelectiveWriter(destination, limits, options.store);
+  const archiveSize = (await fs.stat(archivePath)).size;
+
+  const input = fsSync.createReadStream(archivePath);
+  let source: Readable = input;
+  if (gzip) {
+    const gunzip = createGunzip();
+    input.on('error', error => gunzip.destroy(error));
+    source = input.pipe(gunzip);
+  }
+  const reader = new StreamReader(source[Symbol.asyncIterator](), total => {
+    if (gzip && total > RATIO_CHECK_MIN_BYTES && total / Math.max(archiveSize, 1) > limits.maxCompressionRatio) {
+      throw new ArchiveLimitError('Ratio de compresión sospechoso en el archivo tar.gz');
+    }
+  });
+
+  try {
+    // Cabeceras que modifican la entrada siguiente (pax 'x' y nombre largo GNU 'L')
+    let nextPath: string | null = null;
+    let nextSize: number | null = null;
+
+    for (;;) {
+      const header = await reader.read(TAR_BLOCK);
+      // Fin del archivo: bloque a cero, o stream terminado justo entre entradas
+      if (!header && reader.buffered > 0) throw new ArchiveLimitError('Archivo tar truncado');
+      if (!header || header.every(byte => byte === 0)) break;
+      if (!hasValidTarChecksum(header)) {
+        throw new ArchiveLimitError('Cabecera tar inválida o archivo dañado');
+      }
+
+      const type = header[156] === 0 ? '0' : String.fromCharCode(header[156]);
+      let size = parseTarNumber(header.subarray(124, 136));
+
+      if (type === 'x' || type === 'L') {
+        if (size > TAR_METADATA_MAX_BYTES) throw new ArchiveLimitError('Cabecera tar extendida demasiado grande');
+        const data = await reader.read(size + tarPadding(size));
+        if (!data) throw new ArchiveLimitError('Archivo tar truncado');
+        const content = data.subarray(0, size);
+        if (type === 'L') {
+          nextPath = cString(content);
+        } else {
+          const pax = parsePaxRecords(content);
+          if (pax.path) nextPath = pax.path;
+          if (pax.size && /^\d+$/.test(pax.size)) nextSize = Number(pax.size);
+        }
+        continue;
+      }
+
+      const entryPath = nextPath ?? tarHeaderPath(header);
+      if (nextSize !== null) size = nextSize;
+      nextPath = null;
+      nextSize = null;
+
+      writer.countEntry();
+      // Solo archivos regulares; enlaces, directorios y dispositivos se omiten
+      const target = type === '0' || type === '7' ? writer.select(entryPath, size) : writer.skip();
+      if (target) {
+        await writer.write(Readable.from(reader.stream(size)), target, size, entryPath);
+      } else {
+        await reader.skip(size);
+      }
+      if (!(await reader.read(tarPadding(size)))) throw new ArchiveLimitError('Archivo tar truncado');
+    }
+  } finally {
+    input.destroy();
+  }
+
+  return writer.result;
+}
+
+/**
+ * 7z: se lista el archivo (sin descomprimir) para validar y elegir entradas, y
+ * el binario 7z extrae solo esas rutas a un directorio temporal dentro del
+ * destino. Desde ahí pasan a su sitio (o al almacén) con los mismos contadores
+ * que el resto de formatos, y solo si son archivos regulares.
+ */
+async function extract7zSelectively(
+  archivePath: string,
+  destination: string,
+  options: ExtractionOptions,
+): Promise<ExtractionResult> {
+  const limits = options.limits || DEFAULT_EXTRACTION_LIMITS;
+  const writer = new SelectiveWriter(destination, limits, options.store);
+
+  const selected: { file: string; target: string; size: number }[] = [];
+  for (const entry of await list7z(archivePath, limits.maxEntries)) {
+    writer.countEntry();
+    const file = String(entry.file || '');
+    const size = Number(entry.size) || 0;
+    const target = file && !is7zDirectory(entry) && !is7zSymlink(entry) ? writer.select(file, size) : writer.skip();
+    if (target) selected.push({ file, target, size });
+  }
+  if (selected.length === 0) return writer.result;
+
+  const staging = path.join(path.resolve(destination), `.extract-${uuidv4()}`);
+  const listFile = `${staging}.lst`;
+  try {
+    await fs.mkdir(staging, { recursive: true });
+    await fs.writeFile(listFile, selected.map(entry => entry.file).join('\n'), 'utf-8');
+    // -spd: las rutas de la lista son literales (sin comodines)
+    await run7z(Seven.extractFull(archivePath, staging, {
+      $bin: SEVEN_ZIP_BIN,
+      $raw: ['-spd', '-scsUTF-8', `-i@${listFile}`],
+    }));
+
+    for (const { file, target, size } of selected) {
+      const staged = path.resolve(staging, file);
+      const stat = staged.startsWith(staging + path.sep) ? await fs.lstat(staged).catch(() => null) : null;
+      if (!stat || !stat.isFile()) {
+        writer.skip();
+        continue;
+      }
+      await writer.write(fsSync.createReadStream(staged), target, size, file);
+      await fs.rm(staged, { force: true });
+    }
+  } finally {
+    await fs.rm(staging, { recursive: true, force: true });
+    await fs.rm(listFile, { force: true });
+  }
+
+  return writer.result;
+}
+
+/**
+ * Lector de un stream en bloques exactos. Las cabeceras se leen completas; el
+ * contenido de las entradas se entrega en trozos sin juntarlo en memoria.
+ */
+class StreamReader {
+  private buffer = Buffer.alloc(0);
+  private ended = false;
+  private total = 0;
+
+  constructor(
+    private readonly iterator: AsyncIterator<Buffer>,
+    private readonly onData: (totalBytes: number) => void,
+  ) {}
+
+  /** Bytes leídos del stream que todavía no se han consumido */
+  get buffered(): number {
+    return this.buffer.length;
+  }
+
+  /** Exactamente length bytes, o null si el stream termina antes */
+  async read(length: number): Promise<Buffer | null> {
+    while (this.buffer.length < length && !this.ended) await this.pull();
+    if (this.buffer.length < length) return null;
+    const chunk = this.buffer.subarray(0, length);
+    this.buffer = this.buffer.subarray(length);
+    return chunk;
+  }
+
+  async *stream(length: number): AsyncGenerator<Buffer> {
+    let remaining = length;
+    while (remaining > 0) {
+      if (this.buffer.length === 0) {
+        if (this.ended) throw new ArchiveLimitError('Archivo tar truncado');
+        await this.pull();
+        continue;
+      }
+      const chunk = this.buffer.subarray(0, Math.min(remaining, this.buffer.length));
+      this.buffer = this.buffer.subarray(chunk.length);
+      remaining -= chunk.length;
+      yield chunk;
+    }
+  }
+
+  /** Descarta length bytes sin escribirlos */
+  async skip(length: number): Promise<void> {
+    const chunks = this.stream(length);
+    while (!(await chunks.next()).done) {
+      // Solo avanzar
+    }
+  }
+
+  private async pull(): Promise<void> {
+    const { value, done } = await this.iterator.next();
+    if (done) {
+      this.ended = true;
+      return;
+    }
+    this.total += value.length;
+    this.onData(this.total);
+    this.buffer = this.buffer.length > 0 ? Buffer.concat([this.buffer, value]) : value;
+  }
+}
+
+function tarPadding(size: number): number {
+  return (TAR_BLOCK - (size % TAR_BLOCK)) % TAR_BLOCK;
+}
+
+/** Números de cabecera: octal en ASCII, o base 256 (bit alto) para tamaños grandes */
+function parseTarNumber(field: Buffer): number {
+  if (field[0] & 0x80) {
+    let value = field[0] & 0x7f;
+    for (let i = 1; i < field.length; i++) value = value * 256 + field[i];
+    return value;
+  }
+  const text = cString(field).trim();
+  return text ? parseInt(text, 8) : 0;
+}
+
+function hasValidTarChecksum(header: Buffer): boolean {
+  let sum = 0;
+  for (let i = 0; i < TAR_BLOCK; i++) {
+    // El campo del checksum cuenta como espacios
+    sum += i >= 148 && i < 156 ? 0x20 : header[i];
+  }
+  return sum === parseTarNumber(header.subarray(148, 156));
+}
+
+/** Ruta de la cabecera: prefix + name en ustar POSIX (GNU usa ese campo para otra cosa) */
+function tarHeaderPath(header: Buffer): string {
+  const name = cString(header.subarray(0, 100));
+  const isUstar = header.subarray(257, 263).toString('latin1') === 'ustar\0';
+  const prefix = isUstar ? cString(header.subarray(345, 500)) : '';
+  return prefix ? `${prefix}/${name}` : name;
+}
+
+/** Registros pax: "<longitud> <clave>=<valor>\n" */
+function parsePaxRecords(content: Buffer): Record<string, string> {
+  const records: Record<string, string> = {};
+  let offset = 0;
+  while (offset < content.length) {
+    const space = content.indexOf(0x20, offset);
+    const length = parseInt(content.subarray(offset, space).toString('latin1'), 10);
+    if (space < 0 || !length) break;
+    const record = content.subarray(space + 1, offset + length - 1).toString('utf-8');
+    const equals = record.indexOf('=');
+    if (equals > 0) records[record.slice(0, equals)] = record.slice(equals + 1);
+    offset += length;
+  }
+  return records;
+}
+
+function cString(field: Buffer): string {
+  const end = field.indexOf(0);
+  return field.subarray(0, end < 0 ? field.length : end).toString('utf-8');
+}
+
+/** Tamaño descomprimido del trailer gzip (ISIZE, módulo 2^32): sin descomprimir nada */
+async function gzipUncompressedSize(archivePath: string): Promise<number> {
+  const handle = await fs.open(archivePath, 'r');
+  try {
+    const { size } = await handle.stat();
+    if (size < 18) return size;
+    const trailer = Buffer.alloc(4);
+    await handle.read(trailer, 0, 4, size - 4);
+    return Math.max(trailer.readUInt32LE(0), size);
+  } finally {
+    await handle.close();
+  }
+}
+
+interface SevenZipEntry {
+  file?: string;
+  size?: number | string;
+  attributes?: string;
+}
+
+/** Lista del archivo 7z (solo lee las cabeceras) */
+function list7z(archivePath: string, maxEntries: number): Promise<SevenZipEntry[]> {
+  return new Promise((resolve, reject) => {
+    const entries: SevenZipEntry[] = [];
+    const stream = Seven.list(archivePath, { $bin: SEVEN_ZIP_BIN });
+    stream.on('data', (entry: SevenZipEntry) => {
+      entries.push(entry);
+      if (entries.length > maxEntries) {
+        stream.destroy();
+        reject(new ArchiveLimitError(`El archivo tiene demasiadas entradas (más de ${maxEntries})`));
+      }
+    });
+    stream.on('end', () => resolve(entries));
+    stream.on('error', error => reject(sevenZipError(error)));
+  });
+}
+
+function run7z(stream: any): Promise<void> {
+  return new Promise((resolve, reject) => {
+    stream.on('data', () => undefined);
+    stream.on('end', () => resolve());
+    stream.on('error', error => reject(sevenZipError(error)));
+  });
+}
+
+function sevenZipError(error: Error): Error {
+  if (/ENOENT/.test(error.message)) {
+    return new Error(`7z no está instalado en el servidor (binario: ${SEVEN_ZIP_BIN})`);
+  }
+  return error;
+}
+
+// Atributos de 7z: "D...." en Windows, "D_ drwxr-xr-x" / "A_ lrwxrwxrwx" con permisos Unix
+function is7zDirectory(entry: SevenZipEntry): boolean {
+  return /^D|\sd/.test(entry.attributes || '');
+}
+
+function is7zSymlink(entry: SevenZipEntry): boolean {
+  return /\sl/.test(entry.attributes || '');
+}
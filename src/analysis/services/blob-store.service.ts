@@ -0,0 +1,184 @@
+import { Injectable, Logger } from '@nestjs/common';
+import { createHash } from 'crypto';
+import * as fsSync from 'fs';
+import { promises as fs } from 'fs';
+import * as path from 'path';
+import { Readable, Transform } from 'stream';
+import { pipeline } from 'stream/promises';
+import { v4 as uuidv4 } from 'uuid';
+import { UPLOADS_DIR } from './upload-storage';
+
+/**
+ * Almacén de contenido direccionado por SHA-256 (uploads/.blobs/ab/cd/<sha256>).
+ *
+ * Los archivos extraídos y los ZIP subidos se guardan una sola vez y se
+ * enlazan (hardlink, o reflink/copia si no es posible) en el directorio de
+ * cada análisis, así que los proyectos repetidos comparten el mismo inode.
+ *
+ * Los blobs son de solo lectura: quien necesite modificar un archivo enlazado
+ * debe reemplazarlo (writeFileDetached) en lugar de escribir encima.
+ */
+
+export const BLOB_STORE_DIR = path.join(UPLOADS_DIR, '.blobs');
+const BLOB_TMP_DIR = path.join(BLOB_STORE_DIR, 'tmp');
+const BLOB_MODE = 0o444;
+// Margen antes de borrar temporales abandonados o blobs sin enlaces: evita
+// competir con una extracción que acaba de reutilizar el blob y aún no lo enlazó
+const PRUNE_GRACE_MS = 60 * 60 * 1000;
+
+export interface StoredBlob {
+  sha256: string;
+  size: number;
+  /** true si el contenido ya estaba en el almacén */
+  reused: boolean;
+}
+
+@Injectable()
+export class BlobStoreService {
+  private readonly logger = new Logger(BlobStoreService.name);
+
+  blobPath(sha256: string): string {
+    return path.join(BLOB_STORE_DIR, sha256.slice(0, 2), sha256.slice(2, 4), sha256);
+  }
+
+  /**
+   * Escribe el stream en el almacén calculando el hash por el camino.
+   * Si el contenido ya existía, el temporal se descarta.
+   */
+  async ingest(source: Readable, ...transforms: Transform[]): Promise<StoredBlob> {
+    await fs.mkdir(BLOB_TMP_DIR, { recursive: true });
+    const tmpPath = path.join(BLOB_TMP_DIR, uuidv4());
+    const hash = createHash('sha256');
+    let size = 0;
+    const hasher = new Transform({
+      transform(chunk: Buffer, _encoding, callback) {
+        hash.update(chunk);
+        size += chunk.length;
+        callback(null, chunk);
+      },
+    });
+
+    try {
+      await pipeline([source, ...transforms, hasher, fsSync.createWriteStream(tmpPath)]);
+    } catch (error) {
+      await fs.rm(tmpPath, { force: true });
+      throw error;
+    }
+
+    const sha256 = hash.digest('hex');
+    const reused = await this.publish(tmpPath, sha256);
+    return { sha256, size, reused };
+  }
+
+  /** Mueve al almacén un archivo ya escrito cuyo hash se conoce (p. ej. una subida) */
+  async adopt(filePath: string, sha256: string): Promise<boolean> {
+    return this.publish(filePath, sha256);
+  }
+
+  /** Materializa el blob en target: hardlink, y si no se puede, reflink o copia */
+  async linkInto(sha256: string, target: string): Promise<void> {
+    const blob = this.blobPath(sha256);
+    await fs.mkdir(path.dirname(target), { recursive: true });
+    // Reemplazar (nunca escribir encima): el destino podría ser otro enlace al almacén
+    await fs.rm(target, { force: true });
+    try {
+      await fs.link(blob, target);
+    } catch (error) {
+      // EXDEV: otro sistema de archivos; EMLINK: demasiados enlaces; EPERM: el FS no admite hardlinks
+      if (!['EXDEV', 'EMLINK', 'EPERM'].includes(error.code)) throw error;
+      await fs.copyFile(blob, target, fsSync.constants.COPYFILE_FICLONE);
+    }
+  }
+
+  /**
+   * Elimina los blobs que ya no están enlazados desde ningún análisis
+   * (un solo enlace: el del propio almacén) y los temporales abandonados.
+   */
+  async prune(): Promise<{ removed: number; bytes: number }> {
+    let removed = 0;
+    let bytes = 0;
+    const now = Date.now();
+
+    const removeIf = async (filePath: string, isOrphan: (stat: fsSync.Stats) => boolean) => {
+      try {
+        const stat = await fs.stat(filePath);
+        if (stat.isFile() && isOrphan(stat)) {
+          await fs.rm(filePath, { force: true });
+          removed++;
+          bytes += stat.size;
+        }
+      } catch {
+        // Eliminado concurrentemente
+      }
+    };
+
+    for (const tmp of await this.listDirectory(BLOB_TMP_DIR)) {
+      await removeIf(path.join(BLOB_TMP_DIR, tmp), stat => now - stat.mtimeMs > PRUNE_GRACE_MS);
+    }
+    for (const shard of await this.listDirectory(BLOB_STORE_DIR)) {
+      if (shard === 'tmp') continue;
+      const shardPath = path.join(BLOB_STORE_DIR, shard);
+      for (const sub of await this.listDirectory(shardPath)) {
+        const subPath = path.join(shardPath, sub);
+        for (const blob of await this.listDirectory(subPath)) {
+          await removeIf(path.join(subPath, blob), stat => stat.nlink <= 1 && now - stat.mtimeMs > PRUNE_GRACE_MS);
+        }
+      }
+    }
+
+    if (removed > 0) {
+      this.logger.log(`🧹 Blobs huérfanos eliminados: ${removed} (${(bytes / 1024 / 1024).toFixed(1)} MB)`);
+    }
+    return { removed, bytes };
+  }
+
+  /** Publica el archivo como blob; devuelve true si el contenido ya existía */
+  private async publish(filePath: string, sha256: string): Promise<boolean> {
+    const blob = this.blobPath(sha256);
+    if (await this.exists(blob)) {
+      // Contenido ya almacenado: el nuevo archivo sobra. Se renueva la fecha para que prune no lo borre
+      await fs.rm(filePath, { force: true });
+      const now = new Date();
+      await fs.utimes(blob, now, now).catch(() => undefined);
+      return true;
+    }
+    await fs.mkdir(path.dirname(blob), { recursive: true });
+    await fs.chmod(filePath, BLOB_MODE);
+    try {
+      await fs.rename(filePath, blob);
+    } catch (error) {
+      if (error.code !== 'EXDEV') throw error;
+      await fs.copyFile(filePath, blob, fsSync.constants.COPYFILE_FICLONE);
+      await fs.chmod(blob, BLOB_MODE);
+      await fs.rm(filePath, { force: true });
+    }
+    return false;
+  }
+
+  private async exists(filePath: string): Promise<boolean> {
+    try {
+      await fs.access(filePath);
+      return true;
+    } catch {
+      return false;
+    }
+  }
+
+  private async listDirectory(dir: string): Promise<string[]> {
+    try {
+      return await fs.readdir(dir);
+    } catch {
+      return [];
+    }
+  }
+}
+
+/**
+ * Reemplaza el contenido de un archivo sin tocar el inode original: escribe un
+ * temporal y lo renombra encima. Necesario para archivos enlazados al almacén.
+ */
+export async function writeFileDetached(filePath: string, content: string): Promise<void> {
+  const tmpPath = `${filePath}.${uuidv4()}.tmp`;
+  await fs.writeFile(tmpPath, content, 'utf-8');
+  await fs.rename(tmpPath, filePath);
+}
@@ -1,18 +1,24 @@
 import { Injectable, Logger } from '@nestjs/common';
 import { promises as fs } from 'fs';
-import * as fsSync from 'fs';
 import * as path from 'path';
-import * as unzipper from 'unzipper';
 import { v4 as uuidv4 } from 'uuid';
-import { exec } from 'child_process';
-import { promisify } from 'util';
-
-const execAsync = promisify(exec);
+import { ArchiveFormat, DEFAULT_EXTRACTION_LIMITS, archiveFormat, estimateExtractedBytes, extractArchive } from './archive-extractor';
+import { BlobStoreService } from './blob-store.service';
+import { ProjectIndex } from './project-index';
+import { RepositoryCheckout, RepositoryMirrorService } from './repository-mirror.service';
+import { UPLOADS_DIR, UploadedArchive } from './upload-storage';
+import { WorkspaceAllocation, WorkspaceAllocatorService } from './workspace-allocator.service';
 
 @Injectable()
 export class FileService {
   private readonly logger = new Logger(FileService.name);
-  private readonly uploadsDir = path.join(process.cwd(), 'uploads');
+  private readonly uploadsDir = UPLOADS_DIR;
+
+  constructor(
+    private readonly blobStore: BlobStoreService,
+    private readonly repositoryMirrors: RepositoryMirrorService,
+    private readonly allocator: WorkspaceAllocatorService,
+  ) {}
 
   async ensureUploadsDir(): Promise<void> {
     try {
@@ -23,42 +29,67 @@ export class FileService {
     }
   }
 
-  async saveAndExtractFile(fileBuffer: Buffer, originalName: string): Promise<string> {
-    this.logger.log(`=== [INICIO] SAVING FILE: ${originalName} (${fileBuffer.length} bytes) ===`);
+  /**
+   * Mueve la subida (ya escrita a disco por HashingDiskStorage) al directorio
+   * del proyecto y la extrae desde ahí. El archivo nunca se carga en memoria.
+   * Los proyectos pequeños se extraen en RAM (tmpfs) si está configurado.
+   */
+  async saveAndExtractFile(upload: UploadedArchive): Promise<string> {
+    const originalName = upload.originalName;
+    this.logger.log(`=== [INICIO] SAVING FILE: ${originalName} (${upload.size} bytes, sha256 ${upload.sha256}) ===`);
     
     // Validar que no sea archivo .rar
     const ext = path.extname(originalName).toLowerCase();
     if (ext === '.rar') {
-      const error = 'Los archivos .rar no están soportados. Por favor usa archivos .zip';
+      const error = 'Los archivos .rar no están soportados. Por favor usa archivos .zip, .tar, .tar.gz o .7z';
       this.logger.error(`[ERROR] ${error}`);
       throw new Error(error);
     }
     
+    let workspace: WorkspaceAllocation | null = null;
     try {
       this.logger.log(`[PASO 1] Verificando directorio uploads...`);
       await this.ensureUploadsDir();
       
       const projectId = uuidv4();
-      const projectDir = path.join(this.uploadsDir, projectId);
-      this.logger.log(`[PASO 2] Creando directorio proyecto: ${projectDir}`);
-      await fs.mkdir(projectDir, { recursive: true });
-
-      const filePath = path.join(projectDir, originalName);
-      this.logger.log(`[PASO 3] Escribiendo archivo en: ${filePath}`);
-      await fs.writeFile(filePath, fileBuffer);
+      const format = archiveFormat(originalName);
+      // Tamaño extraído según las cabeceras del archivo; uno ilegible falla después al extraer
+      const estimatedBytes = format
+        ? await estimateExtractedBytes(upload.path, format).catch(() => Infinity)
+        : upload.size;
+      workspace = await this.allocator.allocate(projectId, estimatedBytes);
+      const projectDir = workspace.path;
+      this.logger.log(`[PASO 2] Directorio proyecto: ${projectDir}${workspace.inMemory ? ' (RAM)' : ''}`);
+
+      const filePath = path.join(projectDir, path.basename(originalName));
+      let archivePath = filePath;
+      if (workspace.inMemory && format) {
+        // En RAM el archivo no se copia al workspace: se extrae desde la subida y después se descarta
+        archivePath = upload.path;
+        this.logger.log(`[PASO 3] Extrayendo directamente desde la subida: ${archivePath}`);
+      } else if (upload.sha256) {
+        this.logger.log(`[PASO 3] Moviendo archivo a: ${filePath}`);
+        // El ZIP se guarda una sola vez en el almacén y se enlaza en el proyecto
+        const reused = await this.blobStore.adopt(upload.path, upload.sha256);
+        await this.blobStore.linkInto(upload.sha256, filePath);
+        if (reused) this.logger.log(`[PASO 3] Archivo idéntico ya almacenado (sha256 ${upload.sha256})`);
+      } else {
+        this.logger.log(`[PASO 3] Moviendo archivo a: ${filePath}`);
+        await this.moveFile(upload.path, filePath);
+      }
 
       // Verificar que el archivo se escribió correctamente
-      const stats = await fs.stat(filePath);
+      const stats = await fs.stat(archivePath);
       this.logger.log(`[PASO 3 VERIFICADO] Archivo guardado correctamente. Tamaño en disco: ${stats.size} bytes`);
 
       // Extraer archivo según su tipo
-      if (this.isCompressedFile(originalName)) {
-        const ext = path.extname(originalName).toLowerCase();
-        this.logger.log(`[PASO 4] Archivo comprimido detectado: ${originalName} (extensión: ${ext})`);
+      if (format) {
+        this.logger.log(`[PASO 4] Archivo comprimido detectado: ${originalName} (formato: ${format})`);
         
         this.logger.log(`[PASO 5] Iniciando extracción...`);
-        await this.extractFile(filePath, projectDir);
+        await this.extractFile(archivePath, format, workspace);
         this.logger.log(`[PASO 5 COMPLETADO] Archivo extraído en: ${projectDir}`);
+        if (archivePath === upload.path) await fs.rm(upload.path, { force: true });
         
         // Verificar contenido extraído
         const extractedContents = await fs.readdir(projectDir);
@@ -73,93 +104,53 @@ export class FileService {
       this.logger.error(`=== [ERROR CRÍTICO] saveAndExtractFile falló ===`);
       this.logger.error(`Error: ${error.message}`);
       this.logger.error(`Stack: ${error.stack}`);
+      if (workspace) {
+        this.allocator.release(workspace.path);
+        await fs.rm(workspace.path, { recursive: true, force: true }).catch(() => undefined);
+      }
       throw error;
     }
   }
 
-  private isCompressedFile(filename: string): boolean {
-    const ext = path.extname(filename).toLowerCase();
-    return ['.zip', '.7z', '.tar', '.tar.gz'].includes(ext);
-  }
-
-  private async extractFile(filePath: string, extractDir: string): Promise<void> {
-    const ext = path.extname(filePath).toLowerCase();
-    this.logger.log(`[EXTRACT] Procesando archivo con extensión: ${ext}`);
-    
+  private async moveFile(source: string, destination: string): Promise<void> {
     try {
-      if (ext === '.zip') {
-        this.logger.log(`[EXTRACT ZIP] Iniciando extracción ZIP de: ${filePath}`);
-        await this.extractZipFile(filePath, extractDir);
-        this.logger.log(`[EXTRACT ZIP] Completado exitosamente`);
-      } else {
-        this.logger.warn(`[EXTRACT] Tipo de archivo ${ext} no requiere extracción o no está soportado`);
-      }
+      await fs.rename(source, destination);
     } catch (error) {
-      this.logger.error(`[EXTRACT ERROR] Error extrayendo archivo ${filePath}: ${error.message}`);
-      this.logger.error(`[EXTRACT ERROR] Stack: ${error.stack}`);
-      throw new Error(`Error al extraer el archivo: ${error.message}`);
+      // uploads/ montado en otro sistema de archivos: copiar y borrar
+      if (error.code !== 'EXDEV') throw error;
+      await fs.copyFile(source, destination);
+      await fs.rm(source, { force: true });
     }
   }
 
-  private async extractZipFile(zipPath: string, extractDir: string): Promise<void> {
-    this.logger.log(`Extrayendo ZIP: ${zipPath} -> ${extractDir}`);
+  private async extractFile(filePath: string, format: ArchiveFormat, workspace: WorkspaceAllocation): Promise<void> {
+    const extractDir = workspace.path;
+    this.logger.log(`[EXTRACT] Extrayendo ${format}: ${filePath} -> ${extractDir}`);
     
     try {
-      await fsSync.createReadStream(zipPath)
-        .pipe(unzipper.Extract({ path: extractDir }))
-        .promise();
+      // Solo se escriben los archivos analizables, con límites contra archivos bomba.
+      // En disco los archivos se deduplican en el almacén de blobs y se enlazan en extractDir;
+      // en RAM se escriben directamente (el almacén está en disco) y la cuota del trabajo limita el total
+      const result = await extractArchive(filePath, format, extractDir, workspace.inMemory
+        ? { limits: { ...DEFAULT_EXTRACTION_LIMITS, maxTotalBytes: Math.min(DEFAULT_EXTRACTION_LIMITS.maxTotalBytes, workspace.quotaBytes) } }
+        : { store: this.blobStore });
       
-      this.logger.log(`ZIP extraído exitosamente`);
+      this.logger.log(`[EXTRACT] Completado: ${result.extracted} archivos (${result.bytes} bytes, ${result.deduplicated} ya almacenados), ${result.skipped} entradas omitidas`);
     } catch (error) {
-      this.logger.error(`Error extrayendo ZIP: ${error.message}`);
-      throw error;
-    }
-  }
-
-  async findProjectFiles(projectDir: string): Promise<{
-    javaFiles: string[];
-    pythonFiles: string[];
-    jsFiles: string[];
-    allFiles: string[];
-  }> {
-    const files = await this.walkDirectory(projectDir);
-    
-    return {
-      javaFiles: files.filter(f => f.endsWith('.java')),
-      pythonFiles: files.filter(f => f.endsWith('.py')),
-      jsFiles: files.filter(f => f.endsWith('.js') || f.endsWith('.ts') || f.endsWith('.jsx') || f.endsWith('.tsx')),
-      allFiles: files
-    };
-  }
-
-  private async walkDirectory(dir: string): Promise<string[]> {
-    const files: string[] = [];
-    const items = await fs.readdir(dir);
-
-    for (const item of items) {
-      const fullPath = path.join(dir, item);
-      const stat = await fs.stat(fullPath);
-
-      if (stat.isDirectory()) {
-        // Evitar directorios de dependencias y build
-        if (!['node_modules', 'target', 'build', 'dist', '.git'].includes(item)) {
-          files.push(...await this.walkDirectory(fullPath));
-        }
-      } else {
-        files.push(fullPath);
-      }
+      this.logger.error(`[EXTRACT ERROR] Error extrayendo archivo ${filePath}: ${error.message}`);
+      this.logger.error(`[EXTRACT ERROR] Stack: ${error.stack}`);
+      throw new Error(`Error al extraer el archivo: ${error.message}`);
     }
-
-    return files;
   }
 
-  async cleanupProject(projectDir: string): Promise<void> {
-    try {
-      await fs.rm(projectDir, { recursive: true, force: true });
-      this.logger.log(`Proyecto limpiado: ${projectDir}`);
-    } catch (error) {
-      this.logger.error(`Error limpiando proyecto: ${error.message}`);
-    }
+  /**
+   * Construye el índice de archivos del proyecto en un único recorrido.
+   * El índice se reutiliza después en todas las herramientas del análisis.
+   */
+  async findProjectFiles(projectDir: string): Promise<ProjectIndex> {
+    const index = await ProjectIndex.build(projectDir);
+    this.logger.log(`📇 Índice del proyecto: ${index.files.length} archivos`);
+    return index;
   }
 
   async readFileContent(filePath: string): Promise<string> {
@@ -171,56 +162,36 @@ export class FileService {
     }
   }
 
-  async cloneRepository(repositoryUrl: string, analysisId: string): Promise<string> {
+  /**
+   * Prepara repo_<analysisId> a partir del mirror local del repositorio:
+   * solo se descarga lo nuevo desde el último análisis del mismo repositorio.
+   */
+  async cloneRepository(repositoryUrl: string, analysisId: string): Promise<RepositoryCheckout> {
     this.logger.log(`🔄 Iniciando clonación de repositorio: ${repositoryUrl}`);
-    
-    try {
-      // Crear directorio para el repositorio clonado
-      await this.ensureUploadsDir();
-      
-      const cloneDir = path.join(this.uploadsDir, `repo_${analysisId}`);
-      
-      // Verificar que el directorio no exista
-      try {
-        await fs.access(cloneDir);
-        // Si existe, eliminarlo
-        await fs.rm(cloneDir, { recursive: true, force: true });
-      } catch {
-        // No existe, es lo que queremos
-      }
-      
-      // Crear directorio
-      await fs.mkdir(cloneDir, { recursive: true });
-      this.logger.log(`📁 Directorio creado: ${cloneDir}`);
-
-      // Ejecutar git clone con timeout
-      const gitCommand = `git clone --depth 1 "${repositoryUrl}" "${cloneDir}"`;
-      this.logger.log(`⏳ Ejecutando comando git: ${gitCommand}`);
-      
-      try {
-        await execAsync(gitCommand, { 
-          timeout: 60000, // 60 segundos max
-          maxBuffer: 5 * 1024 * 1024 
-        });
-        this.logger.log(`✅ Repositorio clonado exitosamente`);
-      } catch (execError: any) {
-        this.logger.error(`❌ Error ejecutando git: ${execError.message}`);
-        
-        // Limpiar el directorio en caso de error
-        try {
-          await fs.rm(cloneDir, { recursive: true, force: true });
-        } catch {
-          // Ignorar error de limpieza
-        }
-        
-        throw new Error(`No se pudo clonar el repositorio: ${execError.message}`);
-      }
+    await this.ensureUploadsDir();
 
-      return cloneDir;
-      
+    let workspace: WorkspaceAllocation | null = null;
+    try {
+      const startedAt = Date.now();
+      const revision = await this.repositoryMirrors.sync(repositoryUrl);
+      // El tamaño del commit solo hace falta si hay tmpfs donde ubicarlo
+      const estimatedBytes = this.allocator.inMemoryEnabled ? await this.repositoryMirrors.treeBytes(revision) : Infinity;
+      workspace = await this.allocator.allocate(`repo_${analysisId}`, estimatedBytes);
+      const checkout = await this.repositoryMirrors.checkout(revision, workspace.path);
+      this.logger.log(`✅ Repositorio listo en ${Date.now() - startedAt} ms (commit ${checkout.commitSha.slice(0, 12)}${workspace.inMemory ? ', en RAM' : ''})`);
+      return checkout;
     } catch (error) {
-      this.logger.error(`🔴 Error en cloneRepository: ${error.message}`);
-      throw error;
+      this.logger.error(`❌ Error ejecutando git: ${error.message}`);
+      if (workspace) {
+        this.allocator.release(workspace.path);
+        await fs.rm(workspace.path, { recursive: true, force: true }).catch(() => undefined);
+      }
+      throw new Error(`No se pudo clonar el repositorio: ${error.message}`);
     }
   }
+
+  /** Archivos cambiados entre dos commits de un checkout (null si no se puede calcular) */
+  async changedFilesBetween(checkoutDir: string, fromSha: string, toSha: string): Promise<string[] | null> {
+    return this.repositoryMirrors.changedFiles(checkoutDir, fromSha, toSha);
+  }
 }
\ No newline at end of file
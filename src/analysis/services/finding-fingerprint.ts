@@ -0,0 +1,229 @@
+import { createHash } from 'crypto';
+import * as fs from 'fs';
+import * as path from 'path';
+import { JavaStatement, describeEnclosing, parseJava, tokenizeJava } from '../scanners';
+import { SourceScanResult, indexLines } from './source-scan.service';
+
+/**
+ * Huella estable de un hallazgo: hash de la regla, la ruta relativa canónica,
+ * el método/clase que lo contiene y los tokens del código alrededor de la línea.
+ *
+ * No incluye el número de línea: si el código se desplaza (líneas añadidas
+ * arriba, reformateo) la huella no cambia, y saber si una misión sigue
+ * abierta tras un re-análisis es buscar su huella en un Set.
+ *
+ * En Java el método y el código salen del tokenizador y el parser de la
+ * detección directa: los tokens de las sentencias completas que tocan la
+ * línea, así que ni comentarios, ni espacios, ni llaves movidas de línea
+ * cambian la huella. En el resto de lenguajes, un recorrido ligero por líneas.
+ *
+ * El código sale siempre del archivo completo: si no está entre las fuentes
+ * leídas (configuración, otros lenguajes, o un llamador que solo pasa las
+ * cambiadas) se lee de disco. Así un hallazgo arrastrado de un archivo sin
+ * cambios en un re-análisis incremental da la misma huella que en un análisis
+ * completo; solo un archivo ilegible usa el código que trae el hallazgo.
+ */
+
+// Distancia máxima a la línea con código vecina que forma parte del contexto
+const MAX_CONTEXT_DISTANCE = 5;
+// Máximo de líneas hacia atrás para encontrar el método y la clase que lo contienen
+const MAX_SCOPE_SCAN_LINES = 2000;
+
+const CLASS_DECLARATION = /\b(?:class|interface|enum|record)\s+([A-Za-z_$][\w$]*)/;
+const FUNCTION_DECLARATION = /\bfunction\s*\*?\s*([A-Za-z_$][\w$]*)\s*\(/;
+const METHOD_DECLARATION = /([A-Za-z_$][\w$]*)\s*\([^;]*$/;
+const NOT_A_METHOD = /^(?:if|for|while|switch|catch|synchronized|return|new|else|do|try)$/;
+const TOKEN = /[A-Za-z_$][\w$]*|\d[\w.]*|"(?:\\.|[^"\\])*"|'(?:\\.|[^'\\])*'|`(?:\\.|[^`\\])*`|\S/g;
+
+/** Sentencias que empiezan o continúan en cada línea de un archivo Java, en orden */
+interface JavaStructure {
+  statementsByLine: Map<number, JavaStatement[]>;
+}
+
+export class FindingFingerprinter {
+  // Cada archivo Java se tokeniza y parsea una sola vez por instancia
+  private readonly javaStructures = new Map<string, JavaStructure | null>();
+  // Archivos del proyecto que no venían en sources, leídos una sola vez
+  private readonly diskSources = new SourceScanResult(new Map(), []);
+  private readonly unreadable = new Set<string>();
+
+  /**
+   * @param root raíz del proyecto analizado (se quita de las rutas absolutas)
+   * @param sources fuentes ya leídas; el resto de archivos bajo root se lee de disco
+   */
+  constructor(private readonly root: string, private readonly sources?: SourceScanResult) {}
+
+  /** Huella (SHA-256 hex) del hallazgo, o null si no tiene regla ni archivo */
+  fingerprint(tool: string, finding: any): string | null {
+    if (!finding || typeof finding !== 'object') return null;
+    const rule = (finding.check_id || finding.rule || finding.type || finding.$?.type || '').toString();
+    const filePath = (finding.path || finding.file || finding.sourcefile || finding.fileName ||
+      finding.sourceLine?.sourcefile || '').toString();
+    if (!rule || !filePath) return null;
+
+    const line = Number(finding.start?.line || finding.sourceLine?.beginline || finding.line || finding.startLine || 0);
+    const canonicalPath = this.canonicalPath(filePath, finding);
+    const sourcePath = this.sources?.resolve(this.absolute(filePath)) || this.sources?.resolve(canonicalPath) ||
+      this.readFromDisk(this.absolute(filePath));
+
+    const java = sourcePath && line && sourcePath.endsWith('.java') ? this.javaStructure(sourcePath) : null;
+    // Con la fuente disponible todo sale del código (igual para un hallazgo nuevo y uno arrastrado)
+    let scope: string;
+    let code: string;
+    if (java) {
+      scope = javaScope(java, line) || enclosingScope(finding);
+      code = javaStatementTokens(java, line) || this.tokensAround(sourcePath, line);
+    } else if (sourcePath && line) {
+      scope = this.scopeAt(sourcePath, line) || enclosingScope(finding);
+      code = this.tokensAround(sourcePath, line);
+    } else {
+      scope = enclosingScope(finding);
+      code = normalizeTokens(finding.extra?.lines || finding.code || '');
+    }
+
+    const parts = [`${tool}:${rule}`, canonicalPath, scope, code];
+    return createHash('sha256').update(parts.join('\0')).digest('hex');
+  }
+
+  /** Ruta relativa a la raíz con '/', o la ruta de paquete de SpotBugs */
+  private canonicalPath(filePath: string, finding: any): string {
+    const sourcepath = finding.original?.Class?.[0]?.SourceLine?.[0]?.$?.sourcepath;
+    if (sourcepath) return sourcepath.replace(/\\/g, '/');
+
+    const absolute = this.absolute(filePath);
+    const relative = path.relative(this.root, absolute);
+    if (path.isAbsolute(filePath) && !relative.startsWith('..') && !path.isAbsolute(relative)) {
+      return relative.split(path.sep).join('/');
+    }
+    return filePath.replace(/\\/g, '/').replace(/^\.\//, '');
+  }
+
+  private absolute(filePath: string): string {
+    return path.isAbsolute(filePath) ? filePath : path.join(this.root, filePath);
+  }
+
+  /** Lee de disco un archivo del proyecto que no estaba en sources; null si no existe o está fuera de root */
+  private readFromDisk(filePath: string): string | null {
+    const absolute = path.resolve(filePath);
+    const relative = path.relative(path.resolve(this.root), absolute);
+    if (!relative || relative.startsWith('..') || path.isAbsolute(relative)) return null;
+    if (!this.diskSources.has(absolute) && !this.unreadable.has(absolute)) {
+      try {
+        const content = fs.readFileSync(absolute, 'utf-8');
+        this.diskSources.sources.set(absolute, { path: absolute, content, ...indexLines(content) });
+      } catch {
+        this.unreadable.add(absolute);
+      }
+    }
+    return this.diskSources.has(absolute) ? absolute : null;
+  }
+
+  private sourceFor(sourcePath: string): SourceScanResult {
+    return this.sources?.has(sourcePath) ? this.sources : this.diskSources;
+  }
+
+  private javaStructure(sourcePath: string): JavaStructure | null {
+    if (this.javaStructures.has(sourcePath)) return this.javaStructures.get(sourcePath);
+    let structure: JavaStructure | null = null;
+    try {
+      const statementsByLine = new Map<number, JavaStatement[]>();
+      for (const statement of parseJava(tokenizeJava(this.sourceFor(sourcePath).sources.get(sourcePath).content)).statements) {
+        for (let current = statement.startLine; current <= statement.endLine; current++) {
+          if (!statementsByLine.has(current)) statementsByLine.set(current, []);
+          statementsByLine.get(current).push(statement);
+        }
+      }
+      structure = { statementsByLine };
+    } catch {
+      // Código que el parser no entiende: se usa el recorrido por líneas
+    }
+    this.javaStructures.set(sourcePath, structure);
+    return structure;
+  }
+
+  /**
+   * Tokens de la línea del hallazgo y de las líneas con código más cercanas
+   * por encima y por debajo (se saltan las vacías, comentarios y llaves sueltas).
+   */
+  private tokensAround(sourcePath: string, line: number): string {
+    const source = this.sourceFor(sourcePath);
+    const lineCount = source.lineCount(sourcePath);
+    const tokensAt = (current: number) => normalizeTokens(source.getLine(sourcePath, current) || '');
+    const nearest = (step: number) => {
+      for (let distance = 1; distance <= MAX_CONTEXT_DISTANCE; distance++) {
+        const current = line + step * distance;
+        if (current < 1 || current > lineCount) break;
+        const tokens = tokensAt(current);
+        if (/[A-Za-z_$]/.test(tokens)) return tokens;
+      }
+      return '';
+    };
+    return [nearest(-1), tokensAt(line), nearest(1)].join('\n');
+  }
+
+  /**
+   * "Clase#método" que contiene la línea: se recorre hacia atrás contando
+   * llaves y cada bloque sin cerrar se compara con una declaración.
+   */
+  private scopeAt(sourcePath: string, line: number): string {
+    const source = this.sourceFor(sourcePath);
+    let depth = 0;
+    let method = '';
+    const first = Math.max(1, line - MAX_SCOPE_SCAN_LINES);
+    for (let current = line; current >= first; current--) {
+      const text = stripLineComment(source.getLine(sourcePath, current) || '');
+      for (let i = text.length - 1; i >= 0; i--) {
+        if (text[i] === '}') depth++;
+        else if (text[i] === '{') depth--;
+      }
+      if (depth >= 0) continue;
+      depth = 0;
+
+      // La declaración está en la línea de la llave o, si la llave va sola, en la anterior
+      const declaration = text.replace(/\{.*$/, '').trim() || stripLineComment(source.getLine(sourcePath, current - 1) || '');
+      const classMatch = declaration.match(CLASS_DECLARATION);
+      if (classMatch) return method ? `${classMatch[1]}#${method}` : classMatch[1];
+      if (!method) {
+        const methodMatch = declaration.match(FUNCTION_DECLARATION) || declaration.match(METHOD_DECLARATION);
+        if (methodMatch && !NOT_A_METHOD.test(methodMatch[1])) method = methodMatch[1];
+      }
+    }
+    return method;
+  }
+}
+
+/** Clase y método que ya trae el hallazgo (SpotBugs y detección directa) */
+function enclosingScope(finding: any): string {
+  if (finding.enclosing) return formatScope(finding.enclosing.className, finding.enclosing.methodName);
+  const className = finding.original?.Class?.[0]?.$?.classname;
+  if (!className) return '';
+  return formatScope(className.split('.').pop(), finding.original?.Method?.[0]?.$?.name);
+}
+
+function javaScope(java: JavaStructure, line: number): string {
+  // Las cabeceras van antes que las sentencias de su bloque: cuenta la primera que cubre la línea
+  const statement = java.statementsByLine.get(line)?.[0];
+  if (!statement) return '';
+  const { className, methodName } = describeEnclosing(statement);
+  return formatScope(className, methodName);
+}
+
+/** Tokens de las sentencias completas que tocan la línea (aunque ocupen varias) */
+function javaStatementTokens(java: JavaStructure, line: number): string {
+  return (java.statementsByLine.get(line) || [])
+    .map(statement => statement.tokens.map(token => token.value).join(' '))
+    .join('\n');
+}
+
+function formatScope(className: string | null, methodName: string | null): string {
+  if (!className) return methodName || '';
+  return methodName ? `${className}#${methodName}` : className;
+}
+
+function stripLineComment(text: string): string {
+  return text.replace(/(^|[^:"'])\/\/.*$/, '$1');
+}
+
+function normalizeTokens(text: string): string {
+  return (stripLineComment(String(text)).match(TOKEN) || []).join(' ');
+}
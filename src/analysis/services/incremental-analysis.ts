@@ -0,0 +1,114 @@
+import * as path from 'path';
+import { ProjectIndex } from './project-index';
+import { ToolResult } from './tool.service';
+
+/**
+ * Re-análisis incremental de repositorios.
+ *
+ * Con el commit del análisis anterior y `git diff --name-only`, PMD, Semgrep y
+ * la detección directa solo se ejecutan sobre los archivos que cambiaron; los
+ * hallazgos de esas herramientas en archivos no modificados se copian del
+ * análisis anterior, cambiando la raíz del proyecto en sus rutas.
+ *
+ * SpotBugs sigue analizando el proyecto completo: trabaja sobre las clases
+ * compiladas y sus hallazgos solo llevan el nombre del archivo fuente.
+ */
+
+export const INCREMENTAL_TOOLS = ['pmd', 'semgrep', 'direct-detection'];
+
+// Campos con la ruta del archivo en los hallazgos de PMD (file), Semgrep y detección directa (path)
+const FINDING_PATH_FIELDS = ['path', 'file'];
+
+/** Conjunto de archivos cambiados de un checkout */
+export class AnalysisScope {
+  private readonly changed: Set<string>;
+
+  /**
+   * @param root raíz del checkout actual
+   * @param changedFiles rutas relativas a la raíz (salida de git diff --name-only)
+   */
+  constructor(readonly root: string, changedFiles: string[]) {
+    this.changed = new Set(changedFiles.map(file => path.resolve(root, file)));
+  }
+
+  get size(): number {
+    return this.changed.size;
+  }
+
+  /** true si el archivo (ruta absoluta o relativa a la raíz) cambió */
+  includes(filePath: string): boolean {
+    return this.changed.has(path.resolve(this.root, filePath));
+  }
+}
+
+/** Datos del análisis anterior necesarios para el re-análisis incremental */
+export interface IncrementalBaseline {
+  scope: AnalysisScope;
+  /** Raíz del proyecto en el análisis anterior */
+  previousRoot: string;
+  /** findings.results del análisis anterior: hallazgos originales por herramienta */
+  previousResults: Record<string, { findings?: any[] }>;
+}
+
+/**
+ * Añade a los resultados de las herramientas incrementales los hallazgos del
+ * análisis anterior en archivos que no cambiaron y siguen en el proyecto.
+ * Devuelve cuántos hallazgos se arrastraron.
+ */
+export function carryForwardFindings(
+  toolResults: ToolResult[],
+  baseline: IncrementalBaseline,
+  index: ProjectIndex,
+): number {
+  const { scope, previousRoot, previousResults } = baseline;
+  let carried = 0;
+
+  for (const tool of INCREMENTAL_TOOLS) {
+    const previousFindings = previousResults?.[tool]?.findings;
+    if (!Array.isArray(previousFindings) || previousFindings.length === 0) continue;
+
+    const kept: any[] = [];
+    for (const finding of previousFindings) {
+      const rebased = rebaseFinding(finding, previousRoot, scope.root);
+      const filePath = rebased && findingPath(rebased);
+      // Sin ubicación dentro del proyecto no se puede saber si sigue vigente
+      if (!filePath || scope.includes(filePath) || !index.get(filePath)) continue;
+      kept.push(rebased);
+    }
+    if (kept.length === 0) continue;
+
+    let result = toolResults.find(r => r.tool === tool);
+    if (!result) {
+      result = { tool, success: true, findings: [] };
+      toolResults.push(result);
+    }
+    result.findings = [...(result.findings || []), ...kept];
+    result.findingsCount = result.findings.length;
+    carried += kept.length;
+  }
+
+  return carried;
+}
+
+/** Copia del hallazgo con las rutas movidas de previousRoot a root, o null si no está bajo previousRoot */
+function rebaseFinding(finding: any, previousRoot: string, root: string): any | null {
+  if (!finding || typeof finding !== 'object') return null;
+  const prefix = previousRoot.endsWith(path.sep) ? previousRoot : previousRoot + path.sep;
+  const rebased = { ...finding };
+  let located = false;
+
+  for (const field of FINDING_PATH_FIELDS) {
+    const value = finding[field];
+    if (typeof value !== 'string' || !value.startsWith(prefix)) continue;
+    rebased[field] = path.join(root, value.slice(prefix.length));
+    located = true;
+  }
+  return located ? rebased : null;
+}
+
+function findingPath(finding: any): string | null {
+  for (const field of FINDING_PATH_FIELDS) {
+    if (typeof finding[field] === 'string' && finding[field]) return finding[field];
+  }
+  return null;
+}
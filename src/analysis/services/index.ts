@@ -1,3 +1,13 @@
 // Archivo de índice para exportar todos los servicios
 export { FileService } from './file.service';
-export { ToolService } from './tool.service';
\ No newline at end of file
+export { ToolService } from './tool.service';
+export { BlobStoreService } from './blob-store.service';
+export { WorkspaceRetentionService } from './workspace-retention.service';
+export { WorkspaceAllocatorService, WorkspaceAllocation } from './workspace-allocator.service';
+export { RepositoryMirrorService, RepositoryCheckout, MirrorRevision, normalizeRepositoryUrl } from './repository-mirror.service';
+export { AnalysisScope, IncrementalBaseline, carryForwardFindings } from './incremental-analysis';
+export { FindingIndex } from './mission-reconciliation';
+export { FindingFingerprinter } from './finding-fingerprint';
+export { SourceScanService, SourceScanResult, ScannedSource } from './source-scan.service';
+export { ProjectIndex, ProjectFileEntry } from './project-index';
+export { UploadedArchive, discardUpload, projectUploadOptions, toUploadedArchive } from './upload-storage';
\ No newline at end of file
@@ -0,0 +1,82 @@
+import * as path from 'path';
+
+/**
+ * Índice de los hallazgos de un re-análisis para decidir qué misiones siguen abiertas.
+ *
+ * Cada hallazgo se indexa una sola vez por herramienta, nombre de archivo y
+ * bloque de líneas; para cada misión solo se comparan los candidatos de sus
+ * bloques vecinos, con las mismas reglas de antes (ruta contenida en la otra,
+ * línea a ±2 y mensaje o regla contenidos). Pasa de O(misiones × hallazgos)
+ * a O(misiones + hallazgos).
+ */
+
+// Tolerancia de líneas entre la misión y el hallazgo (código movido ligeramente)
+const LINE_TOLERANCE = 2;
+// Con bloques de este tamaño una misión solo consulta uno o dos bloques
+const LINE_BUCKET = 2 * LINE_TOLERANCE + 1;
+
+interface IndexedFinding {
+  path: string;
+  line: number;
+  message: string;
+}
+
+export class FindingIndex {
+  private readonly buckets = new Map<string, IndexedFinding[]>();
+
+  constructor(findings: { tool: string; finding: any }[]) {
+    for (const { tool, finding } of findings) {
+      if (!finding) continue;
+      const findingPath = (finding.path || finding.file || finding.sourcefile || finding.fileName ||
+        finding.sourceLine?.sourcefile || '').toString();
+      const line = Number(finding.line || finding.start?.line || finding.sourceLine?.beginline || finding.startLine || 0);
+      // Sin archivo o sin línea un hallazgo nunca puede mantener abierta una misión
+      if (!findingPath || !line) continue;
+
+      const key = bucketKey(tool, findingPath, Math.floor(line / LINE_BUCKET));
+      const entry = {
+        path: findingPath,
+        line,
+        message: (finding.message || finding.rule || finding.type || finding.check_id || '').toString(),
+      };
+      const bucket = this.buckets.get(key);
+      if (bucket) bucket.push(entry);
+      else this.buckets.set(key, [entry]);
+    }
+  }
+
+  /**
+   * true si el problema de la misión sigue entre los hallazgos.
+   * @param previousRoot raíz del análisis anterior, que se quita de las rutas absolutas de la misión
+   */
+  stillExists(mission: any, previousRoot?: string): boolean {
+    const missionMeta = mission.metadata?.raw || {};
+    const tool = mission.metadata?.tool;
+    let missionPath = (mission.filePath || missionMeta.path || missionMeta.file || '').toString();
+    if (previousRoot && missionPath.startsWith(previousRoot + path.sep)) {
+      missionPath = missionPath.slice(previousRoot.length);
+    }
+    const missionLine = Number(mission.lineStart || missionMeta.line || missionMeta.startLine || 0);
+    const missionMessage = (missionMeta.message || missionMeta.rule || missionMeta.type || '').toString();
+    if (!missionPath || !missionLine || !missionMessage) return false;
+
+    const first = Math.floor((missionLine - LINE_TOLERANCE) / LINE_BUCKET);
+    const last = Math.floor((missionLine + LINE_TOLERANCE) / LINE_BUCKET);
+    for (let bucket = first; bucket <= last; bucket++) {
+      for (const finding of this.buckets.get(bucketKey(tool, missionPath, bucket)) || []) {
+        if (Math.abs(finding.line - missionLine) > LINE_TOLERANCE) continue;
+        if (!finding.path.includes(missionPath) && !missionPath.includes(finding.path)) continue;
+        if (finding.message && (finding.message.includes(missionMessage) || missionMessage.includes(finding.message))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
+
+/** Herramienta + nombre de archivo (las rutas de una misma clase difieren en raíz o prefijo) + bloque */
+function bucketKey(tool: string, filePath: string, bucket: number): string {
+  const name = filePath.split(/[\\/]/).pop();
+  return `${tool}\0${name}\0${bucket}`;
+}
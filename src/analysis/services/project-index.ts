@@ -0,0 +1,203 @@
+import * as fsSync from 'fs';
+import { promises as fs } from 'fs';
+import * as path from 'path';
+
+/**
+ * Índice de archivos de un proyecto, construido en un único recorrido paralelo.
+ *
+ * Antes cada etapa volvía a recorrer el árbol (walkDirectory, findFilesRecursively,
+ * `find` por shell, findPomXml...). Ahora el índice se construye una vez al
+ * extraer/clonar y se pasa a todas las herramientas.
+ */
+
+export interface ProjectFileEntry {
+  /** Ruta absoluta */
+  path: string;
+  /** Ruta relativa a la raíz del índice, siempre con '/' */
+  relativePath: string;
+  name: string;
+  /** Extensión en minúsculas, con punto ('.java') */
+  extension: string;
+  size: number;
+  mtimeMs: number;
+}
+
+export interface ProjectIndexOptions {
+  /** Directorios que no se recorren (por nombre) */
+  ignoreDirectories?: string[];
+  /** Operaciones de disco simultáneas */
+  concurrency?: number;
+}
+
+export const DEFAULT_IGNORED_DIRECTORIES = ['node_modules', 'target', 'build', 'dist', '.git'];
+
+const DEFAULT_CONCURRENCY = 16;
+
+const JS_EXTENSIONS = ['.js', '.ts', '.jsx', '.tsx'];
+
+export class ProjectIndex {
+  private readonly byRelativePath = new Map<string, ProjectFileEntry>();
+  private readonly byExtensionMap = new Map<string, ProjectFileEntry[]>();
+
+  private constructor(
+    readonly root: string,
+    readonly files: ProjectFileEntry[],
+  ) {
+    for (const entry of files) {
+      this.byRelativePath.set(entry.relativePath, entry);
+      if (!this.byExtensionMap.has(entry.extension)) this.byExtensionMap.set(entry.extension, []);
+      this.byExtensionMap.get(entry.extension).push(entry);
+    }
+  }
+
+  /**
+   * Recorre el árbol con opendir en paralelo (cola de directorios con
+   * concurrencia limitada) y obtiene tamaño y fecha de cada archivo (solo
+   * stat: el contenido lo lee después quien lo necesita).
+   * Un directorio inexistente produce un índice vacío.
+   */
+  static async build(root: string, options: ProjectIndexOptions = {}): Promise<ProjectIndex> {
+    const ignored = new Set(options.ignoreDirectories || DEFAULT_IGNORED_DIRECTORIES);
+    const limit = runWithConcurrency(options.concurrency || DEFAULT_CONCURRENCY);
+    const absoluteRoot = path.resolve(root);
+    const entries: ProjectFileEntry[] = [];
+
+    const visit = async (dir: string): Promise<void> => {
+      let handle: fsSync.Dir;
+      try {
+        handle = await limit(() => fs.opendir(dir));
+      } catch {
+        return;
+      }
+
+      const pending: Promise<void>[] = [];
+      for await (const dirent of handle) {
+        const fullPath = path.join(dir, dirent.name);
+        // Los enlaces simbólicos no se siguen: podrían apuntar fuera del proyecto
+        if (dirent.isDirectory()) {
+          if (!ignored.has(dirent.name)) pending.push(visit(fullPath));
+        } else if (dirent.isFile()) {
+          pending.push(
+            limit(() => describeFile(absoluteRoot, fullPath, dirent.name)).then(
+              entry => {
+                if (entry) entries.push(entry);
+              },
+            ),
+          );
+        }
+      }
+      await Promise.all(pending);
+    };
+
+    await visit(absoluteRoot);
+    // Orden estable independiente del orden de llegada del recorrido paralelo
+    entries.sort((a, b) => (a.relativePath < b.relativePath ? -1 : a.relativePath > b.relativePath ? 1 : 0));
+    return new ProjectIndex(absoluteRoot, entries);
+  }
+
+  get javaFiles(): string[] {
+    return this.pathsWithExtension('.java');
+  }
+
+  get pythonFiles(): string[] {
+    return this.pathsWithExtension('.py');
+  }
+
+  get jsFiles(): string[] {
+    return this.pathsWithExtension(...JS_EXTENSIONS);
+  }
+
+  get allFiles(): string[] {
+    return this.files.map(entry => entry.path);
+  }
+
+  byExtension(...extensions: string[]): ProjectFileEntry[] {
+    if (extensions.length === 1) return this.byExtensionMap.get(extensions[0]) || [];
+    return this.files.filter(entry => extensions.includes(entry.extension));
+  }
+
+  pathsWithExtension(...extensions: string[]): string[] {
+    return this.byExtension(...extensions).map(entry => entry.path);
+  }
+
+  hasExtension(...extensions: string[]): boolean {
+    return extensions.some(extension => (this.byExtensionMap.get(extension) || []).length > 0);
+  }
+
+  /** Busca por ruta relativa o absoluta */
+  get(filePath: string): ProjectFileEntry | undefined {
+    const relative = path.isAbsolute(filePath) ? path.relative(this.root, filePath) : filePath;
+    return this.byRelativePath.get(relative.split(path.sep).join('/'));
+  }
+
+  /** Archivos dentro de un subdirectorio (ruta absoluta o relativa) */
+  within(dir: string, ...extensions: string[]): ProjectFileEntry[] {
+    const relative = (path.isAbsolute(dir) ? path.relative(this.root, dir) : dir).split(path.sep).join('/');
+    const prefix = relative === '' ? '' : `${relative}/`;
+    return this.files.filter(
+      entry => entry.relativePath.startsWith(prefix) && (extensions.length === 0 || extensions.includes(entry.extension)),
+    );
+  }
+
+  /**
+   * Archivo con ese nombre en el directorio menos profundo, hasta maxDirectoryDepth
+   * niveles por debajo de la raíz (0 = solo la raíz).
+   */
+  findShallowest(name: string, maxDirectoryDepth: number = 2): ProjectFileEntry | null {
+    let best: ProjectFileEntry | null = null;
+    let bestDepth = Infinity;
+    for (const entry of this.files) {
+      if (entry.name !== name) continue;
+      const depth = entry.relativePath.split('/').length - 1;
+      if (depth <= maxDirectoryDepth && depth < bestDepth) {
+        best = entry;
+        bestDepth = depth;
+      }
+    }
+    return best;
+  }
+
+  /** Directorios distintos que contienen archivos con la extensión indicada */
+  directoriesContaining(extension: string): string[] {
+    return [...new Set(this.byExtension(extension).map(entry => path.dirname(entry.path)))];
+  }
+}
+
+async function describeFile(root: string, fullPath: string, name: string): Promise<ProjectFileEntry | null> {
+  try {
+    const stat = await fs.stat(fullPath);
+    return {
+      path: fullPath,
+      relativePath: path.relative(root, fullPath).split(path.sep).join('/'),
+      name,
+      extension: path.extname(name).toLowerCase(),
+      size: stat.size,
+      mtimeMs: stat.mtimeMs,
+    };
+  } catch {
+    // El archivo desapareció durante el recorrido
+    return null;
+  }
+}
+
+/** Limitador de concurrencia mínimo: como mucho `max` tareas en vuelo */
+export function runWithConcurrency(max: number) {
+  let active = 0;
+  const queue: (() => void)[] = [];
+
+  return async function limit<T>(task: () => Promise<T>): Promise<T> {
+    if (active >= max) {
+      // El hueco se hereda directamente de la tarea que termina
+      await new Promise<void>(resolve => queue.push(resolve));
+    } else {
+      active++;
+    }
+    try {
+      return await task();
+    } finally {
+      const next = queue.shift();
+      if (next) next();
+      else active--;
+    }
+  };
+}
@@ -0,0 +1,237 @@
+import { Injectable, Logger } from '@nestjs/common';
+import { execFile } from 'child_process';
+import { createHash } from 'crypto';
+import { promises as fs } from 'fs';
+import * as path from 'path';
+import { promisify } from 'util';
+import { v4 as uuidv4 } from 'uuid';
+import { UPLOADS_DIR } from './upload-storage';
+
+const execFileAsync = promisify(execFile);
+
+/**
+ * Caché de repositorios remotos: un mirror bare por URL en uploads/.mirrors.
+ *
+ * La primera vez se hace `git clone --mirror`; después solo `git fetch`
+ * incremental (y varias peticiones seguidas del mismo repositorio comparten un
+ * único fetch). Cada análisis obtiene su copia con `git clone --shared` desde
+ * el mirror, que reutiliza sus objetos sin copiarlos: solo se escriben los
+ * archivos del checkout. Por eso un mirror solo se borra si está dañado (o
+ * lleva MIRROR_TTL_MS sin usarse): los checkouts existentes dependen de él.
+ */
+
+export const MIRRORS_DIR = path.join(UPLOADS_DIR, '.mirrors');
+
+const GIT_TIMEOUT_MS = Number(process.env.GIT_TIMEOUT_MS) || 60000;
+// Peticiones del mismo repositorio dentro de esta ventana reutilizan el último fetch
+const FETCH_COALESCE_MS = Number(process.env.MIRROR_FETCH_COALESCE_MS) || 10000;
+// Mirrors sin usar durante este tiempo se eliminan
+const MIRROR_TTL_MS = (Number(process.env.MIRROR_TTL_DAYS) || 14) * 24 * 60 * 60 * 1000;
+
+// Nunca pedir credenciales por terminal: un repositorio privado debe fallar, no colgarse
+const GIT_ENV = { ...process.env, GIT_TERMINAL_PROMPT: '0' };
+
+export interface RepositoryCheckout {
+  path: string;
+  commitSha: string;
+}
+
+/** Mirror actualizado y commit de su HEAD, listo para hacer checkout */
+export interface MirrorRevision {
+  mirror: string;
+  commitSha: string;
+}
+
+@Injectable()
+export class RepositoryMirrorService {
+  private readonly logger = new Logger(RepositoryMirrorService.name);
+  // Cola por mirror: clone/fetch del mismo repositorio nunca corren en paralelo
+  private readonly locks = new Map<string, Promise<unknown>>();
+  private readonly lastFetch = new Map<string, number>();
+
+  mirrorPath(repositoryUrl: string): string {
+    const key = createHash('sha256').update(normalizeRepositoryUrl(repositoryUrl)).digest('hex');
+    return path.join(MIRRORS_DIR, `${key.slice(0, 32)}.git`);
+  }
+
+  /** Actualiza (o crea) el mirror del repositorio y resuelve su HEAD */
+  async sync(repositoryUrl: string): Promise<MirrorRevision> {
+    const mirror = this.mirrorPath(repositoryUrl);
+    const commitSha = await this.withLock(mirror, async () => {
+      await this.syncMirror(repositoryUrl, mirror);
+      const now = new Date();
+      await fs.utimes(mirror, now, now);
+      return git(['--git-dir', mirror, 'rev-parse', 'HEAD^{commit}']);
+    });
+    return { mirror, commitSha };
+  }
+
+  /**
+   * Bytes de los archivos del commit, sin descargar nada (solo lee el mirror).
+   * Infinity si no se puede calcular, para que el llamador lo trate como grande.
+   */
+  async treeBytes(revision: MirrorRevision): Promise<number> {
+    try {
+      const output = await git(['--git-dir', revision.mirror, 'ls-tree', '-r', '-l', '-z', revision.commitSha], 64 * 1024 * 1024);
+      let total = 0;
+      for (const line of output.split('\0')) {
+        // "<modo> <tipo> <objeto> <tamaño>" + tabulador + ruta; los submódulos tienen tamaño '-'
+        const size = Number(line.split('\t')[0].split(/\s+/)[3]);
+        if (!isNaN(size)) total += size;
+      }
+      return total;
+    } catch (error) {
+      this.logger.warn(`No se pudo calcular el tamaño de ${revision.commitSha.slice(0, 12)}: ${error.message}`);
+      return Infinity;
+    }
+  }
+
+  /** Deja en target un checkout del commit (fuera del lock: solo lee objetos del mirror) */
+  async checkout(revision: MirrorRevision, target: string): Promise<RepositoryCheckout> {
+    await fs.rm(target, { recursive: true, force: true });
+    await git(['clone', '--shared', '--no-checkout', '--quiet', revision.mirror, target]);
+    await git(['-C', target, 'checkout', '--quiet', '--detach', revision.commitSha]);
+    return { path: target, commitSha: revision.commitSha };
+  }
+
+  /**
+   * Rutas relativas que cambian entre dos commits de un checkout, o null si el
+   * commit anterior ya no existe (p. ej. historial reescrito con force-push).
+   */
+  async changedFiles(checkoutDir: string, fromSha: string, toSha: string): Promise<string[] | null> {
+    if (!/^[0-9a-f]{40,64}$/i.test(fromSha || '')) return null;
+    try {
+      // --no-renames: un archivo renombrado cuenta como borrado + añadido
+      const output = await git(['-C', checkoutDir, 'diff', '--name-only', '--no-renames', '-z', fromSha, toSha, '--']);
+      return output.split('\0').filter(Boolean);
+    } catch (error) {
+      this.logger.warn(`No se pudo calcular el diff ${fromSha.slice(0, 12)}..${toSha.slice(0, 12)}: ${error.message}`);
+      return null;
+    }
+  }
+
+  /** Elimina los mirrors que nadie ha usado en MIRROR_TTL_MS */
+  async prune(): Promise<number> {
+    let entries: string[];
+    try {
+      entries = await fs.readdir(MIRRORS_DIR);
+    } catch {
+      return 0;
+    }
+
+    let removed = 0;
+    const cutoff = Date.now() - MIRROR_TTL_MS;
+    for (const entry of entries) {
+      const mirror = path.join(MIRRORS_DIR, entry);
+      await this.withLock(mirror, async () => {
+        try {
+          const stat = await fs.stat(mirror);
+          if (stat.mtimeMs > cutoff) return;
+          await fs.rm(mirror, { recursive: true, force: true });
+          this.lastFetch.delete(mirror);
+          removed++;
+        } catch {
+          // Eliminado concurrentemente
+        }
+      });
+    }
+    if (removed > 0) {
+      this.logger.log(`🧹 Mirrors sin uso eliminados: ${removed}`);
+    }
+    return removed;
+  }
+
+  private async syncMirror(repositoryUrl: string, mirror: string): Promise<void> {
+    if (!(await exists(path.join(mirror, 'HEAD')))) {
+      await this.createMirror(repositoryUrl, mirror);
+      return;
+    }
+
+    if (Date.now() - (this.lastFetch.get(mirror) || 0) < FETCH_COALESCE_MS) {
+      this.logger.log(`⚡ Mirror reciente, sin fetch: ${repositoryUrl}`);
+      return;
+    }
+
+    try {
+      await git(['--git-dir', mirror, 'fetch', '--prune', '--quiet', 'origin']);
+      this.lastFetch.set(mirror, Date.now());
+      this.logger.log(`🔄 Mirror actualizado: ${repositoryUrl}`);
+    } catch (error) {
+      // Un fallo de red o de credenciales no justifica borrar el mirror: los
+      // checkouts `--shared` y las líneas base leen sus objetos. Solo se
+      // recrea si está dañado (un force-push ya lo resuelve fetch --prune)
+      if (!(await this.isCorrupt(mirror))) throw error;
+      this.logger.warn(`Mirror dañado (fetch: ${error.message}); recreando mirror de ${repositoryUrl}`);
+      await fs.rm(mirror, { recursive: true, force: true });
+      await this.createMirror(repositoryUrl, mirror);
+    }
+  }
+
+  /** true si faltan objetos o referencias del mirror */
+  private async isCorrupt(mirror: string): Promise<boolean> {
+    try {
+      await git(['--git-dir', mirror, 'fsck', '--connectivity-only', '--no-dangling', '--no-progress']);
+      return false;
+    } catch (error) {
+      // Sin terminar (timeout) no hay veredicto: mejor no borrar nada
+      if (error.killed) return false;
+      this.logger.warn(`git fsck falló en ${path.basename(mirror)}: ${error.message}`);
+      return true;
+    }
+  }
+
+  private async createMirror(repositoryUrl: string, mirror: string): Promise<void> {
+    await fs.mkdir(MIRRORS_DIR, { recursive: true });
+    // Se clona en un temporal y se renombra: un clone interrumpido nunca queda como mirror válido
+    const tmpMirror = `${mirror}.${uuidv4()}.tmp`;
+    try {
+      await git(['clone', '--mirror', '--quiet', '--', repositoryUrl, tmpMirror]);
+      await fs.rename(tmpMirror, mirror);
+    } catch (error) {
+      await fs.rm(tmpMirror, { recursive: true, force: true });
+      throw error;
+    }
+    this.lastFetch.set(mirror, Date.now());
+    this.logger.log(`📦 Mirror creado: ${repositoryUrl}`);
+  }
+
+  private withLock<T>(key: string, task: () => Promise<T>): Promise<T> {
+    const previous = this.locks.get(key) || Promise.resolve();
+    const run = previous.catch(() => undefined).then(task);
+    const tail = run.catch(() => undefined);
+    this.locks.set(key, tail);
+    tail.then(() => {
+      if (this.locks.get(key) === tail) this.locks.delete(key);
+    });
+    return run;
+  }
+}
+
+/** Misma clave para https://host/a/b, https://HOST/a/b.git y https://host/a/b/ */
+export function normalizeRepositoryUrl(repositoryUrl: string): string {
+  try {
+    const url = new URL(repositoryUrl.trim());
+    const pathname = url.pathname.replace(/\/+$/, '').replace(/\.git$/i, '');
+    return `${url.protocol}//${url.host.toLowerCase()}${pathname}`;
+  } catch {
+    return repositoryUrl.trim();
+  }
+}
+
+async function git(args: string[], maxBuffer = 5 * 1024 * 1024): Promise<string> {
+  const { stdout } = await execFileAsync('git', args, {
+    timeout: GIT_TIMEOUT_MS,
+    maxBuffer,
+    env: GIT_ENV,
+  });
+  return stdout.trim();
+}
+
+async function exists(filePath: string): Promise<boolean> {
+  try {
+    await fs.access(filePath);
+    return true;
+  } catch {
+    return false;
+  }
+}
@@ -0,0 +1,157 @@
+import { Injectable, Logger } from '@nestjs/common';
+import { promises as fs } from 'fs';
+import * as path from 'path';
+import { DirectFinding, scanJavaScriptSource, scanJavaSource } from '../scanners';
+import { AnalysisScope } from './incremental-analysis';
+import { ProjectIndex, runWithConcurrency } from './project-index';
+
+/**
+ * Etapa de lectura de fuentes: cada archivo de código se lee una sola vez y de
+ * esa lectura salen las líneas de código, el índice de saltos de línea y los
+ * hallazgos de la detección directa. El resto del análisis (métricas,
+ * herramientas y misiones) consume el resultado en memoria.
+ */
+
+// Extensiones que cuentan como líneas de código
+const CODE_EXTENSIONS = ['.java', '.py', '.js', '.ts', '.jsx', '.tsx', '.cpp', '.c', '.h'];
+const READ_CONCURRENCY = 8;
+
+export interface ScannedSource {
+  path: string;
+  content: string;
+  /** Offset de inicio de cada línea (la línea N empieza en lineOffsets[N - 1]) */
+  lineOffsets: number[];
+  /** Líneas no vacías */
+  linesOfCode: number;
+}
+
+export class SourceScanResult {
+  // Nombre de archivo -> rutas absolutas, construido en el primer resolve()
+  private byName: Map<string, string[]> | null = null;
+
+  constructor(
+    readonly sources: Map<string, ScannedSource>,
+    readonly directFindings: DirectFinding[],
+  ) {}
+
+  get linesOfCode(): number {
+    let total = 0;
+    for (const source of this.sources.values()) total += source.linesOfCode;
+    return total;
+  }
+
+  has(filePath: string): boolean {
+    return this.sources.has(path.resolve(filePath));
+  }
+
+  /** Texto de la línea indicada (1-based) sin espacios laterales, o null si no existe */
+  getLine(filePath: string, lineNumber: number): string | null {
+    const source = this.sources.get(path.resolve(filePath));
+    if (!source || lineNumber < 1 || lineNumber > source.lineOffsets.length) return null;
+    const start = source.lineOffsets[lineNumber - 1];
+    const end = lineNumber < source.lineOffsets.length ? source.lineOffsets[lineNumber] - 1 : source.content.length;
+    return source.content.slice(start, end).trim();
+  }
+
+  lineCount(filePath: string): number {
+    return this.sources.get(path.resolve(filePath))?.lineOffsets.length || 0;
+  }
+
+  /**
+   * Ruta absoluta de la fuente a la que se refiere filePath: la propia ruta si
+   * se leyó, o la única fuente que termina en ella (SpotBugs solo da
+   * `com/x/Clase.java` o `Clase.java`). null si no existe o es ambigua.
+   */
+  resolve(filePath: string): string | null {
+    if (!filePath) return null;
+    if (this.has(filePath)) return path.resolve(filePath);
+
+    if (!this.byName) {
+      this.byName = new Map();
+      for (const sourcePath of this.sources.keys()) {
+        const name = path.basename(sourcePath);
+        if (!this.byName.has(name)) this.byName.set(name, []);
+        this.byName.get(name).push(sourcePath);
+      }
+    }
+    const suffix = path.sep + filePath.split(/[\\/]/).filter(Boolean).join(path.sep);
+    const candidates = (this.byName.get(path.basename(suffix)) || []).filter(sourcePath => sourcePath.endsWith(suffix));
+    return candidates.length === 1 ? candidates[0] : null;
+  }
+}
+
+@Injectable()
+export class SourceScanService {
+  private readonly logger = new Logger(SourceScanService.name);
+
+  /**
+   * Lee todas las fuentes; si se indica scope (re-análisis incremental), la
+   * detección directa solo se ejecuta sobre los archivos cambiados.
+   */
+  async scan(index: ProjectIndex, scope?: AnalysisScope): Promise<SourceScanResult> {
+    const entries = index.byExtension(...CODE_EXTENSIONS);
+    const limit = runWithConcurrency(READ_CONCURRENCY);
+    const sources = new Map<string, ScannedSource>();
+    const findingsByFile = new Map<string, DirectFinding[]>();
+
+    await Promise.all(
+      entries.map(entry =>
+        limit(async () => {
+          let content: string;
+          try {
+            content = await fs.readFile(entry.path, 'utf-8');
+          } catch (error) {
+            // Ignorar archivos que no se pueden leer
+            return;
+          }
+          sources.set(entry.path, { path: entry.path, content, ...indexLines(content) });
+
+          if (scope && !scope.includes(entry.path)) return;
+          if (entry.extension === '.java') {
+            findingsByFile.set(entry.path, scanJavaSource(content, entry.path));
+          } else if (entry.extension === '.js') {
+            findingsByFile.set(entry.path, scanJavaScriptSource(content, entry.path));
+          }
+        }),
+      ),
+    );
+
+    // Hallazgos en el orden del índice, independiente del orden de lectura
+    const directFindings: DirectFinding[] = [];
+    for (const entry of entries) {
+      const findings = findingsByFile.get(entry.path);
+      if (findings) directFindings.push(...findings);
+    }
+
+    const result = new SourceScanResult(sources, directFindings);
+    this.logger.log(`📖 Fuentes leídas: ${sources.size} archivos, ${result.linesOfCode} líneas de código, ${directFindings.length} hallazgos directos`);
+    return result;
+  }
+}
+
+/** Calcula en una sola pasada los offsets de línea y cuántas líneas no están en blanco */
+export function indexLines(content: string): { lineOffsets: number[]; linesOfCode: number } {
+  const lineOffsets = [0];
+  let linesOfCode = 0;
+  let blank = true;
+
+  for (let i = 0; i < content.length; i++) {
+    const code = content.charCodeAt(i);
+    if (code === 10) {
+      if (!blank) linesOfCode++;
+      blank = true;
+      lineOffsets.push(i + 1);
+    } else if (blank && !isWhitespace(code)) {
+      blank = false;
+    }
+  }
+  if (!blank) linesOfCode++;
+
+  return { lineOffsets, linesOfCode };
+}
+
+function isWhitespace(code: number): boolean {
+  return code === 32 || (code >= 9 && code <= 13) || code === 0xa0 || code === 0xfeff ||
+    code === 0x1680 || (code >= 0x2000 && code <= 0x200a) || code === 0x2028 || code === 0x2029 ||
+    code === 0x202f || code === 0x205f || code === 0x3000;
+}
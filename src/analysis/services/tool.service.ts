@@ -1,13 +1,23 @@
 import { Injectable, Logger } from '@nestjs/common';
-import { exec } from 'child_process';
+import { exec, execFile } from 'child_process';
 import { promisify } from 'util';
 import * as fs from 'fs/promises';
 import * as path from 'path';
 import { parseString } from 'xml2js';
+import { writeFileDetached } from './blob-store.service';
+import { AnalysisScope } from './incremental-analysis';
+import { ProjectIndex } from './project-index';
+import { SourceScanResult } from './source-scan.service';
 
 const execAsync = promisify(exec);
+const execFileAsync = promisify(execFile);
 const parseXmlAsync = promisify(parseString);
 
+// Extensiones de código que Semgrep puede analizar
+const SEMGREP_EXTENSIONS = ['.java', '.js', '.ts', '.py', '.go', '.c', '.cpp', '.php', '.rb'];
+// Con más archivos cambiados que esto, Semgrep recibe el directorio y se filtran sus resultados
+const SEMGREP_MAX_FILE_TARGETS = 200;
+
 export interface ToolResult {
   tool: string;
   success: boolean;
@@ -46,20 +56,28 @@ class AnalysisQueue {
 export class ToolService {
   private readonly logger = new Logger(ToolService.name);
 
-  async runAllTools(projectDir: string, fileInfo: any): Promise<ToolResult[]> {
+  /**
+   * Ejecuta las herramientas sobre el proyecto. Con scope (re-análisis
+   * incremental) PMD y Semgrep solo analizan los archivos cambiados; los
+   * hallazgos directos ya vienen acotados desde la lectura de fuentes.
+   */
+  async runAllTools(projectDir: string, index: ProjectIndex, sources: SourceScanResult, scope?: AnalysisScope): Promise<ToolResult[]> {
     await AnalysisQueue.acquire();
     const tempFiles: string[] = [];
     try {
       const results: ToolResult[] = [];
 
       this.logger.log(`🚀 Iniciando análisis REAL en: ${projectDir}`);
-      this.logger.log(`📊 Java: ${fileInfo.javaFiles?.length || 0}, JS: ${fileInfo.jsFiles?.length || 0}, Total: ${fileInfo.allFiles?.length || 0}`);
+      this.logger.log(`📊 Java: ${index.javaFiles.length}, JS: ${index.jsFiles.length}, Total: ${index.files.length}`);
+      if (scope) {
+        this.logger.log(`♻️ Re-análisis incremental: ${scope.size} archivos cambiados`);
+      }
 
       // Ejecutar herramientas reales para proyectos Java
-      if (fileInfo.javaFiles && fileInfo.javaFiles.length > 0) {
+      if (index.hasExtension('.java')) {
         // SpotBugs análisis real
         this.logger.log('🐛 Iniciando SpotBugs...');
-        const spotbugsResult = await this.runSpotBugs(projectDir);
+        const spotbugsResult = await this.runSpotBugs(projectDir, index);
         // Registrar archivos temporales SpotBugs
         tempFiles.push(
           ...[
@@ -78,9 +96,10 @@ export class ToolService {
 
         // PMD análisis real
         this.logger.log('📋 Iniciando PMD...');
-        const pmdResult = await this.runPMD(projectDir);
+        const pmdResult = await this.runPMD(projectDir, index, scope);
         tempFiles.push(
           require('path').join(projectDir, 'pmd-results.xml'),
+          require('path').join(projectDir, 'pmd-file-list.txt'),
           require('path').join(projectDir, 'target', 'pmd.xml'),
           require('path').join(projectDir, 'target', 'site', 'pmd.xml')
         );
@@ -92,14 +111,14 @@ export class ToolService {
 
       // Semgrep análisis real (multi-lenguaje)
       this.logger.log('🔍 Iniciando Semgrep...');
-      const semgrepResult = await this.runSemgrep(projectDir);
+      const semgrepResult = await this.runSemgrep(projectDir, index, scope);
       tempFiles.push(require('path').join(projectDir, 'semgrep-results.json'));
       this.logger.log(`🔍 Semgrep completado: ${semgrepResult.findings?.length || 0} hallazgos (success: ${semgrepResult.success})`);
       results.push(semgrepResult);
 
-      // DETECCIÓN DIRECTA: SIEMPRE ejecutar análisis directo para capturar vulnerabilidades adicionales
-      this.logger.log('🔍 Ejecutando DETECCIÓN DIRECTA complementaria...');
-      const directIssues = await this.detectCodeIssuesDirectly(projectDir);
+      // DETECCIÓN DIRECTA: los hallazgos ya se calcularon al leer las fuentes
+      this.logger.log('🔍 Incorporando DETECCIÓN DIRECTA complementaria...');
+      const directIssues = sources.directFindings;
       
       if (directIssues.length > 0) {
         this.logger.log(`🎯 Detección directa encontró ${directIssues.length} problemas adicionales`);
@@ -158,13 +177,13 @@ export class ToolService {
     }
   }
 
-  private async runSpotBugs(projectDir: string): Promise<ToolResult> {
+  private async runSpotBugs(projectDir: string, index: ProjectIndex): Promise<ToolResult> {
     this.logger.log('🐛 Ejecutando SpotBugs...');
     
     try {
-      // Buscar pom.xml (puede estar en projectDir o en una subcarpeta)
+      // Buscar pom.xml (puede estar en projectDir o en una subcarpeta, hasta dos niveles)
       this.logger.log('🔍 Buscando pom.xml...');
-      const pomPath = await this.findPomXml(projectDir);
+      const pomPath = index.findShallowest('pom.xml', 2)?.path;
       
       if (pomPath) {
         this.logger.log(`✅ pom.xml encontrado en: ${pomPath}`);
@@ -175,12 +194,12 @@ export class ToolService {
         // Si Maven falla, intentar SpotBugs directo CON la carpeta del proyecto Maven (no projectDir)
         if (!mavenResult.success) {
           this.logger.log('⚠️ Maven falló, intentando SpotBugs directo con el proyecto Maven...');
-          return await this.runSpotBugsDirectlyOnMavenProject(mavenProjectDir);
+          return await this.runSpotBugsDirectlyOnMavenProject(mavenProjectDir, index);
         }
         return mavenResult;
       } else {
         this.logger.log('⚠️ pom.xml no encontrado');
-        return await this.runSpotBugsDirectly(projectDir);
+        return await this.runSpotBugsDirectly(projectDir, index);
       }
     } catch (error) {
       this.logger.error('Error ejecutando SpotBugs:', error.message);
@@ -193,32 +212,6 @@ export class ToolService {
     }
   }
 
-  private async findPomXml(startDir: string, maxDepth: number = 3, currentDepth: number = 0): Promise<string | null> {
-    if (currentDepth >= maxDepth) return null;
-    
-    try {
-      const pomPath = path.join(startDir, 'pom.xml');
-      if (await this.fileExists(pomPath)) {
-        return pomPath;
-      }
-      
-      // Buscar en subcarpetas (máximo nivel de profundidad)
-      const entries = await fs.readdir(startDir, { withFileTypes: true });
-      
-      for (const entry of entries) {
-        if (entry.isDirectory() && !entry.name.startsWith('.')) {
-          const subPath = path.join(startDir, entry.name);
-          const found = await this.findPomXml(subPath, maxDepth, currentDepth + 1);
-          if (found) return found;
-        }
-      }
-      
-      return null;
-    } catch (error) {
-      return null;
-    }
-  }
-
   private async runSpotBugsWithMaven(projectDir: string): Promise<ToolResult> {
     this.logger.log('📦 Proyecto Maven detectado - usando Maven para SpotBugs');
     
@@ -257,6 +250,7 @@ export class ToolService {
       
       if (!hasSpotBugsPlugin) {
         this.logger.log('ℹ️ SpotBugs plugin no configurado en pom.xml, añadiendo temporalmente...');
+        // pom.xml puede ser un enlace al almacén de blobs: se reemplaza, nunca se escribe encima
         
         // Buscar la sección de plugins para insertar SpotBugs
         const spotbugsPluginXml = `
@@ -275,12 +269,12 @@ export class ToolService {
         // Intentar insertar en diferentes ubicaciones
         if (pomContent.includes('</plugins>')) {
           pomContent = pomContent.replace('</plugins>', `${spotbugsPluginXml}\n    </plugins>`);
-          await fs.writeFile(pomPath, pomContent, 'utf-8');
+          await writeFileDetached(pomPath, pomContent);
           this.logger.log('✅ Plugin SpotBugs añadido a pom.xml');
         } else if (pomContent.includes('<build>')) {
           const buildPluginsXml = `<plugins>${spotbugsPluginXml}\n    </plugins>`;
           pomContent = pomContent.replace('<build>', `<build>\n    ${buildPluginsXml}`);
-          await fs.writeFile(pomPath, pomContent, 'utf-8');
+          await writeFileDetached(pomPath, pomContent);
           this.logger.log('✅ Sección plugins con SpotBugs añadida a pom.xml');
         } else {
           this.logger.warn('⚠️ No se pudo añadir SpotBugs plugin automáticamente');
@@ -314,7 +308,7 @@ export class ToolService {
           
           // Verificar si se generaron archivos .class
           try {
-            const classFiles = await this.findFiles(classesDir, '**/*.class');
+            const classFiles = await this.listFiles(classesDir, '.class');
             if (classFiles.length > 0) {
               this.logger.log(`✅ Compilación Maven exitosa: ${classFiles.length} archivos .class`);
               compilationSucceeded = true;
@@ -335,7 +329,7 @@ export class ToolService {
           
           // Verificar si aun así hay archivos .class generados parcialmente
           try {
-            const classFiles = await this.findFiles(classesDir, '**/*.class');
+            const classFiles = await this.listFiles(classesDir, '.class');
             if (classFiles.length > 0) {
               this.logger.log(`✅ A pesar del error, hay ${classFiles.length} archivos .class`);
               compilationSucceeded = true;
@@ -408,7 +402,7 @@ export class ToolService {
           const outputXml = path.join(projectDir, 'target', 'spotbugs-direct.xml');
           
           // Verificar que existen archivos compilados
-          const classFiles = await this.findFiles(classesDir, '**/*.class');
+          const classFiles = await this.listFiles(classesDir, '.class');
           if (classFiles.length === 0) {
             throw new Error('No hay archivos .class compilados para analizar');
           }
@@ -451,7 +445,7 @@ export class ToolService {
       this.logger.log('🔍 Paso 2.5: Verificando archivos compilados...');
       const targetClassesPath = path.join(projectDir, 'target', 'classes');
       try {
-        const classFiles = await this.findFiles(targetClassesPath, '**/*.class');
+        const classFiles = await this.listFiles(targetClassesPath, '.class');
         this.logger.log(`✅ Encontrados ${classFiles.length} archivos .class compilados`);
         if (classFiles.length === 0) {
           this.logger.warn('⚠️ No se encontraron archivos .class - la compilación puede haber fallado');
@@ -602,7 +596,7 @@ export class ToolService {
     }
   }
 
-  private async runSpotBugsDirectly(projectDir: string): Promise<ToolResult> {
+  private async runSpotBugsDirectly(projectDir: string, index: ProjectIndex): Promise<ToolResult> {
     this.logger.log('📝 Sin pom.xml detectado - SpotBugs requiere Maven o CLI instalado');
     
     try {
@@ -625,7 +619,7 @@ export class ToolService {
       // Si llegamos aquí, SpotBugs CLI está disponible
       // Paso 1: Buscar archivos .java
       this.logger.log('🔍 Paso 1: Buscando archivos .java...');
-      const javaFiles = await this.findFiles(projectDir, '**/*.java');
+      const javaFiles = index.javaFiles;
       
       if (javaFiles.length === 0) {
         this.logger.warn('⚠️ No se encontraron archivos .java');
@@ -661,7 +655,7 @@ export class ToolService {
       
       // Paso 3: Buscar archivos .class compilados
       this.logger.log('📂 Paso 3: Buscando archivos .class compilados...');
-      const classFiles = await this.findFiles(classDir, '**/*.class');
+      const classFiles = await this.listFiles(classDir, '.class');
       
       if (classFiles.length === 0) {
         this.logger.warn('⚠️ No se encontraron archivos .class compilados');
@@ -751,7 +745,7 @@ export class ToolService {
    * Ejecuta SpotBugs directamente sobre un proyecto Maven que ya falló con Maven
    * Usa los archivos .class ya compilados en target/classes
    */
-  private async runSpotBugsDirectlyOnMavenProject(projectDir: string): Promise<ToolResult> {
+  private async runSpotBugsDirectlyOnMavenProject(projectDir: string, index: ProjectIndex): Promise<ToolResult> {
     this.logger.log('📝 SpotBugs DIRECTO: Maven falló, compilando archivos individualmente...');
     this.logger.log(`   Directorio: ${projectDir}`);
     
@@ -765,7 +759,7 @@ export class ToolService {
       // Verificar si ya hay archivos .class de un intento anterior
       let classFiles: string[] = [];
       try {
-        classFiles = await this.findFiles(classesDir, '**/*.class');
+        classFiles = await this.listFiles(classesDir, '.class');
         if (classFiles.length > 0) {
           this.logger.log(`   Ya existen ${classFiles.length} archivos .class`);
         }
@@ -776,7 +770,7 @@ export class ToolService {
       // Si no hay .class, intentar compilar con javac
       if (classFiles.length === 0) {
         this.logger.log('🔧 Compilando archivos Java con javac...');
-        const javaFiles = await this.findFiles(projectDir, '**/*.java');
+        const javaFiles = index.within(projectDir, '.java').map(entry => entry.path);
         this.logger.log(`   Encontrados ${javaFiles.length} archivos .java`);
         
         if (javaFiles.length === 0) {
@@ -814,7 +808,7 @@ export class ToolService {
             maxBuffer: 10 * 1024 * 1024
           });
           
-          classFiles = await this.findFiles(classesDir, '**/*.class');
+          classFiles = await this.listFiles(classesDir, '.class');
           if (classFiles.length > 0) {
             this.logger.log(`   ✅ Compilación masiva exitosa: ${classFiles.length} archivos .class`);
           }
@@ -837,14 +831,14 @@ export class ToolService {
             }
           }
           
-          classFiles = await this.findFiles(classesDir, '**/*.class');
+          classFiles = await this.listFiles(classesDir, '.class');
           compiledCount = classFiles.length;
           this.logger.log(`   ✅ Compilados: ${compiledCount} archivos .class`);
         }
         
         // Verificar archivos compilados
         try {
-          classFiles = await this.findFiles(classesDir, '**/*.class');
+          classFiles = await this.listFiles(classesDir, '.class');
         } catch (e) {
           classFiles = [];
         }
@@ -947,7 +941,7 @@ export class ToolService {
     }
   }
 
-  private async runPMD(projectDir: string): Promise<ToolResult> {
+  private async runPMD(projectDir: string, index: ProjectIndex, scope?: AnalysisScope): Promise<ToolResult> {
     this.logger.log('═══════════════════════════════════════');
     this.logger.log('📋 EJECUTANDO PMD DIRECTAMENTE');
     this.logger.log('═══════════════════════════════════════');
@@ -957,8 +951,8 @@ export class ToolService {
       // Paso 1: Buscar archivos Java
       this.logger.log(`1️⃣  Buscando archivos Java...`);
       
-      const javaFiles = await this.findFiles(projectDir, '**/*.java');
-      this.logger.log(`    ✅ Archivos Java encontrados: ${javaFiles.length}`);
+      const javaFiles = scope ? index.javaFiles.filter(file => scope.includes(file)) : index.javaFiles;
+      this.logger.log(`    ✅ Archivos Java encontrados: ${javaFiles.length}${scope ? ' (cambiados)' : ''}`);
       
       if (javaFiles.length === 0) {
         this.logger.log(`    ⚠️  No hay archivos Java para analizar`);
@@ -991,11 +985,20 @@ export class ToolService {
       this.logger.log(`3️⃣  Ejecutando PMD...`);
       
       const outputXml = path.join(projectDir, 'pmd-results.xml');
-      const sourcePaths = javaFiles
-        .map(f => path.dirname(f))
-        .filter((v, i, a) => a.indexOf(v) === i) // unique
-        .slice(0, 5) // limitar a 5 directorios principales
-        .join(',');
+      let sourceParam: string;
+      if (scope) {
+        // Solo los archivos cambiados, vía lista de archivos
+        const fileListPath = path.join(projectDir, 'pmd-file-list.txt');
+        await fs.writeFile(fileListPath, javaFiles.join('\n'), 'utf-8');
+        sourceParam = `--file-list "${fileListPath}"`;
+      } else {
+        const sourcePaths = javaFiles
+          .map(f => path.dirname(f))
+          .filter((v, i, a) => a.indexOf(v) === i) // unique
+          .slice(0, 5) // limitar a 5 directorios principales
+          .join(',');
+        sourceParam = `-d "${sourcePaths}"`;
+      }
       
       let pmdExecuted = false;
       
@@ -1020,7 +1023,7 @@ export class ToolService {
       }
       
       // NOTA: PMD usa -r o --report-file para archivo de salida, NO -o
-      let pmdCmd = `${pmdExe} check -d "${sourcePaths}" -f xml -r "${outputXml}" ${rulesParam}`;
+      let pmdCmd = `${pmdExe} check ${sourceParam} -f xml -r "${outputXml}" ${rulesParam}`;
       
       this.logger.log(`    Comando: ${pmdCmd}`);
       
@@ -1180,6 +1183,9 @@ export class ToolService {
                     ruleSet: v.$.ruleSet || 'Unknown'
                   };
                   
+                  // El fallback de Maven analiza todo el proyecto: descartar archivos fuera del scope
+                  if (scope && !scope.includes(filename)) return;
+
                   findings.push(finding);
                   
                   const priorityLabel = {
@@ -1242,9 +1248,24 @@ export class ToolService {
     }
   }
 
-  private async runSemgrep(projectDir: string): Promise<ToolResult> {
+  private async runSemgrep(projectDir: string, index: ProjectIndex, scope?: AnalysisScope): Promise<ToolResult> {
     this.logger.log('🔍 Iniciando Semgrep...');
     
+    const changedTargets = scope
+      ? index.pathsWithExtension(...SEMGREP_EXTENSIONS).filter(file => scope.includes(file))
+      : null;
+
+    // Sin código que Semgrep sepa analizar no tiene sentido lanzar el proceso
+    if (changedTargets ? changedTargets.length === 0 : !index.hasExtension(...SEMGREP_EXTENSIONS)) {
+      this.logger.log('ℹ️ Semgrep omitido: no hay archivos de código analizables');
+      return {
+        tool: 'semgrep',
+        success: true,
+        findings: [],
+        rawOutput: 'Semgrep: No hay archivos de código analizables en el proyecto'
+      };
+    }
+    
     try {
       const outputPath = path.join(projectDir, 'semgrep-results.json');
       
@@ -1254,16 +1275,22 @@ export class ToolService {
         '--config=p/security-audit',
         '--config=p/owasp-top-ten',
         '--config=p/java'
-      ].join(' ');
+      ];
       
-      // Usar comando semgrep directamente (deprecado python3 -m semgrep desde 1.38.0)
-      const command = `semgrep ${configs} --json --output="${outputPath}" "${projectDir}"`;
+      // Objetivos: los archivos cambiados (re-análisis incremental) o el proyecto completo.
+      // Las rutas vienen del repositorio del usuario: se pasan como argumentos sin shell
+      const targets = changedTargets && changedTargets.length <= SEMGREP_MAX_FILE_TARGETS
+        ? changedTargets
+        : [projectDir];
+
+      // Usar semgrep directamente (deprecado python3 -m semgrep desde 1.38.0)
+      const args = [...configs, '--json', `--output=${outputPath}`, '--', ...targets];
       
       this.logger.log(`📋 Comando Semgrep: semgrep [configs] --json --output=...`);
       
       try {
         this.logger.log(`⏳ Ejecutando Semgrep (timeout: 5 minutos)...`);
-        const result = await execAsync(command, { 
+        await execFileAsync('semgrep', args, {
           timeout: 120000, // 2 min
           maxBuffer: 10 * 1024 * 1024
         } as any);
@@ -1312,7 +1339,7 @@ export class ToolService {
         }
         
         const result = JSON.parse(jsonContent);
-        const findings = result.results || [];
+        const findings = (result.results || []).filter((f: any) => !scope || scope.includes(f.path));
         
         this.logger.log(`5️⃣  RESULTADO FINAL`);
         this.logger.log(`    ✅ Hallazgos encontrados: ${findings.length}`);
@@ -1458,560 +1485,12 @@ export class ToolService {
     }
   }
 
-  // Método para detectar problemas de código directamente si las herramientas fallan
-  private async detectCodeIssuesDirectly(projectDir: string): Promise<any[]> {
-    const issues = [];
-    
-    try {
-      
-      this.logger.log(`🔍 Iniciando detección directa en: ${projectDir}`);
-      
-      // Leer archivos Java y buscar patrones problemáticos
-      const javaFiles = await this.findFilesRecursively(projectDir, '.java');
-      this.logger.log(`📄 Archivos Java encontrados: ${javaFiles.length}`);
-      if (javaFiles.length > 0) {
-        this.logger.log(`   Primeros 3 archivos: ${javaFiles.slice(0, 3).join(', ')}`);
-      }
-      
-      for (const javaFile of javaFiles) {
-        const content = await fs.readFile(javaFile, 'utf-8');
-        const lines = content.split('\n');
-        
-        lines.forEach((line, index) => {
-          const lineNum = index + 1;
-          
-          // =================== JAVA SECURITY VULNERABILITIES ===================
-          
-          // 1. SQL INJECTION - String concatenation in SQL queries
-          if ((line.includes('executeQuery') || line.includes('executeUpdate') || line.includes('execute(')) &&
-              (line.includes('" + ') || line.includes('+ "') || line.includes('String.format'))) {
-            issues.push({
-              type: 'SQL Injection',
-              path: javaFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'SQL Injection vulnerability - Use PreparedStatement instead of string concatenation',
-              code: line.trim()
-            });
-          }
-          
-          // 2. SQL INJECTION - Direct SELECT statements with concatenation
-          if ((line.includes('"SELECT') || line.includes("'SELECT")) && 
-              (line.includes('" + ') || line.includes("' + ") || line.includes('String.format'))) {
-            issues.push({
-              type: 'SQL Injection',
-              path: javaFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'SQL Injection vulnerability - Use parameterized queries',
-              code: line.trim()
-            });
-          }
-          
-          // 3. COMMAND INJECTION - Runtime.exec() with unsanitized input
-          if ((line.includes('Runtime.getRuntime().exec') || line.includes('new ProcessBuilder')) &&
-              (line.includes('" + ') || line.includes('+ "') || line.includes('String.format') || line.includes('concatenat'))) {
-            issues.push({
-              type: 'Command Injection',
-              path: javaFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'Command Injection vulnerability - Use Runtime.exec(String[]) with array instead of concatenation',
-              code: line.trim()
-            });
-          }
-          
-          // 3b. COMMAND INJECTION - Bare Runtime.exec() call (ANY form)
-          if (line.includes('Runtime.getRuntime().exec')) {
-            // Flag any exec() call without explicit protection
-            const prevLines = lines.slice(Math.max(0, index - 5), index).join(' ');
-            if (!prevLines.includes('whitelist') && !prevLines.includes('sanitize') && !prevLines.includes('validate')) {
-              issues.push({
-                type: 'Command Injection',
-                path: javaFile,
-                start: { line: lineNum },
-                severity: 'CRITICAL',
-                message: 'Command execution detected (Runtime.getRuntime().exec) - Ensure input is from trusted sources only',
-                code: line.trim()
-              });
-            }
-          }
-          
-          // 3c. COMMAND INJECTION - detect cmd.exe /c pattern with concatenation
-          if (line.includes('cmd.exe /c') && (line.includes('" + ') || line.includes('+ "'))) {
-            issues.push({
-              type: 'Command Injection',
-              path: javaFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'Command Injection vulnerability - User input concatenated into system command',
-              code: line.trim()
-            });
-          }
-          
-          // 3d. COMMAND INJECTION - ProcessBuilder with concatenated strings
-          if (line.includes('new ProcessBuilder') && (line.includes('" + ') || line.includes('+ "'))) {
-            issues.push({
-              type: 'Command Injection',
-              path: javaFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'Command Injection - ProcessBuilder with concatenated strings is dangerous',
-              code: line.trim()
-            });
-          }
-          
-          // 4. PATH TRAVERSAL - File operations with unsanitized paths
-          if ((line.includes('new File(') || line.includes('new FileInputStream') || 
-               line.includes('new FileOutputStream') || line.includes('Paths.get(')) &&
-              (line.includes('" + ') || line.includes('+ "') || line.includes('String.format'))) {
-            issues.push({
-              type: 'Path Traversal',
-              path: javaFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'Path Traversal vulnerability - Validate file paths, prevent ".." sequences',
-              code: line.trim()
-            });
-          }
-          
-          // 4b. PATH TRAVERSAL - Detect "/safe/directory/" + user input pattern
-          if ((line.includes('new File(') || line.includes('new FileInputStream') || line.includes('new FileOutputStream')) &&
-              (line.includes('" + ') || line.includes('filename') || line.includes('filepath'))) {
-            issues.push({
-              type: 'Path Traversal',
-              path: javaFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'Path Traversal vulnerability - User-controlled path concatenation detected',
-              code: line.trim()
-            });
-          }
-          
-          // 4c. PATH TRAVERSAL - Any File() constructor with variables
-          if (line.includes('new File(') && (line.includes('parameter') || line.includes('request.') || 
-                                             line.includes('input') || line.includes('userPath') || 
-                                             line.includes('filename') || line.match(/new File\([a-zA-Z]/))) {
-            // Check if there's validation
-            const nextLines = lines.slice(index + 1, Math.min(index + 8, lines.length)).join(' ');
-            if (!nextLines.includes('.startsWith(') && !nextLines.includes('.contains("..") == false') && !nextLines.includes('getCanonicalPath')) {
-              issues.push({
-                type: 'Path Traversal',
-                path: javaFile,
-                start: { line: lineNum },
-                severity: 'CRITICAL',
-                message: 'Path Traversal risk - Ensure file paths are validated and do not contain ".." sequences',
-                code: line.trim()
-              });
-            }
-          }
-          
-          // 4d. PATH TRAVERSAL - FileOutputStream with user input
-          if (line.includes('new FileOutputStream(') && (line.includes('" + ') || line.includes('parameter') || line.includes('request.'))) {
-            issues.push({
-              type: 'Path Traversal',
-              path: javaFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'Path Traversal in file output - Validate file paths before creating/writing files',
-              code: line.trim()
-            });
-          }
-          
-          // 5. HARDCODED CREDENTIALS - DB passwords, API keys, etc
-          if (line.match(/\b(DB_USER|DB_PASSWORD|PASSWORD|password|apiKey|api_key|API_KEY|SECRET|secret|TOKEN|token|CREDENTIAL)\s*[=:]\s*["']/i) ||
-              (line.includes('=') && line.includes('"') && 
-               line.match(/(password|secret|token|api_key|db_password|user|credential)/i) &&
-               !line.includes('null') && !line.includes('getPassword') && !line.includes('final String'))) {
-            issues.push({
-              type: 'Hardcoded Credential',
-              path: javaFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'Hardcoded credential detected - Store in environment variables or secure vault',
-              code: line.trim()
-            });
-          }
-          
-          // 6. INSECURE RANDOM - Using Random instead of SecureRandom
-          if (line.includes('new Random()')) {
-            issues.push({
-              type: 'Insecure Randomness',
-              path: javaFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'Insecure Randomness - Use SecureRandom for cryptographic operations like tokens',
-              code: line.trim()
-            });
-          }
-          
-          // 6b. INSECURE RANDOM - random.nextLong(), random.nextInt() used for security tokens
-          if ((line.includes('random.nextLong()') || line.includes('random.nextInt()')) &&
-              (line.includes('token') || line.includes('Token') || line.includes('seed') || line.includes('Seed'))) {
-            issues.push({
-              type: 'Insecure Randomness',
-              path: javaFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'Insecure Randomness - Use SecureRandom for security tokens and cryptographic operations',
-              code: line.trim()
-            });
-          }
-          
-          // 7. NULL POINTER DEREFERENCE - accessing variable after setting to null
-          if (line.includes('= null')) {
-            const varMatch = line.match(/(\w+)\s*=\s*null/);
-            if (varMatch) {
-              const varName = varMatch[1];
-              // Check next few lines for dereference
-              for (let i = 1; i < 5 && index + i < lines.length; i++) {
-                if (lines[index + i].includes(varName + '.') || 
-                    lines[index + i].includes(varName + '(') ||
-                    lines[index + i].includes(varName + '[')) {
-                  issues.push({
-                    type: 'Null Pointer Dereference',
-                    path: javaFile,
-                    start: { line: lineNum + i },
-                    severity: 'HIGH',
-                    message: `Variable '${varName}' set to null and dereferenced without null check`,
-                    code: lines[index + i].trim()
-                  });
-                  break;
-                }
-              }
-            }
-          }
-          
-          // 8. RESOURCE LEAK - Streams and connections not closed
-          if ((line.includes('new FileInputStream') || line.includes('new FileOutputStream') || 
-               line.includes('new BufferedReader') || line.includes('new PrintWriter') ||
-               line.includes('getConnection()') || line.includes('new Scanner(') ||
-               line.includes('new Connection') || line.includes('new Statement') ||
-               line.includes('new ResultSet')) && 
-              !line.trim().startsWith('//')) {
-            // Check if it's in a try-with-resources
-            const prevLines = lines.slice(Math.max(0, index - 3), index).join(' ');
-            if (!prevLines.includes('try') && !line.includes(';')) {
-              let hasClose = false;
-              for (let i = 1; i < 15 && index + i < lines.length; i++) {
-                if (lines[index + i].includes('.close()')) {
-                  hasClose = true;
-                  break;
-                }
-              }
-              if (!hasClose) {
-                issues.push({
-                  type: 'Resource Leak',
-                  path: javaFile,
-                  start: { line: lineNum },
-                  severity: 'MEDIUM',
-                  message: 'Resource may not be properly closed - Use try-with-resources or ensure close() is called',
-                  code: line.trim()
-                });
-              }
-            }
-          }
-          
-          // 8b. RESOURCE LEAK - Connection from DriverManager
-          if ((line.includes('DriverManager.getConnection') || line.includes('DataSource.getConnection')) &&
-              !lines.slice(Math.max(0, index - 2), index).join(' ').includes('try')) {
-            let hasCloseOrTry = false;
-            for (let i = 0; i < 15 && index + i < lines.length; i++) {
-              if (lines[index + i].includes('.close()') || lines[index + i].includes('finally')) {
-                hasCloseOrTry = true;
-                break;
-              }
-            }
-            if (!hasCloseOrTry && !line.includes('try')) {
-              issues.push({
-                type: 'Resource Leak',
-                path: javaFile,
-                start: { line: lineNum },
-                severity: 'MEDIUM',
-                message: 'Database Connection resource leak - Use try-with-resources or ensure connection.close() is called in finally block',
-                code: line.trim()
-              });
-            }
-          }
-          
-          // 8c. RESOURCE LEAK - Statement not closed
-          if ((line.includes('.createStatement()') || line.includes('.prepareStatement(')) &&
-              !line.includes('try')) {
-            let hasClose = false;
-            for (let i = 1; i < 20 && index + i < lines.length; i++) {
-              if (lines[index + i].includes('.close()') || lines[index + i].includes('finally')) {
-                hasClose = true;
-                break;
-              }
-            }
-            if (!hasClose) {
-              issues.push({
-                type: 'Resource Leak',
-                path: javaFile,
-                start: { line: lineNum },
-                severity: 'MEDIUM',
-                message: 'SQL Statement resource leak - Ensure statement.close() is called in finally block',
-                code: line.trim()
-              });
-            }
-          }
-          
-          // 8d. RESOURCE LEAK - ResultSet not closed
-          if ((line.includes('.executeQuery()') || line.includes('ResultSet')) &&
-              !line.includes('try')) {
-            let hasClose = false;
-            for (let i = 1; i < 20 && index + i < lines.length; i++) {
-              if (lines[index + i].includes('.close()') || lines[index + i].includes('finally')) {
-                hasClose = true;
-                break;
-              }
-            }
-            if (!hasClose && !line.includes('new ResultSet')) {
-              issues.push({
-                type: 'Resource Leak',
-                path: javaFile,
-                start: { line: lineNum },
-                severity: 'MEDIUM',
-                message: 'ResultSet resource leak - Ensure resultSet.close() is called in finally block',
-                code: line.trim()
-              });
-            }
-          }
-          
-          // 8e. RESOURCE LEAK - BufferedReader without try-with-resources
-          if (line.includes('new BufferedReader') && !line.includes('try')) {
-            let hasClose = false;
-            for (let i = 1; i < 20 && index + i < lines.length; i++) {
-              if (lines[index + i].includes('.close()')) {
-                hasClose = true;
-                break;
-              }
-            }
-            if (!hasClose) {
-              issues.push({
-                type: 'Resource Leak',
-                path: javaFile,
-                start: { line: lineNum },
-                severity: 'MEDIUM',
-                message: 'BufferedReader resource leak - Use try-with-resources or call .close() in finally block',
-                code: line.trim()
-              });
-            }
-          }
-          
-          // 9. XSS - User input written to output without escaping
-          if ((line.includes('System.out.println') || line.includes('response.write') || 
-               line.includes('.append(') || line.includes('getWriter().print')) &&
-              (line.includes('" + ') || line.includes('+ "'))) {
-            issues.push({
-              type: 'Cross-Site Scripting (XSS)',
-              path: javaFile,
-              start: { line: lineNum },
-              severity: 'HIGH',
-              message: 'Potential XSS vulnerability - User input may not be properly escaped',
-              code: line.trim()
-            });
-          }
-          
-          // 10. STRING COMPARISON with == for sensitive data
-          if (line.includes('==') && (line.includes('"') || line.includes("'"))) {
-            if (line.match(/(password|token|secret|credential|key)\s*==|==\s*(password|token|secret|credential|key)/i)) {
-              issues.push({
-                type: 'Insecure String Comparison',
-                path: javaFile,
-                start: { line: lineNum },
-                severity: 'MEDIUM',
-                message: 'Use .equals() instead of == for string comparison',
-                code: line.trim()
-              });
-            }
-          }
-          
-          // 11. Detecting general null dereference
-          if (line.includes('== null') && lines[index + 1]?.includes('.')) {
-            issues.push({
-              type: 'Null Pointer Dereference',
-              path: javaFile,
-              start: { line: lineNum + 1 },
-              severity: 'HIGH',
-              message: 'Potential null pointer dereference',
-              code: lines[index + 1].trim()
-            });
-          }
-        });
-      }
-      
-      // Leer archivos JavaScript y buscar vulnerabilidades
-      const jsFiles = await this.findFilesRecursively(projectDir, '.js');
-      this.logger.log(`📄 Archivos JavaScript encontrados: ${jsFiles.length}`);
-      if (jsFiles.length > 0) {
-        this.logger.log(`   Primeros 3 archivos: ${jsFiles.slice(0, 3).join(', ')}`);
-      }
-      
-      for (const jsFile of jsFiles) {
-        const content = await fs.readFile(jsFile, 'utf-8');
-        const lines = content.split('\n');
-        
-        lines.forEach((line, index) => {
-          const lineNum = index + 1;
-          
-          // =================== JAVASCRIPT VULNERABILITIES ===================
-          
-          // 1. CODE INJECTION - eval()
-          if (line.includes('eval(')) {
-            issues.push({
-              type: 'Code Injection',
-              path: jsFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'eval() executes arbitrary code - Use Function() or avoid dynamic code execution',
-              code: line.trim()
-            });
-          }
-          
-          // 2. XSS - innerHTML assignment
-          if (line.includes('.innerHTML') || line.includes('.innerHTML =')) {
-            issues.push({
-              type: 'Cross-Site Scripting (XSS)',
-              path: jsFile,
-              start: { line: lineNum },
-              severity: 'HIGH',
-              message: 'Direct innerHTML assignment can lead to XSS - Use textContent or DOM methods',
-              code: line.trim()
-            });
-          }
-          
-          // 3. HARDCODED SECRETS
-          if (line.match(/\b(API_KEY|SECRET|PASSWORD|TOKEN|apiKey|secretKey|apiSecret)\s*[=:]\s*["']/i)) {
-            issues.push({
-              type: 'Hardcoded Secret',
-              path: jsFile,
-              start: { line: lineNum },
-              severity: 'HIGH',
-              message: 'Hardcoded secret detected - Use environment variables',
-              code: line.trim()
-            });
-          }
-          
-          // 4. SQL INJECTION
-          if ((line.includes('SELECT') || line.includes('INSERT') || line.includes('UPDATE') || line.includes('DELETE')) &&
-              (line.includes('" + ') || line.includes('+ "') || line.includes('${') || line.includes('`'))) {
-            issues.push({
-              type: 'SQL Injection',
-              path: jsFile,
-              start: { line: lineNum },
-              severity: 'CRITICAL',
-              message: 'SQL Injection - Use parameterized queries instead of concatenation',
-              code: line.trim()
-            });
-          }
-        });
-      }
-      
-    } catch (error) {
-      this.logger.error('❌ Error en detección directa:', error.message, error.stack);
-    }
-    
-    this.logger.log(`✅ Detección directa completada: ${issues.length} problemas encontrados`);
-    return issues;
-  }
-
-  private async findFilesRecursively(dir: string, extension: string): Promise<string[]> {
-    const results = [];
-    
-    try {
-      if (!await this.fileExists(dir)) {
-        this.logger.warn(`⚠️ Directorio no existe: ${dir}`);
-        return [];
-      }
-      
-      const entries = await fs.readdir(dir, { withFileTypes: true });
-      this.logger.debug(`📂 Explorando ${dir}: ${entries.length} entradas`);
-      
-      for (const entry of entries) {
-        const fullPath = path.join(dir, entry.name);
-        
-        if (entry.isDirectory() && !entry.name.startsWith('.') && entry.name !== 'node_modules') {
-          results.push(...(await this.findFilesRecursively(fullPath, extension)));
-        } else if (entry.isFile() && entry.name.endsWith(extension)) {
-          results.push(fullPath);
-          this.logger.debug(`✅ Encontrado: ${fullPath}`);
-        }
-      }
-    } catch (error) {
-      this.logger.warn(`⚠️ Error leyendo directorio ${dir}: ${error.message}`);
-    }
-    
-    return results;
-  }
-
-  private async findFiles(dir: string, pattern: string): Promise<string[]> {
-    // Implementación simple de búsqueda de archivos compatible con Windows y Linux
-    try {
-      const ext = pattern.includes('.') ? pattern.substring(pattern.lastIndexOf('.')) : pattern;
-      const command = process.platform === 'win32'
-        ? `dir /s /b "${dir}\\*${ext}"`
-        : `find "${dir}" -name "*${ext}"`;
-      
-      const { stdout } = await execAsync(command, { timeout: 5000, shell: true } as any);
-      return stdout.toString().trim().split('\n').filter(line => line.trim());
-    } catch {
-      return [];
-    }
-  }
-
-  private async findJavaSourceDir(projectDir: string): Promise<string | null> {
-    const possiblePaths = [
-      path.join(projectDir, 'src', 'main', 'java'),
-      path.join(projectDir, 'src'),
-      projectDir
-    ];
-    
-    for (const srcPath of possiblePaths) {
-      if (await this.fileExists(srcPath)) {
-        try {
-          // Usar comando compatible con Windows y Linux
-          const command = process.platform === 'win32'
-            ? `dir /s /b "${srcPath}\\*.java"`
-            : `find "${srcPath}" -name "*.java"`;
-          
-          const { stdout } = await execAsync(command, { timeout: 3000, shell: true } as any);
-          if (stdout.toString().trim()) {
-            return srcPath;
-          }
-        } catch {
-          continue;
-        }
-      }
-    }
-    
-    return null;
-  }
-
-  private async hasAnalyzableFiles(projectDir: string): Promise<boolean> {
-    try {
-      // Buscar archivos de código comunes que Semgrep puede analizar
-      const extensions = ['*.java', '*.js', '*.ts', '*.py', '*.go', '*.c', '*.cpp', '*.php', '*.rb'];
-      
-      for (const ext of extensions) {
-        try {
-          // Usar comando compatible con Windows y Linux
-          const command = process.platform === 'win32'
-            ? `dir /s /b "${projectDir}\\${ext}"`
-            : `find "${projectDir}" -name "${ext}"`;
-          
-          const { stdout } = await execAsync(command, { timeout: 3000, shell: true } as any);
-          if (stdout.toString().trim()) {
-            return true;
-          }
-        } catch {
-          // Continúa con la siguiente extensión
-        }
-      }
-      
-      return false;
-    } catch {
-      return false;
-    }
+  /**
+   * Lista los archivos con una extensión bajo un directorio generado durante el
+   * análisis (p. ej. target/classes), que no forma parte del índice del proyecto.
+   */
+  private async listFiles(dir: string, extension: string): Promise<string[]> {
+    const generated = await ProjectIndex.build(dir, { ignoreDirectories: [] });
+    return generated.pathsWithExtension(extension);
   }
 }
\ No newline at end of file
@@ -0,0 +1,125 @@
+import { createHash } from 'crypto';
+import * as fs from 'fs';
+import * as path from 'path';
+import { Request } from 'express';
+import { Options, StorageEngine } from 'multer';
+import { v4 as uuidv4 } from 'uuid';
+
+/**
+ * Almacenamiento de Multer que escribe la subida directamente a disco.
+ *
+ * El cuerpo de la petición se copia por streaming a uploads/.incoming mientras
+ * se calcula su SHA-256, así que la memoria usada por subida es la de un chunk
+ * y no la del archivo completo. Ningún Buffer con el archivo llega a los
+ * controladores ni al pipeline de análisis.
+ */
+
+export const UPLOADS_DIR = path.join(process.cwd(), 'uploads');
+export const INCOMING_UPLOADS_DIR = path.join(UPLOADS_DIR, '.incoming');
+
+const DEFAULT_MAX_FILE_SIZE = 100 * 1024 * 1024;
+
+/** Archivo subido ya persistido en disco */
+export interface UploadedArchive {
+  path: string;
+  originalName: string;
+  size: number;
+  sha256: string;
+}
+
+export type HashedMulterFile = Express.Multer.File & { sha256?: string };
+
+export class HashingDiskStorage implements StorageEngine {
+  _handleFile(
+    req: Request,
+    file: Express.Multer.File,
+    callback: (error?: any, info?: Partial<HashedMulterFile>) => void,
+  ): void {
+    fs.mkdir(INCOMING_UPLOADS_DIR, { recursive: true }, mkdirError => {
+      if (mkdirError) return callback(mkdirError);
+
+      const filename = uuidv4();
+      const destination = path.join(INCOMING_UPLOADS_DIR, filename);
+      const output = fs.createWriteStream(destination);
+      const hash = createHash('sha256');
+      let size = 0;
+      let settled = false;
+
+      const fail = (error: Error) => {
+        if (settled) return;
+        settled = true;
+        file.stream.unpipe(output);
+        output.destroy();
+        fs.unlink(destination, () => callback(error));
+      };
+
+      file.stream.on('data', (chunk: Buffer) => {
+        hash.update(chunk);
+        size += chunk.length;
+      });
+      file.stream.on('error', fail);
+      output.on('error', fail);
+      output.on('finish', () => {
+        if (settled) return;
+        settled = true;
+        callback(null, {
+          destination: INCOMING_UPLOADS_DIR,
+          filename,
+          path: destination,
+          size,
+          sha256: hash.digest('hex'),
+        });
+      });
+
+      file.stream.pipe(output);
+    });
+  }
+
+  _removeFile(req: Request, file: Express.Multer.File, callback: (error: Error | null) => void): void {
+    fs.unlink(file.path, () => callback(null));
+  }
+}
+
+/**
+ * Tamaño máximo configurable vía env UPLOAD_MAX_FILE_SIZE (bytes) o
+ * MAX_FILE_SIZE (e.g. "100MB").
+ */
+export function uploadMaxFileSize(): number {
+  const raw = process.env.UPLOAD_MAX_FILE_SIZE || process.env.DB_UPLOAD_MAX_FILE_SIZE || process.env.MAX_FILE_SIZE || '';
+  if (!raw) return DEFAULT_MAX_FILE_SIZE;
+  // If numeric string, use as bytes
+  if (/^\d+$/.test(raw)) return Number(raw);
+  // Support human formats like 100MB, 50KB
+  const m = raw.match(/^(\d+)\s*(kb|mb|gb)?$/i);
+  if (m) {
+    const val = Number(m[1]);
+    const unit = (m[2] || '').toLowerCase();
+    if (unit === 'kb') return val * 1024;
+    if (unit === 'gb') return val * 1024 * 1024 * 1024;
+    return val * 1024 * 1024; // default MB
+  }
+  return DEFAULT_MAX_FILE_SIZE;
+}
+
+/** Opciones de Multer para los endpoints que reciben proyectos comprimidos */
+export function projectUploadOptions(): Options {
+  return {
+    storage: new HashingDiskStorage(),
+    limits: { fileSize: uploadMaxFileSize() },
+  };
+}
+
+/** Elimina una subida temporal que no llegó a procesarse (no falla si ya se movió) */
+export async function discardUpload(upload: { path?: string } | null | undefined): Promise<void> {
+  if (!upload?.path) return;
+  await fs.promises.rm(upload.path, { force: true }).catch(() => undefined);
+}
+
+export function toUploadedArchive(file: HashedMulterFile): UploadedArchive {
+  return {
+    path: file.path,
+    originalName: file.originalname,
+    size: file.size,
+    sha256: file.sha256 || null,
+  };
+}
@@ -0,0 +1,134 @@
+import { Injectable, Logger } from '@nestjs/common';
+import { promises as fs } from 'fs';
+import * as path from 'path';
+import { envNumber } from '../../config/env';
+import { UPLOADS_DIR } from './upload-storage';
+
+/**
+ * Ubicación de los directorios de trabajo: RAM (tmpfs) o disco.
+ *
+ * La mayoría de proyectos de estudiantes ocupan pocos MB. Si se configura
+ * WORKSPACE_TMPFS_DIR (p. ej. un directorio en /dev/shm), los proyectos por
+ * debajo del umbral se extraen o clonan ahí, y la extracción, el `target/` de
+ * Maven y los reportes de las herramientas trabajan a velocidad de memoria.
+ * Los proyectos grandes, o los que no caben en el espacio libre del tmpfs,
+ * van a uploads/ en disco.
+ *
+ * tmpfs no tiene cuotas por directorio: cada trabajo reserva aquí una cuota
+ * proporcional al tamaño estimado del proyecto (build y reportes incluidos)
+ * hasta que termina; a partir de ahí lo que ocupa de verdad ya se ve en statfs.
+ */
+
+export interface TmpfsConfig {
+  /** Directorio sobre tmpfs ('' = desactivado) */
+  dir: string;
+  /** Tamaño estimado máximo de un proyecto para ubicarlo en RAM */
+  maxProjectBytes: number;
+  /** Cuota por trabajo = tamaño estimado × factor */
+  quotaFactor: number;
+  /** Cuota mínima por trabajo (compilación y reportes de un proyecto diminuto) */
+  minQuotaBytes: number;
+  /** Espacio del tmpfs que nunca se reserva para workspaces */
+  reserveBytes: number;
+  /** Tiempo sin uso tras el que la retención desaloja un workspace en RAM */
+  ttlMs: number;
+}
+
+export const DEFAULT_TMPFS_CONFIG: TmpfsConfig = {
+  dir: process.env.WORKSPACE_TMPFS_DIR ? path.resolve(process.env.WORKSPACE_TMPFS_DIR) : '',
+  maxProjectBytes: envNumber('WORKSPACE_TMPFS_MAX_PROJECT_BYTES', 5 * 1024 * 1024),
+  quotaFactor: envNumber('WORKSPACE_TMPFS_QUOTA_FACTOR', 8),
+  minQuotaBytes: envNumber('WORKSPACE_TMPFS_MIN_QUOTA_BYTES', 64 * 1024 * 1024),
+  reserveBytes: envNumber('WORKSPACE_TMPFS_RESERVE_BYTES', 256 * 1024 * 1024),
+  ttlMs: envNumber('WORKSPACE_TMPFS_TTL_MINUTES', 60) * 60 * 1000,
+};
+
+const TMPFS_MAGIC = 0x01021994;
+
+export interface WorkspaceAllocation {
+  path: string;
+  /** true si el workspace está en el tmpfs */
+  inMemory: boolean;
+  /** Bytes reservados en el tmpfs (0 en disco) */
+  quotaBytes: number;
+}
+
+@Injectable()
+export class WorkspaceAllocatorService {
+  private readonly logger = new Logger(WorkspaceAllocatorService.name);
+  readonly config = DEFAULT_TMPFS_CONFIG;
+  // Reservas de trabajos en curso: ruta -> bytes
+  private readonly reservations = new Map<string, number>();
+  private tmpfsChecked = false;
+
+  get inMemoryEnabled(): boolean {
+    return this.config.dir !== '';
+  }
+
+  /** Directorios raíz donde pueden vivir workspaces */
+  get roots(): string[] {
+    return this.inMemoryEnabled ? [UPLOADS_DIR, this.config.dir] : [UPLOADS_DIR];
+  }
+
+  /**
+   * Crea el directorio de trabajo `name` en RAM o en disco según el tamaño
+   * estimado del proyecto. La reserva en RAM dura hasta release().
+   */
+  async allocate(name: string, estimatedBytes: number): Promise<WorkspaceAllocation> {
+    const quotaBytes = Math.max(this.config.minQuotaBytes, Math.ceil(estimatedBytes * this.config.quotaFactor));
+    if (this.inMemoryEnabled && estimatedBytes <= this.config.maxProjectBytes && await this.reserve(name, quotaBytes)) {
+      const workspacePath = path.join(this.config.dir, name);
+      try {
+        await fs.rm(workspacePath, { recursive: true, force: true });
+        await fs.mkdir(workspacePath, { recursive: true });
+        this.logger.log(`⚡ Workspace en RAM: ${workspacePath} (${estimatedBytes} bytes estimados, cuota ${quotaBytes})`);
+        return { path: workspacePath, inMemory: true, quotaBytes };
+      } catch (error) {
+        this.release(workspacePath);
+        this.logger.warn(`No se pudo crear el workspace en RAM (${error.message}); se usa disco`);
+      }
+    }
+
+    const workspacePath = path.join(UPLOADS_DIR, name);
+    await fs.rm(workspacePath, { recursive: true, force: true });
+    await fs.mkdir(workspacePath, { recursive: true });
+    return { path: workspacePath, inMemory: false, quotaBytes: 0 };
+  }
+
+  /** Libera la reserva del workspace (el trabajo terminó o falló) */
+  release(workspacePath: string): void {
+    this.reservations.delete(path.resolve(workspacePath));
+  }
+
+  isInMemory(workspacePath: string): boolean {
+    return this.inMemoryEnabled && path.resolve(workspacePath).startsWith(this.config.dir + path.sep);
+  }
+
+  private async reserve(name: string, quotaBytes: number): Promise<boolean> {
+    let available: number;
+    try {
+      await fs.mkdir(this.config.dir, { recursive: true });
+      const stats = await fs.statfs(this.config.dir);
+      if (!this.tmpfsChecked) {
+        this.tmpfsChecked = true;
+        if (stats.type !== TMPFS_MAGIC) {
+          this.logger.warn(`WORKSPACE_TMPFS_DIR (${this.config.dir}) no está sobre tmpfs: los workspaces pequeños no irán a RAM real`);
+        }
+      }
+      available = stats.bavail * stats.bsize;
+    } catch (error) {
+      this.logger.warn(`tmpfs no disponible (${error.message}); se usa disco`);
+      return false;
+    }
+
+    // Sin await entre el cálculo y la reserva: dos trabajos no pueden reservar el mismo espacio
+    let reserved = 0;
+    for (const bytes of this.reservations.values()) reserved += bytes;
+    if (available - reserved - quotaBytes < this.config.reserveBytes) {
+      this.logger.log(`💽 tmpfs sin espacio para la cuota de ${quotaBytes} bytes (${reserved} reservados); se usa disco`);
+      return false;
+    }
+    this.reservations.set(path.join(this.config.dir, name), quotaBytes);
+    return true;
+  }
+}
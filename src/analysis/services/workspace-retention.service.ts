@@ -0,0 +1,379 @@
+import { Injectable, Logger, OnModuleDestroy, OnModuleInit } from '@nestjs/common';
+import { InjectRepository } from '@nestjs/typeorm';
+import { Dirent, promises as fs } from 'fs';
+import * as path from 'path';
+import { In, LessThan, Repository } from 'typeorm';
+import { Workspace, WorkspaceKind } from '../entities/workspace.entity';
+import { BlobStoreService } from './blob-store.service';
+import { RepositoryMirrorService } from './repository-mirror.service';
+import { envNumber } from '../../config/env';
+import { UPLOADS_DIR } from './upload-storage';
+import { WorkspaceAllocatorService } from './workspace-allocator.service';
+
+/**
+ * Retención de directorios de trabajo (uploads/<uuid>, uploads/repo_<id> y
+ * uploads/custom-missions/<uuid>, o sus equivalentes en el tmpfs).
+ *
+ * Cada directorio se registra en la tabla workspaces con su tamaño y último
+ * acceso. Un barrido periódico elimina:
+ *  - los que superan el TTL sin usarse,
+ *  - los menos usados recientemente (LRU) mientras el total supere la cuota o
+ *    el disco esté por encima de la marca de agua alta,
+ *  - los directorios huérfanos sin registro (p. ej. de un proceso caído),
+ *  - los que están en RAM, con un TTL más corto y LRU propio cuando el tmpfs
+ *    supera la marca de agua,
+ * y al final poda los blobs que quedaron sin enlaces y los mirrors sin uso.
+ *
+ * Los directorios con un lease activo (análisis en curso) nunca se eliminan.
+ */
+
+const SUBMISSIONS_DIR = path.join(UPLOADS_DIR, 'custom-missions');
+
+export interface RetentionConfig {
+  ttlMs: number;
+  /** Bytes máximos entre todos los workspaces activos (0 = sin cuota) */
+  maxTotalBytes: number;
+  /** Fracción de disco usada a partir de la cual se desaloja por LRU */
+  highWatermark: number;
+  /** Fracción de disco usada a la que se intenta volver */
+  lowWatermark: number;
+  /** Intervalo entre barridos (0 = desactivado) */
+  sweepIntervalMs: number;
+}
+
+export const DEFAULT_RETENTION_CONFIG: RetentionConfig = {
+  ttlMs: envNumber('WORKSPACE_TTL_HOURS', 72) * 60 * 60 * 1000,
+  maxTotalBytes: envNumber('WORKSPACE_MAX_TOTAL_BYTES', 10 * 1024 * 1024 * 1024),
+  highWatermark: envNumber('WORKSPACE_DISK_HIGH_WATERMARK', 0.85),
+  lowWatermark: envNumber('WORKSPACE_DISK_LOW_WATERMARK', 0.75),
+  sweepIntervalMs: envNumber('WORKSPACE_SWEEP_INTERVAL_MINUTES', 15) * 60 * 1000,
+};
+
+export interface SweepResult {
+  evicted: number;
+  orphansRemoved: number;
+  freedBytes: number;
+}
+
+@Injectable()
+export class WorkspaceRetentionService implements OnModuleInit, OnModuleDestroy {
+  private readonly logger = new Logger(WorkspaceRetentionService.name);
+  private readonly config = DEFAULT_RETENTION_CONFIG;
+  // Leases en memoria: ruta -> número de usuarios activos
+  private readonly leases = new Map<string, number>();
+  private timer: NodeJS.Timeout | null = null;
+  private sweeping: Promise<SweepResult> | null = null;
+
+  constructor(
+    @InjectRepository(Workspace)
+    private readonly workspaceRepository: Repository<Workspace>,
+    private readonly blobStore: BlobStoreService,
+    private readonly repositoryMirrors: RepositoryMirrorService,
+    private readonly allocator: WorkspaceAllocatorService,
+  ) {}
+
+  onModuleInit(): void {
+    if (this.config.sweepIntervalMs <= 0) return;
+    this.timer = setInterval(() => {
+      this.sweep().catch(error => this.logger.error(`Error en barrido de workspaces: ${error.message}`));
+    }, this.config.sweepIntervalMs);
+    this.timer.unref();
+  }
+
+  onModuleDestroy(): void {
+    if (this.timer) clearInterval(this.timer);
+  }
+
+  /**
+   * Protege el directorio mientras se usa. Devuelve la función que libera el lease;
+   * al liberar el último también se libera la reserva del tmpfs.
+   */
+  lease(workspacePath: string): () => void {
+    const key = path.resolve(workspacePath);
+    this.leases.set(key, (this.leases.get(key) || 0) + 1);
+    let released = false;
+    return () => {
+      if (released) return;
+      released = true;
+      const remaining = (this.leases.get(key) || 1) - 1;
+      if (remaining > 0) {
+        this.leases.set(key, remaining);
+      } else {
+        this.leases.delete(key);
+        this.allocator.release(key);
+      }
+    };
+  }
+
+  /** Registra (o reactiva) un workspace con su tamaño actual */
+  async register(
+    workspacePath: string,
+    kind: WorkspaceKind,
+    refs: { analysisRunId?: number; submissionId?: number } = {},
+  ): Promise<void> {
+    const resolved = path.resolve(workspacePath);
+    const sizeBytes = await directorySize(resolved);
+    await this.workspaceRepository.upsert(
+      {
+        path: resolved,
+        kind,
+        analysisRunId: refs.analysisRunId ?? null,
+        submissionId: refs.submissionId ?? null,
+        status: 'active',
+        sizeBytes,
+        lastAccessedAt: new Date(),
+        evictedAt: null,
+      },
+      ['path'],
+    );
+
+    // Un workspace nuevo puede dejar el disco por encima de la marca de agua
+    this.sweepIfAboveWatermark().catch(error =>
+      this.logger.warn(`No se pudo comprobar el uso de disco: ${error.message}`),
+    );
+  }
+
+  /** Actualiza el último acceso (cuenta para LRU y TTL) */
+  async touch(workspacePath: string): Promise<void> {
+    await this.workspaceRepository.update(
+      { path: path.resolve(workspacePath), status: 'active' },
+      { lastAccessedAt: new Date() },
+    );
+  }
+
+  /**
+   * Workspace todavía en disco de un análisis, o null si fue desalojado.
+   */
+  async findWarm(analysisRunId: number): Promise<Workspace | null> {
+    const workspace = await this.workspaceRepository.findOne({
+      where: { analysisRunId, status: 'active' },
+      order: { lastAccessedAt: 'DESC' },
+    });
+    if (!workspace) return null;
+
+    try {
+      await fs.access(workspace.path);
+      return workspace;
+    } catch {
+      // Borrado fuera de la retención: reflejarlo en la tabla
+      await this.markEvicted([workspace.id]);
+      return null;
+    }
+  }
+
+  /** Elimina un workspace de inmediato (análisis fallido o borrado) */
+  async discard(workspacePath: string): Promise<void> {
+    if (!workspacePath) return;
+    const resolved = path.resolve(workspacePath);
+    await this.removeDirectory(resolved);
+    const workspace = await this.workspaceRepository.findOne({ where: { path: resolved } });
+    if (workspace) await this.markEvicted([workspace.id]);
+  }
+
+  /** Ejecuta un barrido completo; si ya hay uno en curso devuelve ese */
+  sweep(): Promise<SweepResult> {
+    if (!this.sweeping) {
+      this.sweeping = this.runSweep().finally(() => {
+        this.sweeping = null;
+      });
+    }
+    return this.sweeping;
+  }
+
+  private async sweepIfAboveWatermark(): Promise<void> {
+    for (const root of this.allocator.roots) {
+      const usage = await this.diskUsage(root);
+      if (usage && usage.ratio > this.config.highWatermark) {
+        this.logger.warn(`💽 ${root} al ${(usage.ratio * 100).toFixed(1)}%: desalojando workspaces`);
+        await this.sweep();
+        return;
+      }
+    }
+  }
+
+  private async runSweep(): Promise<SweepResult> {
+    const result: SweepResult = { evicted: 0, orphansRemoved: 0, freedBytes: 0 };
+
+    // 1. TTL (más corto para los workspaces en RAM)
+    const expired = await this.workspaceRepository.find({
+      where: { status: 'active', lastAccessedAt: LessThan(new Date(Date.now() - this.config.ttlMs)) },
+    });
+    await this.evictAll(expired, result);
+    if (this.allocator.inMemoryEnabled) {
+      const idle = await this.workspaceRepository.find({
+        where: { status: 'active', lastAccessedAt: LessThan(new Date(Date.now() - this.allocator.config.ttlMs)) },
+      });
+      await this.evictAll(idle.filter(workspace => this.allocator.isInMemory(workspace.path)), result);
+    }
+
+    // 2. LRU por cuota y por marca de agua del disco (los workspaces en RAM no cuentan para el disco)
+    const active = await this.workspaceRepository.find({
+      where: { status: 'active' },
+      order: { lastAccessedAt: 'ASC' },
+    });
+    const onDisk = active.filter(workspace => !this.allocator.isInMemory(workspace.path));
+    const totalBytes = onDisk.reduce((sum, workspace) => sum + Number(workspace.sizeBytes || 0), 0);
+    let bytesToFree = this.config.maxTotalBytes > 0 ? totalBytes - this.config.maxTotalBytes : 0;
+    const usage = await this.diskUsage(UPLOADS_DIR);
+    if (usage && usage.ratio > this.config.highWatermark) {
+      bytesToFree = Math.max(bytesToFree, usage.used - this.config.lowWatermark * usage.total);
+    }
+    await this.evictLeastRecentlyUsed(onDisk, bytesToFree, result);
+
+    // El tmpfs es memoria: su marca de agua solo desaloja workspaces en RAM
+    if (this.allocator.inMemoryEnabled) {
+      const memoryUsage = await this.diskUsage(this.allocator.config.dir);
+      if (memoryUsage && memoryUsage.ratio > this.config.highWatermark) {
+        const inMemory = active.filter(workspace => this.allocator.isInMemory(workspace.path));
+        await this.evictLeastRecentlyUsed(inMemory, memoryUsage.used - this.config.lowWatermark * memoryUsage.total, result);
+      }
+    }
+
+    // 3. Directorios huérfanos (sin registro) más antiguos que el TTL
+    await this.removeOrphans(result);
+
+    // 4. Blobs que ya no enlaza ningún workspace y mirrors de repositorios sin uso
+    const pruned = await this.blobStore.prune();
+    result.freedBytes += pruned.bytes;
+    await this.repositoryMirrors.prune();
+
+    if (result.evicted > 0 || result.orphansRemoved > 0) {
+      this.logger.log(
+        `🧹 Retención: ${result.evicted} workspaces desalojados, ${result.orphansRemoved} huérfanos, ` +
+        `${(result.freedBytes / 1024 / 1024).toFixed(1)} MB liberados`,
+      );
+    }
+    return result;
+  }
+
+  private async evictLeastRecentlyUsed(candidates: Workspace[], bytesToFree: number, result: SweepResult): Promise<void> {
+    if (bytesToFree <= 0) return;
+    const victims: Workspace[] = [];
+    let planned = 0;
+    for (const workspace of candidates) {
+      if (planned >= bytesToFree) break;
+      if (this.isLeased(workspace.path)) continue;
+      victims.push(workspace);
+      planned += Number(workspace.sizeBytes || 0);
+    }
+    await this.evictAll(victims, result);
+  }
+
+  private async evictAll(workspaces: Workspace[], result: SweepResult): Promise<void> {
+    const evictedIds: number[] = [];
+    for (const workspace of workspaces) {
+      if (this.isLeased(workspace.path)) continue;
+      await this.removeDirectory(workspace.path);
+      evictedIds.push(workspace.id);
+      result.evicted++;
+      result.freedBytes += Number(workspace.sizeBytes || 0);
+    }
+    await this.markEvicted(evictedIds);
+  }
+
+  private async removeOrphans(result: SweepResult): Promise<void> {
+    const candidates = [
+      ...(await listDirectories(UPLOADS_DIR)).filter(dir => dir !== SUBMISSIONS_DIR),
+      ...(await listDirectories(SUBMISSIONS_DIR)),
+    ];
+    if (this.allocator.inMemoryEnabled) {
+      candidates.push(...(await listDirectories(this.allocator.config.dir)));
+    }
+    if (candidates.length === 0) return;
+
+    const known = await this.workspaceRepository.find({
+      select: ['path'],
+      where: { path: In(candidates) },
+    });
+    const knownPaths = new Set(known.map(workspace => workspace.path));
+    const cutoff = Date.now() - this.config.ttlMs;
+
+    for (const dir of candidates) {
+      if (knownPaths.has(dir) || this.isLeased(dir)) continue;
+      try {
+        const stat = await fs.stat(dir);
+        if (stat.mtimeMs > cutoff) continue;
+        const size = await directorySize(dir);
+        await this.removeDirectory(dir);
+        result.orphansRemoved++;
+        result.freedBytes += size;
+      } catch {
+        // Eliminado concurrentemente
+      }
+    }
+  }
+
+  private async markEvicted(ids: number[]): Promise<void> {
+    if (ids.length === 0) return;
+    await this.workspaceRepository.update(
+      { id: In(ids) },
+      { status: 'evicted', evictedAt: new Date(), sizeBytes: 0 },
+    );
+  }
+
+  private async removeDirectory(dir: string): Promise<void> {
+    // Nunca borrar fuera de uploads/ o del tmpfs, aunque la tabla tenga una ruta inesperada
+    const resolved = path.resolve(dir);
+    if (!this.allocator.roots.some(root => resolved.startsWith(root + path.sep))) {
+      this.logger.warn(`Ruta fuera de uploads ignorada por la retención: ${dir}`);
+      return;
+    }
+    this.allocator.release(resolved);
+    try {
+      await fs.rm(dir, { recursive: true, force: true });
+    } catch (error) {
+      this.logger.error(`Error eliminando workspace ${dir}: ${error.message}`);
+    }
+  }
+
+  private isLeased(workspacePath: string): boolean {
+    return this.leases.has(path.resolve(workspacePath));
+  }
+
+  private async diskUsage(dir: string): Promise<{ total: number; used: number; ratio: number } | null> {
+    try {
+      const stats = await fs.statfs(dir);
+      const total = stats.blocks * stats.bsize;
+      const used = total - stats.bavail * stats.bsize;
+      return total > 0 ? { total, used, ratio: used / total } : null;
+    } catch {
+      return null;
+    }
+  }
+}
+
+/** Subdirectorios visibles (sin los internos .blobs / .incoming) */
+async function listDirectories(dir: string): Promise<string[]> {
+  try {
+    const entries = await fs.readdir(dir, { withFileTypes: true });
+    return entries
+      .filter(entry => entry.isDirectory() && !entry.name.startsWith('.'))
+      .map(entry => path.join(dir, entry.name));
+  } catch {
+    return [];
+  }
+}
+
+/** Tamaño lógico de un directorio (los archivos enlazados al almacén cuentan completos) */
+async function directorySize(dir: string): Promise<number> {
+  let total = 0;
+  let entries: Dirent[];
+  try {
+    entries = await fs.readdir(dir, { withFileTypes: true });
+  } catch {
+    return 0;
+  }
+  for (const entry of entries) {
+    const entryPath = path.join(dir, entry.name);
+    if (entry.isDirectory()) {
+      total += await directorySize(entryPath);
+    } else if (entry.isFile()) {
+      try {
+        total += (await fs.lstat(entryPath)).size;
+      } catch {
+        // Eliminado concurrentemente
+      }
+    }
+  }
+  return total;
+}
@@ -1,17 +1,17 @@
 import { Module } from '@nestjs/common';
 import { TypeOrmModule } from '@nestjs/typeorm';
 import { ConfigModule, ConfigService } from '@nestjs/config';
-import { ServeStaticModule } from '@nestjs/serve-static';
 import { MulterModule } from '@nestjs/platform-express';
 import { join } from 'path';
-import * as multer from 'multer';
 
 import { AppController } from './app.controller';
 import { AppService } from './app.service';
 import { AnalysisModule } from './analysis/analysis.module';
+import { HashingDiskStorage, uploadMaxFileSize } from './analysis/services/upload-storage';
 import { AuthModule } from './auth/auth.module';
 import { RankingModule } from './ranking/ranking.module';
 import { CustomMissionsModule } from './missions/custom-missions.module';
+import { OutboxModule } from './outbox/outbox.module';
 import { AnalysisRun } from './analysis/entities/analysis-run.entity';
 import { Mission } from './analysis/entities/mission.entity';
 import { User } from './auth/entities/user.entity';
@@ -59,34 +59,16 @@ import { User } from './auth/entities/user.entity';
       inject: [ConfigService],
     }),
 
-    // Configuración de archivos estáticos
-    ServeStaticModule.forRoot({
-      rootPath: join(__dirname, '..', 'uploads'),
-      serveRoot: '/uploads',
-    }),
+    // uploads/ no se sirve como estático: contiene el código de los estudiantes
+    // y sus directorios los gestiona la retención de workspaces
 
     // Configuración de Multer para subida de archivos
     MulterModule.registerAsync({
       useFactory: () => ({
-        storage: multer.memoryStorage(),
+        // Las subidas se escriben a disco por streaming (con hash), nunca en memoria
+        storage: new HashingDiskStorage(),
         limits: {
-          // Tamaño máximo configurable vía env UPLOAD_MAX_FILE_SIZE (bytes) o MAX_FILE_SIZE (e.g. "100MB").
-          fileSize: (function () {
-            const raw = process.env.UPLOAD_MAX_FILE_SIZE || process.env.DB_UPLOAD_MAX_FILE_SIZE || process.env.MAX_FILE_SIZE || '';
-            if (!raw) return 100 * 1024 * 1024;
-            // If numeric string, use as bytes
-            if (/^\d+$/.test(raw)) return Number(raw);
-            // Support human formats like 100MB, 50KB
-            const m = raw.match(/^(\d+)\s*(kb|mb|gb)?$/i);
-            if (m) {
-              const val = Number(m[1]);
-              const unit = (m[2] || '').toLowerCase();
-              if (unit === 'kb') return val * 1024;
-              if (unit === 'gb') return val * 1024 * 1024 * 1024;
-              return val * 1024 * 1024; // default MB
-            }
-            return 100 * 1024 * 1024;
-          })(),
+          fileSize: uploadMaxFileSize(),
         },
         fileFilter: (req, file, cb) => {
           // Permitir tipos configurables vía env UPLOAD_ALLOWED_MIME (coma-separados) y extensiones UPLOAD_ALLOWED_EXT
@@ -94,6 +76,10 @@ import { User } from './auth/entities/user.entity';
             'application/zip',
             'application/x-zip-compressed',
             'application/x-rar-compressed',
+            'application/x-tar',
+            'application/gzip',
+            'application/x-gzip',
+            'application/x-7z-compressed',
             'application/octet-stream',
             'text/plain',
             'application/javascript',
@@ -101,7 +87,7 @@ import { User } from './auth/entities/user.entity';
             'text/x-java-source'
           ];
 
-          const defaultExt = ['.zip', '.rar', '.js', '.ts', '.py', '.java', '.cpp', '.c', '.html', '.css'];
+          const defaultExt = ['.zip', '.rar', '.tar', '.gz', '.tgz', '.7z', '.js', '.ts', '.py', '.java', '.cpp', '.c', '.html', '.css'];
 
           const allowedTypes = (process.env.UPLOAD_ALLOWED_MIME ? process.env.UPLOAD_ALLOWED_MIME.split(',') : defaultTypes).map(s => s.trim()).filter(Boolean);
           const allowedExtensions = (process.env.UPLOAD_ALLOWED_EXT ? process.env.UPLOAD_ALLOWED_EXT.split(',') : defaultExt).map(s => s.trim()).filter(Boolean);
@@ -122,6 +108,7 @@ import { User } from './auth/entities/user.entity';
     AuthModule,
     RankingModule,
     CustomMissionsModule,
+    OutboxModule,
   ],
   controllers: [AppController],
   providers: [AppService],
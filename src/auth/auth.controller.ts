@@ -102,7 +102,7 @@ export class AuthController {
       }
       
       // Generar el token usando el usuario de la BD
-      const token = this.authService.generateTokenForUser(user.id, user.email, user.name);
+      const token = this.authService.generateTokenForUser(user);
       
       // Establecer la cookie con el token
       res.cookie('auth_token', token, {
@@ -126,9 +126,14 @@ export class AuthController {
   @Get('profile')
   @UseGuards(AuthGuard('jwt'))
   async getProfile(@Request() req) {
+    // req.user solo trae lo necesario para autenticar: el perfil se lee aparte
+    const user = await this.authService.findById(req.user.id);
+    if (!user) {
+      throw new NotFoundException('Usuario no encontrado');
+    }
     const stats = await this.authService.getUserStats(req.user.id);
     return {
-      ...req.user,
+      ...this.authService.toUserResponsePublic(user),
       ...stats
     };
   }
@@ -9,10 +9,12 @@ import { AuthService } from './auth.service';
 import { AuthController } from './auth.controller';
 import { User } from './entities/user.entity';
 import { Achievement } from './entities/achievement.entity';
+import { UserAchievementCounters } from './entities/user-achievement-counters.entity';
 import { LocalStrategy } from './strategies/local.strategy';
 import { GoogleStrategy } from './strategies/google.strategy';
 import { JwtStrategy } from './strategies/jwt.strategy';
 import { AchievementsService } from './services/achievements.service';
+import { PasswordHasherService } from './services/password-hasher.service';
 import { AchievementsController } from './controllers/achievements.controller';
 import { Mission } from '../analysis/entities/mission.entity';
 import { AnalysisRun } from '../analysis/entities/analysis-run.entity';
@@ -20,7 +22,7 @@ import { AnalysisRun } from '../analysis/entities/analysis-run.entity';
 @Module({
   imports: [
     DatabaseModule,
-    TypeOrmModule.forFeature([User, Achievement, Mission, AnalysisRun]),
+    TypeOrmModule.forFeature([User, Achievement, UserAchievementCounters, Mission, AnalysisRun]),
     PassportModule.register({ defaultStrategy: 'jwt' }),
     JwtModule.registerAsync({
       imports: [ConfigModule],
@@ -32,7 +34,7 @@ import { AnalysisRun } from '../analysis/entities/analysis-run.entity';
     }),
   ],
   controllers: [AuthController, AchievementsController],
-  providers: [AuthService, LocalStrategy, GoogleStrategy, JwtStrategy, AchievementsService],
+  providers: [AuthService, LocalStrategy, GoogleStrategy, JwtStrategy, AchievementsService, PasswordHasherService],
   exports: [AuthService, AchievementsService, JwtModule],
 })
 export class AuthModule {}
\ No newline at end of file
@@ -2,18 +2,33 @@ import { Injectable, ConflictException, UnauthorizedException, NotFoundException
 import { InjectRepository } from '@nestjs/typeorm';
 import { Repository } from 'typeorm';
 import { JwtService } from '@nestjs/jwt';
-import * as bcrypt from 'bcryptjs';
 import { User } from './entities/user.entity';
 import { RegisterDto, LoginDto, UpdateProfileDto, UserResponseDto } from './dto/auth.dto';
-import { AchievementsService } from './services/achievements.service';
+import { PasswordHasherService } from './services/password-hasher.service';
+import { envNumber } from '../config/env';
+
+// Usuarios autenticados en caché por proceso (JwtStrategy.validate)
+const PRINCIPAL_TTL_MS = envNumber('AUTH_PRINCIPAL_CACHE_TTL_MS', 30 * 1000);
+const PRINCIPAL_CACHE_SIZE = 5000;
+
+/** Lo que JwtStrategy deja en req.user: sin contraseña ni el resto del perfil */
+export interface AuthPrincipal {
+  id: number;
+  email: string;
+  name: string;
+  isActive: boolean;
+  tokenVersion: number;
+}
 
 @Injectable()
 export class AuthService {
+  private readonly principals = new Map<number, { principal: AuthPrincipal; expiresAt: number }>();
+
   constructor(
     @InjectRepository(User)
     private userRepository: Repository<User>,
     private jwtService: JwtService,
-    private achievementsService: AchievementsService,
+    private passwordHasher: PasswordHasherService,
   ) {}
 
   async register(registerDto: RegisterDto): Promise<{ user: UserResponseDto; token: string }> {
@@ -26,7 +41,7 @@ export class AuthService {
     }
 
     // Hash de la contraseña
-    const hashedPassword = await bcrypt.hash(password, 10);
+    const hashedPassword = await this.passwordHasher.hash(password);
 
     // Crear el usuario
     const user = this.userRepository.create({
@@ -41,9 +56,6 @@ export class AuthService {
 
     const savedUser = await this.userRepository.save(user);
 
-    // Inicializar logros para el nuevo usuario
-    await this.achievementsService.initializeAchievementsForUser(savedUser);
-
     // Generar token JWT
     const token = this.generateJwtToken(savedUser);
 
@@ -64,7 +76,7 @@ export class AuthService {
       throw new UnauthorizedException('Credenciales inválidas');
     }
 
-    const isPasswordValid = await bcrypt.compare(password, user.password);
+    const isPasswordValid = await this.passwordHasher.compare(password, user.password);
     if (!isPasswordValid) {
       throw new UnauthorizedException('Credenciales inválidas');
     }
@@ -93,7 +105,7 @@ export class AuthService {
       return null;
     }
 
-    const isPasswordValid = await bcrypt.compare(password, user.password);
+    const isPasswordValid = await this.passwordHasher.compare(password, user.password);
     if (isPasswordValid && user.isActive) {
       return user;
     }
@@ -124,12 +136,7 @@ export class AuthService {
         user.profilePicture = profilePicture;
         user.emailVerified = true;
         await this.userRepository.save(user);
-      }
-      
-      // Inicializar logros si el usuario no los tiene
-      const existingAchievements = await this.achievementsService.getAchievementsByUserId(user.id);
-      if (existingAchievements.length === 0) {
-        await this.achievementsService.initializeAchievementsForUser(user);
+        this.principals.delete(user.id);
       }
       
       // Cargar análisis del usuario para cálculos en toUserResponse
@@ -147,9 +154,6 @@ export class AuthService {
 
       user = await this.userRepository.save(user);
       
-      // Inicializar logros para el nuevo usuario
-      await this.achievementsService.initializeAchievementsForUser(user);
-      
       // Cargar análisis del usuario para toUserResponse
       user.analyses = [];
     }
@@ -174,6 +178,43 @@ export class AuthService {
     return user;
   }
 
+  /**
+   * Usuario de un token ya verificado. Se sirve de la caché durante
+   * PRINCIPAL_TTL_MS para no consultar la base de datos en cada petición; un
+   * token con una versión distinta de la del usuario, o de una cuenta
+   * desactivada, no vale. updateProfile vacía la entrada; con varias
+   * instancias, o si la cuenta se cambia directamente en la base de datos, el
+   * cambio tarda como mucho el TTL. Cada petición recibe su propia copia.
+   */
+  async findPrincipal(userId: number, tokenVersion: number): Promise<AuthPrincipal | null> {
+    const now = Date.now();
+    let entry = this.principals.get(userId);
+    // Un token más nuevo que la entrada indica que ésta está desfasada
+    if (!entry || entry.expiresAt <= now || entry.principal.tokenVersion < tokenVersion) {
+      const user = await this.userRepository.findOne({
+        select: ['id', 'email', 'name', 'isActive', 'tokenVersion'],
+        where: { id: userId },
+      });
+      this.principals.delete(userId);
+      if (!user) return null;
+      if (this.principals.size >= PRINCIPAL_CACHE_SIZE) {
+        this.principals.delete(this.principals.keys().next().value);
+      }
+      const principal: AuthPrincipal = {
+        id: user.id,
+        email: user.email,
+        name: user.name,
+        isActive: user.isActive,
+        tokenVersion: user.tokenVersion,
+      };
+      entry = { principal, expiresAt: now + PRINCIPAL_TTL_MS };
+      this.principals.set(userId, entry);
+    }
+
+    const { principal } = entry;
+    return principal.isActive && principal.tokenVersion === tokenVersion ? { ...principal } : null;
+  }
+
   async updateProfile(userId: number, updateDto: UpdateProfileDto): Promise<UserResponseDto> {
     const user = await this.findById(userId);
     if (!user) {
@@ -182,6 +223,7 @@ export class AuthService {
 
     Object.assign(user, updateDto);
     const updatedUser = await this.userRepository.save(user);
+    this.principals.delete(userId);
 
     return this.toUserResponse(updatedUser);
   }
@@ -226,7 +268,8 @@ export class AuthService {
     const payload = { 
       sub: user.id, 
       email: user.email,
-      name: user.name
+      name: user.name,
+      ver: user.tokenVersion ?? 0,
     };
     
     return this.jwtService.sign(payload, {
@@ -234,16 +277,8 @@ export class AuthService {
     });
   }
 
-  generateTokenForUser(userId: number, email: string, name: string): string {
-    const payload = { 
-      sub: userId, 
-      email,
-      name
-    };
-    
-    return this.jwtService.sign(payload, {
-      expiresIn: '7d', // Token válido por 7 días
-    });
+  generateTokenForUser(user: User): string {
+    return this.generateJwtToken(user);
   }
 
   private toUserResponse(user: User): UserResponseDto {
@@ -16,15 +16,10 @@ export class AchievementsController {
 
   @Get()
   async getUserAchievements(@Request() req) {
-    // Inicializar logros si no existen
-    let achievements = await this.achievementsService.getAchievementsByUserId(
+    const achievements = await this.achievementsService.getAchievementsByUserId(
       req.user.id,
     );
     
-    if (achievements.length === 0) {
-      achievements = await this.achievementsService.initializeAchievementsForUser(req.user);
-    }
-    
     const points = await this.achievementsService.getTotalAchievementPoints(
       req.user.id,
     );
@@ -60,12 +55,7 @@ export class AchievementsController {
 
   @Get('stats')
   async getAchievementStats(@Request() req) {
-    let all = await this.achievementsService.getAchievementsByUserId(req.user.id);
-    
-    // Inicializar logros si no existen
-    if (all.length === 0) {
-      all = await this.achievementsService.initializeAchievementsForUser(req.user);
-    }
+    const all = await this.achievementsService.getAchievementsByUserId(req.user.id);
     
     const unlocked = all.filter((a) => a.isUnlocked);
     const totalPoints = await this.achievementsService.getTotalAchievementPoints(
@@ -84,7 +74,10 @@ export class AchievementsController {
   @Get('debug')
   async debugAchievements(@Request() req) {
     const userId = req.user.id;
-    const analyses = await this.analysisRepository.find({ where: { userId } });
+    const analyses = await this.analysisRepository.find({
+      select: { id: true, student: true, highSeverityIssues: true, totalIssues: true, qualityScore: true, createdAt: true },
+      where: { userId },
+    });
     
     return {
       userId,
@@ -30,7 +30,7 @@ export type AchievementType =
   | 'efficient_developer';
 
 @Entity('achievements')
-@Index(['userId', 'type'])
+@Index(['userId', 'type'], { unique: true })
 @Index(['unlockedAt'])
 @Index(['isUnlocked'])
 export class Achievement {
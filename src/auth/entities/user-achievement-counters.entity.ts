@@ -0,0 +1,61 @@
+import { Entity, PrimaryColumn, Column, UpdateDateColumn, OneToOne, JoinColumn } from 'typeorm';
+import { User } from './user.entity';
+
+/**
+ * Contadores de cada usuario contra los que se evalúan los logros.
+ * AchievementsService los recalcula desde los análisis y misiones del propio
+ * usuario cuando termina un análisis o cambia el estado de una misión.
+ */
+@Entity('user_achievement_counters')
+export class UserAchievementCounters {
+  @PrimaryColumn({ name: 'user_id', type: 'integer' })
+  userId: number;
+
+  @OneToOne(() => User, { onDelete: 'CASCADE' })
+  @JoinColumn({ name: 'user_id' })
+  user: User;
+
+  // Análisis completados
+  @Column({ name: 'analyses_count', type: 'integer', default: 0 })
+  analysesCount: number;
+
+  @Column({ name: 'detected_issues', type: 'integer', default: 0 })
+  detectedIssues: number;
+
+  // Análisis sin hallazgos
+  @Column({ name: 'perfect_analyses', type: 'integer', default: 0 })
+  perfectAnalyses: number;
+
+  // Análisis con menos de 20 hallazgos
+  @Column({ name: 'quick_analyses', type: 'integer', default: 0 })
+  quickAnalyses: number;
+
+  // Análisis con menos hallazgos que el anterior
+  @Column({ name: 'improving_iterations', type: 'integer', default: 0 })
+  improvingIterations: number;
+
+  // Racha más larga de análisis seguidos sin hallazgos críticos
+  @Column({ name: 'best_clean_streak', type: 'integer', default: 0 })
+  bestCleanStreak: number;
+
+  @Column({ name: 'missions_count', type: 'integer', default: 0 })
+  missionsCount: number;
+
+  @Column({ name: 'fixed_missions', type: 'integer', default: 0 })
+  fixedMissions: number;
+
+  // Misiones corregidas de severidad alta
+  @Column({ name: 'critical_fixed', type: 'integer', default: 0 })
+  criticalFixed: number;
+
+  // Corregidas u omitidas
+  @Column({ name: 'closed_missions', type: 'integer', default: 0 })
+  closedMissions: number;
+
+  // Racha más larga de misiones seguidas (por fecha de creación) corregidas
+  @Column({ name: 'best_fix_streak', type: 'integer', default: 0 })
+  bestFixStreak: number;
+
+  @UpdateDateColumn({ name: 'updated_at' })
+  updatedAt: Date;
+}
@@ -1,4 +1,4 @@
-import { Entity, PrimaryGeneratedColumn, Column, CreateDateColumn, UpdateDateColumn, OneToMany } from 'typeorm';
+import { Entity, PrimaryGeneratedColumn, Column, CreateDateColumn, UpdateDateColumn, OneToMany, Index } from 'typeorm';
 import { AnalysisRun } from '../../analysis/entities/analysis-run.entity';
 import { Achievement } from './achievement.entity';
 
@@ -25,15 +25,21 @@ export class User {
   @Column({ name: 'is_active', default: true })
   isActive: boolean;
 
+  // Va en el JWT; al subirla se invalidan los tokens ya emitidos
+  @Column({ name: 'token_version', default: 0 })
+  tokenVersion: number;
+
   @Column({ name: 'email_verified', default: false })
   emailVerified: boolean;
 
   @Column({ name: 'student_id', nullable: true })
   studentId: string; // ID de estudiante opcional
 
+  @Index()
   @Column({ nullable: true })
   university: string;
 
+  @Index()
   @Column({ nullable: true })
   career: string;
 
@@ -1,10 +1,8 @@
 import { Injectable, Logger } from '@nestjs/common';
 import { InjectRepository } from '@nestjs/typeorm';
-import { Repository, In } from 'typeorm';
+import { EntityManager, Repository, In } from 'typeorm';
 import { Achievement, AchievementType } from '../entities/achievement.entity';
-import { User } from '../entities/user.entity';
-import { Mission } from '../../analysis/entities/mission.entity';
-import { AnalysisRun } from '../../analysis/entities/analysis-run.entity';
+import { UserAchievementCounters } from '../entities/user-achievement-counters.entity';
 
 // Definición de logros disponibles
 export const ACHIEVEMENTS_DEFINITIONS: Record<
@@ -156,6 +154,128 @@ export const ACHIEVEMENTS_DEFINITIONS: Record<
   },
 };
 
+// Reglas de desbloqueo evaluadas contra los contadores del usuario
+const correctionRate = (c: UserAchievementCounters) => (c.detectedIssues > 0 ? c.fixedMissions / c.detectedIssues : 0);
+
+const ACHIEVEMENT_RULES: Partial<Record<AchievementType, (c: UserAchievementCounters) => boolean>> = {
+  first_analysis: c => c.analysesCount >= 1,
+  bug_hunter: c => c.detectedIssues >= 50,
+  security_expert: c => c.criticalFixed >= 20,
+  perfectionist: c => c.perfectAnalyses >= 1,
+  persistent: c => c.bestFixStreak >= 10,
+  code_master: c => c.improvingIterations >= 5,
+  vulnerability_slayer: c => c.fixedMissions >= 100,
+  quality_guardian: c => c.bestCleanStreak >= 3,
+  speed_analyzer: c => c.analysesCount >= 15,
+  general_mission_master: c => c.missionsCount > 0 && c.closedMissions === c.missionsCount,
+  critical_fixer: c => c.criticalFixed >= 50,
+  consistency_champion: c => correctionRate(c) >= 0.8,
+  learning_champion: c => c.missionsCount > 0 && c.fixedMissions === c.missionsCount,
+  elite_analyst: c => c.analysesCount >= 20 && correctionRate(c) >= 0.7,
+  optimization_master: c => c.analysesCount >= 20 && c.improvingIterations >= 15,
+  efficient_developer: c => c.quickAnalyses >= 10,
+};
+
+// Logros (sin contar el legendario) necesarios para legendary_developer
+const LEGENDARY_THRESHOLD = 14;
+
+// Contadores de análisis: totales, mejoras respecto al anterior y la racha más
+// larga sin críticos (en cada racha, seq - row_number() es constante)
+const REFRESH_ANALYSIS_COUNTERS_SQL = `
+  WITH runs AS (
+    SELECT "total_issues",
+           "total_issues" < lag("total_issues") OVER w AS improved,
+           coalesce("high_severity_issues", 0) = 0 AS clean,
+           row_number() OVER w AS seq
+    FROM "analysis_runs"
+    WHERE "user_id" = $1 AND "status" = 'completed'
+    WINDOW w AS (ORDER BY "created_at", "id")
+  ), clean_streaks AS (
+    SELECT count(*) AS length
+    FROM (SELECT seq - row_number() OVER (ORDER BY seq) AS streak FROM runs WHERE clean) AS clean_runs
+    GROUP BY streak
+  )
+  INSERT INTO "user_achievement_counters"
+    ("user_id", "analyses_count", "detected_issues", "perfect_analyses", "quick_analyses",
+     "improving_iterations", "best_clean_streak", "updated_at")
+  SELECT $1::int,
+         count(*),
+         coalesce(sum("total_issues"), 0),
+         count(*) FILTER (WHERE "total_issues" = 0),
+         count(*) FILTER (WHERE "total_issues" < 20),
+         count(*) FILTER (WHERE improved),
+         (SELECT coalesce(max(length), 0) FROM clean_streaks),
+         now()
+  FROM runs
+  ON CONFLICT ("user_id") DO UPDATE SET
+    "analyses_count" = EXCLUDED."analyses_count",
+    "detected_issues" = EXCLUDED."detected_issues",
+    "perfect_analyses" = EXCLUDED."perfect_analyses",
+    "quick_analyses" = EXCLUDED."quick_analyses",
+    "improving_iterations" = EXCLUDED."improving_iterations",
+    "best_clean_streak" = EXCLUDED."best_clean_streak",
+    "updated_at" = now()
+`;
+
+// Contadores de misiones de los análisis del usuario y la racha más larga de
+// misiones corregidas seguidas en orden de creación
+const REFRESH_MISSION_COUNTERS_SQL = `
+  WITH user_missions AS (
+    SELECT m."status", m."severity", row_number() OVER (ORDER BY m."created_at", m."id") AS seq
+    FROM "missions" m
+    JOIN "analysis_runs" a ON a."id" = m."analysis_run_id"
+    WHERE a."user_id" = $1
+  ), fix_streaks AS (
+    SELECT count(*) AS length
+    FROM (SELECT seq - row_number() OVER (ORDER BY seq) AS streak FROM user_missions WHERE "status" = 'fixed') AS fixed_runs
+    GROUP BY streak
+  )
+  INSERT INTO "user_achievement_counters"
+    ("user_id", "missions_count", "fixed_missions", "critical_fixed", "closed_missions", "best_fix_streak", "updated_at")
+  SELECT $1::int,
+         count(*),
+         count(*) FILTER (WHERE "status" = 'fixed'),
+         count(*) FILTER (WHERE "status" = 'fixed' AND "severity" = 'high'),
+         count(*) FILTER (WHERE "status" IN ('fixed', 'skipped')),
+         (SELECT coalesce(max(length), 0) FROM fix_streaks),
+         now()
+  FROM user_missions
+  ON CONFLICT ("user_id") DO UPDATE SET
+    "missions_count" = EXCLUDED."missions_count",
+    "fixed_missions" = EXCLUDED."fixed_missions",
+    "critical_fixed" = EXCLUDED."critical_fixed",
+    "closed_missions" = EXCLUDED."closed_missions",
+    "best_fix_streak" = EXCLUDED."best_fix_streak",
+    "updated_at" = now()
+`;
+
+// Desbloqueo sobre el almacenamiento disperso: inserta la fila desde la
+// definición o marca la que ya existía con progreso; RETURNING solo devuelve
+// las filas que han cambiado
+const UNLOCK_ACHIEVEMENTS_SQL = `
+  INSERT INTO "achievements"
+    ("user_id", "type", "name", "description", "icon", "points_reward", "condition", "category",
+     "is_unlocked", "unlocked_at")
+  SELECT $1::int, d."type", d."name", d."description", d."icon", d."pointsReward", d."condition", d."category",
+         true, CURRENT_TIMESTAMP
+  FROM jsonb_to_recordset($2::jsonb) AS d(
+    "type" varchar, "name" varchar, "description" text, "icon" varchar,
+    "pointsReward" int, "condition" text, "category" varchar
+  )
+  ON CONFLICT ("user_id", "type") DO UPDATE SET
+    "is_unlocked" = true,
+    "unlocked_at" = CURRENT_TIMESTAMP,
+    "updated_at" = now()
+  WHERE "achievements"."is_unlocked" = false
+  RETURNING "id"
+`;
+
+// Rellena pointsReward desde las definiciones si es NULL
+const withPointsReward = (a: Achievement): Achievement => ({
+  ...a,
+  pointsReward: a.pointsReward ?? ACHIEVEMENTS_DEFINITIONS[a.type as AchievementType]?.pointsReward ?? 0,
+});
+
 @Injectable()
 export class AchievementsService {
   private readonly logger = new Logger(AchievementsService.name);
@@ -163,67 +283,23 @@ export class AchievementsService {
   constructor(
     @InjectRepository(Achievement)
     private readonly achievementRepository: Repository<Achievement>,
-    @InjectRepository(Mission)
-    private readonly missionRepository: Repository<Mission>,
-    @InjectRepository(AnalysisRun)
-    private readonly analysisRepository: Repository<AnalysisRun>,
+    @InjectRepository(UserAchievementCounters)
+    private readonly countersRepository: Repository<UserAchievementCounters>,
   ) {}
 
-  // Inicializar logros para un usuario (se llama al crear cuenta)
-  async initializeAchievementsForUser(user: User): Promise<Achievement[]> {
-    try {
-      if (!user || !user.id) {
-        this.logger.warn('Usuario sin ID al intentar inicializar logros');
-        return [];
-      }
-
-      const achievements: Achievement[] = [];
-
-      for (const [type, definition] of Object.entries(ACHIEVEMENTS_DEFINITIONS)) {
-        try {
-          const achievement = this.achievementRepository.create({
-            type: type as AchievementType,
-            name: definition.name,
-            description: definition.description,
-            icon: definition.icon,
-            pointsReward: definition.pointsReward,
-            condition: definition.condition,
-            category: definition.category,
-            isUnlocked: false,
-            unlockedAt: null,
-            userId: user.id,
-            progressCurrent: 0,
-            progressTarget: null,
-          });
-
-          const saved = await this.achievementRepository.save(achievement);
-          achievements.push(saved);
-        } catch (error) {
-          this.logger.error(`Error al crear logro ${type} para usuario ${user.id}:`, error.message);
-          // Continuar con los siguientes logros en lugar de fallar completamente
-        }
-      }
-
-      this.logger.log(`Se inicializaron ${achievements.length} logros para usuario ${user.id}`);
-      return achievements;
-    } catch (error) {
-      this.logger.error(`Error crítico al inicializar logros para usuario ${user.id}:`, error.message);
-      return [];
-    }
-  }
-
-  // Obtener todos los logros del usuario
+  /**
+   * Todos los logros del usuario. En la tabla solo hay filas para los
+   * desbloqueados y los que tienen progreso; el resto se construye en memoria
+   * desde ACHIEVEMENTS_DEFINITIONS. Primero los bloqueados, luego los
+   * desbloqueados del más reciente al más antiguo.
+   */
   async getAchievementsByUserId(userId: number): Promise<Achievement[]> {
-    const achievements = await this.achievementRepository.find({
+    const stored = await this.achievementRepository.find({
       where: { userId },
       order: { unlockedAt: 'DESC' },
     });
-    
-    // Llenar pointsReward desde definiciones si es NULL
-    return achievements.map(a => ({
-      ...a,
-      pointsReward: a.pointsReward ?? ACHIEVEMENTS_DEFINITIONS[a.type as AchievementType]?.pointsReward ?? 0,
-    }));
+    const unlocked = stored.filter(a => a.isUnlocked);
+    return [...this.withLocked(userId, stored), ...unlocked].map(withPointsReward);
   }
 
   // Obtener logros desbloqueados del usuario
@@ -232,26 +308,13 @@ export class AchievementsService {
       where: { userId, isUnlocked: true },
       order: { unlockedAt: 'DESC' },
     });
-    
-    // Llenar pointsReward desde definiciones si es NULL
-    return achievements.map(a => ({
-      ...a,
-      pointsReward: a.pointsReward ?? ACHIEVEMENTS_DEFINITIONS[a.type as AchievementType]?.pointsReward ?? 0,
-    }));
+    return achievements.map(withPointsReward);
   }
 
-  // Obtener logros bloqueados (con progreso)
+  // Obtener logros bloqueados (con progreso), en el orden de las definiciones
   async getLockedAchievements(userId: number): Promise<Achievement[]> {
-    const achievements = await this.achievementRepository.find({
-      where: { userId, isUnlocked: false },
-      order: { createdAt: 'ASC' },
-    });
-    
-    // Llenar pointsReward desde definiciones si es NULL
-    return achievements.map(a => ({
-      ...a,
-      pointsReward: a.pointsReward ?? ACHIEVEMENTS_DEFINITIONS[a.type as AchievementType]?.pointsReward ?? 0,
-    }));
+    const stored = await this.achievementRepository.find({ where: { userId } });
+    return this.withLocked(userId, stored).map(withPointsReward);
   }
 
   // Contar puntos totales de logros desbloqueados
@@ -260,284 +323,90 @@ export class AchievementsService {
     return unlockedAchievements.reduce((sum, ach) => sum + ach.pointsReward, 0);
   }
 
-  // Función principal: Verificar y desbloquear logros basado en progreso del usuario
-  async checkAndUnlockAchievements(userId: number): Promise<Achievement[]> {
-    const unlockedAchievements: Achievement[] = [];
-
-    // Obtener datos del usuario
-    const analyses = await this.analysisRepository.find({ where: { userId } });
-    const missions = await this.missionRepository.find();
-    const userMissions = missions.filter((m) =>
-      analyses.some((a) => a.id === m.analysisRunId)
-    );
-
-    // Calcular estadísticas
-    const stats = {
-      totalAnalyses: analyses.length,
-      totalDetectedIssues: analyses.reduce((sum, a) => sum + (a.totalIssues || 0), 0),
-      totalFixedIssues: userMissions.filter((m) => m.status === 'fixed').length,
-      totalCriticalIssues: analyses.reduce(
-        (sum, a) => sum + (a.highSeverityIssues || 0),
-        0
-      ),
-      totalCriticalFixed: userMissions.filter(
-        (m) => m.status === 'fixed' && m.severity === 'high'
-      ).length,
-      perfectAnalyses: analyses.filter((a) => a.totalIssues === 0).length,
-      consecutiveFixedMissions: this.getConsecutiveFixedMissions(userMissions),
-      improvingIterations: this.getImprovingIterations(analyses),
-      correctionRate: this.calculateCorrectionRate(analyses, userMissions),
-    };
-
-    const achievement = await this.achievementRepository.findOne({
-      where: { userId },
-    });
-
-    // Verificar cada logro
-    const achievementsToCheck: AchievementType[] = [
-      'first_analysis',
-      'bug_hunter',
-      'security_expert',
-      'perfectionist',
-      'persistent',
-      'code_master',
-      'vulnerability_slayer',
-      'quality_guardian',
-      'speed_analyzer',
-      'general_mission_master',
-      'critical_fixer',
-      'consistency_champion',
-      'learning_champion',
-      'elite_analyst',
-      'optimization_master',
-      'efficient_developer',
-    ];
-
-    for (const type of achievementsToCheck) {
-      const shouldUnlock = this.shouldUnlockAchievement(type, stats, userMissions, analyses);
-
-      if (shouldUnlock) {
-        const ach = await this.achievementRepository.findOne({
-          where: { userId, type, isUnlocked: false },
-        });
-
-        if (ach) {
-          ach.isUnlocked = true;
-          ach.unlockedAt = new Date();
-          await this.achievementRepository.save(ach);
-          unlockedAchievements.push(ach);
-          this.logger.log(`Logro desbloqueado: ${type} para usuario ${userId}`);
-        }
-      }
-    }
-
-    // Verificar si se desbloqueó "legendary_developer"
-    const allUnlocked = (await this.getUnlockedAchievements(userId)).length;
-    if (allUnlocked === 14) {
-      const legendaryAch = await this.achievementRepository.findOne({
-        where: { userId, type: 'legendary_developer', isUnlocked: false },
-      });
-      if (legendaryAch) {
-        legendaryAch.isUnlocked = true;
-        legendaryAch.unlockedAt = new Date();
-        await this.achievementRepository.save(legendaryAch);
-        unlockedAchievements.push(legendaryAch);
-        this.logger.log(`¡¡Logro Legendario desbloqueado!! ${userId}`);
-      }
-    }
-
-    return unlockedAchievements;
+  /**
+   * Evento: análisis completado. Recalcula los contadores de análisis y de
+   * misiones (el análisis crea misiones y puede cerrar las anteriores) y
+   * evalúa los logros. Con `manager`, todo va en su transacción.
+   */
+  async onAnalysisCompleted(userId: number, manager?: EntityManager): Promise<Achievement[]> {
+    const runner = manager || this.countersRepository.manager;
+    await runner.query(REFRESH_ANALYSIS_COUNTERS_SQL, [userId]);
+    await runner.query(REFRESH_MISSION_COUNTERS_SQL, [userId]);
+    return this.unlockEarned(userId, runner);
   }
 
-  // Lógica para determinar si debe desbloquearse un logro
-  private shouldUnlockAchievement(
-    type: AchievementType,
-    stats: any,
-    missions: Mission[],
-    analyses: AnalysisRun[]
-  ): boolean {
-    switch (type) {
-      case 'first_analysis':
-        return stats.totalAnalyses >= 1;
-
-      case 'bug_hunter':
-        return stats.totalDetectedIssues >= 50;
-
-      case 'security_expert':
-        return stats.totalCriticalFixed >= 20;
-
-      case 'perfectionist':
-        return stats.perfectAnalyses >= 1;
-
-      case 'persistent':
-        return this.hasConsecutiveFixedMissions(missions, 10);
-
-      case 'code_master':
-        return stats.improvingIterations >= 5;
-
-      case 'vulnerability_slayer':
-        return stats.totalFixedIssues >= 100;
-
-      case 'quality_guardian':
-        return this.hasThreeConsecutivePerfectAnalyses(analyses);
-
-      case 'speed_analyzer':
-        return stats.totalAnalyses >= 15;
-
-      case 'general_mission_master':
-        return this.hasCompletedAllGeneralMissions(missions);
-
-      case 'critical_fixer':
-        return stats.totalCriticalFixed >= 50;
-
-      case 'consistency_champion':
-        return stats.correctionRate >= 0.8;
-
-      case 'learning_champion':
-        return this.hasMaxScoreInGeneralMissions(missions);
-
-      case 'elite_analyst':
-        return stats.totalAnalyses >= 20 && stats.correctionRate >= 0.7;
-
-      case 'optimization_master':
-        return stats.totalAnalyses >= 20 && stats.improvingIterations >= 15;
-
-      case 'efficient_developer':
-        return this.hasEfficientAnalyses(analyses, 10);
-
-      default:
-        return false;
-    }
+  /** Evento: una misión del usuario se corrigió u omitió */
+  async onMissionsChanged(userId: number, manager?: EntityManager): Promise<Achievement[]> {
+    const runner = manager || this.countersRepository.manager;
+    await runner.query(REFRESH_MISSION_COUNTERS_SQL, [userId]);
+    return this.unlockEarned(userId, runner);
   }
 
-  // Calcular misiones consecutivas completadas
-  private getConsecutiveFixedMissions(missions: Mission[]): number {
-    let consecutive = 0;
-    const fixedMissions = missions.filter((m) => m.status === 'fixed');
-
-    for (const mission of fixedMissions) {
-      consecutive++;
-    }
-
-    return consecutive;
+  // Función principal: Verificar y desbloquear logros basado en progreso del usuario
+  async checkAndUnlockAchievements(userId: number): Promise<Achievement[]> {
+    return this.onAnalysisCompleted(userId);
   }
 
-  // Verificar si tiene N misiones consecutivas completadas (verdaderamente consecutivas)
-  private hasConsecutiveFixedMissions(missions: Mission[], count: number): boolean {
-    if (missions.length < count) {
-      return false;
-    }
-
-    // Ordenar misiones por fecha de creación
-    const sorted = missions.sort(
-      (a, b) => new Date(a.createdAt).getTime() - new Date(b.createdAt).getTime()
-    );
-
-    // Buscar 'count' misiones consecutivas con status 'fixed'
-    for (let i = 0; i <= sorted.length - count; i++) {
-      let allFixed = true;
-      for (let j = i; j < i + count; j++) {
-        if (sorted[j].status !== 'fixed') {
-          allFixed = false;
-          break;
-        }
-      }
-      if (allFixed) {
-        return true;
+  /**
+   * Evalúa las reglas contra los contadores y desbloquea los logros cumplidos
+   * con un único INSERT … ON CONFLICT; solo se escriben (y se devuelven) los recién desbloqueados.
+   */
+  private async unlockEarned(userId: number, manager: EntityManager): Promise<Achievement[]> {
+    const counters = await manager.findOne(UserAchievementCounters, { where: { userId } });
+    if (!counters) return [];
+
+    const earned = (Object.keys(ACHIEVEMENT_RULES) as AchievementType[]).filter(type => ACHIEVEMENT_RULES[type](counters));
+    const unlocked = await this.unlock(userId, earned, manager);
+
+    if (unlocked.length > 0) {
+      const unlockedCount = await manager.count(Achievement, { where: { userId, isUnlocked: true } });
+      if (unlockedCount >= LEGENDARY_THRESHOLD) {
+        const legendary = await this.unlock(userId, ['legendary_developer'], manager);
+        if (legendary.length > 0) this.logger.log(`¡¡Logro Legendario desbloqueado!! ${userId}`);
+        unlocked.push(...legendary);
       }
     }
-
-    return false;
+    return unlocked;
   }
 
-  // Contar iteraciones donde el número de hallazgos mejoró
-  private getImprovingIterations(analyses: AnalysisRun[]): number {
-    let count = 0;
-    const sorted = analyses.sort(
-      (a, b) => new Date(a.createdAt).getTime() - new Date(b.createdAt).getTime()
-    );
-
-    for (let i = 1; i < sorted.length; i++) {
-      if (
-        sorted[i].totalIssues < sorted[i - 1].totalIssues
-      ) {
-        count++;
-      }
-    }
-
-    return count;
+  /**
+   * Crea (o marca, si ya tenía progreso) como desbloqueados los logros
+   * indicados con un único INSERT … ON CONFLICT; devuelve solo los que no
+   * estaban ya desbloqueados.
+   */
+  private async unlock(userId: number, types: AchievementType[], manager: EntityManager): Promise<Achievement[]> {
+    if (types.length === 0) return [];
+    const definitions = types.map(type => ({ type, ...ACHIEVEMENTS_DEFINITIONS[type] }));
+    const rows: { id: number }[] = await manager.query(UNLOCK_ACHIEVEMENTS_SQL, [userId, JSON.stringify(definitions)]);
+
+    const ids = rows.map(row => row.id);
+    if (ids.length === 0) return [];
+    const unlocked = await manager.find(Achievement, { where: { id: In(ids) } });
+    unlocked.forEach(ach => this.logger.log(`Logro desbloqueado: ${ach.type} para usuario ${userId}`));
+    return unlocked;
   }
 
-  // Calcular tasa de corrección (issues corregidos / issues detectados)
-  private calculateCorrectionRate(
-    analyses: AnalysisRun[],
-    missions: Mission[]
-  ): number {
-    const totalDetected = analyses.reduce((sum, a) => sum + (a.totalIssues || 0), 0);
-    const totalFixed = missions.filter((m) => m.status === 'fixed').length;
-
-    if (totalDetected === 0) return 0;
-    return totalFixed / totalDetected;
-  }
-
-  // Verificar si tiene N análisis completados de forma rápida
-  private hasEfficientAnalyses(analyses: AnalysisRun[], count: number): boolean {
-    if (analyses.length < count) {
-      return false;
-    }
-
-    // Asumir que los análisis que se completan rápidamente tienen menos hallazgos
-    // Por ahora, verificamos si tiene al menos 'count' análisis
-    // En una versión mejorada, se podría medir el tiempo real de análisis
-    const quickAnalyses = analyses.filter((a) => a.totalIssues < 20 && a.status === 'completed');
-    return quickAnalyses.length >= count;
-  }
-
-  // Verificar si hay 3 análisis consecutivos sin hallazgos críticos
-  private hasThreeConsecutivePerfectAnalyses(analyses: AnalysisRun[]): boolean {
-    if (analyses.length < 3) {
-      return false;
-    }
-
-    // Ordenar análisis por fecha de creación ascendente
-    const sorted = analyses.sort(
-      (a, b) => new Date(a.createdAt).getTime() - new Date(b.createdAt).getTime()
-    );
-
-    // Buscar 3 análisis consecutivos sin hallazgos críticos (highSeverityIssues === 0)
-    for (let i = 0; i <= sorted.length - 3; i++) {
-      const hasThreePerfect = 
-        (sorted[i].highSeverityIssues === 0 || sorted[i].highSeverityIssues === null) &&
-        (sorted[i + 1].highSeverityIssues === 0 || sorted[i + 1].highSeverityIssues === null) &&
-        (sorted[i + 2].highSeverityIssues === 0 || sorted[i + 2].highSeverityIssues === null);
-
-      if (hasThreePerfect) {
-        return true;
-      }
-    }
-
-    return false;
-  }
-
-  // Verificar si completó todas las misiones generales
-  private hasCompletedAllGeneralMissions(missions: Mission[]): boolean {
-    // Se verifica comparando el total de misiones vs misiones completadas
-    // Una misión es "completada" si está en estado 'fixed' o 'skipped'
-    if (missions.length === 0) {
-      return false;
+  /** Logros bloqueados: las filas con progreso y, para el resto de tipos, la definición */
+  private withLocked(userId: number, stored: Achievement[]): Achievement[] {
+    const byType = new Map(stored.map(a => [a.type, a]));
+    const locked: Achievement[] = [];
+    for (const type of Object.keys(ACHIEVEMENTS_DEFINITIONS) as AchievementType[]) {
+      const row = byType.get(type);
+      if (row?.isUnlocked) continue;
+      locked.push(
+        row ||
+          this.achievementRepository.create({
+            type,
+            ...ACHIEVEMENTS_DEFINITIONS[type],
+            isUnlocked: false,
+            unlockedAt: null,
+            userId,
+            progressCurrent: 0,
+            progressTarget: null,
+          }),
+      );
     }
-
-    const completedOrSkipped = missions.filter((m) => m.status === 'fixed' || m.status === 'skipped').length;
-    return completedOrSkipped === missions.length;
+    return locked;
   }
 
-  // Verificar si tiene puntuación máxima en misiones generales
-  private hasMaxScoreInGeneralMissions(missions: Mission[]): boolean {
-    // Se verifica si todas las misiones están completadas (sin saltar)
-    if (missions.length === 0) {
-      return false;
-    }
-
-    return missions.every((m) => m.status === 'fixed');
-  }
 }
@@ -0,0 +1,121 @@
+import { Injectable, Logger, OnModuleDestroy, ServiceUnavailableException } from '@nestjs/common';
+import * as os from 'os';
+import { Worker } from 'worker_threads';
+import { envNumber } from '../../config/env';
+
+/**
+ * Hash y comparación de contraseñas (bcryptjs) en un pool de worker_threads.
+ *
+ * bcryptjs es JavaScript puro: con coste 10 cada operación ocupa el hilo
+ * durante decenas de milisegundos, y una ráfaga de logins al empezar una clase
+ * bloqueaba el resto de peticiones. Aquí el hilo principal solo encola; los
+ * workers se crean bajo demanda hasta PASSWORD_HASH_WORKERS y la cola está
+ * acotada: si se llena, la petición se rechaza con 503 en vez de acumular espera.
+ */
+
+const HASH_ROUNDS = 10;
+// Un núcleo queda para el hilo principal; más workers que núcleos no aumentan el rendimiento
+const POOL_SIZE = Math.max(1, envNumber('PASSWORD_HASH_WORKERS', Math.min(4, Math.max(1, os.cpus().length - 1))));
+// Cada worker compara unas 8 contraseñas por segundo con coste 10: 50 en cola
+// por worker son unos 6 s de espera como máximo antes de responder 503
+const QUEUE_LIMIT = envNumber('PASSWORD_HASH_QUEUE_LIMIT', POOL_SIZE * 50);
+
+// Código del worker en línea: el build empaqueta src con webpack y no emitiría
+// un archivo aparte; bcryptjs se resuelve desde node_modules en ejecución
+const WORKER_SOURCE = `
+  const { parentPort } = require('worker_threads');
+  const bcrypt = require('bcryptjs');
+  parentPort.on('message', ({ operation, password, hash, rounds }) => {
+    try {
+      const result = operation === 'hash' ? bcrypt.hashSync(password, rounds) : bcrypt.compareSync(password, hash);
+      parentPort.postMessage({ result });
+    } catch (error) {
+      parentPort.postMessage({ error: error.message });
+    }
+  });
+`;
+
+interface PasswordJob {
+  operation: 'hash' | 'compare';
+  password: string;
+  hash?: string;
+  resolve: (result: any) => void;
+  reject: (error: Error) => void;
+}
+
+@Injectable()
+export class PasswordHasherService implements OnModuleDestroy {
+  private readonly logger = new Logger(PasswordHasherService.name);
+  private readonly idle: Worker[] = [];
+  private readonly running = new Map<Worker, PasswordJob>();
+  private readonly queue: PasswordJob[] = [];
+  private workerCount = 0;
+  private closed = false;
+
+  hash(password: string): Promise<string> {
+    return this.run('hash', password);
+  }
+
+  compare(password: string, hash: string): Promise<boolean> {
+    return this.run('compare', password, hash);
+  }
+
+  get stats(): { workers: number; busy: number; queued: number } {
+    return { workers: this.workerCount, busy: this.running.size, queued: this.queue.length };
+  }
+
+  async onModuleDestroy(): Promise<void> {
+    this.closed = true;
+    for (const job of this.queue.splice(0)) job.reject(new Error('Pool de contraseñas cerrado'));
+    await Promise.all([...this.idle, ...this.running.keys()].map(worker => worker.terminate()));
+  }
+
+  private run<T>(operation: PasswordJob['operation'], password: string, hash?: string): Promise<T> {
+    if (this.closed) return Promise.reject(new Error('Pool de contraseñas cerrado'));
+    if (this.queue.length >= QUEUE_LIMIT) {
+      this.logger.warn(`⚠️ Cola de contraseñas llena (${QUEUE_LIMIT}), se rechaza la petición`);
+      return Promise.reject(new ServiceUnavailableException('Servidor ocupado, inténtalo de nuevo en unos segundos'));
+    }
+    return new Promise<T>((resolve, reject) => {
+      this.queue.push({ operation, password, hash, resolve, reject });
+      this.dispatch();
+    });
+  }
+
+  /** Asigna trabajos de la cola a workers libres, creando los que falten */
+  private dispatch(): void {
+    while (this.queue.length > 0) {
+      const worker = this.idle.pop() || (this.workerCount < POOL_SIZE ? this.spawn() : null);
+      if (!worker) return;
+      const job = this.queue.shift();
+      this.running.set(worker, job);
+      worker.postMessage({ operation: job.operation, password: job.password, hash: job.hash, rounds: HASH_ROUNDS });
+    }
+  }
+
+  private spawn(): Worker {
+    const worker = new Worker(WORKER_SOURCE, { eval: true });
+    this.workerCount++;
+
+    worker.on('message', (message: { result?: string | boolean; error?: string }) => {
+      const job = this.running.get(worker);
+      this.running.delete(worker);
+      this.idle.push(worker);
+      if (message.error) job?.reject(new Error(message.error));
+      else job?.resolve(message.result);
+      this.dispatch();
+    });
+    worker.on('error', error => this.logger.error(`❌ Error en worker de contraseñas: ${error.message}`));
+    // Un worker caído se descarta; su trabajo falla y el siguiente dispatch crea otro
+    worker.on('exit', code => {
+      this.workerCount--;
+      const idleIndex = this.idle.indexOf(worker);
+      if (idleIndex >= 0) this.idle.splice(idleIndex, 1);
+      const job = this.running.get(worker);
+      this.running.delete(worker);
+      job?.reject(new Error(`Worker de contraseñas terminado (código ${code})`));
+      if (!this.closed) this.dispatch();
+    });
+    return worker;
+  }
+}
@@ -29,14 +29,10 @@ export class JwtStrategy extends PassportStrategy(Strategy) {
   }
 
   async validate(payload: any) {
-    const user = await this.authService.findById(payload.sub);
-    if (!user || !user.isActive) {
-      return null;
-    }
     // Retornar el usuario para que esté disponible en req.user
     // Esto será solo la entidad para operaciones internas,
-    // pero los controladores deben convertirlo al DTO si es necesario
-    console.log('[JwtStrategy.validate] Returning user:', user.id);
-    return user;
+    // pero los controladores deben convertirlo al DTO si es necesario.
+    // Los tokens emitidos antes de existir `ver` cuentan como versión 0
+    return this.authService.findPrincipal(payload.sub, payload.ver ?? 0);
   }
 }
\ No newline at end of file
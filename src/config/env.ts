@@ -0,0 +1,5 @@
+/** Número desde el entorno; a diferencia de `Number(x) || d`, respeta el 0 explícito */
+export function envNumber(name: string, fallback: number): number {
+  const value = Number(process.env[name]);
+  return process.env[name] !== undefined && process.env[name] !== '' && !isNaN(value) ? value : fallback;
+}
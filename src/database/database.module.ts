@@ -3,12 +3,17 @@ import { TypeOrmModule } from '@nestjs/typeorm';
 
 import { User } from '../auth/entities/user.entity';
 import { AnalysisRun } from '../analysis/entities/analysis-run.entity';
+import { AnalysisArtifact } from '../analysis/entities/analysis-artifact.entity';
 import { Mission } from '../analysis/entities/mission.entity';
+import { Workspace } from '../analysis/entities/workspace.entity';
 import { CustomMission } from '../missions/entities/custom-mission.entity';
 import { MissionSubmission } from '../missions/entities/mission-submission.entity';
+import { UserScoreAggregate } from '../ranking/entities/user-score-aggregate.entity';
+import { UserScoreDaily } from '../ranking/entities/user-score-daily.entity';
+import { GlobalScoreStats } from '../ranking/entities/global-score-stats.entity';
 
 @Module({
-  imports: [TypeOrmModule.forFeature([User, AnalysisRun, Mission, CustomMission, MissionSubmission])],
+  imports: [TypeOrmModule.forFeature([User, AnalysisRun, AnalysisArtifact, Mission, Workspace, CustomMission, MissionSubmission, UserScoreAggregate, UserScoreDaily, GlobalScoreStats])],
   exports: [TypeOrmModule],
 })
 export class DatabaseModule {}
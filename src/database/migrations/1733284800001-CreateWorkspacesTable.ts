@@ -0,0 +1,96 @@
+import { MigrationInterface, QueryRunner, Table, TableIndex } from 'typeorm';
+
+export class CreateWorkspacesTable1733284800001 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Directorios de trabajo en disco gestionados por la retención
+    await queryRunner.createTable(
+      new Table({
+        name: 'workspaces',
+        columns: [
+          {
+            name: 'id',
+            type: 'int',
+            isPrimary: true,
+            isGenerated: true,
+            generationStrategy: 'increment',
+          },
+          {
+            name: 'path',
+            type: 'varchar',
+            length: '500',
+            isUnique: true,
+          },
+          {
+            name: 'kind',
+            type: 'varchar',
+            length: '30',
+          },
+          {
+            name: 'analysis_run_id',
+            type: 'int',
+            isNullable: true,
+          },
+          {
+            name: 'submission_id',
+            type: 'int',
+            isNullable: true,
+          },
+          {
+            name: 'status',
+            type: 'varchar',
+            length: '20',
+            default: "'active'",
+          },
+          {
+            name: 'size_bytes',
+            type: 'bigint',
+            default: 0,
+          },
+          {
+            name: 'last_accessed_at',
+            type: 'timestamp',
+          },
+          {
+            name: 'evicted_at',
+            type: 'timestamp',
+            isNullable: true,
+          },
+          {
+            name: 'created_at',
+            type: 'timestamp',
+            default: 'now()',
+          },
+          {
+            name: 'updated_at',
+            type: 'timestamp',
+            default: 'now()',
+          },
+        ],
+      }),
+      true,
+    );
+
+    // Barridos por TTL y LRU: activos ordenados por último acceso
+    await queryRunner.createIndex(
+      'workspaces',
+      new TableIndex({
+        name: 'IDX_workspaces_status_last_accessed',
+        columnNames: ['status', 'last_accessed_at'],
+      }),
+    );
+
+    await queryRunner.createIndex(
+      'workspaces',
+      new TableIndex({
+        name: 'IDX_workspaces_analysis_run',
+        columnNames: ['analysis_run_id'],
+      }),
+    );
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    await queryRunner.dropIndex('workspaces', 'IDX_workspaces_analysis_run');
+    await queryRunner.dropIndex('workspaces', 'IDX_workspaces_status_last_accessed');
+    await queryRunner.dropTable('workspaces');
+  }
+}
@@ -0,0 +1,20 @@
+import { MigrationInterface, QueryRunner, TableColumn } from 'typeorm';
+
+export class AddCommitShaToAnalysisRuns1733284800002 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Commit analizado en los análisis de repositorio (base del re-análisis incremental)
+    await queryRunner.addColumn(
+      'analysis_runs',
+      new TableColumn({
+        name: 'commit_sha',
+        type: 'varchar',
+        length: '64',
+        isNullable: true,
+      }),
+    );
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    await queryRunner.dropColumn('analysis_runs', 'commit_sha');
+  }
+}
@@ -0,0 +1,29 @@
+import { MigrationInterface, QueryRunner, TableColumn, TableIndex } from 'typeorm';
+
+export class AddFingerprintToMissions1733284800003 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Huella estable del hallazgo de cada misión (seguimiento entre re-análisis)
+    await queryRunner.addColumn(
+      'missions',
+      new TableColumn({
+        name: 'fingerprint',
+        type: 'varchar',
+        length: '64',
+        isNullable: true,
+      }),
+    );
+
+    await queryRunner.createIndex(
+      'missions',
+      new TableIndex({
+        name: 'IDX_missions_analysis_run_fingerprint',
+        columnNames: ['analysis_run_id', 'fingerprint'],
+      }),
+    );
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    await queryRunner.dropIndex('missions', 'IDX_missions_analysis_run_fingerprint');
+    await queryRunner.dropColumn('missions', 'fingerprint');
+  }
+}
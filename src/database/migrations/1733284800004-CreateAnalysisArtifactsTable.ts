@@ -0,0 +1,73 @@
+import { MigrationInterface, QueryRunner, Table } from 'typeorm';
+
+export class CreateAnalysisArtifactsTable1733284800004 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Hallazgos y resultados por herramienta (jsonb pesado) fuera de analysis_runs
+    await queryRunner.createTable(
+      new Table({
+        name: 'analysis_artifacts',
+        columns: [
+          {
+            name: 'analysis_run_id',
+            type: 'int',
+            isPrimary: true,
+          },
+          {
+            name: 'findings',
+            type: 'jsonb',
+            isNullable: true,
+          },
+          {
+            name: 'tool_results',
+            type: 'jsonb',
+            isNullable: true,
+          },
+          {
+            name: 'created_at',
+            type: 'timestamp',
+            default: 'now()',
+          },
+          {
+            name: 'updated_at',
+            type: 'timestamp',
+            default: 'now()',
+          },
+        ],
+        foreignKeys: [
+          {
+            columnNames: ['analysis_run_id'],
+            referencedColumnNames: ['id'],
+            referencedTableName: 'analysis_runs',
+            onDelete: 'CASCADE',
+          },
+        ],
+      }),
+      true,
+    );
+
+    // Mover los datos existentes (synchronize pudo haber creado ya la tabla y algunas filas)
+    await queryRunner.query(`
+      INSERT INTO "analysis_artifacts" ("analysis_run_id", "findings", "tool_results", "created_at", "updated_at")
+      SELECT "id", "findings", "tool_results", "created_at", "updated_at"
+      FROM "analysis_runs"
+      WHERE "findings" IS NOT NULL OR "tool_results" IS NOT NULL
+      ON CONFLICT ("analysis_run_id") DO NOTHING
+    `);
+
+    // Vaciar las columnas antiguas libera su almacenamiento TOAST
+    await queryRunner.query(`
+      UPDATE "analysis_runs" SET "findings" = NULL, "tool_results" = NULL
+      WHERE "findings" IS NOT NULL OR "tool_results" IS NOT NULL
+    `);
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    await queryRunner.query(`
+      UPDATE "analysis_runs" AS run
+      SET "findings" = artifact."findings", "tool_results" = artifact."tool_results"
+      FROM "analysis_artifacts" AS artifact
+      WHERE artifact."analysis_run_id" = run."id"
+    `);
+    await queryRunner.dropTable('analysis_artifacts');
+  }
+}
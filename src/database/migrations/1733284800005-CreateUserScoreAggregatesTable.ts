@@ -0,0 +1,92 @@
+import { MigrationInterface, QueryRunner, Table, TableIndex } from 'typeorm';
+
+export class CreateUserScoreAggregatesTable1733284800005 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Totales por usuario para los rankings, mantenidos al completar o eliminar análisis
+    await queryRunner.createTable(
+      new Table({
+        name: 'user_score_aggregates',
+        columns: [
+          {
+            name: 'user_id',
+            type: 'int',
+            isPrimary: true,
+          },
+          {
+            name: 'analyses_count',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'score_sum',
+            type: 'decimal',
+            precision: 14,
+            scale: 2,
+            default: 0,
+          },
+          {
+            name: 'issues_sum',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'average_score',
+            type: 'decimal',
+            precision: 5,
+            scale: 2,
+            default: 0,
+          },
+          {
+            name: 'updated_at',
+            type: 'timestamp',
+            default: 'now()',
+          },
+        ],
+        foreignKeys: [
+          {
+            columnNames: ['user_id'],
+            referencedColumnNames: ['id'],
+            referencedTableName: 'users',
+            onDelete: 'CASCADE',
+          },
+        ],
+      }),
+      true,
+    );
+
+    // Orden del ranking: los rankings globales y la posición de un usuario recorren este índice
+    await queryRunner.createIndex(
+      'user_score_aggregates',
+      new TableIndex({
+        name: 'IDX_user_score_aggregates_ranking',
+        columnNames: ['average_score', 'analyses_count', 'user_id'],
+      }),
+    );
+
+    // Totales iniciales desde los análisis completados (mismo criterio que UserScoreService)
+    await queryRunner.query(`
+      INSERT INTO "user_score_aggregates" ("user_id", "analyses_count", "score_sum", "issues_sum", "average_score")
+      SELECT u."id",
+             count(a."id"),
+             coalesce(sum(coalesce(a."quality_score", 0)), 0),
+             coalesce(sum(a."total_issues"), 0),
+             round(coalesce(sum(coalesce(a."quality_score", 0)), 0) / count(a."id"), 2)
+      FROM "users" u
+      JOIN "analysis_runs" a
+        ON a."status" = 'completed'
+       AND (a."user_id" = u."id" OR (a."user_id" IS NULL AND a."student" IN (u."email", u."name")))
+      GROUP BY u."id"
+      ON CONFLICT ("user_id") DO UPDATE SET
+        "analyses_count" = EXCLUDED."analyses_count",
+        "score_sum" = EXCLUDED."score_sum",
+        "issues_sum" = EXCLUDED."issues_sum",
+        "average_score" = EXCLUDED."average_score",
+        "updated_at" = now()
+    `);
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    await queryRunner.dropIndex('user_score_aggregates', 'IDX_user_score_aggregates_ranking');
+    await queryRunner.dropTable('user_score_aggregates');
+  }
+}
@@ -0,0 +1,27 @@
+import { MigrationInterface, QueryRunner, TableIndex } from 'typeorm';
+
+export class AddUniversityCareerIndexesToUsers1733284800006 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Filtros de los rankings por universidad y por carrera
+    await queryRunner.createIndex(
+      'users',
+      new TableIndex({
+        name: 'IDX_users_university',
+        columnNames: ['university'],
+      }),
+    );
+
+    await queryRunner.createIndex(
+      'users',
+      new TableIndex({
+        name: 'IDX_users_career',
+        columnNames: ['career'],
+      }),
+    );
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    await queryRunner.dropIndex('users', 'IDX_users_career');
+    await queryRunner.dropIndex('users', 'IDX_users_university');
+  }
+}
@@ -0,0 +1,83 @@
+import { MigrationInterface, QueryRunner, Table, TableIndex } from 'typeorm';
+
+export class CreateUserScoreDailyTable1733284800007 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Totales por usuario y día para los rankings por ventana de tiempo
+    await queryRunner.createTable(
+      new Table({
+        name: 'user_score_daily',
+        columns: [
+          {
+            name: 'user_id',
+            type: 'int',
+            isPrimary: true,
+          },
+          {
+            name: 'day',
+            type: 'date',
+            isPrimary: true,
+          },
+          {
+            name: 'analyses_count',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'score_sum',
+            type: 'decimal',
+            precision: 14,
+            scale: 2,
+            default: 0,
+          },
+          {
+            name: 'issues_sum',
+            type: 'int',
+            default: 0,
+          },
+        ],
+        foreignKeys: [
+          {
+            columnNames: ['user_id'],
+            referencedColumnNames: ['id'],
+            referencedTableName: 'users',
+            onDelete: 'CASCADE',
+          },
+        ],
+      }),
+      true,
+    );
+
+    // Los rankings por ventana leen un rango de días
+    await queryRunner.createIndex(
+      'user_score_daily',
+      new TableIndex({
+        name: 'IDX_user_score_daily_day',
+        columnNames: ['day', 'user_id'],
+      }),
+    );
+
+    // Filas iniciales desde los análisis completados (mismo criterio que UserScoreService)
+    await queryRunner.query(`
+      INSERT INTO "user_score_daily" ("user_id", "day", "analyses_count", "score_sum", "issues_sum")
+      SELECT u."id",
+             coalesce(a."completed_at", a."created_at")::date,
+             count(*),
+             sum(coalesce(a."quality_score", 0)),
+             coalesce(sum(a."total_issues"), 0)
+      FROM "users" u
+      JOIN "analysis_runs" a
+        ON a."status" = 'completed'
+       AND (a."user_id" = u."id" OR (a."user_id" IS NULL AND a."student" IN (u."email", u."name")))
+      GROUP BY 1, 2
+      ON CONFLICT ("user_id", "day") DO UPDATE SET
+        "analyses_count" = EXCLUDED."analyses_count",
+        "score_sum" = EXCLUDED."score_sum",
+        "issues_sum" = EXCLUDED."issues_sum"
+    `);
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    await queryRunner.dropIndex('user_score_daily', 'IDX_user_score_daily_day');
+    await queryRunner.dropTable('user_score_daily');
+  }
+}
@@ -0,0 +1,79 @@
+import { MigrationInterface, QueryRunner, Table, TableIndex } from 'typeorm';
+
+export class CreateGlobalStatsTable1733284800008 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Fila única con los totales globales del ranking
+    await queryRunner.createTable(
+      new Table({
+        name: 'global_stats',
+        columns: [
+          {
+            name: 'id',
+            type: 'smallint',
+            isPrimary: true,
+            default: 1,
+          },
+          {
+            name: 'total_users',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'total_analyses',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'score_sum',
+            type: 'decimal',
+            precision: 16,
+            scale: 2,
+            default: 0,
+          },
+          {
+            name: 'issues_sum',
+            type: 'bigint',
+            default: 0,
+          },
+          {
+            name: 'updated_at',
+            type: 'timestamp',
+            default: 'now()',
+          },
+        ],
+      }),
+      true,
+    );
+
+    // Usuario más activo: primero de este índice
+    await queryRunner.createIndex(
+      'user_score_aggregates',
+      new TableIndex({
+        name: 'IDX_user_score_aggregates_analyses_count',
+        columnNames: ['analyses_count', 'user_id'],
+      }),
+    );
+
+    // Totales iniciales a partir de user_score_aggregates
+    await queryRunner.query(`
+      INSERT INTO "global_stats" ("id", "total_users", "total_analyses", "score_sum", "issues_sum")
+      SELECT 1,
+             count(*) FILTER (WHERE "analyses_count" > 0),
+             coalesce(sum("analyses_count"), 0),
+             coalesce(sum("score_sum"), 0),
+             coalesce(sum("issues_sum"), 0)
+      FROM "user_score_aggregates"
+      ON CONFLICT ("id") DO UPDATE SET
+        "total_users" = EXCLUDED."total_users",
+        "total_analyses" = EXCLUDED."total_analyses",
+        "score_sum" = EXCLUDED."score_sum",
+        "issues_sum" = EXCLUDED."issues_sum",
+        "updated_at" = now()
+    `);
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    await queryRunner.dropIndex('user_score_aggregates', 'IDX_user_score_aggregates_analyses_count');
+    await queryRunner.dropTable('global_stats');
+  }
+}
@@ -0,0 +1,93 @@
+import { MigrationInterface, QueryRunner, Table } from 'typeorm';
+
+export class CreateUserAchievementCountersTable1733284800009 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Contadores por usuario para evaluar los logros. No hace falta cargarlos:
+    // se recalculan enteros desde los análisis y misiones en el siguiente evento
+    await queryRunner.createTable(
+      new Table({
+        name: 'user_achievement_counters',
+        columns: [
+          {
+            name: 'user_id',
+            type: 'int',
+            isPrimary: true,
+          },
+          {
+            name: 'analyses_count',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'detected_issues',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'perfect_analyses',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'quick_analyses',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'improving_iterations',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'best_clean_streak',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'missions_count',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'fixed_missions',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'critical_fixed',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'closed_missions',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'best_fix_streak',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'updated_at',
+            type: 'timestamp',
+            default: 'now()',
+          },
+        ],
+        foreignKeys: [
+          {
+            columnNames: ['user_id'],
+            referencedColumnNames: ['id'],
+            referencedTableName: 'users',
+            onDelete: 'CASCADE',
+          },
+        ],
+      }),
+      true,
+    );
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    await queryRunner.dropTable('user_achievement_counters');
+  }
+}
@@ -0,0 +1,82 @@
+import { MigrationInterface, QueryRunner, Table, TableIndex } from 'typeorm';
+
+export class CreateOutboxEventsTable1733284800010 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Eventos de dominio pendientes de procesar en segundo plano (outbox transaccional)
+    await queryRunner.createTable(
+      new Table({
+        name: 'outbox_events',
+        columns: [
+          {
+            name: 'id',
+            type: 'bigint',
+            isPrimary: true,
+            isGenerated: true,
+            generationStrategy: 'increment',
+          },
+          {
+            name: 'type',
+            type: 'varchar',
+            length: '50',
+          },
+          {
+            name: 'payload',
+            type: 'jsonb',
+          },
+          {
+            name: 'completed_handlers',
+            type: 'text',
+            isArray: true,
+            default: "'{}'",
+          },
+          {
+            name: 'attempts',
+            type: 'int',
+            default: 0,
+          },
+          {
+            name: 'available_at',
+            type: 'timestamp',
+            default: 'now()',
+          },
+          {
+            name: 'last_error',
+            type: 'text',
+            isNullable: true,
+          },
+          {
+            name: 'processed_at',
+            type: 'timestamp',
+            isNullable: true,
+          },
+          {
+            name: 'failed_at',
+            type: 'timestamp',
+            isNullable: true,
+          },
+          {
+            name: 'created_at',
+            type: 'timestamp',
+            default: 'now()',
+          },
+        ],
+      }),
+      true,
+    );
+
+    // Solo los pendientes: el dispatcher y las métricas de retraso no recorren los procesados
+    await queryRunner.createIndex(
+      'outbox_events',
+      new TableIndex({
+        name: 'IDX_outbox_events_pending',
+        columnNames: ['available_at', 'id'],
+        where: '"processed_at" IS NULL AND "failed_at" IS NULL',
+      }),
+    );
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    await queryRunner.dropIndex('outbox_events', 'IDX_outbox_events_pending');
+    await queryRunner.dropTable('outbox_events');
+  }
+}
@@ -0,0 +1,51 @@
+import { MigrationInterface, QueryRunner, TableIndex } from 'typeorm';
+
+export class MakeAchievementsSparse1733284800011 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Duplicados (user_id, type): se conserva el desbloqueado más antiguo
+    await queryRunner.query(`
+      DELETE FROM "achievements"
+      WHERE "id" IN (
+        SELECT "id"
+        FROM (
+          SELECT "id",
+                 row_number() OVER (
+                   PARTITION BY "user_id", "type"
+                   ORDER BY "is_unlocked" DESC, "unlocked_at" ASC NULLS LAST, "id"
+                 ) AS position
+          FROM "achievements"
+        ) AS ranked
+        WHERE position > 1
+      )
+    `);
+
+    // Los logros bloqueados sin progreso salen de las definiciones al leer
+    await queryRunner.query(`
+      DELETE FROM "achievements"
+      WHERE "is_unlocked" = false AND coalesce("progress_current", 0) = 0
+    `);
+
+    // El desbloqueo es un INSERT … ON CONFLICT ("user_id", "type")
+    await queryRunner.query(`DROP INDEX IF EXISTS "IDX_achievements_user_id_type"`);
+    await queryRunner.createIndex(
+      'achievements',
+      new TableIndex({
+        name: 'IDX_achievements_user_type',
+        columnNames: ['user_id', 'type'],
+        isUnique: true,
+      }),
+    );
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    // Las filas bloqueadas borradas no se recrean: la lectura las sigue sintetizando
+    await queryRunner.dropIndex('achievements', 'IDX_achievements_user_type');
+    await queryRunner.createIndex(
+      'achievements',
+      new TableIndex({
+        name: 'IDX_achievements_user_id_type',
+        columnNames: ['user_id', 'type'],
+      }),
+    );
+  }
+}
@@ -0,0 +1,19 @@
+import { MigrationInterface, QueryRunner, TableColumn } from 'typeorm';
+
+export class AddTokenVersionToUsers1733284800012 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Versión de los tokens del usuario: al subirla dejan de valer los emitidos antes
+    await queryRunner.addColumn(
+      'users',
+      new TableColumn({
+        name: 'token_version',
+        type: 'int',
+        default: 0,
+      }),
+    );
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    await queryRunner.dropColumn('users', 'token_version');
+  }
+}
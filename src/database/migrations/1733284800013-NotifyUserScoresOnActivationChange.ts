@@ -0,0 +1,29 @@
+import { MigrationInterface, QueryRunner } from 'typeorm';
+
+export class NotifyUserScoresOnActivationChange1733284800013 implements MigrationInterface {
+  public async up(queryRunner: QueryRunner): Promise<void> {
+    // Activar o desactivar un usuario cambia el ranking sin tocar user_score_aggregates:
+    // se avisa en el mismo canal que UserScoreService (USER_SCORES_CHANNEL) para
+    // que cada nodo relea al usuario en su ranking en memoria
+    await queryRunner.query(`
+      CREATE FUNCTION "notify_user_scores_on_activation"() RETURNS trigger AS $$
+      BEGIN
+        PERFORM pg_notify('user_scores', NEW."id"::text);
+        RETURN NEW;
+      END;
+      $$ LANGUAGE plpgsql
+    `);
+    await queryRunner.query(`
+      CREATE TRIGGER "TRG_users_is_active_notify"
+      AFTER UPDATE OF "is_active" ON "users"
+      FOR EACH ROW
+      WHEN (OLD."is_active" IS DISTINCT FROM NEW."is_active")
+      EXECUTE FUNCTION "notify_user_scores_on_activation"()
+    `);
+  }
+
+  public async down(queryRunner: QueryRunner): Promise<void> {
+    await queryRunner.query(`DROP TRIGGER IF EXISTS "TRG_users_is_active_notify" ON "users"`);
+    await queryRunner.query(`DROP FUNCTION IF EXISTS "notify_user_scores_on_activation"()`);
+  }
+}
@@ -17,6 +17,7 @@ import { AuthGuard } from '@nestjs/passport';
 import { CustomMissionsService } from './custom-missions.service';
 import { SubmissionsService } from './submissions.service';
 import { CustomMission } from './entities/custom-mission.entity';
+import { HashedMulterFile, projectUploadOptions, toUploadedArchive } from '../analysis/services/upload-storage';
 
 @Controller('custom-missions')
 export class CustomMissionsController {
@@ -95,10 +96,10 @@ export class CustomMissionsController {
 
   @Post(':id/submit')
   @UseGuards(AuthGuard('jwt'))
-  @UseInterceptors(FileInterceptor('file'))
+  @UseInterceptors(FileInterceptor('file', projectUploadOptions()))
   async submitMission(
     @Param('id', ParseIntPipe) id: number,
-    @UploadedFile() file: Express.Multer.File,
+    @UploadedFile() file: HashedMulterFile,
     @Request() req,
   ) {
     if (!file) {
@@ -109,7 +110,7 @@ export class CustomMissionsController {
     const submission = await this.submissionsService.submitMission(
       userId,
       id,
-      file.buffer,
+      toUploadedArchive(file),
     );
 
     return {
@@ -6,10 +6,12 @@ import { CustomMissionsService } from './custom-missions.service';
 import { SubmissionsService } from './submissions.service';
 import { MissionValidatorService } from './mission-validator.service';
 import { CustomMissionsController } from './custom-missions.controller';
+import { AnalysisModule } from '../analysis/analysis.module';
 
 @Module({
   imports: [
     TypeOrmModule.forFeature([CustomMission, MissionSubmission]),
+    AnalysisModule,
   ],
   controllers: [CustomMissionsController],
   providers: [
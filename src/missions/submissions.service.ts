@@ -6,8 +6,10 @@ import { CustomMission } from './entities/custom-mission.entity';
 import { MissionValidatorService } from './mission-validator.service';
 import * as fs from 'fs-extra';
 import * as path from 'path';
-import * as AdmZip from 'adm-zip';
 import { v4 as uuidv4 } from 'uuid';
+import { archiveFormat, extractArchive } from '../analysis/services/archive-extractor';
+import { UploadedArchive, discardUpload } from '../analysis/services/upload-storage';
+import { WorkspaceRetentionService } from '../analysis/services/workspace-retention.service';
 
 @Injectable()
 export class SubmissionsService {
@@ -20,6 +22,7 @@ export class SubmissionsService {
     @InjectRepository(CustomMission)
     private readonly missionRepository: Repository<CustomMission>,
     private readonly validatorService: MissionValidatorService,
+    private readonly workspaceRetention: WorkspaceRetentionService,
   ) {
     // Asegurar que existe el directorio de uploads
     fs.ensureDirSync(this.uploadsDir);
@@ -28,7 +31,7 @@ export class SubmissionsService {
   async submitMission(
     userId: number,
     missionId: number,
-    fileBuffer: Buffer,
+    upload: UploadedArchive,
   ): Promise<MissionSubmission> {
     this.logger.log(`User ${userId} submitting mission ${missionId}`);
 
@@ -38,10 +41,12 @@ export class SubmissionsService {
     });
 
     if (!mission) {
+      await discardUpload(upload);
       throw new NotFoundException(`Misión con ID ${missionId} no encontrada`);
     }
 
     if (!mission.isActive) {
+      await discardUpload(upload);
       throw new BadRequestException('Esta misión no está disponible actualmente');
     }
 
@@ -55,15 +60,22 @@ export class SubmissionsService {
 
     await this.submissionRepository.save(submission);
 
+    const extractedPath = path.join(this.uploadsDir, uuidv4());
+    const releaseWorkspace = this.workspaceRetention.lease(extractedPath);
     try {
       // Extraer archivos
-      const extractedPath = path.join(this.uploadsDir, uuidv4());
       await fs.ensureDir(extractedPath);
       
-      await this.extractFiles(fileBuffer, extractedPath);
+      try {
+        await this.extractFiles(upload, extractedPath);
+      } finally {
+        // El ZIP subido ya no se necesita una vez extraído
+        await discardUpload(upload);
+      }
       
       submission.extractedPath = extractedPath;
       await this.submissionRepository.save(submission);
+      await this.workspaceRetention.register(extractedPath, 'submission', { submissionId: submission.id });
 
       // Validar automáticamente
       const validationResult = await this.validatorService.validateMission(
@@ -100,17 +112,19 @@ export class SubmissionsService {
       await this.submissionRepository.save(submission);
 
       throw new BadRequestException('Error procesando la misión: ' + error.message);
+    } finally {
+      releaseWorkspace();
     }
   }
 
-  private async extractFiles(fileBuffer: Buffer, extractPath: string): Promise<void> {
+  private async extractFiles(upload: UploadedArchive, extractPath: string): Promise<void> {
     try {
-      const zip = new AdmZip(fileBuffer);
-      zip.extractAllTo(extractPath, true);
+      // Fuentes, configuración y recursos, con límites contra archivos bomba
+      await extractArchive(upload.path, archiveFormat(upload.originalName) || 'zip', extractPath);
       
       this.logger.debug(`Files extracted to ${extractPath}`);
     } catch (error) {
-      throw new BadRequestException('Error extrayendo archivos. Asegúrate de subir un archivo ZIP válido.');
+      throw new BadRequestException('Error extrayendo archivos. Asegúrate de subir un archivo .zip, .tar, .tar.gz o .7z válido.');
     }
   }
 
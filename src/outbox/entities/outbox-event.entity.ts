@@ -0,0 +1,45 @@
+import { Entity, PrimaryGeneratedColumn, Column, CreateDateColumn, Index } from 'typeorm';
+
+export type OutboxEventType = 'analysis.completed' | 'mission.changed';
+
+/**
+ * Evento de dominio escrito en la misma transacción que el cambio que lo
+ * origina. OutboxDispatcherService lo procesa en segundo plano; un evento
+ * sigue pendiente mientras processed_at y failed_at son null.
+ */
+@Entity('outbox_events')
+@Index(['availableAt', 'id'], { where: '"processed_at" IS NULL AND "failed_at" IS NULL' })
+export class OutboxEvent {
+  @PrimaryGeneratedColumn({ type: 'bigint' })
+  id: string;
+
+  @Column({ type: 'varchar', length: 50 })
+  type: OutboxEventType;
+
+  @Column({ type: 'jsonb' })
+  payload: Record<string, any>;
+
+  // Manejadores que ya terminaron: un reintento no los repite
+  @Column({ name: 'completed_handlers', type: 'text', array: true, default: () => "'{}'" })
+  completedHandlers: string[];
+
+  @Column({ type: 'integer', default: 0 })
+  attempts: number;
+
+  // No se procesa antes de esta fecha (espera entre reintentos)
+  @Column({ name: 'available_at', type: 'timestamp', default: () => 'now()' })
+  availableAt: Date;
+
+  @Column({ name: 'last_error', type: 'text', nullable: true })
+  lastError: string;
+
+  @Column({ name: 'processed_at', type: 'timestamp', nullable: true })
+  processedAt: Date;
+
+  // Agotó los reintentos: queda para revisión y deja de procesarse
+  @Column({ name: 'failed_at', type: 'timestamp', nullable: true })
+  failedAt: Date;
+
+  @CreateDateColumn({ name: 'created_at' })
+  createdAt: Date;
+}
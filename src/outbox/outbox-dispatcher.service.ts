@@ -0,0 +1,212 @@
+import { Injectable, Logger, OnModuleDestroy, OnModuleInit } from '@nestjs/common';
+import { InjectRepository } from '@nestjs/typeorm';
+import { EntityManager, Repository } from 'typeorm';
+import { envNumber } from '../config/env';
+import { AchievementsService } from '../auth/services/achievements.service';
+import { UserScoreService } from '../ranking/user-score.service';
+import { OutboxEvent, OutboxEventType } from './entities/outbox-event.entity';
+
+/**
+ * Procesa en segundo plano los eventos de outbox_events.
+ *
+ * Cada evento se reclama con FOR UPDATE SKIP LOCKED y se procesa en su propia
+ * transacción, así que varios nodos reparten los eventos sin procesar uno dos
+ * veces a la vez. Los manejadores escriben en esa transacción (cada uno en su
+ * savepoint), de modo que sus cambios y la marca de "terminado" se confirman
+ * juntos. Una transacción por evento evita retener los bloqueos que toman los
+ * manejadores (agregados de usuario, global_stats) mientras se procesan otros
+ * eventos, que se cruzarían con los refrescos de las peticiones y de otros
+ * nodos. Además son idempotentes (recalculan desde la base de datos). Si alguno
+ * falla, el evento se reintenta con espera exponencial y solo se repiten los
+ * que faltan.
+ */
+
+const POLL_INTERVAL_MS = envNumber('OUTBOX_POLL_INTERVAL_MS', 1000);
+const MAX_ATTEMPTS = envNumber('OUTBOX_MAX_ATTEMPTS', 10);
+// Espera antes del reintento N: RETRY_BASE_MS * 2^(N-1), con tope
+const RETRY_BASE_MS = 1000;
+const MAX_RETRY_DELAY_MS = 10 * 60 * 1000;
+// Los eventos procesados se conservan este tiempo y luego se borran
+const PROCESSED_RETENTION_DAYS = envNumber('OUTBOX_RETENTION_DAYS', 7);
+const CLEANUP_INTERVAL_MS = 60 * 60 * 1000;
+
+type Handler = (payload: Record<string, any>, manager: EntityManager) => Promise<unknown>;
+
+export interface OutboxMetrics {
+  pending: number;
+  failed: number;
+  /** Segundos desde que se creó el evento pendiente más antiguo */
+  oldestPendingSeconds: number;
+  /** Segundos entre creación y procesamiento, media de la última pasada por la cola */
+  lastBatchLagSeconds: number | null;
+  lastBatchAt: string | null;
+  processedSinceStart: number;
+  retriesSinceStart: number;
+}
+
+@Injectable()
+export class OutboxDispatcherService implements OnModuleInit, OnModuleDestroy {
+  private readonly logger = new Logger(OutboxDispatcherService.name);
+  private timer: NodeJS.Timeout | null = null;
+  private cleanupTimer: NodeJS.Timeout | null = null;
+  private dispatching: Promise<number> | null = null;
+  private lastBatchLagSeconds: number | null = null;
+  private lastBatchAt: Date | null = null;
+  private processedSinceStart = 0;
+  private retriesSinceStart = 0;
+
+  private readonly handlers: Record<OutboxEventType, Record<string, Handler>> = {
+    'analysis.completed': {
+      ranking: (payload, manager) => this.userScores.refreshForAnalysis(payload, manager),
+      achievements: (payload, manager) =>
+        payload.userId ? this.achievements.onAnalysisCompleted(payload.userId, manager) : null,
+    },
+    'mission.changed': {
+      achievements: (payload, manager) => this.achievements.onMissionsChanged(payload.userId, manager),
+    },
+  };
+
+  constructor(
+    @InjectRepository(OutboxEvent)
+    private readonly outboxRepository: Repository<OutboxEvent>,
+    private readonly userScores: UserScoreService,
+    private readonly achievements: AchievementsService,
+  ) {}
+
+  onModuleInit(): void {
+    if (POLL_INTERVAL_MS <= 0) return;
+    this.timer = setInterval(() => {
+      this.dispatch().catch(error => this.logger.error(`Error procesando outbox: ${error.message}`));
+    }, POLL_INTERVAL_MS);
+    this.timer.unref();
+
+    this.cleanupTimer = setInterval(() => {
+      this.deleteProcessed().catch(error => this.logger.warn(`No se pudieron borrar eventos procesados: ${error.message}`));
+    }, CLEANUP_INTERVAL_MS);
+    this.cleanupTimer.unref();
+  }
+
+  onModuleDestroy(): void {
+    if (this.timer) clearInterval(this.timer);
+    if (this.cleanupTimer) clearInterval(this.cleanupTimer);
+  }
+
+  /** Procesa eventos hasta vaciar la cola; una sola ejecución a la vez por nodo */
+  dispatch(): Promise<number> {
+    if (!this.dispatching) {
+      this.dispatching = this.drain().finally(() => {
+        this.dispatching = null;
+      });
+    }
+    return this.dispatching;
+  }
+
+  async getMetrics(): Promise<OutboxMetrics> {
+    const [row] = await this.outboxRepository.query(`
+      SELECT count(*) FILTER (WHERE "processed_at" IS NULL AND "failed_at" IS NULL) AS pending,
+             count(*) FILTER (WHERE "failed_at" IS NOT NULL) AS failed,
+             coalesce(extract(epoch FROM now() - min("created_at")
+               FILTER (WHERE "processed_at" IS NULL AND "failed_at" IS NULL)), 0) AS oldest_pending_seconds
+      FROM "outbox_events"
+      WHERE "processed_at" IS NULL
+    `);
+    return {
+      pending: Number(row.pending),
+      failed: Number(row.failed),
+      oldestPendingSeconds: Number(row.oldest_pending_seconds),
+      lastBatchLagSeconds: this.lastBatchLagSeconds,
+      lastBatchAt: this.lastBatchAt?.toISOString() ?? null,
+      processedSinceStart: this.processedSinceStart,
+      retriesSinceStart: this.retriesSinceStart,
+    };
+  }
+
+  private async deleteProcessed(): Promise<void> {
+    await this.outboxRepository.query(
+      `DELETE FROM "outbox_events" WHERE "processed_at" < now() - make_interval(days => $1)`,
+      [PROCESSED_RETENTION_DAYS],
+    );
+  }
+
+  private async drain(): Promise<number> {
+    let total = 0;
+    let processed = 0;
+    let lagSum = 0;
+    for (;;) {
+      const event = await this.dispatchNext();
+      if (!event) break;
+      total++;
+      if (event.processedAt) {
+        processed++;
+        lagSum += (event.processedAt.getTime() - event.createdAt.getTime()) / 1000;
+      }
+    }
+    if (processed > 0) {
+      this.lastBatchLagSeconds = lagSum / processed;
+      this.lastBatchAt = new Date();
+    }
+    return total;
+  }
+
+  /** Reclama un evento, lo procesa y guarda su resultado en la misma transacción */
+  private async dispatchNext(): Promise<OutboxEvent | null> {
+    return this.outboxRepository.manager.transaction(async manager => {
+      const event = await manager
+        .createQueryBuilder(OutboxEvent, 'event')
+        .where('event.processedAt IS NULL')
+        .andWhere('event.failedAt IS NULL')
+        .andWhere('event.availableAt <= now()')
+        .orderBy('event.id', 'ASC')
+        .limit(1)
+        .setLock('pessimistic_write')
+        .setOnLocked('skip_locked')
+        .getOne();
+      if (!event) return null;
+
+      const error = await this.runHandlers(event, manager);
+      if (!error) {
+        event.processedAt = new Date();
+        event.lastError = null;
+        this.processedSinceStart++;
+      } else {
+        event.attempts++;
+        event.lastError = error.message;
+        this.retriesSinceStart++;
+        if (event.attempts >= MAX_ATTEMPTS) {
+          event.failedAt = new Date();
+          this.logger.error(`❌ Evento ${event.type} #${event.id} descartado tras ${event.attempts} intentos: ${error.message}`);
+        } else {
+          const delay = Math.min(RETRY_BASE_MS * 2 ** (event.attempts - 1), MAX_RETRY_DELAY_MS);
+          event.availableAt = new Date(Date.now() + delay);
+          this.logger.warn(`⚠️ Evento ${event.type} #${event.id} falló (intento ${event.attempts}), reintento en ${delay} ms: ${error.message}`);
+        }
+      }
+      await manager.update(OutboxEvent, { id: event.id }, {
+        completedHandlers: event.completedHandlers,
+        attempts: event.attempts,
+        availableAt: event.availableAt,
+        lastError: event.lastError,
+        processedAt: event.processedAt,
+        failedAt: event.failedAt,
+      });
+      return event;
+    });
+  }
+
+  /** Ejecuta los manejadores que faltan; devuelve el primer error (los demás se intentan igual) */
+  private async runHandlers(event: OutboxEvent, manager: EntityManager): Promise<Error | null> {
+    const handlers = this.handlers[event.type] || {};
+    let firstError: Error | null = null;
+    for (const [name, handler] of Object.entries(handlers)) {
+      if (event.completedHandlers.includes(name)) continue;
+      try {
+        // Un fallo revierte solo su savepoint; la transacción del evento sigue usable
+        await manager.transaction(savepoint => handler(event.payload, savepoint));
+        event.completedHandlers = [...event.completedHandlers, name];
+      } catch (error) {
+        firstError = firstError || error;
+      }
+    }
+    return firstError;
+  }
+}
@@ -0,0 +1,20 @@
+import { Controller, Get, UseGuards } from '@nestjs/common';
+import { AuthGuard } from '@nestjs/passport';
+import { OutboxDispatcherService } from './outbox-dispatcher.service';
+
+@Controller('outbox')
+@UseGuards(AuthGuard('jwt'))
+export class OutboxController {
+  constructor(private readonly dispatcher: OutboxDispatcherService) {}
+
+  // Retraso de la cola de eventos (pendientes, más antiguo, lag de la última pasada)
+  @Get('metrics')
+  async getMetrics() {
+    const result = await this.dispatcher.getMetrics();
+    return {
+      success: true,
+      data: result,
+      message: 'Métricas del outbox obtenidas exitosamente'
+    };
+  }
+}
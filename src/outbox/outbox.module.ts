@@ -0,0 +1,16 @@
+import { Module } from '@nestjs/common';
+import { TypeOrmModule } from '@nestjs/typeorm';
+import { AuthModule } from '../auth/auth.module';
+import { RankingModule } from '../ranking/ranking.module';
+import { OutboxEvent } from './entities/outbox-event.entity';
+import { OutboxService } from './outbox.service';
+import { OutboxDispatcherService } from './outbox-dispatcher.service';
+import { OutboxController } from './outbox.controller';
+
+@Module({
+  imports: [TypeOrmModule.forFeature([OutboxEvent]), AuthModule, RankingModule],
+  controllers: [OutboxController],
+  providers: [OutboxService, OutboxDispatcherService],
+  exports: [OutboxService, OutboxDispatcherService],
+})
+export class OutboxModule {}
@@ -0,0 +1,24 @@
+import { Injectable } from '@nestjs/common';
+import { EntityManager } from 'typeorm';
+import { OutboxEvent, OutboxEventType } from './entities/outbox-event.entity';
+
+export interface AnalysisCompletedPayload {
+  analysisRunId: number;
+  userId: number | null;
+  student: string | null;
+}
+
+export interface MissionChangedPayload {
+  missionId: number;
+  userId: number;
+}
+
+@Injectable()
+export class OutboxService {
+  /** Escribe el evento con el `manager` de la transacción que hace el cambio */
+  async enqueue(manager: EntityManager, type: 'analysis.completed', payload: AnalysisCompletedPayload): Promise<void>;
+  async enqueue(manager: EntityManager, type: 'mission.changed', payload: MissionChangedPayload): Promise<void>;
+  async enqueue(manager: EntityManager, type: OutboxEventType, payload: Record<string, any>): Promise<void> {
+    await manager.insert(OutboxEvent, { type, payload });
+  }
+}
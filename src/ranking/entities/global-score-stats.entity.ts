@@ -0,0 +1,28 @@
+import { Entity, PrimaryColumn, Column, UpdateDateColumn } from 'typeorm';
+
+/**
+ * Totales globales del ranking en una única fila (id = 1). UserScoreService
+ * le suma la diferencia de cada usuario que recalcula, en la misma sentencia,
+ * así que /api/rankings/stats no recorre ningún análisis.
+ */
+@Entity('global_stats')
+export class GlobalScoreStats {
+  @PrimaryColumn({ type: 'smallint', default: 1 })
+  id: number;
+
+  // Usuarios con al menos un análisis completado
+  @Column({ name: 'total_users', type: 'integer', default: 0 })
+  totalUsers: number;
+
+  @Column({ name: 'total_analyses', type: 'integer', default: 0 })
+  totalAnalyses: number;
+
+  @Column({ name: 'score_sum', type: 'decimal', precision: 16, scale: 2, default: 0 })
+  scoreSum: number;
+
+  @Column({ name: 'issues_sum', type: 'bigint', default: 0 })
+  issuesSum: number;
+
+  @UpdateDateColumn({ name: 'updated_at' })
+  updatedAt: Date;
+}
@@ -0,0 +1,36 @@
+import { Entity, PrimaryColumn, Column, UpdateDateColumn, OneToOne, JoinColumn, Index } from 'typeorm';
+import { User } from '../../auth/entities/user.entity';
+
+/**
+ * Totales de cada usuario para los rankings (solo análisis completados).
+ * UserScoreService los mantiene en la misma transacción que completa o
+ * elimina un análisis; los rankings recorren el índice en orden en lugar de
+ * cargar todos los usuarios y análisis.
+ */
+@Entity('user_score_aggregates')
+@Index(['averageScore', 'analysesCount', 'userId'])
+@Index(['analysesCount', 'userId'])
+export class UserScoreAggregate {
+  @PrimaryColumn({ name: 'user_id', type: 'integer' })
+  userId: number;
+
+  @OneToOne(() => User, { onDelete: 'CASCADE' })
+  @JoinColumn({ name: 'user_id' })
+  user: User;
+
+  @Column({ name: 'analyses_count', type: 'integer', default: 0 })
+  analysesCount: number;
+
+  @Column({ name: 'score_sum', type: 'decimal', precision: 14, scale: 2, default: 0 })
+  scoreSum: number;
+
+  @Column({ name: 'issues_sum', type: 'integer', default: 0 })
+  issuesSum: number;
+
+  // score_sum / analyses_count redondeado: clave de orden del ranking
+  @Column({ name: 'average_score', type: 'decimal', precision: 5, scale: 2, default: 0 })
+  averageScore: number;
+
+  @UpdateDateColumn({ name: 'updated_at' })
+  updatedAt: Date;
+}
@@ -0,0 +1,31 @@
+import { Entity, PrimaryColumn, Column, ManyToOne, JoinColumn, Index } from 'typeorm';
+import { User } from '../../auth/entities/user.entity';
+
+/**
+ * Totales de cada usuario por día (fecha de finalización de sus análisis
+ * completados). Los rankings por ventana (7 días, 30 días, semestre) suman
+ * las filas del rango de días en lugar de recorrer analysis_runs.
+ */
+@Entity('user_score_daily')
+@Index(['day', 'userId'])
+export class UserScoreDaily {
+  @PrimaryColumn({ name: 'user_id', type: 'integer' })
+  userId: number;
+
+  // 'YYYY-MM-DD'
+  @PrimaryColumn({ type: 'date' })
+  day: string;
+
+  @ManyToOne(() => User, { onDelete: 'CASCADE' })
+  @JoinColumn({ name: 'user_id' })
+  user: User;
+
+  @Column({ name: 'analyses_count', type: 'integer', default: 0 })
+  analysesCount: number;
+
+  @Column({ name: 'score_sum', type: 'decimal', precision: 14, scale: 2, default: 0 })
+  scoreSum: number;
+
+  @Column({ name: 'issues_sum', type: 'integer', default: 0 })
+  issuesSum: number;
+}
@@ -0,0 +1,192 @@
+import { Injectable, Logger, OnModuleDestroy, OnModuleInit } from '@nestjs/common';
+import { InjectRepository } from '@nestjs/typeorm';
+import { Client } from 'pg';
+import { Repository } from 'typeorm';
+import { PostgresConnectionOptions } from 'typeorm/driver/postgres/PostgresConnectionOptions';
+import { UserScoreAggregate } from './entities/user-score-aggregate.entity';
+import { Leaderboard, RankedEntry } from './leaderboard';
+import { USER_SCORES_CHANNEL } from './user-score.service';
+
+// Espera antes de reabrir la conexión de LISTEN tras un error
+const RECONNECT_DELAY_MS = 5000;
+
+/**
+ * Copia en memoria de user_score_aggregates (usuarios activos con análisis)
+ * para consultar posiciones sin ordenar el ranking en cada petición.
+ *
+ * Se carga al arrancar y se mantiene con las notificaciones que
+ * UserScoreService emite (pg_notify) al confirmar cada cambio, y que un
+ * trigger de users emite al activar o desactivar una cuenta: cada nodo
+ * escucha el canal en un cliente propio, fuera del pool de TypeORM, y relee
+ * solo los usuarios notificados. Las relecturas van de una en una y agrupan
+ * lo notificado mientras tanto, así que una lectura antigua nunca pisa a una
+ * más reciente del mismo usuario. Si la conexión se pierde se vuelve a cargar
+ * todo, porque las notificaciones de mientras no se reciben. Sin copia lista,
+ * isReady es false y RankingService consulta la tabla directamente.
+ */
+@Injectable()
+export class LeaderboardService implements OnModuleInit, OnModuleDestroy {
+  private readonly logger = new Logger(LeaderboardService.name);
+  private readonly leaderboard = new Leaderboard();
+  private ready = false;
+  // Usuarios notificados pendientes de releer (durante una carga completa, al terminarla)
+  private readonly dirty = new Set<number>();
+  private flushing: Promise<void> | null = null;
+  private loading = false;
+  private listener: Client | null = null;
+  private reconnectTimer: NodeJS.Timeout | null = null;
+  private destroyed = false;
+
+  constructor(
+    @InjectRepository(UserScoreAggregate)
+    private readonly scoreRepository: Repository<UserScoreAggregate>,
+  ) {}
+
+  async onModuleInit(): Promise<void> {
+    await this.connect();
+  }
+
+  async onModuleDestroy(): Promise<void> {
+    this.destroyed = true;
+    if (this.reconnectTimer) clearTimeout(this.reconnectTimer);
+    const listener = this.listener;
+    this.listener = null;
+    // Al cerrar la sesión Postgres deja de entregarle notificaciones
+    if (listener) await listener.end();
+  }
+
+  get isReady(): boolean {
+    return this.ready;
+  }
+
+  get size(): number {
+    return this.leaderboard.size;
+  }
+
+  rankOf(userId: number): number | null {
+    return this.leaderboard.rankOf(userId);
+  }
+
+  top(limit: number): RankedEntry[] {
+    return this.leaderboard.top(limit);
+  }
+
+  around(userId: number, radius: number): RankedEntry[] {
+    return this.leaderboard.around(userId, radius);
+  }
+
+  /** Escucha el canal y después carga todo: ningún cambio confirmado queda fuera */
+  private async connect(): Promise<void> {
+    try {
+      // LISTEN ocupa la conexión mientras viva el nodo: no se saca del pool (max: 5)
+      const options = this.scoreRepository.manager.connection.options as PostgresConnectionOptions;
+      const client = new Client({
+        host: options.host,
+        port: options.port,
+        user: options.username,
+        password: options.password as string,
+        database: options.database,
+        ssl: options.ssl as any,
+      });
+      this.listener = client;
+      client.on('notification', message => {
+        if (message.channel === USER_SCORES_CHANNEL) this.onNotification(message.payload);
+      });
+      client.on('error', error => this.onListenerError(error));
+      client.on('end', () => {
+        if (this.listener === client) this.onListenerError(new Error('conexión de LISTEN cerrada'));
+      });
+      await client.connect();
+      await client.query(`LISTEN ${USER_SCORES_CHANNEL}`);
+
+      await this.loadAll();
+    } catch (error) {
+      this.onListenerError(error);
+    }
+  }
+
+  private onListenerError(error: Error): void {
+    this.ready = false;
+    const listener = this.listener;
+    this.listener = null;
+    if (listener) listener.end().catch(() => undefined);
+    if (this.destroyed || this.reconnectTimer) return;
+
+    this.logger.warn(`⚠️ Ranking en memoria desactivado (${error.message}); reintentando en ${RECONNECT_DELAY_MS} ms`);
+    this.reconnectTimer = setTimeout(() => {
+      this.reconnectTimer = null;
+      this.connect();
+    }, RECONNECT_DELAY_MS);
+    this.reconnectTimer.unref();
+  }
+
+  private async loadAll(): Promise<void> {
+    const startedAt = Date.now();
+    // Lo notificado hasta ahora ya lo ve la carga completa
+    this.dirty.clear();
+    this.loading = true;
+    try {
+      const rows = await this.activeScores().getMany();
+      this.leaderboard.replaceAll(rows.map(toEntry));
+    } finally {
+      this.loading = false;
+    }
+    // Cambios confirmados mientras se leía la tabla: la lectura pudo no verlos
+    await this.flushDirty();
+    this.ready = true;
+    this.logger.log(`🏆 Ranking en memoria cargado: ${this.leaderboard.size} usuarios en ${Date.now() - startedAt} ms`);
+  }
+
+  private onNotification(payload?: string): void {
+    const userIds = (payload || '').split(',').map(Number).filter(id => Number.isInteger(id) && id > 0);
+    if (userIds.length === 0) return;
+    userIds.forEach(id => this.dirty.add(id));
+    if (this.loading) return;
+    this.flushDirty().catch(error => {
+      // Sin poder releer, la copia ya no es fiable: se vuelve a cargar entera
+      this.logger.error(`Error actualizando el ranking en memoria: ${error.message}`);
+      this.ready = false;
+      this.loadAll().catch(loadError => this.onListenerError(loadError));
+    });
+  }
+
+  /** Relee por lotes los usuarios pendientes, con una sola relectura en curso a la vez */
+  private flushDirty(): Promise<void> {
+    if (!this.flushing) {
+      this.flushing = (async () => {
+        while (!this.loading && this.dirty.size > 0) {
+          const userIds = [...this.dirty];
+          this.dirty.clear();
+          await this.reload(userIds);
+        }
+      })().finally(() => {
+        this.flushing = null;
+      });
+    }
+    return this.flushing;
+  }
+
+  /** Relee los usuarios indicados; los desactivados o sin fila o análisis salen del ranking */
+  private async reload(userIds: number[]): Promise<void> {
+    const rows = await this.activeScores().andWhere('score.userId IN (:...userIds)', { userIds }).getMany();
+    const found = new Map(rows.map(row => [row.userId, row]));
+    for (const userId of userIds) {
+      const row = found.get(userId);
+      if (row) this.leaderboard.set(toEntry(row));
+      else this.leaderboard.remove(userId);
+    }
+  }
+
+  private activeScores() {
+    return this.scoreRepository
+      .createQueryBuilder('score')
+      .innerJoin('score.user', 'user', 'user.isActive = :isActive', { isActive: true })
+      .select(['score.userId', 'score.averageScore', 'score.analysesCount'])
+      .where('score.analysesCount > 0');
+  }
+}
+
+/** decimal llega como string desde pg */
+function toEntry(row: UserScoreAggregate) {
+  return { userId: row.userId, averageScore: Number(row.averageScore), analysesCount: row.analysesCount };
+}
@@ -0,0 +1,134 @@
+import { Leaderboard, LeaderboardEntry } from './leaderboard';
+
+function entry(userId: number, averageScore: number, analysesCount = 1): LeaderboardEntry {
+  return { userId, averageScore, analysesCount };
+}
+
+function ids(entries: { userId: number }[]): number[] {
+  return entries.map(item => item.userId);
+}
+
+/** Orden de referencia: el mismo que rankedScores en SQL */
+function sorted(entries: LeaderboardEntry[]): LeaderboardEntry[] {
+  return [...entries].sort((a, b) =>
+    b.averageScore - a.averageScore || b.analysesCount - a.analysesCount || b.userId - a.userId);
+}
+
+/** Generador determinista para que los fallos sean reproducibles */
+function random(seed: number): () => number {
+  let state = seed;
+  return () => {
+    state = (state * 1103515245 + 12345) % 2147483648;
+    return state / 2147483648;
+  };
+}
+
+describe('Leaderboard', () => {
+  it('ranks users across buckets by score, analyses and id', () => {
+    const leaderboard = new Leaderboard();
+    leaderboard.replaceAll([entry(1, 55.5), entry(2, 100), entry(3, 0), entry(4, 72.25), entry(5, 99.99)]);
+
+    expect(ids(leaderboard.top(10))).toEqual([2, 5, 4, 1, 3]);
+    expect(leaderboard.top(10).map(item => item.rank)).toEqual([1, 2, 3, 4, 5]);
+    expect(leaderboard.rankOf(2)).toBe(1);
+    expect(leaderboard.rankOf(3)).toBe(5);
+    expect(leaderboard.rankOf(42)).toBeNull();
+  });
+
+  it('orders ties inside a bucket by analyses count and then by id, both descending', () => {
+    const leaderboard = new Leaderboard();
+    leaderboard.replaceAll([entry(10, 80, 2), entry(11, 80, 5), entry(12, 80, 2), entry(13, 80, 1), entry(14, 90)]);
+
+    expect(ids(leaderboard.top(5))).toEqual([14, 11, 12, 10, 13]);
+    expect(leaderboard.rankOf(12)).toBe(3);
+    expect(leaderboard.rankOf(10)).toBe(4);
+  });
+
+  it('leaves users without analyses out of the ranking', () => {
+    const leaderboard = new Leaderboard();
+    leaderboard.replaceAll([entry(1, 70), entry(2, 90, 0)]);
+
+    expect(leaderboard.size).toBe(1);
+    expect(leaderboard.rankOf(2)).toBeNull();
+  });
+
+  it('returns ranges that start, end or lie inside a bucket', () => {
+    const leaderboard = new Leaderboard();
+    leaderboard.replaceAll([
+      entry(1, 90), entry(2, 90), entry(3, 90),
+      entry(4, 60), entry(5, 60),
+      entry(6, 30),
+    ]);
+
+    expect(ids(leaderboard.range(2, 4))).toEqual([2, 1, 5]);
+    expect(leaderboard.range(2, 4).map(item => item.rank)).toEqual([2, 3, 4]);
+    expect(ids(leaderboard.range(5, 100))).toEqual([4, 6]);
+    expect(leaderboard.range(7, 10)).toEqual([]);
+    expect(ids(leaderboard.range(0, 1))).toEqual([3]);
+  });
+
+  it('returns the neighbours around a user, clipped at both ends', () => {
+    const leaderboard = new Leaderboard();
+    leaderboard.replaceAll([entry(1, 95), entry(2, 90), entry(3, 85), entry(4, 80), entry(5, 75)]);
+
+    expect(ids(leaderboard.around(3, 1))).toEqual([2, 3, 4]);
+    expect(ids(leaderboard.around(1, 2))).toEqual([1, 2, 3]);
+    expect(ids(leaderboard.around(5, 2))).toEqual([3, 4, 5]);
+    expect(leaderboard.around(42, 2)).toEqual([]);
+  });
+
+  it('moves a user between buckets on set and closes the gap on remove', () => {
+    const leaderboard = new Leaderboard();
+    leaderboard.replaceAll([entry(1, 90), entry(2, 80), entry(3, 70)]);
+
+    leaderboard.set(entry(3, 95, 2));
+    expect(ids(leaderboard.top(3))).toEqual([3, 1, 2]);
+    expect(leaderboard.size).toBe(3);
+
+    leaderboard.remove(1);
+    expect(ids(leaderboard.top(3))).toEqual([3, 2]);
+    expect(leaderboard.rankOf(2)).toBe(2);
+    expect(leaderboard.rankOf(1)).toBeNull();
+
+    leaderboard.set(entry(2, 80, 0));
+    expect(leaderboard.size).toBe(1);
+    leaderboard.remove(42);
+    expect(leaderboard.size).toBe(1);
+  });
+
+  it('clamps scores outside 0-100 to the first and last bucket', () => {
+    const leaderboard = new Leaderboard();
+    leaderboard.replaceAll([entry(1, 50), entry(2, 120), entry(3, -5)]);
+
+    expect(ids(leaderboard.top(3))).toEqual([2, 1, 3]);
+  });
+
+  it('matches a full sort after random updates, including empty buckets between users', () => {
+    const next = random(42);
+    const leaderboard = new Leaderboard();
+    const reference = new Map<number, LeaderboardEntry>();
+
+    for (let step = 0; step < 2000; step++) {
+      const userId = 1 + Math.floor(next() * 300);
+      if (next() < 0.2) {
+        leaderboard.remove(userId);
+        reference.delete(userId);
+        continue;
+      }
+      // Pocas notas distintas para forzar empates, con extremos incluidos
+      const averageScore = Math.round(next() * 40) * 2.5;
+      const updated = entry(userId, averageScore, 1 + Math.floor(next() * 3));
+      leaderboard.set(updated);
+      reference.set(userId, updated);
+    }
+
+    const expected = sorted([...reference.values()]);
+    expect(leaderboard.size).toBe(expected.length);
+    expect(ids(leaderboard.top(expected.length))).toEqual(ids(expected));
+    // find() desciende por el árbol para cada rango que empieza en cualquier posición
+    for (let rank = 1; rank <= expected.length; rank += 7) {
+      expect(ids(leaderboard.range(rank, rank + 4))).toEqual(ids(expected.slice(rank - 1, rank + 4)));
+    }
+    expected.forEach((item, index) => expect(leaderboard.rankOf(item.userId)).toBe(index + 1));
+  });
+});
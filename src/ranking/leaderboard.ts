@@ -0,0 +1,153 @@
+/**
+ * Ranking en memoria con estadísticas de orden: posición de un usuario, los
+ * N primeros y los vecinos de un usuario en O(log n) (más el tamaño del resultado).
+ *
+ * Las notas medias tienen dos decimales entre 0 y 100, así que cada nota es un
+ * bucket (10001 en total) y un árbol de Fenwick cuenta cuántos usuarios hay en
+ * cada uno. Dentro de un bucket los usuarios se ordenan igual que el índice de
+ * user_score_aggregates: más análisis primero y, a igualdad, mayor id.
+ */
+
+export interface LeaderboardEntry {
+  userId: number;
+  averageScore: number;
+  analysesCount: number;
+}
+
+export interface RankedEntry extends LeaderboardEntry {
+  rank: number;
+}
+
+// average_score es decimal(5,2): centésimas de punto
+const SCORE_SCALE = 100;
+const MAX_SCORE = 100;
+const BUCKET_COUNT = MAX_SCORE * SCORE_SCALE + 1;
+// Mayor potencia de 2 <= BUCKET_COUNT, para descender por el árbol
+const TOP_STEP = 1 << Math.floor(Math.log2(BUCKET_COUNT));
+
+export class Leaderboard {
+  // Fenwick 1-based: la posición p (0 = nota 100) es el índice p + 1
+  private readonly tree = new Int32Array(BUCKET_COUNT + 1);
+  private readonly buckets = new Map<number, LeaderboardEntry[]>();
+  private readonly entries = new Map<number, LeaderboardEntry>();
+
+  get size(): number {
+    return this.entries.size;
+  }
+
+  /** Sustituye todo el contenido (carga inicial o tras perder notificaciones) */
+  replaceAll(entries: LeaderboardEntry[]): void {
+    this.tree.fill(0);
+    this.buckets.clear();
+    this.entries.clear();
+    for (const entry of entries) this.set(entry);
+  }
+
+  /** Inserta o actualiza un usuario; sin análisis sale del ranking */
+  set(entry: LeaderboardEntry): void {
+    this.remove(entry.userId);
+    if (entry.analysesCount <= 0) return;
+
+    const stored = { userId: entry.userId, averageScore: entry.averageScore, analysesCount: entry.analysesCount };
+    const position = positionOf(stored.averageScore);
+    const bucket = this.buckets.get(position);
+    if (bucket) bucket.splice(insertionIndex(bucket, stored), 0, stored);
+    else this.buckets.set(position, [stored]);
+    this.entries.set(stored.userId, stored);
+    this.add(position, 1);
+  }
+
+  remove(userId: number): void {
+    const entry = this.entries.get(userId);
+    if (!entry) return;
+    const position = positionOf(entry.averageScore);
+    const bucket = this.buckets.get(position);
+    bucket.splice(insertionIndex(bucket, entry), 1);
+    if (bucket.length === 0) this.buckets.delete(position);
+    this.entries.delete(userId);
+    this.add(position, -1);
+  }
+
+  /** Posición (1-based) del usuario, o null si no está en el ranking */
+  rankOf(userId: number): number | null {
+    const entry = this.entries.get(userId);
+    if (!entry) return null;
+    const position = positionOf(entry.averageScore);
+    return this.countBefore(position) + insertionIndex(this.buckets.get(position), entry) + 1;
+  }
+
+  /** Los `limit` primeros */
+  top(limit: number): RankedEntry[] {
+    return this.range(1, limit);
+  }
+
+  /** El usuario y hasta `radius` por encima y por debajo; vacío si no está en el ranking */
+  around(userId: number, radius: number): RankedEntry[] {
+    const rank = this.rankOf(userId);
+    if (rank === null) return [];
+    return this.range(Math.max(1, rank - radius), rank + radius);
+  }
+
+  /** Entradas con posición entre `from` y `to` (1-based, ambas incluidas) */
+  range(from: number, to: number): RankedEntry[] {
+    const result: RankedEntry[] = [];
+    let rank = Math.max(1, from);
+    const last = Math.min(to, this.size);
+    // Cada salto al siguiente bucket no vacío es un descenso por el árbol
+    while (rank <= last) {
+      const { position, offset } = this.find(rank);
+      const bucket = this.buckets.get(position);
+      for (let i = offset; i < bucket.length && rank <= last; i++, rank++) {
+        result.push({ ...bucket[i], rank });
+      }
+    }
+    return result;
+  }
+
+  private add(position: number, delta: number): void {
+    for (let i = position + 1; i <= BUCKET_COUNT; i += i & -i) this.tree[i] += delta;
+  }
+
+  /** Usuarios en las posiciones anteriores a `position` (notas más altas) */
+  private countBefore(position: number): number {
+    let count = 0;
+    for (let i = position; i > 0; i -= i & -i) count += this.tree[i];
+    return count;
+  }
+
+  /** Bucket que contiene la posición `rank` y el desplazamiento dentro de él */
+  private find(rank: number): { position: number; offset: number } {
+    let index = 0;
+    let remaining = rank;
+    for (let step = TOP_STEP; step > 0; step >>= 1) {
+      const next = index + step;
+      if (next <= BUCKET_COUNT && this.tree[next] < remaining) {
+        index = next;
+        remaining -= this.tree[next];
+      }
+    }
+    return { position: index, offset: remaining - 1 };
+  }
+}
+
+/** Posición del bucket: 0 para la nota máxima, crece al bajar la nota */
+function positionOf(averageScore: number): number {
+  const hundredths = Math.round(averageScore * SCORE_SCALE);
+  return MAX_SCORE * SCORE_SCALE - Math.min(Math.max(hundredths, 0), MAX_SCORE * SCORE_SCALE);
+}
+
+/** Orden del ranking: nota, número de análisis e id, todo descendente */
+function compare(a: LeaderboardEntry, b: LeaderboardEntry): number {
+  return b.averageScore - a.averageScore || b.analysesCount - a.analysesCount || b.userId - a.userId;
+}
+
+function insertionIndex(bucket: LeaderboardEntry[], entry: LeaderboardEntry): number {
+  let low = 0;
+  let high = bucket.length;
+  while (low < high) {
+    const middle = (low + high) >> 1;
+    if (compare(bucket[middle], entry) < 0) low = middle + 1;
+    else high = middle;
+  }
+  return low;
+}
@@ -1,6 +1,11 @@
-import { Controller, Get, Query, UseGuards, Request, Param } from '@nestjs/common';
+import { BadRequestException, Controller, Get, Query, UseGuards, Request, Param } from '@nestjs/common';
 import { AuthGuard } from '@nestjs/passport';
-import { RankingService } from './ranking.service';
+import { DayRange, RankingService, RankingWindow, resolveWindow } from './ranking.service';
+
+const WINDOWS: RankingWindow[] = ['7d', '30d', 'term'];
+const DAY = /^\d{4}-\d{2}-\d{2}$/;
+// Ventanas personalizadas de como mucho un año
+const MAX_WINDOW_DAYS = 366;
 
 @Controller('rankings')
 export class RankingController {
@@ -28,6 +33,35 @@ export class RankingController {
     };
   }
 
+  @Get('my-neighbourhood')
+  @UseGuards(AuthGuard('jwt'))
+  async getMyNeighbourhood(@Request() req, @Query('radius') radius?: string) {
+    const radiusNumber = radius ? Math.min(Math.max(parseInt(radius, 10) || 0, 0), 50) : 5;
+    const result = await this.rankingService.getUserNeighbourhood(req.user.id, radiusNumber);
+    return {
+      success: true,
+      data: result,
+      message: 'Usuarios cercanos en el ranking obtenidos exitosamente'
+    };
+  }
+
+  @Get('window')
+  async getWindowRankings(
+    @Query('window') window?: string,
+    @Query('from') from?: string,
+    @Query('to') to?: string,
+    @Query('limit') limit?: string,
+  ) {
+    const range = parseRange(window, from, to);
+    const limitNumber = Math.min(Math.max(parseInt(limit, 10) || 20, 1), 100);
+    const result = await this.rankingService.getWindowRankings(range, limitNumber);
+    return {
+      success: true,
+      data: { ...range, rankings: result },
+      message: 'Rankings del periodo obtenidos exitosamente'
+    };
+  }
+
   @Get('university/:university')
   async getUniversityRankings(@Param('university') university: string) {
     const result = await this.rankingService.getUniversityRankings(decodeURIComponent(university));
@@ -50,11 +84,29 @@ export class RankingController {
 
   @Get('stats')
   async getGlobalStats() {
-    const result = await this.rankingService.getGlobalRankings(1);
+    const result = await this.rankingService.getGlobalStats();
     return {
       success: true,
-      data: result.globalStats,
+      data: result,
       message: 'Estadísticas globales obtenidas exitosamente'
     };
   }
+}
+
+/** ?window=7d|30d|term o ?from=YYYY-MM-DD&to=YYYY-MM-DD (por defecto, 7d) */
+function parseRange(window?: string, from?: string, to?: string): DayRange {
+  if (from || to) {
+    if (!DAY.test(from || '') || !DAY.test(to || '')) {
+      throw new BadRequestException('from y to deben tener el formato YYYY-MM-DD');
+    }
+    const days = (Date.parse(to) - Date.parse(from)) / (24 * 60 * 60 * 1000);
+    if (!(days >= 0 && days < MAX_WINDOW_DAYS)) {
+      throw new BadRequestException(`El periodo debe ir de from a to y no superar ${MAX_WINDOW_DAYS} días`);
+    }
+    return { from, to };
+  }
+  if (window && !WINDOWS.includes(window as RankingWindow)) {
+    throw new BadRequestException(`window debe ser uno de: ${WINDOWS.join(', ')}`);
+  }
+  return resolveWindow((window as RankingWindow) || '7d');
 }
\ No newline at end of file
@@ -2,13 +2,15 @@ import { Module } from '@nestjs/common';
 import { DatabaseModule } from '../database/database.module';
 import { RankingService } from './ranking.service';
 import { RankingController } from './ranking.controller';
+import { UserScoreService } from './user-score.service';
+import { LeaderboardService } from './leaderboard.service';
 import { User } from '../auth/entities/user.entity';
 import { AnalysisRun } from '../analysis/entities/analysis-run.entity';
 
 @Module({
   imports: [DatabaseModule],
   controllers: [RankingController],
-  providers: [RankingService],
-  exports: [RankingService],
+  providers: [RankingService, UserScoreService, LeaderboardService],
+  exports: [RankingService, UserScoreService],
 })
 export class RankingModule {}
\ No newline at end of file
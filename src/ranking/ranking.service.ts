@@ -1,8 +1,9 @@
 import { Injectable } from '@nestjs/common';
 import { InjectRepository } from '@nestjs/typeorm';
-import { Repository } from 'typeorm';
-import { User } from '../auth/entities/user.entity';
-import { AnalysisRun } from '../analysis/entities/analysis-run.entity';
+import { In, Repository } from 'typeorm';
+import { GlobalScoreStats } from './entities/global-score-stats.entity';
+import { UserScoreAggregate } from './entities/user-score-aggregate.entity';
+import { LeaderboardService } from './leaderboard.service';
 
 export interface RankingUser {
   id: number;
@@ -32,80 +33,70 @@ export interface GlobalStats {
   };
 }
 
+type RankingGroup = 'university' | 'career';
+
+// Los rankings por universidad, carrera o ventana de días se sirven de caché durante este tiempo
+const GROUP_RANKING_TTL_MS = 30 * 1000;
+// Máximo de rankings en caché (universidad, carrera y fechas vienen de la URL)
+const GROUP_RANKING_CACHE_SIZE = 500;
+
+export type RankingWindow = '7d' | '30d' | 'term';
+
+/** Rango de días 'YYYY-MM-DD', ambos incluidos */
+export interface DayRange {
+  from: string;
+  to: string;
+}
+
+/**
+ * Días de una ventana contando hoy (fecha local del servidor): los últimos 7
+ * o 30 días, o el semestre en curso (enero-junio o julio-diciembre).
+ */
+export function resolveWindow(window: RankingWindow, today: Date = new Date()): DayRange {
+  const to = formatDay(today);
+  if (window === 'term') {
+    const firstMonth = today.getMonth() < 6 ? 0 : 6;
+    return { from: formatDay(new Date(today.getFullYear(), firstMonth, 1)), to };
+  }
+  const days = window === '7d' ? 7 : 30;
+  return { from: formatDay(new Date(today.getFullYear(), today.getMonth(), today.getDate() - (days - 1))), to };
+}
+
+function formatDay(date: Date): string {
+  const month = String(date.getMonth() + 1).padStart(2, '0');
+  const day = String(date.getDate()).padStart(2, '0');
+  return `${date.getFullYear()}-${month}-${day}`;
+}
+
 @Injectable()
 export class RankingService {
+  private readonly rankingCache = new Map<string, { expiresAt: number; rankings: Promise<RankingUser[]> }>();
+
   constructor(
-    @InjectRepository(User)
-    private userRepository: Repository<User>,
-    @InjectRepository(AnalysisRun)
-    private analysisRepository: Repository<AnalysisRun>,
+    @InjectRepository(GlobalScoreStats)
+    private statsRepository: Repository<GlobalScoreStats>,
+    @InjectRepository(UserScoreAggregate)
+    private scoreRepository: Repository<UserScoreAggregate>,
+    private leaderboard: LeaderboardService,
   ) {}
 
   async getGlobalRankings(limit: number = 20): Promise<{
     rankings: RankingUser[];
     globalStats: GlobalStats;
   }> {
-    console.log('=== Getting global rankings ===');
-    
-    // Obtener usuarios activos
-    const users = await this.userRepository.find({
-      where: { isActive: true },
-    });
-    
-    console.log('Total users found:', users.length);
-    
-    // Obtener TODOS los análisis (no solo por userId)
-    const allAnalyses = await this.analysisRepository.find();
-    console.log('Total analyses found:', allAnalyses.length);
-
-    // Para cada usuario, asociar análisis por userId O por student name/email
-    const userStats = users
-      .map(user => {
-        // Obtener análisis del usuario (por userId o por nombre/email como student)
-        const userAnalyses = allAnalyses.filter(a => 
-          a.userId === user.id || 
-          a.student === user.email || 
-          a.student === user.name ||
-          a.student === `${user.name}`
-        );
-        
-        const totalAnalyses = userAnalyses.length;
-        const averageScore = totalAnalyses > 0 
-          ? userAnalyses.reduce((sum, a) => sum + (a.qualityScore || 0), 0) / totalAnalyses
-          : 0;
-        const totalIssuesFound = userAnalyses.reduce((sum, a) => sum + (a.totalIssues || 0), 0);
-        
-        return {
-          id: user.id,
-          name: user.name,
-          email: user.email,
-          profilePicture: user.profilePicture,
-          university: user.university,
-          career: user.career,
-          totalAnalyses,
-          averageScore,
-          totalIssuesFound,
-        };
-      })
-      .filter(user => user.totalAnalyses > 0) // Solo usuarios con análisis
-      .sort((a, b) => {
-        // Ordenar por score promedio (descendente), luego por total de análisis
-        if (Math.abs(a.averageScore - b.averageScore) < 0.01) {
-          return b.totalAnalyses - a.totalAnalyses;
-        }
-        return b.averageScore - a.averageScore;
-      })
-      .slice(0, limit)
-      .map((user, index) => ({
-        ...user,
-        rank: index + 1,
-      }));
+    let rankings: RankingUser[];
+    if (this.leaderboard.isReady) {
+      rankings = await this.withDetails(this.leaderboard.top(limit));
+    } else {
+      // Los primeros `limit` del índice de user_score_aggregates (relación 1:1, basta con LIMIT)
+      const scores = await this.rankedScores().limit(limit).getMany();
+      rankings = scores.map((score, index) => toRankingUser(score, index + 1));
+    }
 
-    // Calcular estadísticas globales
-    const globalStats = await this.calculateGlobalStats(allAnalyses);
+    const globalStats = await this.getGlobalStats();
 
     return {
-      rankings: userStats,
+      rankings,
       globalStats,
     };
   }
@@ -115,223 +106,252 @@ export class RankingService {
     position: number;
     totalUsers: number;
   }> {
-    // Obtener usuario
-    const user = await this.userRepository.findOne({ where: { id: userId } });
-    if (!user) {
+    if (this.leaderboard.isReady) {
+      const position = this.leaderboard.rankOf(userId);
+      const totalUsers = this.leaderboard.size;
+      if (position === null) {
+        return { userRank: null, position: 0, totalUsers };
+      }
+      const [userRank] = await this.withDetails([{ userId, rank: position }]);
+      return { userRank: userRank || null, position, totalUsers };
+    }
+
+    const totalUsers = await this.rankedScores().getCount();
+    const score = await this.rankedScores().andWhere('score.userId = :userId', { userId }).getOne();
+    if (!score) {
       return {
         userRank: null,
         position: 0,
-        totalUsers: 0,
+        totalUsers,
       };
     }
 
-    // Obtener TODOS los análisis
-    const allAnalyses = await this.analysisRepository.find();
+    const position = await this.positionInTable(score);
+    return {
+      userRank: toRankingUser(score, position),
+      position,
+      totalUsers,
+    };
+  }
 
-    // Construir ranking similar a getGlobalRankings
-    const allUsers = await this.userRepository.find({
-      where: { isActive: true },
-    });
+  /** El usuario y hasta `radius` usuarios por encima y por debajo de él */
+  async getUserNeighbourhood(userId: number, radius: number = 5): Promise<{
+    neighbours: RankingUser[];
+    position: number;
+    totalUsers: number;
+  }> {
+    if (this.leaderboard.isReady) {
+      const position = this.leaderboard.rankOf(userId) ?? 0;
+      const neighbours = position ? await this.withDetails(this.leaderboard.around(userId, radius)) : [];
+      return { neighbours, position, totalUsers: this.leaderboard.size };
+    }
 
-    const userStats = allUsers
-      .map(u => {
-        // Obtener análisis del usuario
-        const userAnalyses = allAnalyses.filter(a => 
-          a.userId === u.id || 
-          a.student === u.email || 
-          a.student === u.name ||
-          a.student === `${u.name}`
-        );
-        
-        const totalAnalyses = userAnalyses.length;
-        const averageScore = totalAnalyses > 0 
-          ? userAnalyses.reduce((sum, a) => sum + (a.qualityScore || 0), 0) / totalAnalyses
-          : 0;
-        const totalIssuesFound = userAnalyses.reduce((sum, a) => sum + (a.totalIssues || 0), 0);
-        
-        return {
-          id: u.id,
-          name: u.name,
-          email: u.email,
-          profilePicture: u.profilePicture,
-          university: u.university,
-          career: u.career,
-          totalAnalyses,
-          averageScore,
-          totalIssuesFound,
-        };
-      })
-      .filter(u => u.totalAnalyses > 0)
-      .sort((a, b) => {
-        if (Math.abs(a.averageScore - b.averageScore) < 0.01) {
-          return b.totalAnalyses - a.totalAnalyses;
-        }
-        return b.averageScore - a.averageScore;
-      });
-
-    const userIndex = userStats.findIndex(u => u.id === userId);
-    
-    if (userIndex === -1) {
-      return {
-        userRank: null,
-        position: 0,
-        totalUsers: userStats.length,
-      };
+    const totalUsers = await this.rankedScores().getCount();
+    const score = await this.rankedScores().andWhere('score.userId = :userId', { userId }).getOne();
+    if (!score) {
+      return { neighbours: [], position: 0, totalUsers };
     }
 
+    const position = await this.positionInTable(score);
+    const first = Math.max(1, position - radius);
+    const scores = await this.rankedScores()
+      .offset(first - 1)
+      .limit(position + radius - first + 1)
+      .getMany();
     return {
-      userRank: {
-        ...userStats[userIndex],
-        rank: userIndex + 1,
-      },
-      position: userIndex + 1,
-      totalUsers: userStats.length,
+      neighbours: scores.map((neighbour, index) => toRankingUser(neighbour, first + index)),
+      position,
+      totalUsers,
     };
   }
 
-  async getUniversityRankings(university: string): Promise<RankingUser[]> {
-    const users = await this.userRepository.find({
-      where: { 
-        isActive: true,
-        university: university,
-      },
-    });
-    
-    // Inicializar analyses vacío para cálculos
-    users.forEach(u => {
-      if (!u.analyses) {
-        u.analyses = [];
-      }
+  /** Posición = usuarios que van por delante en el orden del índice + 1 */
+  private async positionInTable(score: UserScoreAggregate): Promise<number> {
+    const ahead = await this.rankedScores()
+      .andWhere('(score.averageScore, score.analysesCount, score.userId) > (:averageScore, :analysesCount, :userId)', {
+        averageScore: score.averageScore,
+        analysesCount: score.analysesCount,
+        userId: score.userId,
+      })
+      .getCount();
+    return ahead + 1;
+  }
+
+  /**
+   * Datos de usuario y totales de las posiciones del ranking en memoria (una
+   * consulta por clave primaria). Los usuarios desactivados se omiten igual que
+   * en rankedScores, aunque la copia en memoria aún no haya recibido el aviso.
+   */
+  private async withDetails(entries: { userId: number; rank: number }[]): Promise<RankingUser[]> {
+    if (entries.length === 0) return [];
+    const scores = await this.scoreRepository.find({
+      where: { userId: In(entries.map(entry => entry.userId)), user: { isActive: true } },
+      relations: { user: true },
     });
+    const byUser = new Map(scores.map(score => [score.userId, score]));
+    return entries
+      .filter(entry => byUser.has(entry.userId))
+      .map(entry => toRankingUser(byUser.get(entry.userId), entry.rank));
+  }
 
-    return users
-      .map(user => ({
-        id: user.id,
-        name: user.name,
-        email: user.email,
-        profilePicture: user.profilePicture,
-        university: user.university,
-        career: user.career,
-        totalAnalyses: user.getTotalAnalyses(),
-        averageScore: user.getAverageScore(),
-        totalIssuesFound: user.getTotalIssuesFound(),
-      }))
-      .filter(user => user.totalAnalyses > 0)
-      .sort((a, b) => {
-        if (Math.abs(a.averageScore - b.averageScore) < 0.01) {
-          return b.totalAnalyses - a.totalAnalyses;
-        }
-        return b.averageScore - a.averageScore;
-      })
-      .map((user, index) => ({
-        ...user,
-        rank: index + 1,
-      }));
+  /**
+   * Usuarios activos con al menos un análisis completado, en orden de ranking:
+   * nota media, número de análisis y, para desempatar de forma estable, id.
+   * Coincide con el índice (average_score, analyses_count, user_id).
+   */
+  private rankedScores() {
+    return this.scoreRepository
+      .createQueryBuilder('score')
+      .innerJoinAndSelect('score.user', 'user', 'user.isActive = :isActive', { isActive: true })
+      .where('score.analysesCount > 0')
+      .orderBy('score.averageScore', 'DESC')
+      .addOrderBy('score.analysesCount', 'DESC')
+      .addOrderBy('score.userId', 'DESC');
+  }
+
+  async getUniversityRankings(university: string): Promise<RankingUser[]> {
+    return this.getGroupRankings('university', university);
   }
 
   async getCareerRankings(career: string): Promise<RankingUser[]> {
-    const users = await this.userRepository.find({
-      where: { 
-        isActive: true,
-        career: career,
-      },
-    });
-    
-    // Inicializar analyses vacío para cálculos
-    users.forEach(u => {
-      if (!u.analyses) {
-        u.analyses = [];
-      }
-    });
+    return this.getGroupRankings('career', career);
+  }
 
-    return users
-      .map(user => ({
-        id: user.id,
-        name: user.name,
-        email: user.email,
-        profilePicture: user.profilePicture,
-        university: user.university,
-        career: user.career,
-        totalAnalyses: user.getTotalAnalyses(),
-        averageScore: user.getAverageScore(),
-        totalIssuesFound: user.getTotalIssuesFound(),
-      }))
-      .filter(user => user.totalAnalyses > 0)
-      .sort((a, b) => {
-        if (Math.abs(a.averageScore - b.averageScore) < 0.01) {
-          return b.totalAnalyses - a.totalAnalyses;
-        }
-        return b.averageScore - a.averageScore;
-      })
-      .map((user, index) => ({
-        ...user,
-        rank: index + 1,
-      }));
+  /**
+   * Ranking de una universidad o carrera en una sola consulta: usuarios del
+   * grupo (índice sobre la columna) con sus totales de user_score_aggregates
+   * y RANK() sobre nota media y número de análisis (empates con la misma posición).
+   */
+  private getGroupRankings(column: RankingGroup, value: string): Promise<RankingUser[]> {
+    return this.cached(`${column}\0${value}`, () =>
+      this.scoreRepository.query(
+        `SELECT u."id", u."name", u."email", u."profile_picture" AS "profilePicture",
+                u."university", u."career",
+                s."analyses_count" AS "totalAnalyses",
+                s."average_score" AS "averageScore",
+                s."issues_sum" AS "totalIssuesFound",
+                RANK() OVER (ORDER BY s."average_score" DESC, s."analyses_count" DESC) AS "rank"
+         FROM "users" u
+         JOIN "user_score_aggregates" s ON s."user_id" = u."id"
+         WHERE u."${column}" = $1 AND u."is_active" = true AND s."analyses_count" > 0
+         ORDER BY "rank", u."id" DESC`,
+        [value],
+      ),
+    );
   }
 
-  private async calculateGlobalStats(analyses: AnalysisRun[]): Promise<GlobalStats> {
-    const totalAnalyses = analyses.length;
-    
-    // Contar usuarios únicos que tienen análisis
-    const uniqueStudents = new Set(analyses.map(a => a.student).filter(s => s));
-    const totalUsers = uniqueStudents.size;
-    
-    // Calcular promedio global de calidad
-    const qualityScores = analyses
-      .filter(analysis => analysis.qualityScore !== null && analysis.qualityScore !== undefined)
-      .map(analysis => typeof analysis.qualityScore === 'string' ? parseFloat(analysis.qualityScore) : analysis.qualityScore);
-    
-    const averageQualityScore = qualityScores.length > 0 
-      ? qualityScores.reduce((sum, score) => sum + score, 0) / qualityScores.length 
-      : 0;
-
-    // Total de issues encontrados
-    const totalIssuesFound = analyses.reduce((total, analysis) => total + (analysis.totalIssues || 0), 0);
-
-    // Estudiante más activo (más análisis)
-    const studentCounts = new Map<string, number>();
-    analyses.forEach(analysis => {
-      if (analysis.student) {
-        studentCounts.set(analysis.student, (studentCounts.get(analysis.student) || 0) + 1);
-      }
-    });
+  /**
+   * Ranking de un rango de días: suma por usuario las filas de user_score_daily
+   * del rango (recorrido por el índice de día), sin leer analysis_runs.
+   */
+  async getWindowRankings(range: DayRange, limit: number = 20): Promise<RankingUser[]> {
+    return this.cached(`window\0${range.from}\0${range.to}\0${limit}`, () =>
+      this.scoreRepository.query(
+        `SELECT u."id", u."name", u."email", u."profile_picture" AS "profilePicture",
+                u."university", u."career",
+                w.analyses_count AS "totalAnalyses",
+                round(w.score_sum / w.analyses_count, 2) AS "averageScore",
+                w.issues_sum AS "totalIssuesFound",
+                RANK() OVER (ORDER BY round(w.score_sum / w.analyses_count, 2) DESC, w.analyses_count DESC) AS "rank"
+         FROM (
+           SELECT d."user_id",
+                  sum(d."analyses_count") AS analyses_count,
+                  sum(d."score_sum") AS score_sum,
+                  sum(d."issues_sum") AS issues_sum
+           FROM "user_score_daily" d
+           WHERE d."day" BETWEEN $1 AND $2
+           GROUP BY d."user_id"
+         ) w
+         JOIN "users" u ON u."id" = w."user_id" AND u."is_active" = true
+         WHERE w.analyses_count > 0
+         ORDER BY "rank", u."id" DESC
+         LIMIT $3`,
+        [range.from, range.to, limit],
+      ),
+    );
+  }
 
-    let mostActiveUser = { name: 'N/A', analysesCount: 0 };
-    if (studentCounts.size > 0) {
-      const [name, count] = Array.from(studentCounts.entries())
-        .reduce((max, current) => current[1] > max[1] ? current : max);
-      mostActiveUser = { name, analysesCount: count };
-    }
+  /**
+   * Resultados de consultas de ranking en caché GROUP_RANKING_TTL_MS; la
+   * promesa se comparte entre peticiones simultáneas y un error no se cachea.
+   */
+  private cached(key: string, load: () => Promise<any[]>): Promise<RankingUser[]> {
+    const now = Date.now();
+    const cached = this.rankingCache.get(key);
+    if (cached && cached.expiresAt > now) return cached.rankings;
 
-    // Estudiante con mejor calidad (mejor score promedio)
-    const studentQualityMap = new Map<string, { scores: number[]; count: number }>();
-    analyses.forEach(analysis => {
-      if (analysis.student && analysis.qualityScore) {
-        const score = typeof analysis.qualityScore === 'string' ? parseFloat(analysis.qualityScore) : analysis.qualityScore;
-        const existing = studentQualityMap.get(analysis.student) || { scores: [], count: 0 };
-        existing.scores.push(score);
-        existing.count++;
-        studentQualityMap.set(analysis.student, existing);
+    if (this.rankingCache.size >= GROUP_RANKING_CACHE_SIZE) {
+      for (const [cachedKey, entry] of this.rankingCache) {
+        if (entry.expiresAt <= now) this.rankingCache.delete(cachedKey);
+      }
+      // Todas vigentes: se descarta la más antigua (orden de inserción del Map)
+      if (this.rankingCache.size >= GROUP_RANKING_CACHE_SIZE) {
+        this.rankingCache.delete(this.rankingCache.keys().next().value);
       }
-    });
-
-    let bestQualityUser = { name: 'N/A', qualityScore: 0 };
-    if (studentQualityMap.size > 0) {
-      const entries = Array.from(studentQualityMap.entries()).map(([name, data]) => ({
-        name,
-        qualityScore: data.scores.reduce((a, b) => a + b, 0) / data.scores.length,
-      }));
-      const best = entries.reduce((max, current) => current.qualityScore > max.qualityScore ? current : max);
-      bestQualityUser = best;
     }
 
+    const rankings = load().then(rows =>
+      rows.map(row => ({
+        ...row,
+        // numeric y bigint llegan como string desde pg
+        totalAnalyses: Number(row.totalAnalyses),
+        averageScore: Number(row.averageScore),
+        totalIssuesFound: Number(row.totalIssuesFound),
+        rank: Number(row.rank),
+      })),
+    );
+    this.rankingCache.set(key, { expiresAt: now + GROUP_RANKING_TTL_MS, rankings });
+    rankings.catch(() => this.rankingCache.delete(key));
+    return rankings;
+  }
+
+  /**
+   * Estadísticas globales sin recorrer análisis: los totales de la fila de
+   * global_stats y los dos usuarios destacados, primeros de sus índices en
+   * user_score_aggregates (el mejor es el primero del ranking).
+   */
+  async getGlobalStats(): Promise<GlobalStats> {
+    const [totals, mostActive, best] = await Promise.all([
+      this.statsRepository.findOne({ where: { id: 1 } }),
+      this.rankedScores()
+        .orderBy('score.analysesCount', 'DESC')
+        .addOrderBy('score.userId', 'DESC')
+        .limit(1)
+        .getOne(),
+      this.leaderboard.isReady
+        ? this.withDetails(this.leaderboard.top(1)).then(([user]) => user || null)
+        : this.rankedScores().limit(1).getOne().then(score => (score ? toRankingUser(score, 1) : null)),
+    ]);
+
+    const totalAnalyses = totals?.totalAnalyses || 0;
     return {
-      totalUsers,
+      totalUsers: totals?.totalUsers || 0,
       totalAnalyses,
-      averageQualityScore,
-      totalIssuesFound,
-      mostActiveUser,
-      bestQualityUser,
+      averageQualityScore: totalAnalyses > 0 ? Number(totals.scoreSum) / totalAnalyses : 0,
+      // bigint llega como string desde pg
+      totalIssuesFound: Number(totals?.issuesSum || 0),
+      mostActiveUser: mostActive
+        ? { name: mostActive.user.name || mostActive.user.email, analysesCount: mostActive.analysesCount }
+        : { name: 'N/A', analysesCount: 0 },
+      bestQualityUser: best
+        ? { name: best.name || best.email, qualityScore: best.averageScore }
+        : { name: 'N/A', qualityScore: 0 },
     };
   }
+}
+
+/** Fila de user_score_aggregates (decimal llega como string desde pg) a RankingUser */
+function toRankingUser(score: UserScoreAggregate, rank: number): RankingUser {
+  return {
+    id: score.user.id,
+    name: score.user.name,
+    email: score.user.email,
+    profilePicture: score.user.profilePicture,
+    university: score.user.university,
+    career: score.user.career,
+    totalAnalyses: score.analysesCount,
+    averageScore: Number(score.averageScore),
+    totalIssuesFound: score.issuesSum,
+    rank,
+  };
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+import { Injectable } from '@nestjs/common';
+import { InjectRepository } from '@nestjs/typeorm';
+import { EntityManager, Repository } from 'typeorm';
+import { AnalysisRun } from '../analysis/entities/analysis-run.entity';
+import { UserScoreAggregate } from './entities/user-score-aggregate.entity';
+
+// Canal de pg_notify con los ids de usuario cuyos totales cambiaron (separados por comas)
+export const USER_SCORES_CHANNEL = 'user_scores';
+
+// Crea (si falta) y bloquea la fila de cada usuario, en orden para no provocar deadlocks.
+// Un segundo análisis del mismo usuario espera aquí a que el primero confirme
+const LOCK_AGGREGATES_SQL = `
+  INSERT INTO "user_score_aggregates" ("user_id")
+  SELECT DISTINCT id FROM unnest($1::int[]) AS id ORDER BY id
+  ON CONFLICT ("user_id") DO UPDATE SET "updated_at" = now()
+`;
+
+// Totales desde los análisis completados del usuario: por user_id o, en análisis
+// antiguos sin usuario, por email/nombre como estudiante (igual que antes el ranking).
+// En la misma sentencia se suma a global_stats la diferencia con los totales previos
+// (`previous` ve la tabla antes del UPDATE: todas las partes comparten snapshot).
+// Si falta la fila de global_stats (tabla creada por synchronize, sin la siembra de
+// la migración) se inserta con los totales de todos los usuarios más la diferencia;
+// con la fila presente `base` no llega a leer user_score_aggregates
+const REFRESH_AGGREGATES_SQL = `
+  WITH totals AS (
+    SELECT u."id" AS user_id,
+           count(a."id") AS analyses_count,
+           coalesce(sum(coalesce(a."quality_score", 0)), 0) AS score_sum,
+           coalesce(sum(a."total_issues"), 0) AS issues_sum
+    FROM "users" u
+    LEFT JOIN "analysis_runs" a
+      ON a."status" = 'completed'
+     AND (a."user_id" = u."id" OR (a."user_id" IS NULL AND a."student" IN (u."email", u."name")))
+    WHERE u."id" = ANY($1)
+    GROUP BY u."id"
+  ), previous AS (
+    SELECT "user_id", "analyses_count", "score_sum", "issues_sum"
+    FROM "user_score_aggregates"
+    WHERE "user_id" = ANY($1)
+  ), updated AS (
+    UPDATE "user_score_aggregates" AS agg
+    SET "analyses_count" = totals.analyses_count,
+        "score_sum" = totals.score_sum,
+        "issues_sum" = totals.issues_sum,
+        "average_score" = CASE WHEN totals.analyses_count > 0
+          THEN round(totals.score_sum / totals.analyses_count, 2) ELSE 0 END,
+        "updated_at" = now()
+    FROM totals
+    WHERE agg."user_id" = totals.user_id
+    RETURNING agg."user_id", agg."analyses_count", agg."score_sum", agg."issues_sum"
+  )
+  INSERT INTO "global_stats" AS stats ("id", "total_users", "total_analyses", "score_sum", "issues_sum")
+  SELECT 1,
+         base.users + delta.users,
+         base.analyses + delta.analyses,
+         base.score_sum + delta.score_sum,
+         base.issues_sum + delta.issues_sum
+  FROM (
+    SELECT count(*) FILTER (WHERE "analyses_count" > 0) AS users,
+           coalesce(sum("analyses_count"), 0) AS analyses,
+           coalesce(sum("score_sum"), 0) AS score_sum,
+           coalesce(sum("issues_sum"), 0) AS issues_sum
+    FROM "user_score_aggregates"
+    WHERE NOT EXISTS (SELECT 1 FROM "global_stats" WHERE "id" = 1)
+  ) AS base, (
+    SELECT coalesce(sum(sign(u."analyses_count") - sign(p."analyses_count")), 0) AS users,
+           coalesce(sum(u."analyses_count" - p."analyses_count"), 0) AS analyses,
+           coalesce(sum(u."score_sum" - p."score_sum"), 0) AS score_sum,
+           coalesce(sum(u."issues_sum" - p."issues_sum"), 0) AS issues_sum
+    FROM updated u
+    JOIN previous p ON p."user_id" = u."user_id"
+  ) AS delta
+  ON CONFLICT ("id") DO UPDATE SET
+    "total_users" = stats."total_users" + EXCLUDED."total_users",
+    "total_analyses" = stats."total_analyses" + EXCLUDED."total_analyses",
+    "score_sum" = stats."score_sum" + EXCLUDED."score_sum",
+    "issues_sum" = stats."issues_sum" + EXCLUDED."issues_sum",
+    "updated_at" = now()
+`;
+
+// Filas diarias de los mismos usuarios: se insertan o actualizan los días con
+// análisis y se borran los que se quedaron sin ninguno (borrado o re-análisis)
+const REFRESH_DAILY_SQL = `
+  WITH totals AS (
+    SELECT u."id" AS user_id,
+           coalesce(a."completed_at", a."created_at")::date AS day,
+           count(*) AS analyses_count,
+           sum(coalesce(a."quality_score", 0)) AS score_sum,
+           coalesce(sum(a."total_issues"), 0) AS issues_sum
+    FROM "users" u
+    JOIN "analysis_runs" a
+      ON a."status" = 'completed'
+     AND (a."user_id" = u."id" OR (a."user_id" IS NULL AND a."student" IN (u."email", u."name")))
+    WHERE u."id" = ANY($1)
+    GROUP BY 1, 2
+  ), upserted AS (
+    INSERT INTO "user_score_daily" ("user_id", "day", "analyses_count", "score_sum", "issues_sum")
+    SELECT user_id, day, analyses_count, score_sum, issues_sum FROM totals
+    ON CONFLICT ("user_id", "day") DO UPDATE SET
+      "analyses_count" = EXCLUDED."analyses_count",
+      "score_sum" = EXCLUDED."score_sum",
+      "issues_sum" = EXCLUDED."issues_sum"
+    WHERE ("user_score_daily"."analyses_count", "user_score_daily"."score_sum", "user_score_daily"."issues_sum")
+      IS DISTINCT FROM (EXCLUDED."analyses_count", EXCLUDED."score_sum", EXCLUDED."issues_sum")
+  )
+  DELETE FROM "user_score_daily" AS daily
+  WHERE daily."user_id" = ANY($1)
+    AND NOT EXISTS (SELECT 1 FROM totals t WHERE t.user_id = daily."user_id" AND t.day = daily."day")
+`;
+
+/**
+ * Mantenimiento de user_score_aggregates, user_score_daily y global_stats.
+ * Se llama dentro de la transacción que completa, falla o elimina un
+ * análisis: se recalculan solo las filas del usuario afectado (una lectura
+ * por índice de sus análisis), lo que cubre igual un análisis nuevo, un
+ * re-análisis que cambia la nota o un borrado. Cada cambio se notifica a
+ * LeaderboardService de todos los nodos.
+ */
+@Injectable()
+export class UserScoreService {
+  constructor(
+    @InjectRepository(UserScoreAggregate)
+    private readonly scoreRepository: Repository<UserScoreAggregate>,
+  ) {}
+
+  /** Recalcula los totales de los usuarios a los que cuenta el análisis */
+  async refreshForAnalysis(analysis: Pick<AnalysisRun, 'userId' | 'student'>, manager?: EntityManager): Promise<void> {
+    const runner = manager || this.scoreRepository.manager;
+    let userIds: number[] = [];
+    if (analysis.userId) {
+      userIds = [analysis.userId];
+    } else if (analysis.student) {
+      const rows = await runner.query(`SELECT "id" FROM "users" WHERE "email" = $1 OR "name" = $1`, [analysis.student]);
+      userIds = rows.map((row: { id: number }) => row.id);
+    }
+    await this.refresh(userIds, runner);
+  }
+
+  async refresh(userIds: number[], manager?: EntityManager): Promise<void> {
+    if (userIds.length === 0) return;
+    // El bloqueo solo sirve dentro de una transacción
+    if (!manager) return this.scoreRepository.manager.transaction(transactional => this.refresh(userIds, transactional));
+    const runner = manager;
+    await runner.query(LOCK_AGGREGATES_SQL, [userIds]);
+    // Sentencia aparte: en READ COMMITTED ve lo que confirmó quien tenía el bloqueo
+    await runner.query(REFRESH_AGGREGATES_SQL, [userIds]);
+    await runner.query(REFRESH_DAILY_SQL, [userIds]);
+    // Se entrega al confirmar la transacción (y se descarta si se revierte)
+    await runner.query(`SELECT pg_notify($1, $2)`, [USER_SCORES_CHANNEL, userIds.join(',')]);
+  }
+}